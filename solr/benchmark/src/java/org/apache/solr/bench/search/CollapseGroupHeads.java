@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.bench.search;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.util.DynamicMapPagePool;
+import org.apache.solr.util.IntFloatDynamicMap;
+import org.apache.solr.util.IntIntDynamicMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Selects the group heads by score the way the collapse query parser does on a string field, for
+ * fields with many unique values, to compare the time and the memory (with <code>-prof gc</code>)
+ * that the group head state takes per request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Warmup(time = 5, iterations = 3)
+@Measurement(time = 10, iterations = 5)
+@Fork(
+    value = 1,
+    jvmArgs = {"-Xmx4g"})
+public class CollapseGroupHeads {
+
+  @State(Scope.Benchmark)
+  public static class BenchState {
+
+    /** The number of unique values of the collapse field, i.e. its global ordinals */
+    @Param({"1000000", "10000000", "50000000"})
+    int numGroups;
+
+    /** The number of docs matching the query */
+    @Param({"100000", "1000000"})
+    int numHits;
+
+    /** Whether the pages of group head state are reused across requests */
+    @Param({"true", "false"})
+    boolean pooled;
+
+    int[] hitOrds;
+    float[] hitScores;
+    DynamicMapPagePool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      SplittableRandom random = new SplittableRandom(42);
+      hitOrds = new int[numHits];
+      hitScores = new float[numHits];
+      for (int i = 0; i < numHits; i++) {
+        hitOrds[i] = random.nextInt(numGroups);
+        hitScores[i] = (float) random.nextDouble();
+      }
+      pool = pooled ? new DynamicMapPagePool(512L * 1024 * 1024) : null;
+    }
+  }
+
+  @Benchmark
+  public long selectGroupHeads(BenchState state, Blackhole bh) {
+    IntIntDynamicMap ords = new IntIntDynamicMap(state.numGroups, -1, state.pool);
+    IntFloatDynamicMap scores =
+        new IntFloatDynamicMap(state.numGroups, -Float.MAX_VALUE, state.pool);
+    for (int doc = 0; doc < state.numHits; doc++) {
+      int ord = state.hitOrds[doc];
+      float score = state.hitScores[doc];
+      if (score > scores.get(ord)) {
+        ords.put(ord, doc);
+        scores.put(ord, score);
+      }
+    }
+    ords.forEachValue(bh::consume);
+    long bytes = ords.ramBytesUsed() + scores.ramBytesUsed();
+    ords.release();
+    scores.release();
+    return bytes;
+  }
+}
@@ -92,8 +92,20 @@ public class JsonFaceting {
     @Param({"3000"})
     int facetCard2;
 
+    @Param({"1000000"})
+    int rangeEnd;
+
+    @Param({"1000"})
+    int rangeBuckets;
+
+    // bytes of slot arrays each core keeps for reuse, compare allocation against 0 with -prof gc
+    @Param({"16777216"})
+    long slotArrayPoolSize;
+
     private ModifiableSolrParams params;
 
+    private ModifiableSolrParams nestedParams;
+
     @Setup(Level.Trial)
     public void setup(
         BenchmarkParams benchmarkParams, MiniClusterState.MiniClusterBenchState miniClusterState)
@@ -101,6 +113,7 @@ public class JsonFaceting {
 
       System.setProperty("maxMergeAtOnce", "30");
       System.setProperty("segmentsPerTier", "30");
+      System.setProperty("solr.facet.slotArrayPoolSize", Long.toString(slotArrayPoolSize));
 
       miniClusterState.startMiniCluster(nodeCount);
 
@@ -126,7 +139,8 @@ public class JsonFaceting {
               .field(integers().all())
               .field(integers().allWithMaxCardinality(facetCard2))
               .field(integers().allWithMaxCardinality(facetCard2))
-              .field(integers().allWithMaxCardinality(facetCard2));
+              .field(integers().allWithMaxCardinality(facetCard2))
+              .field("range_i_dv", integers().between(0, rangeEnd - 1));
 
       miniClusterState.index(collection, docs, docCount);
       miniClusterState.forceMerge(collection, 25);
@@ -158,9 +172,64 @@ public class JsonFaceting {
               + " , f8:{type:terms, field:'facet_s', limit:2, sort:'x desc', facet:{x:'countvals(int4_i_dv)'}  } "
               + '}');
 
+      // every bucket of the parent facet allocates the slot arrays of its sub-facet
+      nestedParams = new ModifiableSolrParams();
+      MiniClusterState.params(
+          nestedParams,
+          "q",
+          "*:*",
+          "json.facet",
+          "{n1:{method:'"
+              + fm
+              + "', type:terms, field:'facet3_s', limit:20, facet:{n2:{method:'"
+              + fm
+              + "', type:terms, field:'facet_s', limit:5, sort:'x desc', facet:{x:'sum(int3_i_dv)'} } } } }");
+
       // MiniClusterState.log("params: " + params + "\n");
     }
 
+    ModifiableSolrParams rangeParams(String rangeMethod) {
+      ModifiableSolrParams rangeParams = new ModifiableSolrParams();
+      MiniClusterState.params(
+          rangeParams,
+          "q",
+          "*:*",
+          "json.facet",
+          "{r1:{method:'"
+              + rangeMethod
+              + "', type:range, field:'range_i_dv', start:0, end:"
+              + rangeEnd
+              + ", gap:"
+              + (rangeEnd / rangeBuckets)
+              + ", other:all }"
+              + " , r2:{method:'"
+              + rangeMethod
+              + "', type:range, field:'range_i_dv', start:0, end:"
+              + rangeEnd
+              + ", gap:"
+              + (rangeEnd / rangeBuckets)
+              + ", facet:{x:'sum(range_i_dv)'} }"
+              + '}');
+      return rangeParams;
+    }
+
+    /** The range faceting method, kept out of {@link BenchState} so terms faceting isn't rerun */
+    @State(Scope.Benchmark)
+    public static class RangeState {
+
+      //  "dv"      single pass over the docValues
+      //  "filter"  a range query per bucket
+      @Param({"dv", "filter"})
+      String rangeMethod;
+
+      private ModifiableSolrParams params;
+
+      @Setup(Level.Trial)
+      public void setup(BenchState benchState) {
+        params = benchState.rangeParams(rangeMethod);
+      }
+    }
+
     @State(Scope.Thread)
     public static class ThreadState {
 
@@ -190,4 +259,33 @@ public class JsonFaceting {
 
     return result;
   }
+
+  @Benchmark
+  @Timeout(time = 500, timeUnit = TimeUnit.SECONDS)
+  public Object jsonNestedFacet(
+      MiniClusterState.MiniClusterBenchState miniClusterState,
+      BenchState state,
+      BenchState.ThreadState threadState)
+      throws Exception {
+    QueryRequest queryRequest = new QueryRequest(state.nestedParams);
+    queryRequest.setBasePath(
+        miniClusterState.nodes.get(threadState.random.nextInt(state.nodeCount)));
+
+    return miniClusterState.client.request(queryRequest, state.collection);
+  }
+
+  @Benchmark
+  @Timeout(time = 500, timeUnit = TimeUnit.SECONDS)
+  public Object jsonRangeFacet(
+      MiniClusterState.MiniClusterBenchState miniClusterState,
+      BenchState state,
+      BenchState.RangeState rangeState,
+      BenchState.ThreadState threadState)
+      throws Exception {
+    QueryRequest queryRequest = new QueryRequest(rangeState.params);
+    queryRequest.setBasePath(
+        miniClusterState.nodes.get(threadState.random.nextInt(state.nodeCount)));
+
+    return miniClusterState.client.request(queryRequest, state.collection);
+  }
 }
@@ -231,6 +231,8 @@ public class CoreContainer {
 
   private final OrderedExecutor replayUpdatesExecutor;
 
+  private final ExecutorService collectorExecutor;
+
   protected volatile LogWatcher<?> logging = null;
 
   private volatile CloserThread backgroundCloser = null;
@@ -415,6 +417,12 @@ public class CoreContainer {
                 cfg.getReplayUpdatesThreads(), // thread count
                 cfg.getReplayUpdatesThreads(), // queue size
                 new SolrNamedThreadFactory("replayUpdatesExecutor")));
+    this.collectorExecutor =
+        cfg.getIndexSearcherExecutorThreads() > 0
+            ? ExecutorUtil.newMDCAwareFixedThreadPool(
+                cfg.getIndexSearcherExecutorThreads(),
+                new SolrNamedThreadFactory("searcherCollector"))
+            : null;
     this.appHandlersByConfigSetId = new JerseyAppHandlerCache();
 
     SolrPaths.AllowPathBuilder allowPathBuilder = new SolrPaths.AllowPathBuilder();
@@ -654,6 +662,7 @@ public class CoreContainer {
     cfg = null;
     containerProperties = null;
     replayUpdatesExecutor = null;
+    collectorExecutor = null;
     distributedCollectionCommandRunner = Optional.empty();
     allowPaths = null;
     allowListUrlChecker = null;
@@ -707,6 +716,14 @@ public class CoreContainer {
     return replayUpdatesExecutor;
   }
 
+  /**
+   * The executor used by {@link org.apache.solr.search.SolrIndexSearcher} to search leaf slices
+   * concurrently, or null if disabled via {@code indexSearcherExecutorThreads=0} in solr.xml.
+   */
+  public ExecutorService getCollectorExecutor() {
+    return collectorExecutor;
+  }
+
   public SolrPackageLoader getPackageLoader() {
     return packageLoader;
   }
@@ -1321,6 +1338,10 @@ public class CoreContainer {
             replayUpdatesExecutor.shutdownAndAwaitTermination();
           });
 
+      if (collectorExecutor != null) {
+        customThreadPool.submit(() -> ExecutorUtil.shutdownAndAwaitTermination(collectorExecutor));
+      }
+
       if (metricManager != null) {
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node));
         metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.jvm));
@@ -310,6 +310,9 @@ public class SolrConfig implements MapSerializable {
       queryResultMaxDocsCached =
           get("query").get("queryResultMaxDocsCached").intVal(Integer.MAX_VALUE);
       enableLazyFieldLoading = get("query").get("enableLazyFieldLoading").boolVal(false);
+      compressDocSets = get("query").get("compressDocSets").boolVal(false);
+      persistHotCacheKeys = get("query").get("persistHotCacheKeys").intVal(0);
+      perSegmentUnInvertedField = get("query").get("perSegmentUnInvertedField").boolVal(false);
 
       filterCacheConfig =
           CacheConfig.getConfig(this, get("query").get("filterCache"), "query/filterCache");
@@ -318,6 +321,14 @@ public class SolrConfig implements MapSerializable {
               this, get("query").get("queryResultCache"), "query/queryResultCache");
       documentCacheConfig =
           CacheConfig.getConfig(this, get("query").get("documentCache"), "query/documentCache");
+      facetCacheConfig =
+          CacheConfig.getConfig(this, get("query").get("facetCache"), "query/facetCache");
+      segmentFilterCacheConfig =
+          getSegmentCacheConfig(get("query").get("segmentFilterCache"), "query/segmentFilterCache");
+      segmentQueryResultCacheConfig =
+          getSegmentCacheConfig(
+              get("query").get("segmentQueryResultCache"), "query/segmentQueryResultCache");
+      joinCacheConfig = getSegmentCacheConfig(get("query").get("joinCache"), "query/joinCache");
       CacheConfig conf =
           CacheConfig.getConfig(this, get("query").get("fieldValueCache"), "query/fieldValueCache");
       if (conf == null) {
@@ -675,13 +686,20 @@ public class SolrConfig implements MapSerializable {
   public final CacheConfig filterCacheConfig;
   public final CacheConfig queryResultCacheConfig;
   public final CacheConfig documentCacheConfig;
+  public final CacheConfig facetCacheConfig;
   public final CacheConfig fieldValueCacheConfig;
+  public final CacheConfig segmentFilterCacheConfig;
+  public final CacheConfig segmentQueryResultCacheConfig;
+  public final CacheConfig joinCacheConfig;
   public final Map<String, CacheConfig> userCacheConfigs;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  public final boolean compressDocSets;
+  public final int persistHotCacheKeys;
+  public final boolean perSegmentUnInvertedField;
 
   // IndexConfig settings
   public final SolrIndexConfig indexConfig;
@@ -1017,6 +1035,9 @@ public class SolrConfig implements MapSerializable {
     m.put("queryResultWindowSize", queryResultWindowSize);
     m.put("queryResultMaxDocsCached", queryResultMaxDocsCached);
     m.put("enableLazyFieldLoading", enableLazyFieldLoading);
+    m.put("compressDocSets", compressDocSets);
+    m.put("persistHotCacheKeys", persistHotCacheKeys);
+    m.put("perSegmentUnInvertedField", perSegmentUnInvertedField);
     m.put("maxBooleanClauses", booleanQueryMaxClauseCount);
 
     for (SolrPluginInfo plugin : plugins) {
@@ -1048,7 +1069,15 @@ public class SolrConfig implements MapSerializable {
     }
 
     addCacheConfig(
-        m, filterCacheConfig, queryResultCacheConfig, documentCacheConfig, fieldValueCacheConfig);
+        m,
+        filterCacheConfig,
+        queryResultCacheConfig,
+        documentCacheConfig,
+        fieldValueCacheConfig,
+        segmentFilterCacheConfig,
+        segmentQueryResultCacheConfig,
+        facetCacheConfig,
+        joinCacheConfig);
     m = new LinkedHashMap<>();
     result.put("requestDispatcher", m);
     m.put("handleSelect", handleSelect);
@@ -1069,6 +1098,16 @@ public class SolrConfig implements MapSerializable {
     return result;
   }
 
+  private CacheConfig getSegmentCacheConfig(ConfigNode node, String xpath) {
+    if (!node.exists() || !node.boolAttr("enabled", true)) {
+      return null;
+    }
+    Map<String, String> attrs = new HashMap<>(node.attributes().asMap());
+    // entries of segments that a commit didn't touch remain valid, so keep all of them by default
+    attrs.putIfAbsent("autowarmCount", "100%");
+    return CacheConfig.getConfig(this, node.name(), attrs, xpath);
+  }
+
   private void addCacheConfig(Map<String, Object> queryMap, CacheConfig... cache) {
     if (cache == null) return;
     for (CacheConfig config : cache) if (config != null) queryMap.put(config.getNodeName(), config);
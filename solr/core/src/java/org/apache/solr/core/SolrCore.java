@@ -146,6 +146,7 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.ManagedIndexSchema;
 import org.apache.solr.schema.SimilarityFactory;
+import org.apache.solr.search.HotCacheKeys;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheBean;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -1260,6 +1261,10 @@ public class SolrCore implements SolrInfoBean, Closeable {
     // use the (old) writer to open the first searcher
     RefCounted<IndexWriter> iwRef = null;
     if (prev != null) {
+      if (solrConfig.persistHotCacheKeys > 0) {
+        // so that the first searcher is warmed with what's hot in the core being replaced
+        prev.saveHotCacheKeys(solrConfig.persistHotCacheKeys);
+      }
       iwRef = prev.getUpdateHandler().getSolrCoreState().getIndexWriter(null);
       if (iwRef != null) {
         final IndexWriter iw = iwRef.get();
@@ -1525,6 +1530,25 @@ public class SolrCore implements SolrInfoBean, Closeable {
     }
   }
 
+  /** Saves the keys of the hottest cache entries of the registered searcher, if any. */
+  private void saveHotCacheKeys(int count) {
+    final RefCounted<SolrIndexSearcher> searcherHolder;
+    synchronized (searcherLock) {
+      searcherHolder = _searcher;
+      if (searcherHolder == null) {
+        return;
+      }
+      searcherHolder.incref();
+    }
+    try {
+      HotCacheKeys.save(this, searcherHolder.get(), count);
+    } catch (Exception e) {
+      log.warn("Unable to save the hot cache keys of {}", this, e);
+    } finally {
+      searcherHolder.decref();
+    }
+  }
+
   private String initUpdateLogDir(CoreDescriptor coreDescriptor) {
     String updateLogDir = coreDescriptor.getUlogDir();
     if (updateLogDir == null) {
@@ -1741,6 +1765,10 @@ public class SolrCore implements SolrInfoBean, Closeable {
 
     ExecutorUtil.shutdownAndAwaitTermination(coreAsyncTaskExecutor);
 
+    if (solrConfig.persistHotCacheKeys > 0) {
+      saveHotCacheKeys(solrConfig.persistHotCacheKeys);
+    }
+
     // Close circuit breakers that may have background threads, before metrics because some circuit
     // breakers use metrics
     try {
@@ -2636,6 +2664,9 @@ public class SolrCore implements SolrInfoBean, Closeable {
               searcherExecutor.submit(
                   () -> {
                     newSearcher.bootstrapFirstSearcher();
+                    if (solrConfig.persistHotCacheKeys > 0) {
+                      HotCacheKeys.warm(this, newSearcher);
+                    }
                     for (SolrEventListener listener : firstSearcherListeners) {
                       try {
                         listener.newSearcher(newSearcher, null);
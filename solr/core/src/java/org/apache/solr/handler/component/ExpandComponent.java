@@ -78,6 +78,7 @@ import org.apache.solr.search.CollapsingQParserPlugin;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.PostFilter;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.QueryLimits;
 import org.apache.solr.search.QueryUtils;
@@ -111,6 +112,13 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
   private static final int finishingStage = ResponseBuilder.STAGE_GET_FIELDS;
   private PluginInfo info = PluginInfo.EMPTY_INFO;
 
+  /**
+   * The most docs of the main search that are recorded to collect the groups from; past it the
+   * query is run again instead. Changed by tests.
+   */
+  static int matchedDocsLimit =
+      Integer.getInteger("solr.expand.matchedDocsLimit", 1 << 20); // internal setting
+
   @Override
   public void init(PluginInfo info) {
     this.info = info;
@@ -124,7 +132,68 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
             SolrException.ErrorCode.BAD_REQUEST, "Can not use expand with Grouping enabled");
       }
       rb.doExpand = true;
+      if (canCollectFromCollapse(rb)) {
+        rb.req
+            .getContext()
+            .put(
+                CollapsingQParserPlugin.MATCHED_DOCS,
+                new CollapsingQParserPlugin.MatchedDocs(needsScores(rb), matchedDocsLimit));
+      }
+    }
+  }
+
+  /**
+   * Whether the group members can be collected from the docs that reached the collapse filter in
+   * the main search, instead of running the query again: the expanded groups must be searched with
+   * the main query and filters, and no other post filter may run after the collapse filter.
+   */
+  private static boolean canCollectFromCollapse(ResponseBuilder rb) {
+    SolrParams params = rb.req.getParams();
+    if (params.get(ExpandParams.EXPAND_Q) != null
+        || params.getParams(ExpandParams.EXPAND_FQ) != null) {
+      return false;
+    }
+    List<Query> filters = rb.getFilters();
+    if (filters == null) {
+      return false;
+    }
+    CollapsingQParserPlugin.CollapsingPostFilter collapse = null;
+    for (Query q : filters) {
+      if (q instanceof CollapsingQParserPlugin.CollapsingPostFilter) {
+        if (collapse != null) {
+          return false;
+        }
+        collapse = (CollapsingQParserPlugin.CollapsingPostFilter) q;
+      }
+    }
+    if (collapse == null) {
+      return false;
+    }
+    for (Query q : filters) {
+      if (q != collapse && q instanceof PostFilter) {
+        PostFilter postFilter = (PostFilter) q;
+        if (!postFilter.getCache()
+            && postFilter.getCost() >= 100
+            && postFilter.getCost() >= collapse.getCost()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Whether the groups are sorted by score, so that the scores of their members are needed */
+  private static boolean needsScores(ResponseBuilder rb) {
+    SolrParams params = rb.req.getParams();
+    if (params.getInt(ExpandParams.EXPAND_ROWS, 5) == 0) {
+      return false;
     }
+    String sortParam = params.get(ExpandParams.EXPAND_SORT);
+    if (sortParam == null) {
+      return true;
+    }
+    Sort sort = SortSpecParsing.parseSortSpec(sortParam, rb.req).getSort();
+    return sort == null || sort.needsScores();
   }
 
   @Override
@@ -432,20 +501,30 @@ public class ExpandComponent extends SearchComponent implements PluginInfoInitia
               collapsedSet);
     }
 
-    if (groupQuery != null) {
-      // Limits the results to documents that are in the same group as the documents in the page.
-      newFilters.add(groupQuery);
-    }
-
-    SolrIndexSearcher.ProcessedFilter pfilter = searcher.getProcessedFilter(newFilters);
-    if (pfilter.postFilter != null) {
-      pfilter.postFilter.setLastDelegate(groupExpandCollector);
-      collector = pfilter.postFilter;
+    Object matchedDocs = req.getContext().get(CollapsingQParserPlugin.MATCHED_DOCS);
+    if (matchedDocs instanceof CollapsingQParserPlugin.MatchedDocs
+        && ((CollapsingQParserPlugin.MatchedDocs) matchedDocs).isComplete()
+        && (((CollapsingQParserPlugin.MatchedDocs) matchedDocs).hasScores()
+            || !groupExpandCollector.scoreMode().needsScores())
+        && canCollectFromCollapse(rb)) {
+      // The docs matching the main query and filters were recorded by the collapse filter
+      ((CollapsingQParserPlugin.MatchedDocs) matchedDocs).collect(contexts, groupExpandCollector);
     } else {
-      collector = groupExpandCollector;
-    }
+      if (groupQuery != null) {
+        // Limits the results to documents that are in the same group as the documents in the page.
+        newFilters.add(groupQuery);
+      }
+
+      SolrIndexSearcher.ProcessedFilter pfilter = searcher.getProcessedFilter(newFilters);
+      if (pfilter.postFilter != null) {
+        pfilter.postFilter.setLastDelegate(groupExpandCollector);
+        collector = pfilter.postFilter;
+      } else {
+        collector = groupExpandCollector;
+      }
 
-    searcher.search(QueryUtils.combineQueryAndFilter(query, pfilter.filter), collector);
+      searcher.search(QueryUtils.combineQueryAndFilter(query, pfilter.filter), collector);
+    }
     if (queryLimits.maybeExitWithPartialResults("Expand expand")) {
       return;
     }
@@ -369,6 +369,7 @@ public class QueryComponent extends SearchComponent {
     cmd.setTimeAllowed(timeAllowed);
     cmd.setMinExactCount(getMinExactCount(params));
     cmd.setEnableDistribStats(rb.isEnableDistribStats());
+    cmd.setMultiThreaded(params.getBool(CommonParams.MULTI_THREADED, false));
 
     boolean isCancellableQuery = params.getBool(CommonParams.IS_QUERY_CANCELLABLE, false);
 
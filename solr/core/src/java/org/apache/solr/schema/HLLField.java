@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.schema;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.search.QParser;
+import org.apache.solr.util.hll.HLL;
+import org.apache.solr.util.hll.HLLType;
+
+/**
+ * A field holding a serialized {@link HLL} sketch per document, kept in binary docValues. The
+ * <code>hll()</code> and <code>unique()</code> JSON Facet aggregations union the stored sketches
+ * instead of hashing raw values, which makes distinct counts over pre-aggregated documents cheap.
+ *
+ * <p>Values are the bytes of a serialized sketch, either as a <code>byte[]</code> or as a base64
+ * encoded string, typically computed by {@link
+ * org.apache.solr.update.processor.HLLUpdateProcessorFactory}. All sketches of a field must share
+ * the <code>log2m</code> (default 13) and <code>regwidth</code> (default 6) parameters of the field
+ * type so that they can be unioned.
+ */
+public class HLLField extends BinaryField {
+  public static final int DEFAULT_LOG2M = 13;
+  public static final int DEFAULT_REGWIDTH = 6;
+
+  private int log2m = DEFAULT_LOG2M;
+  private int regwidth = DEFAULT_REGWIDTH;
+
+  @Override
+  protected void init(IndexSchema schema, Map<String, String> args) {
+    String log2mStr = args.remove("log2m");
+    if (log2mStr != null) {
+      log2m = Integer.parseInt(log2mStr);
+    }
+    String regwidthStr = args.remove("regwidth");
+    if (regwidthStr != null) {
+      regwidth = Integer.parseInt(regwidthStr);
+    }
+    // validates the parameters
+    newHLL();
+
+    // sketches are only useful from docValues, so default to them (see SortableTextField)
+    if (!on(falseProperties, DOC_VALUES)) {
+      properties |= DOC_VALUES;
+    }
+    if (!on(trueProperties, USE_DOCVALUES_AS_STORED)) {
+      properties &= ~USE_DOCVALUES_AS_STORED;
+    }
+    super.init(schema, args);
+  }
+
+  @Override
+  public void checkSchemaField(SchemaField field) {
+    super.checkSchemaField(field);
+    if (field.multiValued()) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Field type " + this + " can't be multiValued: " + field);
+    }
+    if (!field.hasDocValues()) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Field type " + this + " requires docValues: " + field);
+    }
+  }
+
+  @Override
+  protected void checkSupportsDocValues() {
+    // binary docValues are supported
+  }
+
+  public int getLog2m() {
+    return log2m;
+  }
+
+  public int getRegwidth() {
+    return regwidth;
+  }
+
+  /** Returns a new, empty sketch with the parameters of this field type */
+  public HLL newHLL() {
+    return new HLL(
+        log2m, regwidth, -1 /* auto explicit threshold */, false /* no sparse */, HLLType.EMPTY);
+  }
+
+  @Override
+  public List<IndexableField> createFields(SchemaField field, Object value) {
+    byte[] bytes = toBytes(field, value);
+    HLL hll;
+    try {
+      hll = HLL.fromBytes(bytes);
+    } catch (RuntimeException e) {
+      throw new SolrException(
+          ErrorCode.BAD_REQUEST, "Invalid HLL sketch for field " + field.getName(), e);
+    }
+    if (hll.getLog2m() != log2m || hll.getRegwidth() != regwidth) {
+      throw new SolrException(
+          ErrorCode.BAD_REQUEST,
+          "HLL sketch for field "
+              + field.getName()
+              + " has log2m="
+              + hll.getLog2m()
+              + " and regwidth="
+              + hll.getRegwidth()
+              + " but the field type expects log2m="
+              + log2m
+              + " and regwidth="
+              + regwidth);
+    }
+
+    List<IndexableField> fields = new ArrayList<>(2);
+    fields.add(new BinaryDocValuesField(field.getName(), new BytesRef(bytes)));
+    if (field.stored()) {
+      fields.add(new StoredField(field.getName(), bytes));
+    }
+    return fields;
+  }
+
+  @Override
+  public IndexableField createField(SchemaField field, Object val) {
+    throw new UnsupportedOperationException("HLLField uses multiple fields: use createFields");
+  }
+
+  @Override
+  public Query getFieldQuery(QParser parser, SchemaField field, String externalVal) {
+    throw new SolrException(
+        ErrorCode.BAD_REQUEST, "Can not search on HLL sketch field " + field.getName());
+  }
+
+  private static byte[] toBytes(SchemaField field, Object value) {
+    if (value instanceof byte[]) {
+      return (byte[]) value;
+    } else if (value instanceof ByteBuffer && ((ByteBuffer) value).hasArray()) {
+      ByteBuffer buf = (ByteBuffer) value;
+      int from = buf.arrayOffset() + buf.position();
+      return Arrays.copyOfRange(buf.array(), from, from + buf.remaining());
+    }
+    // the string has to be a base64 encoded sketch
+    try {
+      return Base64.getDecoder().decode(value.toString());
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(
+          ErrorCode.BAD_REQUEST, "Invalid base64 HLL sketch for field " + field.getName(), e);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+
+/**
+ * Decides whether a newly computed value is worth inserting into a {@link SolrCache}, so that
+ * one-off entries (e.g. a filter that is never repeated) don't push out the ones that are reused.
+ *
+ * <p>A policy is configured with the <code>admissionPolicy</code> attribute of a cache in
+ * solrconfig.xml, and receives all the other attributes of that cache in {@link #init}. A single
+ * instance is shared by every generation of the cache, so implementations must be thread-safe and
+ * any state they keep survives commits. Entries inserted while a new searcher is warming are always
+ * admitted.
+ *
+ * @see FrequencyAdmissionPolicy
+ * @see ComputeCostAdmissionPolicy
+ * @lucene.experimental
+ */
+public interface CacheAdmissionPolicy {
+
+  /** Called once, with the attributes of the cache this policy is configured on. */
+  default void init(Map<String, String> args) {}
+
+  /**
+   * Returns true if the value for the given key should be cached.
+   *
+   * @param key the cache key
+   * @param computeNanos how long it took to compute the value, or -1 if that isn't known (e.g. for
+   *     an explicit {@link SolrCache#put})
+   */
+  boolean admit(Object key, long computeNanos);
+}
@@ -59,6 +59,8 @@ public class CacheConfig implements MapSerializable {
 
   private String regenImpl;
 
+  private CacheAdmissionPolicy admissionPolicy;
+
   public CacheConfig() {}
 
   @SuppressWarnings({"rawtypes"})
@@ -78,6 +80,14 @@ public class CacheConfig implements MapSerializable {
     this.regenerator = regenerator;
   }
 
+  public CacheAdmissionPolicy getAdmissionPolicy() {
+    return admissionPolicy;
+  }
+
+  public void setAdmissionPolicy(CacheAdmissionPolicy admissionPolicy) {
+    this.admissionPolicy = admissionPolicy;
+  }
+
   public static Map<String, CacheConfig> getMultipleConfigs(
       SolrResourceLoader loader, SolrConfig solrConfig, String configPath, List<ConfigNode> nodes) {
     if (nodes == null || nodes.isEmpty()) {
@@ -157,6 +167,12 @@ public class CacheConfig implements MapSerializable {
     if (config.regenImpl != null) {
       config.regenerator = loader.newInstance(config.regenImpl, CacheRegenerator.class);
     }
+    String admissionImpl = config.args.get(SolrCache.ADMISSION_POLICY_PARAM);
+    if (admissionImpl != null) {
+      // shared by all the caches created from this config, so admission state survives commits
+      config.admissionPolicy = loader.newInstance(admissionImpl, CacheAdmissionPolicy.class);
+      config.admissionPolicy.init(config.args);
+    }
 
     return config;
   }
@@ -166,6 +182,9 @@ public class CacheConfig implements MapSerializable {
     try {
       SolrCache<?, ?> cache = clazz.get().getConstructor().newInstance();
       persistence[0] = cache.init(args, persistence[0], regenerator);
+      if (admissionPolicy != null) {
+        cache.setAdmissionPolicy(admissionPolicy);
+      }
       return cache;
     } catch (Exception e) {
       log.error("Error instantiating cache", e);
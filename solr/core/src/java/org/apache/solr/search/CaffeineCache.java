@@ -28,20 +28,26 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.LongAdder;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
 import org.apache.solr.metrics.MetricsMap;
 import org.apache.solr.metrics.SolrMetricsContext;
 import org.apache.solr.util.IOFunction;
@@ -56,6 +62,26 @@ import org.slf4j.LoggerFactory;
  * limit, but not both. If both values are set then only maxRamMB limit is used and maximum size
  * limit is ignored.
  *
+ * <p>With <code>offHeap="true"</code> any {@link BitDocSet} values (as found in the filterCache)
+ * are copied into an {@link OffHeapBitDocSet} before being cached, so that their bits live in
+ * direct memory instead of the Java heap. That memory is reported as <code>offHeapBytesUsed</code>
+ * and is not included in <code>ramBytesUsed</code>, although it does count towards <code>maxRamMB
+ * </code>.
+ *
+ * <p>If a {@link CacheAdmissionPolicy} is set, values computed or put while the cache is {@link
+ * SolrCache.State#LIVE} are only inserted if the policy admits them; the value is still returned to
+ * the caller either way. Autowarming is not subject to the policy until the new searcher is
+ * registered.
+ *
+ * <p>Autowarming regenerates the hottest entries of the old cache first. With <code>
+ * autowarmThreads</code> greater than one the entries are regenerated concurrently on a bounded
+ * pool, and with <code>autowarmTimeMs</code> the searcher is only held back for that long: entries
+ * that are not warmed by then continue to be warmed in the background, until done or until this
+ * cache is closed. Progress is reported as <code>warmupItems</code>, <code>warmupItemsDone</code>
+ * and <code>warmupItemsSkipped</code>, and <code>warmupTime</code> includes the background warming
+ * once it is done. Warming is stopped without interrupting the threads, which may be reading index
+ * files that the new searcher shares.
+ *
  * <p>W-TinyLFU [2] is a near optimal policy that uses recency and frequency to determine which
  * entry to evict in O(1) time. The estimated frequency is retained in a Count-Min Sketch and
  * entries reside on LRU priority queues [3]. By capturing the historic frequency of an entry, the
@@ -83,26 +109,40 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   private long priorHits;
   private long priorInserts;
   private long priorLookups;
+  private long priorAdmissions;
+  private long priorRejections;
 
   private String description = "Caffeine Cache";
   private LongAdder hits;
   private LongAdder inserts;
   private LongAdder lookups;
+  private LongAdder admissions;
+  private LongAdder rejections;
   private Cache<K, V> cache;
   private AsyncCache<K, V> asyncCache;
-  private long warmupTime;
+  private volatile long warmupTime;
   private int maxSize;
   private long maxRamBytes;
   private int initialSize;
   private int maxIdleTimeSec;
   private boolean cleanupThread;
   private boolean async;
+  private boolean offHeap;
+  private CacheAdmissionPolicy admissionPolicy;
+  private int autowarmThreads;
+  private long autowarmTimeMs;
+  private volatile ExecutorService warmExecutor;
+  private final AtomicBoolean warmStopped = new AtomicBoolean();
+  private final LongAdder warmupItems = new LongAdder();
+  private final LongAdder warmupItemsDone = new LongAdder();
+  private final LongAdder warmupItemsSkipped = new LongAdder();
 
   private MetricsMap cacheMap;
   private SolrMetricsContext solrMetricsContext;
 
   private long initialRamBytes = 0;
   private final LongAdder ramBytes = new LongAdder();
+  private final LongAdder offHeapBytes = new LongAdder();
 
   public CaffeineCache() {
     this.priorStats = CacheStats.empty();
@@ -126,6 +166,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     maxRamBytes = maxRamMB < 0 ? Long.MAX_VALUE : maxRamMB * 1024L * 1024L;
     cleanupThread = Boolean.parseBoolean(args.get(CLEANUP_THREAD_PARAM));
     async = Boolean.parseBoolean(args.getOrDefault(ASYNC_PARAM, "true"));
+    offHeap = Boolean.parseBoolean(args.get(OFF_HEAP_PARAM));
+    str = args.get(AUTOWARM_THREADS_PARAM);
+    autowarmThreads = str == null ? 1 : Math.max(1, Integer.parseInt(str));
+    str = args.get(AUTOWARM_TIME_MS_PARAM);
+    autowarmTimeMs = str == null ? -1 : Long.parseLong(str);
     if (async) {
       // We record futures in the map to decrease bucket-lock contention, but need computation
       // handled in same thread
@@ -142,6 +187,8 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     hits = new LongAdder();
     inserts = new LongAdder();
     lookups = new LongAdder();
+    admissions = new LongAdder();
+    rejections = new LongAdder();
 
     initialRamBytes =
         RamUsageEstimator.shallowSizeOfInstance(cache.getClass())
@@ -164,7 +211,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     if (maxRamBytes != Long.MAX_VALUE) {
       builder.maximumWeight(maxRamBytes);
       builder.weigher(
-          (k, v) -> (int) (RamUsageEstimator.sizeOfObject(k) + RamUsageEstimator.sizeOfObject(v)));
+          (k, v) ->
+              (int)
+                  (RamUsageEstimator.sizeOfObject(k)
+                      + RamUsageEstimator.sizeOfObject(v)
+                      + offHeapBytesUsed(v)));
     } else {
       builder.maximumSize(maxSize);
     }
@@ -190,6 +241,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     if (async) {
       ramBytes.add(-RAM_BYTES_PER_FUTURE);
     }
+    offHeapBytes.add(-offHeapBytesUsed(value));
   }
 
   @Override
@@ -197,6 +249,58 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     return BASE_RAM_BYTES_USED + initialRamBytes + ramBytes.sum();
   }
 
+  /**
+   * The direct memory held by cached {@link OffHeapBitDocSet}s, if {@link #OFF_HEAP_PARAM} is set.
+   */
+  public long offHeapBytesUsed() {
+    return offHeapBytes.sum();
+  }
+
+  private static long offHeapBytesUsed(Object value) {
+    return value instanceof OffHeapBitDocSet ? ((OffHeapBitDocSet) value).offHeapBytesUsed() : 0L;
+  }
+
+  /** Returns the value to actually cache, which is moved off heap if configured to do so. */
+  @SuppressWarnings("unchecked")
+  private V toCachedValue(V value) {
+    if (offHeap && value instanceof BitDocSet) {
+      return (V) OffHeapBitDocSet.fromBitDocSet((BitDocSet) value);
+    }
+    return value;
+  }
+
+  @Override
+  public void setAdmissionPolicy(CacheAdmissionPolicy admissionPolicy) {
+    this.admissionPolicy = admissionPolicy;
+    description = generateDescription(maxSize, initialSize);
+  }
+
+  @Override
+  public List<K> getHottestKeys(int n) {
+    return cache
+        .policy()
+        .eviction()
+        .map(p -> (List<K>) new ArrayList<>(p.hottest(n).keySet()))
+        .orElse(Collections.emptyList());
+  }
+
+  /**
+   * Consults the admission policy, if any, about caching a value for the given key.
+   *
+   * @param computeNanos how long the value took to compute, or -1 if unknown
+   */
+  private boolean admit(K key, long computeNanos) {
+    if (admissionPolicy == null || getState() != State.LIVE) {
+      return true;
+    }
+    if (admissionPolicy.admit(key, computeNanos)) {
+      admissions.increment();
+      return true;
+    }
+    rejections.increment();
+    return false;
+  }
+
   @Override
   public V get(K key) {
     return cache.getIfPresent(key);
@@ -230,7 +334,16 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     }
     try {
       // We reserved the slot, so we do the work
+      long startTime = System.nanoTime();
       V value = mappingFunction.apply(key);
+      if (value != null && !admit(key, System.nanoTime() - startTime)) {
+        // hand the value to any waiting threads, then give up the slot
+        future.complete(value);
+        recordRamBytes(key, null, value); // balanced by #onRemoval
+        asyncCache.asMap().remove(key, future);
+        return value;
+      }
+      value = toCachedValue(value);
       future.complete(value); // This will update the weight and expiration
       recordRamBytes(key, null, value);
       inserts.increment();
@@ -249,23 +362,35 @@ public class CaffeineCache<K, V> extends SolrCacheBase
       return computeAsync(key, mappingFunction);
     }
 
+    // holds a computed value that wasn't admitted, since the cache can't return it
+    final Object[] rejected = new Object[1];
     try {
-      return cache.get(
-          key,
-          k -> {
-            V value;
-            try {
-              value = mappingFunction.apply(k);
-            } catch (IOException e) {
-              throw new UncheckedIOException(e);
-            }
-            if (value == null) {
-              return null;
-            }
-            recordRamBytes(key, null, value);
-            inserts.increment();
-            return value;
-          });
+      V cached =
+          cache.get(
+              key,
+              k -> {
+                V value;
+                long startTime = System.nanoTime();
+                try {
+                  value = mappingFunction.apply(k);
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+                if (value == null) {
+                  return null;
+                }
+                if (!admit(key, System.nanoTime() - startTime)) {
+                  rejected[0] = value;
+                  return null;
+                }
+                value = toCachedValue(value);
+                recordRamBytes(key, null, value);
+                inserts.increment();
+                return value;
+              });
+      @SuppressWarnings("unchecked")
+      V value = cached != null ? cached : (V) rejected[0];
+      return value;
     } catch (UncheckedIOException e) {
       throw e.getCause();
     }
@@ -273,7 +398,11 @@ public class CaffeineCache<K, V> extends SolrCacheBase
 
   @Override
   public V put(K key, V val) {
+    if (!admit(key, -1)) {
+      return null;
+    }
     inserts.increment();
+    val = toCachedValue(val);
     V old = cache.asMap().put(key, val);
     recordRamBytes(key, old, val);
     return old;
@@ -289,6 +418,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   private void recordRamBytes(K key, V oldValue, V newValue) {
     ramBytes.add(
         RamUsageEstimator.sizeOfObject(newValue, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED));
+    offHeapBytes.add(offHeapBytesUsed(newValue) - offHeapBytesUsed(oldValue));
     if (oldValue == null) {
       ramBytes.add(
           RamUsageEstimator.sizeOfObject(key, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED));
@@ -311,6 +441,7 @@ public class CaffeineCache<K, V> extends SolrCacheBase
   public void clear() {
     cache.invalidateAll();
     ramBytes.reset();
+    offHeapBytes.reset();
   }
 
   @Override
@@ -326,7 +457,16 @@ public class CaffeineCache<K, V> extends SolrCacheBase
     if (executor instanceof ExecutorService) {
       ((ExecutorService) executor).shutdownNow();
     }
+    ExecutorService warmExecutor = this.warmExecutor;
+    if (warmExecutor != null) {
+      // stop warming in the background; whatever was not warmed yet is skipped. The threads are
+      // not interrupted, as that would close the file channels of the segments being read, which
+      // the searchers share
+      warmStopped.set(true);
+      warmExecutor.shutdown();
+    }
     ramBytes.reset();
+    offHeapBytes.reset();
   }
 
   @Override
@@ -402,38 +542,132 @@ public class CaffeineCache<K, V> extends SolrCacheBase
           other.cache.policy().eviction().map(p -> p.hottest(size)).orElse(Collections.emptyMap());
     }
 
-    for (Entry<K, V> entry : hottest.entrySet()) {
-      try {
-        boolean continueRegen =
-            regenerator.regenerateItem(searcher, this, old, entry.getKey(), entry.getValue());
-        if (!continueRegen) {
+    warmupItems.add(hottest.size());
+    CountDownLatch pending = null;
+    if (autowarmThreads > 1 || autowarmTimeMs >= 0) {
+      pending = warmConcurrently(searcher, old, hottest, warmingStartTime);
+    } else {
+      int remaining = hottest.size();
+      for (Entry<K, V> entry : hottest.entrySet()) {
+        remaining--;
+        if (!warmItem(searcher, old, entry)) {
+          warmupItemsSkipped.add(remaining);
           break;
         }
-      } catch (Exception e) {
-        log.error("Error during auto-warming of key: {}", entry.getKey(), e);
       }
     }
 
     hits.reset();
     inserts.reset();
     lookups.reset();
+    admissions.reset();
+    rejections.reset();
     CacheStats oldStats = other.cache.stats();
     priorStats = oldStats.plus(other.priorStats);
     priorHits = oldStats.hitCount() + other.hits.sum() + other.priorHits;
     priorInserts = other.inserts.sum() + other.priorInserts;
     priorLookups = oldStats.requestCount() + other.lookups.sum() + other.priorLookups;
+    priorAdmissions = other.admissions.sum() + other.priorAdmissions;
+    priorRejections = other.rejections.sum() + other.priorRejections;
+    if (pending == null || pending.getCount() == 0) {
+      recordWarmupTime(warmingStartTime);
+    } // else the last entry warmed in the background records it
+  }
+
+  private void recordWarmupTime(long warmingStartTime) {
     warmupTime =
         TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
 
+  /**
+   * Regenerates one entry of the old cache, counting it as done (or skipped if it failed).
+   *
+   * @return false if the regenerator asked to stop warming
+   */
+  private boolean warmItem(SolrIndexSearcher searcher, SolrCache<K, V> old, Entry<K, V> entry) {
+    try {
+      boolean continueRegen =
+          regenerator.regenerateItem(searcher, this, old, entry.getKey(), entry.getValue());
+      warmupItemsDone.increment();
+      return continueRegen;
+    } catch (Exception e) {
+      warmupItemsSkipped.increment();
+      if (warmStopped.get()) {
+        // closed while warming in the background; the searcher is likely gone too
+        log.debug("Error during background auto-warming of key: {}", entry.getKey(), e);
+      } else {
+        log.error("Error during auto-warming of key: {}", entry.getKey(), e);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Regenerates the entries on a pool of <code>autowarmThreads</code>, hottest first, and waits for
+   * at most <code>autowarmTimeMs</code> (if set) before returning. Any entries that remain are
+   * warmed in the background until done or until this cache is closed.
+   *
+   * @return the count of the entries that are still to be warmed, or null if there were none
+   */
+  private CountDownLatch warmConcurrently(
+      SolrIndexSearcher searcher, SolrCache<K, V> old, Map<K, V> hottest, long warmingStartTime) {
+    if (hottest.isEmpty()) {
+      return null;
+    }
+    final ExecutorService pool =
+        ExecutorUtil.newMDCAwareFixedThreadPool(
+            Math.min(autowarmThreads, hottest.size()),
+            new SolrNamedThreadFactory("autowarm-" + name()));
+    warmExecutor = pool;
+    final CountDownLatch latch = new CountDownLatch(hottest.size());
+    // the pool's queue is FIFO, so the hottest entries get warmed first
+    for (Entry<K, V> entry : hottest.entrySet()) {
+      pool.execute(
+          () -> {
+            try {
+              if (warmStopped.get()) {
+                warmupItemsSkipped.increment();
+              } else if (!warmItem(searcher, old, entry)) {
+                warmStopped.set(true);
+              }
+            } finally {
+              latch.countDown();
+              if (latch.getCount() == 0) {
+                recordWarmupTime(warmingStartTime);
+              }
+            }
+          });
+    }
+    pool.shutdown(); // lets the queued entries finish, in the background if need be
+
+    try {
+      if (autowarmTimeMs < 0) {
+        latch.await();
+      } else if (!latch.await(autowarmTimeMs, TimeUnit.MILLISECONDS)) {
+        log.info(
+            "Autowarming of {} exceeded {}ms, warming the remaining {} of {} entries in the background",
+            name(),
+            autowarmTimeMs,
+            latch.getCount(),
+            hottest.size());
+      }
+    } catch (InterruptedException e) {
+      warmStopped.set(true);
+      Thread.currentThread().interrupt();
+    }
+    return latch;
+  }
+
   /** Returns the description of this cache. */
   private String generateDescription(int limit, int initialSize) {
     return String.format(
         Locale.ROOT,
-        "Caffeine Cache(maxSize=%d, initialSize=%d%s)",
+        "Caffeine Cache(maxSize=%d, initialSize=%d%s%s%s)",
         limit,
         initialSize,
-        isAutowarmingOn() ? (", " + getAutowarmDescription()) : "");
+        isAutowarmingOn() ? (", " + getAutowarmDescription()) : "",
+        offHeap ? ", offHeap=true" : "",
+        admissionPolicy != null ? (", admissionPolicy=" + admissionPolicy) : "");
   }
 
   @Override
@@ -488,8 +722,18 @@ public class CaffeineCache<K, V> extends SolrCacheBase
                 map.put(EVICTIONS_PARAM, stats.evictionCount());
                 map.put(SIZE_PARAM, cache.asMap().size());
                 map.put("warmupTime", warmupTime);
+                map.put(WARMUP_ITEMS_PARAM, warmupItems.sum());
+                map.put(WARMUP_ITEMS_DONE_PARAM, warmupItemsDone.sum());
+                map.put(WARMUP_ITEMS_SKIPPED_PARAM, warmupItemsSkipped.sum());
                 map.put(RAM_BYTES_USED_PARAM, ramBytesUsed());
                 map.put(MAX_RAM_MB_PARAM, getMaxRamMB());
+                if (offHeap) {
+                  map.put(OFF_HEAP_BYTES_USED_PARAM, offHeapBytesUsed());
+                }
+                if (admissionPolicy != null) {
+                  map.put(ADMISSIONS_PARAM, admissions.sum());
+                  map.put(REJECTIONS_PARAM, rejections.sum());
+                }
 
                 CacheStats cumulativeStats = priorStats.plus(stats);
                 long cumLookups = priorLookups + lookupCount;
@@ -499,6 +743,10 @@ public class CaffeineCache<K, V> extends SolrCacheBase
                 map.put("cumulative_hitratio", hitRate(cumHits, cumLookups));
                 map.put("cumulative_inserts", priorInserts + insertCount);
                 map.put("cumulative_evictions", cumulativeStats.evictionCount());
+                if (admissionPolicy != null) {
+                  map.put("cumulative_admissions", priorAdmissions + admissions.sum());
+                  map.put("cumulative_rejections", priorRejections + rejections.sum());
+                }
               }
             });
     solrMetricsContext.gauge(cacheMap, true, scope, getCategory().toString());
@@ -51,14 +51,17 @@ import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.queries.function.FunctionQuery;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.FieldComparator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.LeafFieldComparator;
 import org.apache.lucene.search.Pruning;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreCachingWrappingScorer;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
@@ -72,6 +75,8 @@ import org.apache.solr.common.params.GroupParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoBean;
 import org.apache.solr.handler.component.QueryElevationComponent;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.LocalSolrQueryRequest;
@@ -82,6 +87,8 @@ import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.StrField;
 import org.apache.solr.uninverting.UninvertingReader;
+import org.apache.solr.util.DynamicMap;
+import org.apache.solr.util.DynamicMapPagePool;
 import org.apache.solr.util.IntFloatDynamicMap;
 import org.apache.solr.util.IntIntDynamicMap;
 import org.apache.solr.util.IntLongDynamicMap;
@@ -126,6 +133,23 @@ public class CollapsingQParserPlugin extends QParserPlugin {
   public static final String NAME = "collapse";
   public static final String HINT_TOP_FC = "top_fc";
 
+  /**
+   * The request context key of the {@link MatchedDocs} that the collapse filter should record the
+   * docs reaching it in
+   */
+  public static final String MATCHED_DOCS = "collapse.matchedDocs";
+
+  static final long GROUP_HEAD_POOL_SIZE =
+      Long.getLong("solr.collapse.groupHeadPoolSize", 64L * 1024 * 1024); // internal setting
+
+  /**
+   * The pages that collectors keep their group heads in once there are too many groups for a hash
+   * map, shared by all requests so that collapsing on fields with many unique values doesn't
+   * allocate them again for each request. Null when disabled.
+   */
+  static final DynamicMapPagePool GROUP_HEAD_PAGES =
+      GROUP_HEAD_POOL_SIZE > 0 ? new DynamicMapPagePool(GROUP_HEAD_POOL_SIZE) : null;
+
   /**
    * Indicates that values in the collapse field are unique per contiguous block, and a single pass
    * "block based" collapse algorithm can be used. This behavior is the default for collapsing on
@@ -469,17 +493,28 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         }
 
         boostDocsMap = QueryElevationComponent.getBoostDocs(searcher, this.boosted, context);
-        return collectorFactory.getCollector(
-            this.collapseField,
-            this.groupHeadSelector,
-            this.sortSpec,
-            this.nullPolicy.getCode(),
-            this.hint,
-            this.needsScores4Collapsing,
-            this.needsScores,
-            this.size,
-            boostDocsMap,
-            searcher);
+        DelegatingCollector collector =
+            collectorFactory.getCollector(
+                this.collapseField,
+                this.groupHeadSelector,
+                this.sortSpec,
+                this.nullPolicy.getCode(),
+                this.hint,
+                this.needsScores4Collapsing,
+                this.needsScores,
+                this.size,
+                boostDocsMap,
+                searcher);
+
+        // only the docs of the main search are recorded, it is done once there are results
+        Object matchedDocs = context == null ? null : context.get(MATCHED_DOCS);
+        if (matchedDocs instanceof MatchedDocs
+            && info.getResponseBuilder() != null
+            && info.getResponseBuilder().getResults() == null) {
+          ((MatchedDocs) matchedDocs).reset();
+          return new MatchedDocsCollector((MatchedDocs) matchedDocs, collector);
+        }
+        return collector;
 
       } catch (IOException e) {
         throw new RuntimeException(e);
@@ -588,6 +623,132 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     }
   }
 
+  /**
+   * The docs that reached a collapse filter, with their scores if they are needed and the search
+   * computed them, so that the {@link org.apache.solr.handler.component.ExpandComponent} can
+   * collect the members of the expanded groups from them instead of running the query again. The
+   * expand component asks for them by putting an instance in the request context under {@link
+   * #MATCHED_DOCS} before the main search. Only up to a limit of docs are recorded, so that the
+   * memory held for the request stays bounded; past it the recording is given up.
+   *
+   * @lucene.internal
+   */
+  public static final class MatchedDocs {
+    private final boolean recordScores;
+    private final int limit;
+    private IntArrayList docs;
+    private FloatArrayList scores;
+    private boolean complete;
+
+    /**
+     * @param recordScores whether the scores of the docs should be recorded as well
+     * @param limit the number of docs past which nothing is recorded
+     */
+    public MatchedDocs(boolean recordScores, int limit) {
+      this.recordScores = recordScores;
+      this.limit = limit;
+    }
+
+    private void reset() {
+      docs = new IntArrayList();
+      scores = null;
+      complete = false;
+    }
+
+    private void giveUp() {
+      docs = null;
+      scores = null;
+    }
+
+    /** Whether all the docs of a fully completed search were recorded */
+    public boolean isComplete() {
+      return complete;
+    }
+
+    /** Whether the scores of the docs were recorded */
+    public boolean hasScores() {
+      return scores != null;
+    }
+
+    /** Collects the recorded docs, in order, with their recorded scores if any */
+    public void collect(List<LeafReaderContext> leaves, Collector collector) throws IOException {
+      assert complete;
+      ScoreAndDoc scorer = new ScoreAndDoc();
+      int i = 0;
+      for (LeafReaderContext leaf : leaves) {
+        int end = leaf.docBase + leaf.reader().maxDoc();
+        if (i == docs.size() || docs.get(i) >= end) {
+          continue;
+        }
+        LeafCollector leafCollector = collector.getLeafCollector(leaf);
+        leafCollector.setScorer(scorer);
+        for (; i < docs.size() && docs.get(i) < end; i++) {
+          scorer.docId = docs.get(i) - leaf.docBase;
+          if (scores != null) {
+            scorer.score = scores.get(i);
+          }
+          leafCollector.collect(scorer.docId);
+        }
+        leafCollector.finish();
+      }
+    }
+  }
+
+  /** Records the docs reaching a collapse collector in {@link MatchedDocs} */
+  private static class MatchedDocsCollector extends DelegatingCollector {
+    private final MatchedDocs matchedDocs;
+    private boolean started;
+    private boolean recording = true;
+    private boolean recordScores;
+
+    MatchedDocsCollector(MatchedDocs matchedDocs, DelegatingCollector collapseCollector) {
+      this.matchedDocs = matchedDocs;
+      setDelegate(collapseCollector);
+    }
+
+    @Override
+    public void setScorer(Scorable scorer) throws IOException {
+      // the collapse collector may ask for the score as well
+      super.setScorer(recordScores ? ScoreCachingWrappingScorer.wrap(scorer) : scorer);
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+      if (!started) {
+        started = true;
+        if (matchedDocs.recordScores && scoreMode().needsScores()) {
+          recordScores = true;
+          matchedDocs.scores = new FloatArrayList();
+        }
+      }
+      super.doSetNextReader(context);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+      if (recording) {
+        if (matchedDocs.docs.size() < matchedDocs.limit) {
+          matchedDocs.docs.add(docBase + doc);
+          if (recordScores) {
+            matchedDocs.scores.add(scorer.score());
+          }
+        } else {
+          // too many to hold on to, the expand component will search again
+          recording = false;
+          recordScores = false;
+          matchedDocs.giveUp();
+        }
+      }
+      super.collect(doc);
+    }
+
+    @Override
+    public void complete() throws IOException {
+      matchedDocs.complete = recording;
+      super.complete();
+    }
+  }
+
   /**
    * Collapses on Ordinal Values using Score to select the group head.
    *
@@ -640,8 +801,8 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         this.multiSortedDocValues = (MultiDocValues.MultiSortedDocValues) collapseValues;
         this.ordinalMap = multiSortedDocValues.mapping;
       }
-      this.ords = new IntIntDynamicMap(valueCount, -1);
-      this.scores = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
+      this.ords = new IntIntDynamicMap(valueCount, -1, GROUP_HEAD_PAGES);
+      this.scores = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE, GROUP_HEAD_PAGES);
       this.nullPolicy = nullPolicy;
       if (nullPolicy == NullPolicy.EXPAND.getCode()) {
         nullScores = new FloatArrayList();
@@ -803,6 +964,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         dummy.docId = contextDoc;
         leafDelegate.collect(contextDoc);
       }
+      releaseGroupHeads(ords, scores);
 
       if (delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).complete();
@@ -1278,6 +1440,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         dummy.docId = contextDoc;
         leafDelegate.collect(contextDoc);
       }
+      collapseStrategy.release();
 
       if (delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).complete();
@@ -1507,6 +1670,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         dummy.docId = contextDoc;
         leafDelegate.collect(contextDoc);
       }
+      collapseStrategy.release();
 
       if (delegate instanceof DelegatingCollector) {
         ((DelegatingCollector) delegate).complete();
@@ -2043,6 +2207,28 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     }
   }
 
+  /**
+   * Hands the pages of the given group head maps back to the pool, once the group heads were
+   * collected. The memory they held is reported in the <code>QUERY.collapse.groupHeadBytes</code>
+   * histogram of the core.
+   */
+  static void releaseGroupHeads(DynamicMap... maps) {
+    long bytes = 0;
+    for (DynamicMap map : maps) {
+      if (map != null) {
+        bytes += map.ramBytesUsed();
+        map.release();
+      }
+    }
+    SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+    SolrCore core = info == null ? null : info.getReq().getCore();
+    if (core != null && core.getSolrMetricsContext() != null) {
+      core.getSolrMetricsContext()
+          .histogram("groupHeadBytes", SolrInfoBean.Category.QUERY.toString(), NAME)
+          .update(bytes);
+    }
+  }
+
   private static class CollectorFactory {
     /**
      * @see #isNumericCollapsible
@@ -2316,7 +2502,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
         boolean needsScores,
         BoostedDocsCollector boostedDocsCollector,
         SortedDocValues values) {
-      this.ords = new IntIntDynamicMap(valueCount, -1);
+      this.ords = new IntIntDynamicMap(valueCount, -1, GROUP_HEAD_PAGES);
       this.nullPolicy = nullPolicy;
       this.needsScores = needsScores;
       this.collapsedSet = new FixedBitSet(maxDoc);
@@ -2324,7 +2510,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.boostedDocsCollector = boostedDocsCollector;
 
       if (this.needsScores) {
-        this.scores = new IntFloatDynamicMap(valueCount, 0.0f);
+        this.scores = new IntFloatDynamicMap(valueCount, 0.0f, GROUP_HEAD_PAGES);
         if (nullPolicy == NullPolicy.EXPAND.getCode()) {
           nullScores = new FloatArrayList();
         }
@@ -2366,6 +2552,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     public IntFloatDynamicMap getScores() {
       return scores;
     }
+
+    /** Hands the group head state back once the collapsed docs were collected */
+    public void release() {
+      releaseGroupHeads(ords, scores);
+    }
   }
 
   /*
@@ -2395,14 +2586,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxIntComp();
-        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MIN_VALUE);
+        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MIN_VALUE, GROUP_HEAD_PAGES);
       } else {
         comp = new MinIntComp();
-        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MAX_VALUE);
+        this.ordVals = new IntIntDynamicMap(valueCount, Integer.MAX_VALUE, GROUP_HEAD_PAGES);
         this.nullVal = Integer.MAX_VALUE;
       }
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(ords, scores, ordVals);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
@@ -2471,15 +2667,20 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
+        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE, GROUP_HEAD_PAGES);
         this.nullVal = -Float.MAX_VALUE;
       } else {
         comp = new MinFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE);
+        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE, GROUP_HEAD_PAGES);
         this.nullVal = Float.MAX_VALUE;
       }
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(ords, scores, ordVals);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxValues = DocValues.getNumeric(context.reader(), this.field);
@@ -2551,14 +2752,19 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxLongComp();
-        this.ordVals = new IntLongDynamicMap(valueCount, Long.MIN_VALUE);
+        this.ordVals = new IntLongDynamicMap(valueCount, Long.MIN_VALUE, GROUP_HEAD_PAGES);
       } else {
         this.nullVal = Long.MAX_VALUE;
         comp = new MinLongComp();
-        this.ordVals = new IntLongDynamicMap(valueCount, Long.MAX_VALUE);
+        this.ordVals = new IntLongDynamicMap(valueCount, Long.MAX_VALUE, GROUP_HEAD_PAGES);
       }
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(ords, scores, ordVals);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxVals = DocValues.getNumeric(context.reader(), this.field);
@@ -2635,16 +2841,21 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       if (GroupHeadSelectorType.MAX.equals(groupHeadSelector.type)) {
         comp = new MaxFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE);
+        this.ordVals = new IntFloatDynamicMap(valueCount, -Float.MAX_VALUE, GROUP_HEAD_PAGES);
       } else {
         this.nullVal = Float.MAX_VALUE;
         comp = new MinFloatComp();
-        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE);
+        this.ordVals = new IntFloatDynamicMap(valueCount, Float.MAX_VALUE, GROUP_HEAD_PAGES);
       }
 
       collapseScore.setupIfNeeded(groupHeadSelector, rcontext);
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(ords, scores, ordVals);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       functionValues = this.valueSource.getValues(rcontext, context);
@@ -2846,12 +3057,12 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       this.needsScores = needsScores;
       this.collapsedSet = new FixedBitSet(maxDoc);
       this.cmap = new IntIntHashMap(size);
-      this.docs = new IntIntDynamicMap(size, 0);
+      this.docs = new IntIntDynamicMap(size, 0, GROUP_HEAD_PAGES);
 
       this.boostedDocsCollector = boostedDocsCollector;
 
       if (needsScores) {
-        this.scores = new IntFloatDynamicMap(size, 0.0f);
+        this.scores = new IntFloatDynamicMap(size, 0.0f, GROUP_HEAD_PAGES);
         if (nullPolicy == NullPolicy.EXPAND.getCode()) {
           nullScores = new FloatArrayList();
         }
@@ -2907,6 +3118,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
     public IntIntDynamicMap getDocs() {
       return docs;
     }
+
+    /** Hands the group head state back once the collapsed docs were collected */
+    public void release() {
+      releaseGroupHeads(docs, scores);
+    }
   }
 
   /*
@@ -2935,7 +3151,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
       this.field = groupHeadSelector.selectorText;
-      this.testValues = new IntIntDynamicMap(size, 0);
+      this.testValues = new IntIntDynamicMap(size, 0, GROUP_HEAD_PAGES);
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
@@ -2948,6 +3164,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(docs, scores, testValues);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxVals = DocValues.getNumeric(context.reader(), this.field);
@@ -3029,7 +3250,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
 
       super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
       this.field = groupHeadSelector.selectorText;
-      this.testValues = new IntFloatDynamicMap(size, 0.0f);
+      this.testValues = new IntFloatDynamicMap(size, 0.0f, GROUP_HEAD_PAGES);
 
       assert GroupHeadSelectorType.MIN_MAX.contains(groupHeadSelector.type);
 
@@ -3042,6 +3263,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       }
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(docs, scores, testValues);
+    }
+
     @Override
     public void setNextReader(LeafReaderContext context) throws IOException {
       this.minMaxVals = DocValues.getNumeric(context.reader(), this.field);
@@ -3133,7 +3359,7 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       super(maxDoc, size, collapseField, nullPolicy, needsScores, boostedDocsCollector);
 
       this.needsScores4Collapsing = needsScores4Collapsing;
-      this.testValues = new IntFloatDynamicMap(size, 0.0f);
+      this.testValues = new IntFloatDynamicMap(size, 0.0f, GROUP_HEAD_PAGES);
 
       this.valueSource = funcQuery.getValueSource();
       this.rcontext = ValueSource.newContext(searcher);
@@ -3151,6 +3377,11 @@ public class CollapsingQParserPlugin extends QParserPlugin {
       collapseScore.setupIfNeeded(groupHeadSelector, rcontext);
     }
 
+    @Override
+    public void release() {
+      releaseGroupHeads(docs, scores, testValues);
+    }
+
     @Override
     @SuppressWarnings({"unchecked"})
     public void setNextReader(LeafReaderContext context) throws IOException {
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits only values that took at least <code>admissionMinComputeMs</code> milliseconds (default
+ * 10) to compute; cheap filters are simply recomputed. Values whose compute time isn't known are
+ * always admitted.
+ *
+ * @lucene.experimental
+ */
+public class ComputeCostAdmissionPolicy implements CacheAdmissionPolicy {
+  public static final String MIN_COMPUTE_MS_PARAM = "admissionMinComputeMs";
+
+  private long minComputeNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Override
+  public void init(Map<String, String> args) {
+    String str = args.get(MIN_COMPUTE_MS_PARAM);
+    if (str != null) {
+      minComputeNanos = (long) (Double.parseDouble(str) * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  @Override
+  public boolean admit(Object key, long computeNanos) {
+    return computeNanos < 0 || computeNanos >= minComputeNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "ComputeCostAdmissionPolicy(minComputeNanos=" + minComputeNanos + ")";
+  }
+}
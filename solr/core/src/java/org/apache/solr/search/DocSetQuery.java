@@ -90,7 +90,8 @@ class DocSetQuery extends Query implements DocSetProducer {
 
       @Override
       public boolean isCacheable(LeafReaderContext ctx) {
-        return true;
+        // the matches in a segment depend on where the segment is in the index
+        return false;
       }
     };
   }
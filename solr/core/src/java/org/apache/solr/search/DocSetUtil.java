@@ -53,6 +53,23 @@ public class DocSetUtil {
     return (maxDoc >> 6) + 5; // The +5 is for better test coverage for small sets
   }
 
+  /**
+   * Returns a {@link RoaringDocSet} with the same docs if the given set is a {@link BitDocSet} that
+   * would take at most half the memory that way, otherwise the set itself. Sparse or clustered sets
+   * compress well, uniformly dense ones don't.
+   *
+   * @lucene.experimental
+   */
+  public static DocSet compress(DocSet docs) {
+    if (docs instanceof BitDocSet) {
+      final FixedBitSet bits = ((BitDocSet) docs).getBits();
+      if (RoaringDocSet.estimateRamBytesUsed(bits) <= docs.ramBytesUsed() >> 1) {
+        return RoaringDocSet.fromBitSet(bits);
+      }
+    }
+    return docs;
+  }
+
   /**
    * Iterates DocSets to test for equality - slow and for testing purposes only.
    *
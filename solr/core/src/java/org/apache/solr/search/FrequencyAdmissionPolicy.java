@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Map;
+
+/**
+ * Admits a key once it has been seen at least <code>admissionMinCount</code> times (default 2).
+ *
+ * <p>Sightings are counted in a count-min sketch rather than per key, so memory use is fixed and
+ * independent of the number of distinct keys; the estimate can only over-count. To follow shifts in
+ * the workload, all the counters are halved every <code>admissionWindow</code> sightings (default
+ * 10000), so a key has to recur within roughly that many lookups to be admitted.
+ *
+ * @lucene.experimental
+ */
+public class FrequencyAdmissionPolicy implements CacheAdmissionPolicy {
+  public static final String MIN_COUNT_PARAM = "admissionMinCount";
+  public static final String WINDOW_PARAM = "admissionWindow";
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+
+  private int minCount = 2;
+  private int window = 10000;
+  private int width;
+  private int[] table; // SEEDS.length rows of width counters
+  private int sightings;
+
+  public FrequencyAdmissionPolicy() {
+    allocate();
+  }
+
+  @Override
+  public void init(Map<String, String> args) {
+    String str = args.get(MIN_COUNT_PARAM);
+    if (str != null) {
+      minCount = Integer.parseInt(str);
+    }
+    str = args.get(WINDOW_PARAM);
+    if (str != null) {
+      window = Math.max(1, Integer.parseInt(str));
+    }
+    allocate();
+  }
+
+  private synchronized void allocate() {
+    // about one counter per sighting in a window keeps collisions rare
+    width = Integer.highestOneBit(Math.max(64, window - 1)) << 1;
+    table = new int[SEEDS.length * width];
+    sightings = 0;
+  }
+
+  @Override
+  public boolean admit(Object key, long computeNanos) {
+    return minCount <= 1 || increment(key) >= minCount;
+  }
+
+  /** Records a sighting of the key and returns the estimated number of sightings so far. */
+  synchronized int increment(Object key) {
+    final int hash = key.hashCode();
+    int min = Integer.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      int i = index(hash, row);
+      if (table[i] != Integer.MAX_VALUE) {
+        table[i]++;
+      }
+      min = Math.min(min, table[i]);
+    }
+    if (++sightings >= window) {
+      age();
+    }
+    return min;
+  }
+
+  /** Returns the estimated number of sightings of the key, without recording one. */
+  synchronized int frequency(Object key) {
+    final int hash = key.hashCode();
+    int min = Integer.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      min = Math.min(min, table[index(hash, row)]);
+    }
+    return min;
+  }
+
+  private int index(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return row * width + ((int) h & (width - 1));
+  }
+
+  private void age() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] >>>= 1;
+    }
+    sightings = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "FrequencyAdmissionPolicy(minCount="
+        + minCount
+        + ", window="
+        + window
+        + ", width="
+        + width
+        + ")";
+  }
+}
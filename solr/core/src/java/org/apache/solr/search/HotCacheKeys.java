@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.core.DirectoryFactory;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the keys of the hottest filterCache and queryResultCache entries when a core is closed,
+ * and re-executes them against the first searcher of the core when it is opened again, so that a
+ * restarted node doesn't serve its first requests from cold caches.
+ *
+ * <p>Keys are stored as query strings, and are only stored if the string parses back to the same
+ * query with the standard query parser; other keys (e.g. those of most dismax queries) are left
+ * out. The values are never stored, they are recomputed against the new searcher.
+ *
+ * @see org.apache.solr.core.SolrConfig#persistHotCacheKeys
+ */
+public final class HotCacheKeys {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String FILE_NAME = "hotCacheKeys";
+  private static final String CODEC_NAME = "solr-hotcachekeys";
+  private static final int VERSION_START = 0;
+  private static final int VERSION_CURRENT = VERSION_START;
+
+  private final List<Query> filters = new ArrayList<>();
+  private final List<QueryResultKey> queryResults = new ArrayList<>();
+
+  private HotCacheKeys() {}
+
+  /** The number of keys that would be re-executed. */
+  int size() {
+    return filters.size() + queryResults.size();
+  }
+
+  /**
+   * Writes the keys of up to <code>count</code> of the hottest entries of each cache of the
+   * searcher to the core's data directory, replacing any keys written before.
+   */
+  public static void save(SolrCore core, SolrIndexSearcher searcher, int count) throws IOException {
+    final SolrQueryRequest req = newRequest(core, searcher);
+    int numFilters = 0, numResults = 0;
+    final Directory dir = getDirectory(core);
+    boolean success = false;
+    final IndexOutput out = dir.createOutput(FILE_NAME + ".tmp", IOContext.DEFAULT);
+    try {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+
+      final List<String> filters = new ArrayList<>();
+      if (searcher.getFilterCache() != null) {
+        for (Query key : searcher.getFilterCache().getHottestKeys(count)) {
+          final String str = toString(key, req);
+          if (str != null) {
+            filters.add(str);
+          }
+        }
+      }
+      writeStrings(out, filters);
+      numFilters = filters.size();
+
+      final List<KeyStrings> results = new ArrayList<>();
+      if (searcher.getQueryResultCache() != null) {
+        for (QueryResultKey key : searcher.getQueryResultCache().getHottestKeys(count)) {
+          final KeyStrings strings = new KeyStrings(key);
+          if (key.equals(strings.toKey(req))) {
+            results.add(strings);
+          }
+        }
+      }
+      out.writeVInt(results.size());
+      for (KeyStrings strings : results) {
+        strings.write(out);
+      }
+      numResults = results.size();
+
+      CodecUtil.writeFooter(out);
+      success = true;
+    } finally {
+      try {
+        if (success) {
+          out.close();
+          dir.sync(List.of(FILE_NAME + ".tmp"));
+          IOUtils.deleteFilesIgnoringExceptions(dir, FILE_NAME);
+          dir.rename(FILE_NAME + ".tmp", FILE_NAME);
+          dir.syncMetaData();
+        } else {
+          IOUtils.closeWhileHandlingException(out);
+          IOUtils.deleteFilesIgnoringExceptions(dir, FILE_NAME + ".tmp");
+        }
+      } finally {
+        core.getDirectoryFactory().release(dir);
+        req.close();
+      }
+    }
+    log.info("Saved {} filterCache and {} queryResultCache keys", numFilters, numResults);
+  }
+
+  /**
+   * Reads the keys saved by {@link #save} for the given core, if any. Keys that no longer parse to
+   * the same query (e.g. because the schema changed) are dropped.
+   *
+   * @return the keys, or null if none were saved
+   */
+  static HotCacheKeys load(SolrCore core, SolrIndexSearcher searcher) throws IOException {
+    final Directory dir = getDirectory(core);
+    final SolrQueryRequest req = newRequest(core, searcher);
+    try {
+      if (!Arrays.asList(dir.listAll()).contains(FILE_NAME)) {
+        return null;
+      }
+      final HotCacheKeys keys = new HotCacheKeys();
+      try (ChecksumIndexInput in = dir.openChecksumInput(FILE_NAME, IOContext.READONCE)) {
+        CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+        for (String str : readStrings(in)) {
+          final Query query = parse(str, req);
+          if (query != null) {
+            keys.filters.add(query);
+          }
+        }
+        for (int i = in.readVInt(); i > 0; i--) {
+          final QueryResultKey key = new KeyStrings(in).toKey(req);
+          if (key != null) {
+            keys.queryResults.add(key);
+          }
+        }
+        CodecUtil.checkFooter(in);
+      }
+      return keys;
+    } finally {
+      core.getDirectoryFactory().release(dir);
+      req.close();
+    }
+  }
+
+  /**
+   * Re-executes the keys saved for the given core, if any, against its first searcher; filters
+   * first since the query results may use them. Failures are logged, and never fail the searcher.
+   */
+  public static void warm(SolrCore core, SolrIndexSearcher searcher) {
+    final long startTime = System.nanoTime();
+    final HotCacheKeys keys;
+    try {
+      keys = load(core, searcher);
+    } catch (Exception e) {
+      log.warn("Unable to read the hot cache keys of {}, skipping them", core.getName(), e);
+      return;
+    }
+    if (keys == null) {
+      return;
+    }
+    for (Query filter : keys.filters) {
+      try {
+        searcher.cacheDocSet(filter, null, false);
+      } catch (Exception e) {
+        log.warn("Error warming filter: {}", filter, e);
+      }
+    }
+    // like the queryResultCache regenerator, let caching round up to the window size
+    final int nDocs = core.getSolrConfig().queryResultWindowSize <= 1 ? 40 : 1;
+    for (QueryResultKey key : keys.queryResults) {
+      try {
+        final QueryCommand cmd = new QueryCommand();
+        cmd.setQuery(key.query)
+            .setFilterList(key.filters)
+            .setSort(key.sort)
+            .setLen(nDocs)
+            .setSupersetMaxDoc(nDocs)
+            .setMinExactCount(key.minExactCount)
+            .setFlags(SolrIndexSearcher.NO_CHECK_QCACHE | key.nc_flags);
+        cmd.setEnableDistribStats(key.enableDistribStats);
+        searcher.search(new QueryResult(), cmd);
+      } catch (Exception e) {
+        log.warn("Error warming query: {}", key.query, e);
+      }
+    }
+    if (log.isInfoEnabled()) {
+      log.info(
+          "Warmed {} hot cache keys of {} in {}ms",
+          keys.size(),
+          core.getName(),
+          (System.nanoTime() - startTime) / 1_000_000);
+    }
+  }
+
+  private static Directory getDirectory(SolrCore core) throws IOException {
+    return core.getDirectoryFactory()
+        .get(
+            core.getDataDir(),
+            DirectoryFactory.DirContext.META_DATA,
+            core.getSolrConfig().indexConfig.lockType);
+  }
+
+  private static SolrQueryRequest newRequest(SolrCore core, SolrIndexSearcher searcher) {
+    return new LocalSolrQueryRequest(core, new ModifiableSolrParams()) {
+      @Override
+      public SolrIndexSearcher getSearcher() {
+        return searcher;
+      }
+    };
+  }
+
+  private static Query parse(String str, SolrQueryRequest req) {
+    try {
+      return QParser.getParser(str, QParserPlugin.DEFAULT_QTYPE, false, req).getQuery();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /** The string form of the query, or null if that doesn't parse back to an equal query. */
+  private static String toString(Query query, SolrQueryRequest req) {
+    final String str = queryString(query);
+    return query.equals(parse(str, req)) ? str : null;
+  }
+
+  /** The string form of the query, in the syntax of the standard query parser if it has one. */
+  private static String queryString(Query query) {
+    // what range queries on point fields with docValues parse to; only the index query's string
+    // parses back to it
+    if (query instanceof IndexOrDocValuesQuery) {
+      return ((IndexOrDocValuesQuery) query).getIndexQuery().toString();
+    }
+    return query.toString();
+  }
+
+  /** The sort in the syntax of the sort param, or null if that can't express it. */
+  private static String toString(Sort sort) {
+    final StringBuilder sb = new StringBuilder();
+    for (SortField sf : sort.getSort()) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      if (sf.getType() == SortField.Type.SCORE) {
+        sb.append("score ").append(sf.getReverse() ? "asc" : "desc");
+      } else if (sf.getType() == SortField.Type.DOC) {
+        sb.append("_docid_ ").append(sf.getReverse() ? "desc" : "asc");
+      } else if (sf.getField() != null) {
+        sb.append(sf.getField()).append(sf.getReverse() ? " desc" : " asc");
+      } else {
+        return null;
+      }
+    }
+    return sb.toString();
+  }
+
+  /** A {@link QueryResultKey} with its queries and sort as strings. */
+  private static final class KeyStrings {
+    final String query;
+    final String sort; // empty if there's none
+    final List<String> filters; // may be null
+    final int ncFlags;
+    final int minExactCount;
+    final boolean enableDistribStats;
+
+    KeyStrings(QueryResultKey key) {
+      query = queryString(key.query);
+      sort = key.sort == null ? "" : HotCacheKeys.toString(key.sort);
+      if (key.filters == null) {
+        filters = null;
+      } else {
+        filters = new ArrayList<>(key.filters.size());
+        for (Query filter : key.filters) {
+          filters.add(queryString(filter));
+        }
+      }
+      ncFlags = key.nc_flags;
+      minExactCount = key.minExactCount;
+      enableDistribStats = key.enableDistribStats;
+    }
+
+    KeyStrings(DataInput in) throws IOException {
+      query = in.readString();
+      sort = in.readString();
+      filters = in.readByte() == 0 ? null : readStrings(in);
+      ncFlags = in.readVInt();
+      minExactCount = in.readVInt();
+      enableDistribStats = in.readByte() != 0;
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeString(query);
+      out.writeString(sort);
+      out.writeByte((byte) (filters == null ? 0 : 1));
+      if (filters != null) {
+        writeStrings(out, filters);
+      }
+      out.writeVInt(ncFlags);
+      out.writeVInt(minExactCount);
+      out.writeByte((byte) (enableDistribStats ? 1 : 0));
+    }
+
+    /** Parses the strings back into a key, or returns null if they don't parse. */
+    QueryResultKey toKey(SolrQueryRequest req) {
+      if (sort == null) {
+        return null;
+      }
+      final Query q = parse(query, req);
+      if (q == null) {
+        return null;
+      }
+      Sort s = null;
+      if (!sort.isEmpty()) {
+        try {
+          s = SortSpecParsing.parseSortSpec(sort, req).getSort();
+        } catch (Exception e) {
+          return null;
+        }
+      }
+      List<Query> fqs = null;
+      if (filters != null) {
+        fqs = new ArrayList<>(filters.size());
+        for (String str : filters) {
+          final Query filter = parse(str, req);
+          if (filter == null) {
+            return null;
+          }
+          fqs.add(filter);
+        }
+      }
+      return new QueryResultKey(q, fqs, s, ncFlags, minExactCount, enableDistribStats);
+    }
+  }
+
+  private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+    out.writeVInt(strings.size());
+    for (String str : strings) {
+      out.writeString(str);
+    }
+  }
+
+  private static List<String> readStrings(DataInput in) throws IOException {
+    final int size = in.readVInt();
+    final List<String> strings = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      strings.add(in.readString());
+    }
+    return strings;
+  }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.solr.search;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -30,6 +31,7 @@ import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.join.CrossCollectionJoinQParser;
+import org.apache.solr.search.join.CrossCollectionJoinQuery;
 import org.apache.solr.search.join.ScoreJoinQParserPlugin;
 import org.apache.solr.util.RefCounted;
 
@@ -44,6 +46,9 @@ public class JoinQParserPlugin extends QParserPlugin {
 
   private Set<String> allowSolrUrls;
 
+  // the keys streamed by cross-collection joins, kept for their ttl; null unless configured
+  private Cache<String, CrossCollectionJoinQuery.RemoteKeys> remoteKeysCache;
+
   private static class JoinParams {
     final String fromField;
     final String fromCore;
@@ -127,7 +132,8 @@ public class JoinQParserPlugin extends QParserPlugin {
                 qparser.params,
                 qparser.req,
                 plugin.routerField,
-                plugin.allowSolrUrls)
+                plugin.allowSolrUrls,
+                plugin.remoteKeysCache)
             .parse();
       }
     };
@@ -205,6 +211,16 @@ public class JoinQParserPlugin extends QParserPlugin {
     } else {
       allowSolrUrls = null;
     }
+
+    // the total number of remote keys to keep
+    Object remoteKeysCacheSize = args.get("remoteKeysCacheSize");
+    if (remoteKeysCacheSize != null && Long.parseLong(remoteKeysCacheSize.toString()) > 0) {
+      remoteKeysCache =
+          CrossCollectionJoinQuery.newRemoteKeysCache(
+              Long.parseLong(remoteKeysCacheSize.toString()));
+    } else {
+      remoteKeysCache = null;
+    }
   }
 
   @Override
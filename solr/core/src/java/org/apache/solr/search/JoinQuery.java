@@ -22,33 +22,44 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiPostingsEnum;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.ConstantScoreScorer;
 import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TaskExecutor;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
 import org.apache.lucene.util.StringHelper;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
 import org.apache.solr.schema.TrieField;
 import org.apache.solr.search.join.GraphPointsCollector;
 import org.apache.solr.util.RTimer;
@@ -100,6 +111,8 @@ class JoinQuery extends Query {
     SolrIndexSearcher toSearcher;
     ResponseBuilder rb;
     ScoreMode scoreMode;
+    // whether the request allows joining the segments on the searcher's executor
+    boolean multiThreaded;
 
     public JoinQueryWeight(SolrIndexSearcher searcher, ScoreMode scoreMode, float boost) {
       super(JoinQuery.this, boost);
@@ -108,6 +121,7 @@ class JoinQuery extends Query {
       SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
       if (info != null) {
         rb = info.getResponseBuilder();
+        multiThreaded = info.getReq().getParams().getBool(CommonParams.MULTI_THREADED, false);
       }
 
       if (fromIndex == null) {
@@ -177,6 +191,10 @@ class JoinQuery extends Query {
           dbg.add("toTermDirectCount", toTermDirectCount);
           dbg.add("smallSetsDeferred", smallSetsDeferred);
           dbg.add("toSetDocsAdded", resultListDocs);
+          if (toSearcher.getJoinCache() != null) {
+            dbg.add("fromSegmentsJoined", fromSegmentsJoined);
+            dbg.add("toSegmentsJoined", toSegmentsJoined);
+          }
 
           // TODO: perhaps synchronize  addDebug in the future...
           rb.addDebug(dbg, "join", JoinQuery.this.toString());
@@ -211,6 +229,9 @@ class JoinQuery extends Query {
     // number of small sets collected to be used later to intersect w/ bitset or create another
     // small set
     int smallSetsDeferred;
+    // number of segments whose result was missing from the joinCache
+    int fromSegmentsJoined;
+    int toSegmentsJoined;
 
     public DocSet getDocSet() throws IOException {
       SchemaField fromSchemaField = fromSearcher.getSchema().getField(fromField);
@@ -230,6 +251,13 @@ class JoinQuery extends Query {
       }
 
       if (!usePoints) {
+        SolrCache<SegmentJoinResult.Key, SegmentJoinResult> joinCache = toSearcher.getJoinCache();
+        if (joinCache != null || isParallel()) {
+          DocSet answer = getDocSetFromSegments(joinCache);
+          if (answer != null) {
+            return answer;
+          }
+        }
         return getDocSetEnumerate();
       }
 
@@ -243,6 +271,133 @@ class JoinQuery extends Query {
       return result;
     }
 
+    /** Whether the segments can be joined in parallel on the executor of the searcher */
+    private boolean isParallel() {
+      return multiThreaded
+          && toSearcher.getExecutor() != null
+          && toSearcher.getTopReaderContext().leaves().size() > 1;
+    }
+
+    /** Runs the tasks of the segments on the executor of the searcher, or else on this thread */
+    private TaskExecutor taskExecutor(SolrIndexSearcher searcher) {
+      return isParallel() ? searcher.getTaskExecutor() : new TaskExecutor(Runnable::run);
+    }
+
+    /**
+     * Computes the join segment by segment, in parallel if the request is multi-threaded. The
+     * results of segments are taken from the joinCache if there is one, so that after a commit only
+     * the segments that changed need joining. Returns null if the from query can't be matched per
+     * segment (e.g. another join).
+     */
+    DocSet getDocSetFromSegments(SolrCache<SegmentJoinResult.Key, SegmentJoinResult> joinCache)
+        throws IOException {
+      final Weight weight =
+          fromSearcher.createWeight(
+              fromSearcher.rewrite(QueryUtils.makeQueryable(q)), ScoreMode.COMPLETE_NO_SCORES, 1);
+      final List<LeafReaderContext> fromLeaves = fromSearcher.getTopReaderContext().leaves();
+      final List<LeafReaderContext> toLeaves = toSearcher.getTopReaderContext().leaves();
+      for (LeafReaderContext ctx : fromLeaves) {
+        if (ctx.reader().getReaderCacheHelper() == null || !weight.isCacheable(ctx)) {
+          return null;
+        }
+      }
+      for (LeafReaderContext ctx : toLeaves) {
+        if (ctx.reader().getReaderCacheHelper() == null) {
+          return null;
+        }
+      }
+
+      SchemaField fromSchemaField = fromSearcher.getSchema().getField(fromField);
+      String prefixStr = TrieField.getMainValuePrefix(fromSchemaField.getType());
+      final BytesRef prefix = prefixStr == null ? null : new BytesRef(prefixStr);
+      // the terms of string fields are their docValues, which are cheaper to get for a few docs
+      final boolean useDocValues =
+          fromSchemaField.getType() instanceof StrField
+              && fromSchemaField.indexed()
+              && fromSchemaField.hasDocValues();
+
+      // the from side is cached by the core it belongs to
+      final SolrCache<SegmentJoinResult.Key, SegmentJoinResult> fromCache =
+          joinCache == null || fromSearcher == toSearcher ? joinCache : fromSearcher.getJoinCache();
+      final boolean[] fromJoined = new boolean[fromLeaves.size()];
+      List<Callable<BytesRef[]>> fromTasks = new ArrayList<>(fromLeaves.size());
+      for (LeafReaderContext ctx : fromLeaves) {
+        fromTasks.add(
+            () -> {
+              SegmentJoinResult.Key key =
+                  fromCache == null
+                      ? null
+                      : new SegmentJoinResult.Key(
+                          ctx.reader().getReaderCacheHelper().getKey(), null, fromField, null, q);
+              SegmentJoinResult result = key == null ? null : fromCache.get(key);
+              if (result == null) {
+                fromJoined[ctx.ord] = true;
+                result =
+                    SegmentJoinResult.ofTerms(
+                        useDocValues
+                            ? matchingDocValues(weight, ctx, fromField)
+                            : matchingTerms(weight, ctx, fromField, prefix));
+                if (key != null) {
+                  fromCache.put(key, result);
+                }
+              }
+              return result.getTerms();
+            });
+      }
+      final BytesRef[] terms = mergeTerms(taskExecutor(fromSearcher).invokeAll(fromTasks));
+      fromTermHits = terms.length;
+      fromSegmentsJoined = numJoined(fromJoined);
+
+      final boolean[] toJoined = new boolean[toLeaves.size()];
+      List<Callable<DocIdSet>> toTasks = new ArrayList<>(toLeaves.size());
+      for (LeafReaderContext ctx : toLeaves) {
+        toTasks.add(
+            () -> {
+              SegmentJoinResult.Key key =
+                  joinCache == null
+                      ? null
+                      : new SegmentJoinResult.Key(
+                          ctx.reader().getReaderCacheHelper().getKey(),
+                          fromIndex,
+                          fromField,
+                          toField,
+                          q);
+              SegmentJoinResult result = key == null ? null : joinCache.get(key);
+              if (result == null || !Arrays.equals(result.getTerms(), terms)) {
+                toJoined[ctx.ord] = true;
+                result = SegmentJoinResult.ofDocs(terms, joinSegment(ctx, toField, terms));
+                if (key != null) {
+                  joinCache.put(key, result);
+                }
+              }
+              return result.getDocs();
+            });
+      }
+      final List<DocIdSet> segmentDocs = taskExecutor(toSearcher).invokeAll(toTasks);
+      toSegmentsJoined = numJoined(toJoined);
+
+      final FixedBitSet bits = new FixedBitSet(toSearcher.maxDoc());
+      int size = 0;
+      for (LeafReaderContext ctx : toLeaves) {
+        DocIdSetIterator it = segmentDocs.get(ctx.ord).iterator();
+        if (it == null) {
+          continue;
+        }
+        final int base = ctx.docBase;
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+          bits.set(base + doc);
+          size++;
+        }
+      }
+      resultListDocs = size;
+
+      BitDocSet answer = new BitDocSet(bits, size);
+      if (size < DocSetUtil.smallSetSize(toSearcher.maxDoc())) {
+        return DocSetUtil.toSmallSet(answer);
+      }
+      return DocSetUtil.getDocSet(answer, toSearcher);
+    }
+
     public DocSet getDocSetEnumerate() throws IOException {
       FixedBitSet resultBits = null;
 
@@ -472,6 +627,164 @@ class JoinQuery extends Query {
     }
   }
 
+  /** The live documents of the segment that match the weight. */
+  private static FixedBitSet matchingDocs(Weight weight, LeafReaderContext ctx) throws IOException {
+    Scorer scorer = weight.scorer(ctx);
+    if (scorer == null) {
+      return null;
+    }
+    FixedBitSet matches = new FixedBitSet(ctx.reader().maxDoc());
+    Bits liveDocs = ctx.reader().getLiveDocs();
+    DocIdSetIterator it = scorer.iterator();
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      if (liveDocs == null || liveDocs.get(doc)) {
+        matches.set(doc);
+      }
+    }
+    return matches;
+  }
+
+  /** The sorted terms the matches of the weight have in the field, by walking its postings. */
+  private static BytesRef[] matchingTerms(
+      Weight weight, LeafReaderContext ctx, String field, BytesRef prefix) throws IOException {
+    Terms terms = ctx.reader().terms(field);
+    FixedBitSet matches = terms == null ? null : matchingDocs(weight, ctx);
+    if (matches == null || matches.cardinality() == 0) {
+      return SegmentJoinResult.NO_TERMS;
+    }
+    List<BytesRef> result = new ArrayList<>();
+    TermsEnum termsEnum = terms.iterator();
+    BytesRef term;
+    if (prefix == null) {
+      term = termsEnum.next();
+    } else {
+      term = termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END ? null : termsEnum.term();
+    }
+    PostingsEnum postingsEnum = null;
+    for (; term != null; term = termsEnum.next()) {
+      if (prefix != null && !StringHelper.startsWith(term, prefix)) break;
+      postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+      for (int doc = postingsEnum.nextDoc();
+          doc != DocIdSetIterator.NO_MORE_DOCS;
+          doc = postingsEnum.nextDoc()) {
+        if (matches.get(doc)) {
+          result.add(BytesRef.deepCopyOf(term));
+          break;
+        }
+      }
+    }
+    return result.toArray(SegmentJoinResult.NO_TERMS);
+  }
+
+  /** The sorted terms the matches of the weight have in the field, from its docValues. */
+  private static BytesRef[] matchingDocValues(Weight weight, LeafReaderContext ctx, String field)
+      throws IOException {
+    FixedBitSet matches = matchingDocs(weight, ctx);
+    if (matches == null) {
+      return SegmentJoinResult.NO_TERMS;
+    }
+    SortedSetDocValues values = DocValues.getSortedSet(ctx.reader(), field);
+    long[] ords = new long[16];
+    int numOrds = 0;
+    BitSetIterator it = new BitSetIterator(matches, 0);
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      if (values.advanceExact(doc)) {
+        for (int i = 0; i < values.docValueCount(); i++) {
+          ords = ArrayUtil.grow(ords, numOrds + 1);
+          ords[numOrds++] = values.nextOrd();
+        }
+      }
+    }
+    Arrays.sort(ords, 0, numOrds);
+    List<BytesRef> result = new ArrayList<>();
+    for (int i = 0; i < numOrds; i++) {
+      if (i == 0 || ords[i] != ords[i - 1]) {
+        result.add(BytesRef.deepCopyOf(values.lookupOrd(ords[i])));
+      }
+    }
+    return result.toArray(SegmentJoinResult.NO_TERMS);
+  }
+
+  /** Merges the sorted terms of several segments into one sorted array without duplicates. */
+  private static BytesRef[] mergeTerms(List<BytesRef[]> segmentTerms) {
+    if (segmentTerms.size() == 1) {
+      return segmentTerms.get(0);
+    }
+    int numTerms = 0;
+    for (BytesRef[] terms : segmentTerms) {
+      numTerms += terms.length;
+    }
+    BytesRef[] all = new BytesRef[numTerms];
+    int pos = 0;
+    for (BytesRef[] terms : segmentTerms) {
+      System.arraycopy(terms, 0, all, pos, terms.length);
+      pos += terms.length;
+    }
+    Arrays.sort(all);
+    int numDistinct = 0;
+    for (int i = 0; i < all.length; i++) {
+      if (numDistinct == 0 || !all[i].equals(all[numDistinct - 1])) {
+        all[numDistinct++] = all[i];
+      }
+    }
+    return numDistinct == all.length ? all : Arrays.copyOf(all, numDistinct);
+  }
+
+  /** The number of segments that were joined */
+  private static int numJoined(boolean[] joined) {
+    int count = 0;
+    for (boolean j : joined) {
+      if (j) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** The live documents of the segment that have any of the sorted terms in the field. */
+  private static DocIdSet joinSegment(LeafReaderContext ctx, String field, BytesRef[] terms)
+      throws IOException {
+    Terms toTerms = ctx.reader().terms(field);
+    if (toTerms == null || terms.length == 0) {
+      return DocIdSet.EMPTY;
+    }
+    final int maxDoc = ctx.reader().maxDoc();
+    final Bits liveDocs = ctx.reader().getLiveDocs();
+    FixedBitSet bits = null;
+    TermsEnum termsEnum = toTerms.iterator();
+    PostingsEnum postingsEnum = null;
+    for (BytesRef term : terms) {
+      if (!termsEnum.seekExact(term)) {
+        continue;
+      }
+      if (bits == null) {
+        bits = new FixedBitSet(maxDoc);
+      }
+      postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+      for (int doc = postingsEnum.nextDoc();
+          doc != DocIdSetIterator.NO_MORE_DOCS;
+          doc = postingsEnum.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          bits.set(doc);
+        }
+      }
+    }
+    if (bits == null) {
+      return DocIdSet.EMPTY;
+    }
+    // like Lucene's LRUQueryCache: bits for dense sets, roaring for sparse ones
+    int cardinality = bits.cardinality();
+    if ((long) cardinality * 100 >= maxDoc) {
+      return new BitDocIdSet(bits, cardinality);
+    }
+    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+    BitSetIterator it = new BitSetIterator(bits, cardinality);
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
   @Override
   public String toString(String field) {
     return "{!join from="
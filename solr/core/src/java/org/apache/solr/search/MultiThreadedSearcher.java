@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MultiCollectorManager;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollectorManager;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Searches the leaf slices of a {@link SolrIndexSearcher} concurrently on the searcher's executor
+ * and merges the per-slice top docs, max score, hit count and {@link DocSet}.
+ *
+ * <p>Callers are responsible for checking that the {@link QueryCommand} can be executed this way,
+ * see {@link SolrIndexSearcher#isMultiThreadedSearch}.
+ *
+ * @lucene.internal
+ */
+class MultiThreadedSearcher {
+
+  private final SolrIndexSearcher searcher;
+
+  MultiThreadedSearcher(SolrIndexSearcher searcher) {
+    this.searcher = searcher;
+  }
+
+  /**
+   * Runs the query once over all leaf slices.
+   *
+   * @param len the number of top docs to collect; if &lt;= 0 only hits are counted
+   * @param needMaxScore whether the max score should be tracked
+   * @param needDocSet whether the full set of matching documents should be collected
+   */
+  SearchResult searchCollectorManagers(
+      int len, QueryCommand cmd, Query query, boolean needMaxScore, boolean needDocSet)
+      throws IOException {
+    final List<CollectorManager<? extends Collector, ?>> managers = new ArrayList<>(3);
+
+    final int topDocsIdx;
+    if (len > 0) {
+      topDocsIdx = managers.size();
+      managers.add(buildTopDocsCollectorManager(len, cmd));
+    } else if (!needDocSet) {
+      topDocsIdx = managers.size();
+      managers.add(new TotalHitCountCollectorManager());
+    } else {
+      topDocsIdx = -1; // the hit count is the size of the DocSet
+    }
+
+    int maxScoreIdx = -1;
+    if (needMaxScore) {
+      maxScoreIdx = managers.size();
+      managers.add(new MaxScoreCollectorManager());
+    }
+
+    int docSetIdx = -1;
+    if (needDocSet) {
+      docSetIdx = managers.size();
+      managers.add(new DocSetCollectorManager(searcher));
+    }
+
+    final ScoreModeRecordingManager manager =
+        new ScoreModeRecordingManager(
+            new MultiCollectorManager(managers.toArray(new CollectorManager<?, ?>[0])));
+    final Object[] results = searcher.search(query, manager);
+
+    final TopDocs topDocs = len > 0 ? (TopDocs) results[topDocsIdx] : null;
+    final DocSet docSet = docSetIdx >= 0 ? (DocSet) results[docSetIdx] : null;
+    final int totalHits;
+    if (topDocs != null) {
+      totalHits = Math.toIntExact(topDocs.totalHits.value);
+    } else if (topDocsIdx >= 0) {
+      totalHits = (Integer) results[topDocsIdx];
+    } else {
+      totalHits = docSet.size();
+    }
+    final float maxScore = maxScoreIdx >= 0 ? (Float) results[maxScoreIdx] : Float.NaN;
+    return new SearchResult(manager.scoreMode, topDocs, totalHits, maxScore, docSet);
+  }
+
+  private CollectorManager<? extends Collector, ? extends TopDocs> buildTopDocsCollectorManager(
+      int len, QueryCommand cmd) throws IOException {
+    final int minNumFound = cmd.getMinExactCount();
+    if (null == cmd.getSort()) {
+      assert null == cmd.getCursorMark() : "have cursor but no sort";
+      return TopScoreDocCollector.createSharedManager(len, null, minNumFound);
+    } else {
+      final CursorMark cursor = cmd.getCursorMark();
+      final FieldDoc searchAfter = (null != cursor ? cursor.getSearchAfterFieldDoc() : null);
+      return TopFieldCollector.createSharedManager(
+          searcher.weightSort(cmd.getSort()), len, searchAfter, minNumFound);
+    }
+  }
+
+  /** The merged result of a concurrent search. */
+  static class SearchResult {
+    final ScoreMode scoreMode;
+
+    /** null if no top docs were requested */
+    final TopDocs topDocs;
+
+    final int totalHits;
+
+    /** NaN if the max score was not requested or nothing matched */
+    final float maxScore;
+
+    /** null if no DocSet was requested */
+    final DocSet docSet;
+
+    SearchResult(
+        ScoreMode scoreMode, TopDocs topDocs, int totalHits, float maxScore, DocSet docSet) {
+      this.scoreMode = scoreMode;
+      this.topDocs = topDocs;
+      this.totalHits = totalHits;
+      this.maxScore = maxScore;
+      this.docSet = docSet;
+    }
+  }
+
+  /** Remembers the {@link ScoreMode} of the collectors it hands out. */
+  private static class ScoreModeRecordingManager implements CollectorManager<Collector, Object[]> {
+    private final MultiCollectorManager delegate;
+    private volatile ScoreMode scoreMode;
+
+    ScoreModeRecordingManager(MultiCollectorManager delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Collector newCollector() throws IOException {
+      final Collector collector = delegate.newCollector();
+      scoreMode = collector.scoreMode();
+      return collector;
+    }
+
+    @Override
+    public Object[] reduce(Collection<Collector> collectors) throws IOException {
+      return delegate.reduce(collectors);
+    }
+  }
+
+  private static class MaxScoreCollectorManager
+      implements CollectorManager<MaxScoreCollector, Float> {
+
+    @Override
+    public MaxScoreCollector newCollector() {
+      return new MaxScoreCollector();
+    }
+
+    @Override
+    public Float reduce(Collection<MaxScoreCollector> collectors) {
+      float maxScore = Float.NaN;
+      for (MaxScoreCollector collector : collectors) {
+        final float score = collector.getMaxScore();
+        if (!Float.isNaN(score) && (Float.isNaN(maxScore) || score > maxScore)) {
+          maxScore = score;
+        }
+      }
+      return maxScore;
+    }
+  }
+
+  /**
+   * Collects each slice into its own {@link DocSetCollector}. Since a slice is not a contiguous
+   * range of docs, the results are merged into a sorted int array or a bitset, whichever {@link
+   * DocSetUtil#smallSetSize} calls for.
+   */
+  private static class DocSetCollectorManager implements CollectorManager<DocSetCollector, DocSet> {
+    private final SolrIndexSearcher searcher;
+    private final int maxDoc;
+
+    DocSetCollectorManager(SolrIndexSearcher searcher) {
+      this.searcher = searcher;
+      this.maxDoc = searcher.maxDoc();
+    }
+
+    @Override
+    public DocSetCollector newCollector() {
+      return new DocSetCollector(maxDoc);
+    }
+
+    @Override
+    public DocSet reduce(Collection<DocSetCollector> collectors) {
+      if (collectors.size() == 1) {
+        return DocSetUtil.getDocSet(collectors.iterator().next(), searcher);
+      }
+
+      int size = 0;
+      for (DocSetCollector collector : collectors) {
+        size += collector.size();
+      }
+
+      final DocSet merged;
+      if (size <= DocSetUtil.smallSetSize(maxDoc)) {
+        final int[] docs = new int[size];
+        int pos = 0;
+        for (DocSetCollector collector : collectors) {
+          final DocIterator iter = collector.getDocSet().iterator();
+          while (iter.hasNext()) {
+            docs[pos++] = iter.nextDoc();
+          }
+        }
+        Arrays.sort(docs);
+        merged = size == 0 ? DocSet.empty() : new SortedIntDocSet(docs);
+      } else {
+        final FixedBitSet bits = new FixedBitSet(maxDoc);
+        for (DocSetCollector collector : collectors) {
+          collector.getDocSet().addAllTo(bits);
+        }
+        merged = new BitDocSet(bits, size);
+      }
+      return DocSetUtil.getDocSet(merged, searcher);
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * An immutable bitset based {@link DocSet} whose bits live in a direct (off-heap) buffer rather
+ * than in a <code>long[]</code> on the Java heap. Only a few small objects remain on heap, so large
+ * numbers of these sets can be held for a long time (e.g. in the filterCache) without adding to the
+ * old generation the garbage collector has to scan and copy.
+ *
+ * <p>The direct memory is released when the set becomes unreachable, and is bounded by the JVM's
+ * <code>-XX:MaxDirectMemorySize</code>. Operations that produce a new set return an on-heap {@link
+ * BitDocSet} or {@link SortedIntDocSet}.
+ *
+ * @see CaffeineCache
+ */
+public class OffHeapBitDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(OffHeapBitDocSet.class)
+          + 2 * RamUsageEstimator.shallowSizeOfInstance(ByteBuffer.class);
+
+  private final LongBuffer bits; // read-only; only absolute gets are used so it's thread-safe
+  private final int numBits;
+  private final int numWords;
+  private final int size;
+
+  private OffHeapBitDocSet(LongBuffer bits, int numBits, int size) {
+    this.bits = bits;
+    this.numBits = numBits;
+    this.numWords = bits.capacity();
+    this.size = size;
+  }
+
+  /** Copies the bits of the given set into a newly allocated direct buffer. */
+  public static OffHeapBitDocSet fromBitDocSet(BitDocSet docSet) {
+    final FixedBitSet source = docSet.getBits();
+    final int numWords = FixedBitSet.bits2words(source.length());
+    final LongBuffer buffer =
+        ByteBuffer.allocateDirect(numWords << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+    buffer.put(source.getBits(), 0, numWords).rewind();
+    return new OffHeapBitDocSet(buffer.asReadOnlyBuffer(), source.length(), docSet.size());
+  }
+
+  /** The number of bytes held outside the Java heap; not included in {@link #ramBytesUsed()}. */
+  public long offHeapBytesUsed() {
+    return (long) numWords << 3;
+  }
+
+  private int nextSetBit(int index) {
+    if (index >= numBits) {
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+    int i = index >> 6;
+    long word = bits.get(i) >> index; // skip all the bits to the right of index
+
+    if (word != 0) {
+      return index + Long.numberOfTrailingZeros(word);
+    }
+
+    while (++i < numWords) {
+      word = bits.get(i);
+      if (word != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+      }
+    }
+
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  /** The words of sets that can be combined word by word with ours, or null. */
+  private static LongBuffer words(DocSet other) {
+    if (other instanceof OffHeapBitDocSet) {
+      return ((OffHeapBitDocSet) other).bits;
+    } else if (other instanceof BitDocSet) {
+      return LongBuffer.wrap(((BitDocSet) other).getBits().getBits());
+    }
+    return null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Returns true of the doc exists in the set. Should only be called when doc &lt; maxDoc. */
+  @Override
+  public boolean exists(int doc) {
+    return (bits.get(doc >> 6) & (1L << doc)) != 0;
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private int pos = nextSetBit(0);
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = nextSetBit(pos + 1);
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    if (size == 0) {
+      return null;
+    }
+    final int maxDoc = context.reader().maxDoc();
+    if (maxDoc < 1) {
+      // entirely empty segment
+      return null;
+    }
+
+    final int base = context.docBase;
+    final int max = base + maxDoc; // one past the max doc in this segment.
+
+    return new DocIdSetIterator() {
+      int adjustedDoc = -1;
+
+      @Override
+      public int docID() {
+        return adjustedDoc;
+      }
+
+      @Override
+      public int nextDoc() {
+        return advance(adjustedDoc + 1);
+      }
+
+      @Override
+      public int advance(int target) {
+        if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+        int adjusted = target + base;
+        if (adjusted >= max) {
+          return adjustedDoc = NO_MORE_DOCS;
+        }
+        int pos = nextSetBit(adjusted);
+        return adjustedDoc = pos < max ? pos - base : NO_MORE_DOCS;
+      }
+
+      @Override
+      public long cost() {
+        // pro-rate the size for this segment
+        return (long) (size * ((max - base) / (float) Math.max(numBits, 1)));
+      }
+    };
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    final LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // the smaller sets are better at this, and only use exists() to call back
+      return other.intersection(this);
+    }
+    final FixedBitSet newbits = getFixedBitSetClone();
+    final long[] words = newbits.getBits();
+    final int n = Math.min(numWords, otherWords.capacity());
+    for (int i = 0; i < n; i++) {
+      words[i] &= otherWords.get(i);
+    }
+    for (int i = n; i < numWords; i++) {
+      words[i] = 0L;
+    }
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    final LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // they had better not call us back!
+      return other.intersectionSize(this);
+    }
+    final int n = Math.min(numWords, otherWords.capacity());
+    long count = 0;
+    for (int i = 0; i < n; i++) {
+      count += Long.bitCount(bits.get(i) & otherWords.get(i));
+    }
+    return (int) count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    final LongBuffer otherWords = words(other);
+    if (otherWords == null) {
+      // they had better not call us back!
+      return other.intersects(this);
+    }
+    final int n = Math.min(numWords, otherWords.capacity());
+    for (int i = 0; i < n; i++) {
+      if ((bits.get(i) & otherWords.get(i)) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    FixedBitSet otherBits = other.getFixedBitSet();
+    FixedBitSet newbits = FixedBitSet.ensureCapacity(getFixedBitSetClone(), otherBits.length());
+    newbits.or(otherBits);
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    final FixedBitSet newbits = getFixedBitSetClone();
+    final LongBuffer otherWords = other instanceof OffHeapBitDocSet ? words(other) : null;
+    if (otherWords != null) {
+      final long[] words = newbits.getBits();
+      final int n = Math.min(numWords, otherWords.capacity());
+      for (int i = 0; i < n; i++) {
+        words[i] &= ~otherWords.get(i);
+      }
+    } else {
+      BitDocSet.andNot(newbits, other);
+    }
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSetQuery makeQuery() {
+    return new DocSetQuery(this);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    final long[] words = target.getBits();
+    final int n = Math.min(numWords, words.length);
+    for (int i = 0; i < n; i++) {
+      words[i] |= bits.get(i);
+    }
+  }
+
+  /** Returns an on-heap copy; the off-heap memory is not shared with the clone. */
+  @Override
+  public BitDocSet clone() {
+    return new BitDocSet(getFixedBitSetClone(), size);
+  }
+
+  @Override
+  public Bits getBits() {
+    return new Bits() {
+      @Override
+      public boolean get(int index) {
+        return exists(index);
+      }
+
+      @Override
+      public int length() {
+        return numBits;
+      }
+    };
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    final long[] words = new long[numWords];
+    bits.duplicate().get(words); // don't move the shared buffer's position
+    return new FixedBitSet(words, numBits);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapBitDocSet{"
+        + "size="
+        + size
+        + ",ramUsed="
+        + RamUsageEstimator.humanReadableUnits(ramBytesUsed())
+        + ",offHeapUsed="
+        + RamUsageEstimator.humanReadableUnits(offHeapBytesUsed())
+        + '}';
+  }
+}
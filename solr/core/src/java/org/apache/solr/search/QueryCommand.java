@@ -40,6 +40,7 @@ public class QueryCommand {
   private int minExactCount = Integer.MAX_VALUE;
   private CursorMark cursorMark;
   private boolean enableDistribStats = true;
+  private boolean multiThreaded = false;
 
   public CursorMark getCursorMark() {
     return cursorMark;
@@ -229,4 +230,13 @@ public class QueryCommand {
   public boolean isEnableDistribStats() {
     return enableDistribStats;
   }
+
+  public boolean getMultiThreaded() {
+    return multiThreaded;
+  }
+
+  public QueryCommand setMultiThreaded(boolean multiThreaded) {
+    this.multiThreaded = multiThreaded;
+    return this;
+  }
 }
@@ -0,0 +1,1068 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A compressed, immutable implementation of {@link DocSet} in the style of Roaring bitmaps. The doc
+ * id space is split into blocks of 65536 docs and each non-empty block is stored in whichever
+ * container is smallest for it: a sorted array of the low 16 bits, a 8KB bitmap, or a list of runs.
+ * Good for medium sets that are clustered, e.g. by date, where a {@link BitDocSet} would waste most
+ * of its memory on empty words.
+ *
+ * @see DocSetUtil#compress(DocSet)
+ */
+public class RoaringDocSet extends DocSet {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(RoaringDocSet.class)
+          + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+  static final int BLOCK_SHIFT = 16;
+  static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  static final int BLOCK_WORDS = BLOCK_SIZE >>> 6;
+  // above this many docs in a block, a bitmap is never bigger than an array
+  static final int MAX_ARRAY_SIZE = BLOCK_SIZE >>> 4;
+
+  private final Container[] containers; // indexed by block, null if the block is empty
+  private final int numBits;
+  private final int size;
+
+  private RoaringDocSet(Container[] containers, int numBits) {
+    this.containers = containers;
+    this.numBits = numBits;
+    int size = 0;
+    for (Container c : containers) {
+      if (c != null) size += c.cardinality();
+    }
+    this.size = size;
+  }
+
+  /** Builds a set with the same docs as the given bits. */
+  public static RoaringDocSet fromBitSet(FixedBitSet bits) {
+    final long[] words = bits.getBits();
+    final int numWords = FixedBitSet.bits2words(bits.length());
+    final Container[] containers = new Container[numBlocks(bits.length())];
+    final long[] scratch = new long[BLOCK_WORDS];
+    for (int block = 0; block < containers.length; block++) {
+      final int from = block * BLOCK_WORDS;
+      Arrays.fill(scratch, 0L);
+      System.arraycopy(words, from, scratch, 0, Math.min(BLOCK_WORDS, numWords - from));
+      containers[block] = fromWords(scratch);
+    }
+    return new RoaringDocSet(containers, bits.length());
+  }
+
+  /** Builds a set from docs returned in increasing order. */
+  static RoaringDocSet fromDocs(DocIterator iter, int numBits) {
+    Container[] containers = new Container[numBlocks(numBits)];
+    final long[] scratch = new long[BLOCK_WORDS];
+    int block = -1;
+    while (iter.hasNext()) {
+      final int doc = iter.nextDoc();
+      final int docBlock = doc >>> BLOCK_SHIFT;
+      if (docBlock != block) {
+        if (block >= 0) containers[block] = fromWords(scratch);
+        Arrays.fill(scratch, 0L);
+        block = docBlock;
+        if (block >= containers.length) {
+          containers = Arrays.copyOf(containers, block + 1);
+        }
+      }
+      scratch[(doc >>> 6) & (BLOCK_WORDS - 1)] |= 1L << doc;
+      numBits = Math.max(numBits, doc + 1);
+    }
+    if (block >= 0) containers[block] = fromWords(scratch);
+    return new RoaringDocSet(containers, numBits);
+  }
+
+  /**
+   * Estimates {@link #ramBytesUsed()} of the set {@link #fromBitSet} would build, without building
+   * it.
+   */
+  public static long estimateRamBytesUsed(FixedBitSet bits) {
+    final long[] words = bits.getBits();
+    final int numWords = FixedBitSet.bits2words(bits.length());
+    final int numBlocks = numBlocks(bits.length());
+    long bytes = BASE_RAM_BYTES_USED + (long) numBlocks * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    for (int from = 0; from < numWords; from += BLOCK_WORDS) {
+      final int to = Math.min(from + BLOCK_WORDS, numWords);
+      int cardinality = 0;
+      for (int i = from; i < to; i++) {
+        cardinality += Long.bitCount(words[i]);
+      }
+      if (cardinality > 0) {
+        bytes +=
+            RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+                + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + containerBytes(cardinality, countRuns(words, from, to));
+      }
+    }
+    return bytes;
+  }
+
+  private static int numBlocks(int numBits) {
+    return (numBits + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+  }
+
+  private static int countRuns(long[] words, int from, int to) {
+    int runs = 0;
+    long prevTopBit = 0;
+    for (int i = from; i < to; i++) {
+      final long word = words[i];
+      // a run starts at every set bit whose lower neighbour is clear
+      runs += Long.bitCount(word & ~((word << 1) | prevTopBit));
+      prevTopBit = word >>> 63;
+    }
+    return runs;
+  }
+
+  private static long containerBytes(int cardinality, int runs) {
+    final long runBytes = (long) runs << 2;
+    final long arrayBytes =
+        cardinality <= MAX_ARRAY_SIZE ? (long) cardinality << 1 : Long.MAX_VALUE;
+    return Math.min(Math.min(runBytes, arrayBytes), (long) BLOCK_WORDS << 3);
+  }
+
+  /** Creates the smallest container for the bits of one block, or null if there are none. */
+  private static Container fromWords(long[] words) {
+    int cardinality = 0;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    if (cardinality == 0) {
+      return null;
+    }
+    final int runs = countRuns(words, 0, words.length);
+    final long bytes = containerBytes(cardinality, runs);
+    if (bytes == (long) runs << 2) {
+      return RunContainer.fromWords(words, runs, cardinality);
+    } else if (cardinality <= MAX_ARRAY_SIZE) {
+      return ArrayContainer.fromWords(words, cardinality);
+    } else {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+  }
+
+  /**
+   * Counts the bits in <code>[from, to)</code> of the block whose first word is at <code>offset
+   * </code> in <code>words</code>; words beyond the end of the array count as zero.
+   */
+  private static int rangeCardinality(long[] words, int offset, int from, int to) {
+    if (from >= to) return 0;
+    int startWord = offset + (from >>> 6);
+    int endWord = offset + ((to - 1) >>> 6);
+    if (startWord >= words.length) return 0;
+    final long startMask = -1L << from;
+    long endMask = -1L >>> -to;
+    if (endWord >= words.length) {
+      endWord = words.length - 1;
+      endMask = -1L;
+    }
+    if (startWord == endWord) {
+      return Long.bitCount(words[startWord] & startMask & endMask);
+    }
+    int count = Long.bitCount(words[startWord] & startMask);
+    for (int i = startWord + 1; i < endWord; i++) {
+      count += Long.bitCount(words[i]);
+    }
+    return count + Long.bitCount(words[endWord] & endMask);
+  }
+
+  /** Sets the bits in <code>[from, to)</code>, see {@link #rangeCardinality}. */
+  private static void setRange(long[] words, int offset, int from, int to) {
+    if (from >= to) return;
+    int startWord = offset + (from >>> 6);
+    int endWord = offset + ((to - 1) >>> 6);
+    if (startWord >= words.length) return;
+    final long startMask = -1L << from;
+    long endMask = -1L >>> -to;
+    if (endWord >= words.length) {
+      endWord = words.length - 1;
+      endMask = -1L;
+    }
+    if (startWord == endWord) {
+      words[startWord] |= startMask & endMask;
+      return;
+    }
+    words[startWord] |= startMask;
+    for (int i = startWord + 1; i < endWord; i++) {
+      words[i] = -1L;
+    }
+    words[endWord] |= endMask;
+  }
+
+  private static long word(long[] words, int index) {
+    return index < words.length ? words[index] : 0L;
+  }
+
+  private static long[] wordsOf(Container c) {
+    return c instanceof BitmapContainer ? ((BitmapContainer) c).words : c.toWords();
+  }
+
+  private static int intersectionCount(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).countIn(b);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).countIn(a);
+    } else if (a instanceof RunContainer) {
+      return ((RunContainer) a).countIn(b);
+    } else if (b instanceof RunContainer) {
+      return ((RunContainer) b).countIn(a);
+    }
+    return a.countIn(((BitmapContainer) b).words, 0);
+  }
+
+  private static Container and(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).filter(b, true);
+    } else if (b instanceof ArrayContainer) {
+      return ((ArrayContainer) b).filter(a, true);
+    }
+    final long[] words = a.toWords();
+    final long[] other = wordsOf(b);
+    for (int i = 0; i < BLOCK_WORDS; i++) {
+      words[i] &= other[i];
+    }
+    return fromWords(words);
+  }
+
+  private static Container andNot(Container a, Container b) {
+    if (a instanceof ArrayContainer) {
+      return ((ArrayContainer) a).filter(b, false);
+    }
+    final long[] words = a.toWords();
+    final long[] other = wordsOf(b);
+    for (int i = 0; i < BLOCK_WORDS; i++) {
+      words[i] &= ~other[i];
+    }
+    return fromWords(words);
+  }
+
+  private static Container or(Container a, Container b) {
+    if (a == null) return b;
+    if (b == null) return a;
+    final long[] words = a.toWords();
+    b.orInto(words, 0);
+    return fromWords(words);
+  }
+
+  /** The words of a bitset based set, or null if other is not one. */
+  private static long[] bitsetWords(DocSet other) {
+    if (other instanceof BitDocSet || other instanceof OffHeapBitDocSet) {
+      return other.getFixedBitSet().getBits();
+    }
+    return null;
+  }
+
+  private RoaringDocSet toRoaring(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      return (RoaringDocSet) other;
+    }
+    return fromDocs(other.iterator(), numBits);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean exists(int doc) {
+    final int block = doc >>> BLOCK_SHIFT;
+    if (block >= containers.length) return false;
+    final Container c = containers[block];
+    return c != null && c.contains(doc & (BLOCK_SIZE - 1));
+  }
+
+  @Override
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final RangeIterator iter = new RangeIterator(0, Integer.MAX_VALUE, 0);
+      private int pos = iter.nextDoc();
+
+      @Override
+      public boolean hasNext() {
+        return pos != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      @Override
+      public Integer next() {
+        return nextDoc();
+      }
+
+      @Override
+      public int nextDoc() {
+        int old = pos;
+        pos = iter.nextDoc();
+        return old;
+      }
+
+      @Override
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public DocIdSetIterator iterator(LeafReaderContext context) {
+    final int maxDoc = context.reader().maxDoc();
+    if (size == 0 || maxDoc < 1) {
+      // empty docset or entirely empty segment
+      return null;
+    }
+    final int base = context.docBase;
+    return new RangeIterator(base, base + maxDoc, base);
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      // it only calls us back with exists()
+      return other.intersection(this);
+    }
+    final Container[] result = new Container[containers.length];
+    if (other instanceof RoaringDocSet) {
+      final Container[] otherContainers = ((RoaringDocSet) other).containers;
+      final int n = Math.min(containers.length, otherContainers.length);
+      for (int block = 0; block < n; block++) {
+        if (containers[block] != null && otherContainers[block] != null) {
+          result[block] = and(containers[block], otherContainers[block]);
+        }
+      }
+    } else {
+      final long[] otherWords = bitsetWords(other);
+      if (otherWords == null) {
+        return other.intersection(this);
+      }
+      for (int block = 0; block < containers.length; block++) {
+        final Container c = containers[block];
+        if (c != null) {
+          result[block] = c.andWords(otherWords, block * BLOCK_WORDS);
+        }
+      }
+    }
+    return new RoaringDocSet(result, numBits);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      // it only calls us back with exists()
+      return other.intersectionSize(this);
+    }
+    int count = 0;
+    if (other instanceof RoaringDocSet) {
+      final Container[] otherContainers = ((RoaringDocSet) other).containers;
+      final int n = Math.min(containers.length, otherContainers.length);
+      for (int block = 0; block < n; block++) {
+        if (containers[block] != null && otherContainers[block] != null) {
+          count += intersectionCount(containers[block], otherContainers[block]);
+        }
+      }
+    } else {
+      final long[] otherWords = bitsetWords(other);
+      if (otherWords == null) {
+        // they had better not call us back!
+        return other.intersectionSize(this);
+      }
+      for (int block = 0; block < containers.length; block++) {
+        if (containers[block] != null) {
+          count += containers[block].countIn(otherWords, block * BLOCK_WORDS);
+        }
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof SortedIntDocSet) {
+      return other.intersects(this);
+    }
+    if (other instanceof RoaringDocSet) {
+      final Container[] otherContainers = ((RoaringDocSet) other).containers;
+      final int n = Math.min(containers.length, otherContainers.length);
+      for (int block = 0; block < n; block++) {
+        if (containers[block] != null
+            && otherContainers[block] != null
+            && intersectionCount(containers[block], otherContainers[block]) > 0) {
+          return true;
+        }
+      }
+    } else {
+      final long[] otherWords = bitsetWords(other);
+      if (otherWords == null) {
+        // they had better not call us back!
+        return other.intersects(this);
+      }
+      for (int block = 0; block < containers.length; block++) {
+        if (containers[block] != null
+            && containers[block].countIn(otherWords, block * BLOCK_WORDS) > 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof RoaringDocSet || other instanceof SortedIntDocSet) {
+      final RoaringDocSet o = toRoaring(other);
+      final Container[] result =
+          Arrays.copyOf(containers, Math.max(containers.length, o.containers.length));
+      for (int block = 0; block < o.containers.length; block++) {
+        result[block] = or(result[block], o.containers[block]);
+      }
+      return new RoaringDocSet(result, Math.max(numBits, o.numBits));
+    }
+    FixedBitSet otherBits = other.getFixedBitSet();
+    FixedBitSet newbits = FixedBitSet.ensureCapacity(getFixedBitSetClone(), otherBits.length());
+    newbits.or(otherBits);
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    if (other.size() == 0) return this;
+
+    final Container[] result = new Container[containers.length];
+    final long[] otherWords = bitsetWords(other);
+    if (otherWords != null) {
+      for (int block = 0; block < containers.length; block++) {
+        final Container c = containers[block];
+        if (c != null) {
+          result[block] = c.andNotWords(otherWords, block * BLOCK_WORDS);
+        }
+      }
+    } else {
+      final Container[] otherContainers = toRoaring(other).containers;
+      for (int block = 0; block < containers.length; block++) {
+        final Container c = containers[block];
+        if (c == null) continue;
+        final Container o = block < otherContainers.length ? otherContainers[block] : null;
+        result[block] = o == null ? c : andNot(c, o);
+      }
+    }
+    return new RoaringDocSet(result, numBits);
+  }
+
+  @Override
+  public DocSetQuery makeQuery() {
+    return new DocSetQuery(this);
+  }
+
+  @Override
+  public void addAllTo(FixedBitSet target) {
+    final long[] words = target.getBits();
+    for (int block = 0; block < containers.length; block++) {
+      if (containers[block] != null) {
+        containers[block].orInto(words, block * BLOCK_WORDS);
+      }
+    }
+  }
+
+  /** The containers are immutable, so the clone shares them. */
+  @Override
+  public RoaringDocSet clone() {
+    return new RoaringDocSet(containers, numBits);
+  }
+
+  @Override
+  public Bits getBits() {
+    return new Bits() {
+      @Override
+      public boolean get(int index) {
+        return exists(index);
+      }
+
+      @Override
+      public int length() {
+        return numBits;
+      }
+    };
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSet() {
+    return getFixedBitSetClone();
+  }
+
+  @Override
+  protected FixedBitSet getFixedBitSetClone() {
+    FixedBitSet bits = new FixedBitSet(numBits);
+    addAllTo(bits);
+    return bits;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long bytes =
+        BASE_RAM_BYTES_USED + (long) containers.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    for (Container c : containers) {
+      if (c != null) bytes += c.ramBytesUsed();
+    }
+    return bytes;
+  }
+
+  @Override
+  public Collection<Accountable> getChildResources() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public String toString() {
+    return "RoaringDocSet{"
+        + "size="
+        + size()
+        + ",ramUsed="
+        + RamUsageEstimator.humanReadableUnits(ramBytesUsed())
+        + '}';
+  }
+
+  /** Iterates the docs in <code>[from, to)</code>, returning them relative to <code>base</code>. */
+  private class RangeIterator extends BlockIterator {
+    private final int from;
+    private final int to;
+    private final int base;
+    private int block = -1;
+    private BlockIterator blockIterator;
+    private int doc = -1;
+
+    RangeIterator(int from, int to, int base) {
+      this.from = from;
+      this.to = to;
+      this.base = base;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      if (doc == NO_MORE_DOCS) {
+        return NO_MORE_DOCS;
+      } else if (blockIterator == null) {
+        return advanceToBlock(from >>> BLOCK_SHIFT, from & (BLOCK_SIZE - 1));
+      }
+      final int low = blockIterator.nextDoc();
+      if (low != NO_MORE_DOCS) {
+        return found(low);
+      }
+      return advanceToBlock(block + 1, 0);
+    }
+
+    @Override
+    public int advance(int target) {
+      if (doc == NO_MORE_DOCS || target >= to - base) {
+        return doc = NO_MORE_DOCS;
+      }
+      final int adjusted = Math.max(target + base, from);
+      final int targetBlock = adjusted >>> BLOCK_SHIFT;
+      if (targetBlock == block && blockIterator != null) {
+        final int low = blockIterator.advance(adjusted & (BLOCK_SIZE - 1));
+        if (low != NO_MORE_DOCS) {
+          return found(low);
+        }
+        return advanceToBlock(block + 1, 0);
+      }
+      return advanceToBlock(targetBlock, adjusted & (BLOCK_SIZE - 1));
+    }
+
+    private int advanceToBlock(int b, int low) {
+      for (; b < containers.length && ((long) b << BLOCK_SHIFT) < to; b++, low = 0) {
+        final Container c = containers[b];
+        if (c == null) continue;
+        block = b;
+        blockIterator = c.iterator();
+        final int found = low == 0 ? blockIterator.nextDoc() : blockIterator.advance(low);
+        if (found != NO_MORE_DOCS) {
+          return found(found);
+        }
+      }
+      return doc = NO_MORE_DOCS;
+    }
+
+    private int found(int low) {
+      final int absolute = (block << BLOCK_SHIFT) | low;
+      return doc = absolute < to ? absolute - base : NO_MORE_DOCS;
+    }
+
+    @Override
+    public long cost() {
+      // pro-rate the size for the range
+      if (to - from >= numBits) return size;
+      return (long) (size * ((to - from) / (float) Math.max(numBits, 1)));
+    }
+  }
+
+  /** A {@link DocIdSetIterator} that doesn't do any I/O. */
+  private abstract static class BlockIterator extends DocIdSetIterator {
+    @Override
+    public abstract int nextDoc();
+
+    @Override
+    public abstract int advance(int target);
+  }
+
+  /** The docs of one block; values are the low 16 bits of the doc ids. */
+  private abstract static class Container {
+    abstract int cardinality();
+
+    abstract boolean contains(int value);
+
+    /** The number of values in <code>[from, to)</code>. */
+    abstract int rangeCardinality(int from, int to);
+
+    /** The number of values whose bits are set in the block at <code>offset</code> in words. */
+    abstract int countIn(long[] words, int offset);
+
+    /** Sets our bits in the block at <code>offset</code> in words. */
+    abstract void orInto(long[] words, int offset);
+
+    /** Our values that are set in the block at <code>offset</code> in words. */
+    Container andWords(long[] words, int offset) {
+      final long[] result = toWords();
+      for (int i = 0; i < BLOCK_WORDS; i++) {
+        result[i] &= word(words, offset + i);
+      }
+      return fromWords(result);
+    }
+
+    /** Our values that are not set in the block at <code>offset</code> in words. */
+    Container andNotWords(long[] words, int offset) {
+      final long[] result = toWords();
+      for (int i = 0; i < BLOCK_WORDS; i++) {
+        result[i] &= ~word(words, offset + i);
+      }
+      return fromWords(result);
+    }
+
+    abstract BlockIterator iterator();
+
+    abstract long ramBytesUsed();
+
+    long[] toWords() {
+      final long[] words = new long[BLOCK_WORDS];
+      orInto(words, 0);
+      return words;
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(ArrayContainer.class);
+
+    private final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    static ArrayContainer fromWords(long[] words, int cardinality) {
+      final char[] values = new char[cardinality];
+      int pos = 0;
+      for (int i = 0; i < words.length; i++) {
+        long word = words[i];
+        while (word != 0) {
+          values[pos++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+
+    /** The index of the first value &gt;= target, starting at <code>fromIndex</code>. */
+    private int lowerBound(int fromIndex, int target) {
+      int low = fromIndex;
+      int high = values.length - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (values[mid] < target) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(int value) {
+      final int idx = lowerBound(0, value);
+      return idx < values.length && values[idx] == value;
+    }
+
+    @Override
+    int rangeCardinality(int from, int to) {
+      return from >= to ? 0 : lowerBound(0, to) - lowerBound(0, from);
+    }
+
+    int countIn(Container other) {
+      int count = 0;
+      for (char value : values) {
+        if (other.contains(value)) count++;
+      }
+      return count;
+    }
+
+    @Override
+    int countIn(long[] words, int offset) {
+      int count = 0;
+      for (char value : values) {
+        if ((word(words, offset + (value >>> 6)) & (1L << value)) != 0) count++;
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      for (char value : values) {
+        final int idx = offset + (value >>> 6);
+        if (idx >= words.length) break;
+        words[idx] |= 1L << value;
+      }
+    }
+
+    /** The values that are (or, if not keep, are not) in the other container. */
+    Container filter(Container other, boolean keep) {
+      final char[] result = new char[values.length];
+      int count = 0;
+      for (char value : values) {
+        if (other.contains(value) == keep) result[count++] = value;
+      }
+      return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    @Override
+    Container andWords(long[] words, int offset) {
+      return filterWords(words, offset, true);
+    }
+
+    @Override
+    Container andNotWords(long[] words, int offset) {
+      return filterWords(words, offset, false);
+    }
+
+    private Container filterWords(long[] words, int offset, boolean keep) {
+      final char[] result = new char[values.length];
+      int count = 0;
+      for (char value : values) {
+        final boolean set = (word(words, offset + (value >>> 6)) & (1L << value)) != 0;
+        if (set == keep) result[count++] = value;
+      }
+      return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    @Override
+    BlockIterator iterator() {
+      return new BlockIterator() {
+        int idx = -1;
+        int doc = -1;
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+          return doc = ++idx < values.length ? values[idx] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int advance(int target) {
+          idx = lowerBound(idx + 1, target);
+          return doc = idx < values.length ? values[idx] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+          return values.length;
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(values);
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(BitmapContainer.class)
+            + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+            + ((long) BLOCK_WORDS << 3);
+
+    private final long[] words;
+    private final int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      assert words.length == BLOCK_WORDS;
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int rangeCardinality(int from, int to) {
+      return RoaringDocSet.rangeCardinality(words, 0, from, to);
+    }
+
+    @Override
+    int countIn(long[] other, int offset) {
+      int count = 0;
+      final int n = Math.min(BLOCK_WORDS, other.length - offset);
+      for (int i = 0; i < n; i++) {
+        count += Long.bitCount(words[i] & other[offset + i]);
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] other, int offset) {
+      final int n = Math.min(BLOCK_WORDS, other.length - offset);
+      for (int i = 0; i < n; i++) {
+        other[offset + i] |= words[i];
+      }
+    }
+
+    @Override
+    BlockIterator iterator() {
+      final FixedBitSet bits = new FixedBitSet(words, BLOCK_SIZE);
+      return new BlockIterator() {
+        int doc = -1;
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+          return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+          return doc = target < BLOCK_SIZE ? bits.nextSetBit(target) : NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+          return cardinality;
+        }
+      };
+    }
+
+    @Override
+    long[] toWords() {
+      return words.clone();
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED;
+    }
+  }
+
+  private static final class RunContainer extends Container {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(RunContainer.class);
+
+    // pairs of (first value, last value) of each run, in increasing order
+    private final char[] runs;
+    private final int cardinality;
+
+    RunContainer(char[] runs, int cardinality) {
+      this.runs = runs;
+      this.cardinality = cardinality;
+    }
+
+    static RunContainer fromWords(long[] words, int numRuns, int cardinality) {
+      final char[] runs = new char[numRuns << 1];
+      int pos = 0;
+      int value = nextSetBit(words, 0);
+      while (value < BLOCK_SIZE) {
+        final int end = nextClearBit(words, value);
+        runs[pos++] = (char) value;
+        runs[pos++] = (char) (end - 1);
+        value = end < BLOCK_SIZE ? nextSetBit(words, end) : BLOCK_SIZE;
+      }
+      assert pos == runs.length;
+      return new RunContainer(runs, cardinality);
+    }
+
+    private static int nextSetBit(long[] words, int index) {
+      int i = index >>> 6;
+      long word = words[i] & (-1L << index);
+      while (word == 0) {
+        if (++i == words.length) return BLOCK_SIZE;
+        word = words[i];
+      }
+      return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private static int nextClearBit(long[] words, int index) {
+      int i = index >>> 6;
+      long word = ~words[i] & (-1L << index);
+      while (word == 0) {
+        if (++i == words.length) return BLOCK_SIZE;
+        word = ~words[i];
+      }
+      return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private int numRuns() {
+      return runs.length >>> 1;
+    }
+
+    private int start(int run) {
+      return runs[run << 1];
+    }
+
+    private int last(int run) {
+      return runs[(run << 1) + 1];
+    }
+
+    /** The index of the first run whose last value is &gt;= target, starting at fromRun. */
+    private int findRun(int fromRun, int target) {
+      int low = fromRun;
+      int high = numRuns() - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (last(mid) < target) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      final int run = findRun(0, value);
+      return run < numRuns() && start(run) <= value;
+    }
+
+    @Override
+    int rangeCardinality(int from, int to) {
+      int count = 0;
+      for (int run = findRun(0, from); run < numRuns() && start(run) < to; run++) {
+        count += Math.min(last(run) + 1, to) - Math.max(start(run), from);
+      }
+      return count;
+    }
+
+    int countIn(Container other) {
+      int count = 0;
+      for (int run = 0; run < numRuns(); run++) {
+        count += other.rangeCardinality(start(run), last(run) + 1);
+      }
+      return count;
+    }
+
+    @Override
+    int countIn(long[] words, int offset) {
+      int count = 0;
+      for (int run = 0; run < numRuns(); run++) {
+        count += RoaringDocSet.rangeCardinality(words, offset, start(run), last(run) + 1);
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] words, int offset) {
+      for (int run = 0; run < numRuns(); run++) {
+        setRange(words, offset, start(run), last(run) + 1);
+      }
+    }
+
+    @Override
+    BlockIterator iterator() {
+      return new BlockIterator() {
+        int run = 0;
+        int doc = -1;
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+          if (doc >= 0 && doc < last(run)) {
+            return ++doc; // still within the current run
+          }
+          return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+          run = findRun(run, target);
+          if (run >= numRuns()) {
+            return doc = NO_MORE_DOCS;
+          }
+          return doc = Math.max(start(run), target);
+        }
+
+        @Override
+        public long cost() {
+          return cardinality;
+        }
+      };
+    }
+
+    @Override
+    long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(runs);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A hash key for the matches of a filter query in a single segment, as held by the
+ * segmentFilterCache. Segments are identified by their core cache key, which doesn't change when
+ * documents in the segment are deleted, so the cached matches ignore deletions.
+ */
+public final class SegmentFilterKey implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(SegmentFilterKey.class);
+
+  final IndexReader.CacheKey segmentKey;
+  final Query query;
+  private final int hc; // cached hashCode
+
+  public SegmentFilterKey(IndexReader.CacheKey segmentKey, Query query) {
+    this.segmentKey = segmentKey;
+    this.query = query;
+    this.hc = 31 * segmentKey.hashCode() + query.hashCode();
+  }
+
+  public IndexReader.CacheKey getSegmentKey() {
+    return segmentKey;
+  }
+
+  public Query getQuery() {
+    return query;
+  }
+
+  @Override
+  public int hashCode() {
+    return hc;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SegmentFilterKey)) return false;
+    SegmentFilterKey other = (SegmentFilterKey) o;
+    return hc == other.hc && segmentKey == other.segmentKey && query.equals(other.query);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED
+        + RamUsageEstimator.sizeOfObject(query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentFilterKey{segment=" + segmentKey + ", query=" + query + '}';
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.Objects;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * What a join computed for a single segment, as held by the joinCache: for a segment of the "from"
+ * index the terms of the documents matching the "from" query, and for a segment of the "to" index
+ * the documents having any of the terms of all "from" segments.
+ */
+public final class SegmentJoinResult implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(SegmentJoinResult.class);
+
+  static final BytesRef[] NO_TERMS = new BytesRef[0];
+
+  private final BytesRef[] terms;
+  private final DocIdSet docs;
+  private final long ramBytesUsed;
+
+  private SegmentJoinResult(BytesRef[] terms, DocIdSet docs) {
+    this.terms = terms;
+    this.docs = docs;
+    long ram = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(terms);
+    if (docs == null) {
+      for (BytesRef term : terms) {
+        ram += RamUsageEstimator.sizeOf(term.bytes) + RamUsageEstimator.shallowSizeOf(term);
+      }
+    } else {
+      // the terms are shared by the results of all segments of the "to" index
+      ram += docs.ramBytesUsed();
+    }
+    this.ramBytesUsed = ram;
+  }
+
+  /** The sorted, distinct terms that the matches of the "from" query have in the segment. */
+  static SegmentJoinResult ofTerms(BytesRef[] terms) {
+    return new SegmentJoinResult(terms, null);
+  }
+
+  /** The live documents of the segment that have any of the given sorted "from" terms. */
+  static SegmentJoinResult ofDocs(BytesRef[] terms, DocIdSet docs) {
+    return new SegmentJoinResult(terms, docs);
+  }
+
+  BytesRef[] getTerms() {
+    return terms;
+  }
+
+  DocIdSet getDocs() {
+    return docs;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /**
+   * A hash key for the result of a join in a single segment. Segments are identified by their
+   * reader cache key, which changes whenever documents in the segment are deleted or updated. Keys
+   * of segments of the "from" index have no <code>toField</code>.
+   */
+  public static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final IndexReader.CacheKey segmentKey;
+    final String fromIndex;
+    final String fromField;
+    final String toField;
+    final Query fromQuery;
+    private final int hc; // cached hashCode
+
+    public Key(
+        IndexReader.CacheKey segmentKey,
+        String fromIndex,
+        String fromField,
+        String toField,
+        Query fromQuery) {
+      this.segmentKey = segmentKey;
+      this.fromIndex = fromIndex;
+      this.fromField = fromField;
+      this.toField = toField;
+      this.fromQuery = fromQuery;
+      int h = segmentKey.hashCode();
+      h = h * 31 + Objects.hashCode(fromIndex);
+      h = h * 31 + fromField.hashCode();
+      h = h * 31 + Objects.hashCode(toField);
+      h = h * 31 + fromQuery.hashCode();
+      this.hc = h;
+    }
+
+    public IndexReader.CacheKey getSegmentKey() {
+      return segmentKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return hc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hc == other.hc
+          && segmentKey == other.segmentKey
+          && Objects.equals(fromIndex, other.fromIndex)
+          && fromField.equals(other.fromField)
+          && Objects.equals(toField, other.toField)
+          && fromQuery.equals(other.fromQuery);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED
+          + RamUsageEstimator.sizeOfObject(
+              fromQuery, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED);
+    }
+
+    @Override
+    public String toString() {
+      return "SegmentJoinResult.Key{segment="
+          + segmentKey
+          + ", fromIndex="
+          + fromIndex
+          + ", from="
+          + fromField
+          + ", to="
+          + toField
+          + ", query="
+          + fromQuery
+          + '}';
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * The top documents of a sorted query in a single segment, as held by the segmentQueryResultCache.
+ * Document ids are relative to the segment, and the sort values are kept so the results of several
+ * segments can be merged.
+ */
+public final class SegmentQueryResult implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(SegmentQueryResult.class)
+          + RamUsageEstimator.shallowSizeOfInstance(TopFieldDocs.class);
+  private static final long FIELD_DOC_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(FieldDoc.class);
+
+  private final TopFieldDocs topDocs;
+  private final long ramBytesUsed;
+
+  public SegmentQueryResult(TopFieldDocs topDocs) {
+    this.topDocs = topDocs;
+    long ram = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(topDocs.scoreDocs);
+    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      ram +=
+          FIELD_DOC_RAM_BYTES_USED + RamUsageEstimator.sizeOfObject(((FieldDoc) scoreDoc).fields);
+    }
+    this.ramBytesUsed = ram;
+  }
+
+  /** Returns true if this holds at least the top <code>n</code> documents of the segment. */
+  public boolean covers(int n) {
+    return topDocs.scoreDocs.length >= n || topDocs.scoreDocs.length == topDocs.totalHits.value;
+  }
+
+  /** The number of matching documents in the segment. */
+  public long getMatches() {
+    return topDocs.totalHits.value;
+  }
+
+  /**
+   * Returns a copy of the top documents with ids made relative to the whole index, for merging.
+   *
+   * @param docBase the segment's first document id in the index
+   * @param shardIndex the position of the segment, used to break ties when merging
+   */
+  TopFieldDocs rebase(int docBase, int shardIndex) {
+    ScoreDoc[] scoreDocs = new ScoreDoc[topDocs.scoreDocs.length];
+    for (int i = 0; i < scoreDocs.length; i++) {
+      FieldDoc doc = (FieldDoc) topDocs.scoreDocs[i];
+      scoreDocs[i] = new FieldDoc(doc.doc + docBase, doc.score, doc.fields, shardIndex);
+    }
+    return new TopFieldDocs(topDocs.totalHits, scoreDocs, topDocs.fields);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /**
+   * A hash key for the results of a query in a single segment. Segments are identified by their
+   * reader cache key, which changes whenever documents in the segment are deleted or updated.
+   */
+  public static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    final IndexReader.CacheKey segmentKey;
+    final QueryResultKey resultKey;
+    private final int hc; // cached hashCode
+
+    public Key(IndexReader.CacheKey segmentKey, QueryResultKey resultKey) {
+      this.segmentKey = segmentKey;
+      this.resultKey = resultKey;
+      this.hc = 31 * segmentKey.hashCode() + resultKey.hashCode();
+    }
+
+    public IndexReader.CacheKey getSegmentKey() {
+      return segmentKey;
+    }
+
+    @Override
+    public int hashCode() {
+      return hc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hc == other.hc && segmentKey == other.segmentKey && resultKey.equals(other.resultKey);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + resultKey.ramBytesUsed();
+    }
+  }
+}
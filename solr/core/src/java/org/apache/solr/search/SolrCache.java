@@ -17,6 +17,8 @@
 package org.apache.solr.search;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import org.apache.solr.core.SolrInfoBean;
@@ -38,6 +40,16 @@ public interface SolrCache<K, V> extends SolrInfoBean {
   String INITIAL_SIZE_PARAM = "initialSize";
   String CLEANUP_THREAD_PARAM = "cleanupThread";
   String ASYNC_PARAM = "async";
+  String OFF_HEAP_PARAM = "offHeap";
+  String OFF_HEAP_BYTES_USED_PARAM = "offHeapBytesUsed";
+  String ADMISSION_POLICY_PARAM = "admissionPolicy";
+  String ADMISSIONS_PARAM = "admissions";
+  String REJECTIONS_PARAM = "rejections";
+  String AUTOWARM_THREADS_PARAM = "autowarmThreads";
+  String AUTOWARM_TIME_MS_PARAM = "autowarmTimeMs";
+  String WARMUP_ITEMS_PARAM = "warmupItems";
+  String WARMUP_ITEMS_DONE_PARAM = "warmupItemsDone";
+  String WARMUP_ITEMS_SKIPPED_PARAM = "warmupItemsSkipped";
 
   /**
    * The initialization routine. Instance specific arguments are passed in the <code>args</code>
@@ -160,6 +172,22 @@ public interface SolrCache<K, V> extends SolrInfoBean {
     SolrInfoBean.super.close();
   }
 
+  /**
+   * Set the policy that decides which newly computed values are inserted into a live cache. Note:
+   * this has effect only on implementations that support it, it's a no-op otherwise.
+   */
+  default void setAdmissionPolicy(CacheAdmissionPolicy admissionPolicy) {
+    // no-op
+  }
+
+  /**
+   * Returns up to <code>n</code> keys of this cache, the hottest first. Note: implementations that
+   * don't track hotness return an empty list.
+   */
+  default List<K> getHottestKeys(int n) {
+    return Collections.emptyList();
+  }
+
   /** Returns maximum size limit (number of items) if set and supported, -1 otherwise. */
   int getMaxSize();
 
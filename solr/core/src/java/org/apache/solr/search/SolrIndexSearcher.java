@@ -53,8 +53,10 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.CollectionStatistics;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.FieldDoc;
@@ -66,6 +68,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
@@ -84,9 +87,11 @@ import org.apache.lucene.search.TotalHits.Relation;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BitDocIdSet;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RoaringDocIdSet;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
 import org.apache.solr.common.params.ModifiableSolrParams;
@@ -107,6 +112,8 @@ import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.facet.CachedFacetResult;
+import org.apache.solr.search.facet.FacetModule;
 import org.apache.solr.search.facet.UnInvertedField;
 import org.apache.solr.search.stats.StatsCache;
 import org.apache.solr.search.stats.StatsSource;
@@ -153,11 +160,16 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
   private final int queryResultWindowSize;
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
+  private final boolean compressDocSets;
 
   private final boolean cachingEnabled;
   private final SolrCache<Query, DocSet> filterCache;
   private final SolrCache<QueryResultKey, DocList> queryResultCache;
   private final SolrCache<String, UnInvertedField> fieldValueCache;
+  private final SolrCache<SegmentFilterKey, DocIdSet> segmentFilterCache;
+  private final SolrCache<SegmentQueryResult.Key, SegmentQueryResult> segmentQueryResultCache;
+  private final SolrCache<CachedFacetResult.Key, CachedFacetResult> facetCache;
+  private final SolrCache<SegmentJoinResult.Key, SegmentJoinResult> joinCache;
   private final LongAdder fullSortCount = new LongAdder();
   private final LongAdder skipSortCount = new LongAdder();
   private final LongAdder liveDocsNaiveCacheHitCount = new LongAdder();
@@ -335,7 +347,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       boolean reserveDirectory,
       DirectoryFactory directoryFactory)
       throws IOException {
-    super(wrapReader(core, r));
+    super(wrapReader(core, r), core.getCoreContainer().getCollectorExecutor());
 
     this.path = path;
     this.directoryFactory = directoryFactory;
@@ -374,6 +386,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     this.queryResultWindowSize = solrConfig.queryResultWindowSize;
     this.queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     this.useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
+    this.compressDocSets = solrConfig.compressDocSets;
 
     this.docFetcher = new SolrDocumentFetcher(this, solrConfig, enableCache);
 
@@ -385,14 +398,34 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
               ? null
               : solrConfig.fieldValueCacheConfig.newInstance();
       if (fieldValueCache != null) clist.add(fieldValueCache);
+      // must be warmed before the filterCache, which is regenerated from it
+      segmentFilterCache =
+          solrConfig.segmentFilterCacheConfig == null
+              ? null
+              : solrConfig.segmentFilterCacheConfig.newInstance();
+      if (segmentFilterCache != null) clist.add(segmentFilterCache);
+      // must be warmed before the filterCache, whose joins are computed from it
+      joinCache =
+          solrConfig.joinCacheConfig == null ? null : solrConfig.joinCacheConfig.newInstance();
+      if (joinCache != null) clist.add(joinCache);
       filterCache =
           solrConfig.filterCacheConfig == null ? null : solrConfig.filterCacheConfig.newInstance();
       if (filterCache != null) clist.add(filterCache);
+      // must be warmed before the queryResultCache, which is regenerated from it
+      segmentQueryResultCache =
+          solrConfig.segmentQueryResultCacheConfig == null
+              ? null
+              : solrConfig.segmentQueryResultCacheConfig.newInstance();
+      if (segmentQueryResultCache != null) clist.add(segmentQueryResultCache);
       queryResultCache =
           solrConfig.queryResultCacheConfig == null
               ? null
               : solrConfig.queryResultCacheConfig.newInstance();
       if (queryResultCache != null) clist.add(queryResultCache);
+      // regenerated from the domains in the filterCache
+      facetCache =
+          solrConfig.facetCacheConfig == null ? null : solrConfig.facetCacheConfig.newInstance();
+      if (facetCache != null) clist.add(facetCache);
       SolrCache<Integer, Document> documentCache = docFetcher.getDocumentCache();
       if (documentCache != null) clist.add(documentCache);
 
@@ -414,6 +447,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       this.filterCache = null;
       this.queryResultCache = null;
       this.fieldValueCache = null;
+      this.segmentFilterCache = null;
+      this.segmentQueryResultCache = null;
+      this.facetCache = null;
+      this.joinCache = null;
       this.cacheMap = NO_GENERIC_CACHES;
       this.cacheList = NO_CACHES;
     }
@@ -620,6 +657,30 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return filterCache;
   }
 
+  public SolrCache<QueryResultKey, DocList> getQueryResultCache() {
+    return queryResultCache;
+  }
+
+  /** The per-segment top documents of sorted queries, which survive commits. */
+  public SolrCache<SegmentQueryResult.Key, SegmentQueryResult> getSegmentQueryResultCache() {
+    return segmentQueryResultCache;
+  }
+
+  /** The JSON facets of requests, keyed by their domain and facet commands. */
+  public SolrCache<CachedFacetResult.Key, CachedFacetResult> getFacetCache() {
+    return facetCache;
+  }
+
+  /** The per-segment results of joins, which like the segmentFilterCache survive commits. */
+  public SolrCache<SegmentJoinResult.Key, SegmentJoinResult> getJoinCache() {
+    return joinCache;
+  }
+
+  /** The per-segment matches of filters, which unlike the filterCache survive commits. */
+  public SolrCache<SegmentFilterKey, DocIdSet> getSegmentFilterCache() {
+    return segmentFilterCache;
+  }
+
   //
   // Set default regenerators on filter and query caches if they don't have any
   //
@@ -644,6 +705,68 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
           });
     }
 
+    if (solrConfig.segmentFilterCacheConfig != null
+        && solrConfig.segmentFilterCacheConfig.getRegenerator() == null) {
+      solrConfig.segmentFilterCacheConfig.setRegenerator(
+          new CacheRegenerator() {
+            @Override
+            public <K, V> boolean regenerateItem(
+                SolrIndexSearcher newSearcher,
+                SolrCache<K, V> newCache,
+                SolrCache<K, V> oldCache,
+                K oldKey,
+                V oldVal)
+                throws IOException {
+              // the matches in segments that are still part of the index haven't changed
+              if (newSearcher.hasSegment(((SegmentFilterKey) oldKey).getSegmentKey())) {
+                newCache.put(oldKey, oldVal);
+              }
+              return true;
+            }
+          });
+    }
+
+    if (solrConfig.segmentQueryResultCacheConfig != null
+        && solrConfig.segmentQueryResultCacheConfig.getRegenerator() == null) {
+      solrConfig.segmentQueryResultCacheConfig.setRegenerator(
+          new CacheRegenerator() {
+            @Override
+            public <K, V> boolean regenerateItem(
+                SolrIndexSearcher newSearcher,
+                SolrCache<K, V> newCache,
+                SolrCache<K, V> oldCache,
+                K oldKey,
+                V oldVal)
+                throws IOException {
+              // segments that are still part of the index have neither new documents nor deletes
+              if (newSearcher.hasSegment(((SegmentQueryResult.Key) oldKey).getSegmentKey())) {
+                newCache.put(oldKey, oldVal);
+              }
+              return true;
+            }
+          });
+    }
+
+    if (solrConfig.joinCacheConfig != null && solrConfig.joinCacheConfig.getRegenerator() == null) {
+      solrConfig.joinCacheConfig.setRegenerator(
+          new CacheRegenerator() {
+            @Override
+            public <K, V> boolean regenerateItem(
+                SolrIndexSearcher newSearcher,
+                SolrCache<K, V> newCache,
+                SolrCache<K, V> oldCache,
+                K oldKey,
+                V oldVal)
+                throws IOException {
+              // segments that are still part of the index have neither new documents nor deletes
+              if (newSearcher.hasSegment(((SegmentJoinResult.Key) oldKey).getSegmentKey())) {
+                newCache.put(oldKey, oldVal);
+              }
+              return true;
+            }
+          });
+    }
+
     if (solrConfig.filterCacheConfig != null
         && solrConfig.filterCacheConfig.getRegenerator() == null) {
       solrConfig.filterCacheConfig.setRegenerator(
@@ -704,6 +827,28 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
             }
           });
     }
+
+    if (solrConfig.facetCacheConfig != null
+        && solrConfig.facetCacheConfig.getRegenerator() == null) {
+      solrConfig.facetCacheConfig.setRegenerator(
+          new CacheRegenerator() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> boolean regenerateItem(
+                SolrIndexSearcher newSearcher,
+                SolrCache<K, V> newCache,
+                SolrCache<K, V> oldCache,
+                K oldKey,
+                V oldVal)
+                throws IOException {
+              FacetModule.regenerate(
+                  newSearcher,
+                  (SolrCache<CachedFacetResult.Key, CachedFacetResult>) newCache,
+                  (CachedFacetResult.Key) oldKey);
+              return true;
+            }
+          });
+    }
   }
 
   public QueryResult search(QueryResult qr, QueryCommand cmd) throws IOException {
@@ -892,7 +1037,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     // or OS disk cache.
     if (optionalAnswer != null) {
       if (filterCache != null) {
-        filterCache.put(query, optionalAnswer);
+        filterCache.put(query, toCachedDocSet(optionalAnswer));
       }
       return;
     }
@@ -905,6 +1050,16 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     getDocSet(query);
   }
 
+  /**
+   * Returns the set to put in the filterCache for the given answer, which is compressed if the
+   * <code>compressDocSets</code> option is on and that saves enough memory.
+   *
+   * @see DocSetUtil#compress(DocSet)
+   */
+  private DocSet toCachedDocSet(DocSet answer) {
+    return compressDocSets ? DocSetUtil.compress(answer) : answer;
+  }
+
   private BitDocSet makeBitDocSet(DocSet answer) {
     // TODO: this should be implemented in DocSet, most likely with a getBits method that takes a
     // maxDoc argument or make DocSet instances remember maxDoc
@@ -984,17 +1139,112 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
 
       // Not found in the cache so compute and put in the cache
       if (answer == null) {
-        answer = getDocSetNC(query, null);
+        answer = toCachedDocSet(getFilterDocSetNC(query));
         filterCache.put(query, answer);
       }
     } else {
-      answer = filterCache.computeIfAbsent(query, q -> getDocSetNC(q, null));
+      answer = filterCache.computeIfAbsent(query, q -> toCachedDocSet(getFilterDocSetNC(q)));
     }
 
     assert !(answer instanceof MutableBitDocSet) : "should not be mutable";
     return answer;
   }
 
+  /**
+   * Computes the DocSet of a filter for the filterCache, from the per-segment matches in the
+   * segmentFilterCache where possible so that after a commit only new segments need searching.
+   */
+  private DocSet getFilterDocSetNC(Query query) throws IOException {
+    if (segmentFilterCache != null
+        && !(query instanceof TermQuery) // walking the postings is as cheap as the cache
+        && !(query instanceof DocSetProducer)) { // these build a top-level DocSet anyway
+      DocSet answer = getDocSetFromSegments(query);
+      if (answer != null) {
+        return answer;
+      }
+    }
+    return getDocSetNC(query, null);
+  }
+
+  /**
+   * Returns the DocSet for the query assembled from per-segment matches, computing and caching
+   * those of segments missing from the segmentFilterCache, or null if the query can't be cached per
+   * segment (e.g. joins, whose matches in a segment depend on the rest of the index).
+   */
+  private DocSet getDocSetFromSegments(Query query) throws IOException {
+    final List<LeafReaderContext> leaves = getTopReaderContext().leaves();
+    final Weight weight = createWeight(rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1);
+    for (LeafReaderContext ctx : leaves) {
+      if (ctx.reader().getCoreCacheHelper() == null || !weight.isCacheable(ctx)) {
+        return null;
+      }
+    }
+
+    final int maxDoc = maxDoc();
+    final FixedBitSet bits = new FixedBitSet(maxDoc);
+    int size = 0;
+    for (LeafReaderContext ctx : leaves) {
+      SegmentFilterKey key =
+          new SegmentFilterKey(ctx.reader().getCoreCacheHelper().getKey(), query);
+      DocIdSet segmentSet = segmentFilterCache.computeIfAbsent(key, k -> matchSegment(weight, ctx));
+      DocIdSetIterator it = segmentSet.iterator();
+      if (it == null) {
+        continue;
+      }
+      final Bits liveDocs = ctx.reader().getLiveDocs();
+      final int base = ctx.docBase;
+      for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          bits.set(base + doc);
+          size++;
+        }
+      }
+    }
+
+    BitDocSet answer = new BitDocSet(bits, size);
+    if (size < DocSetUtil.smallSetSize(maxDoc)) {
+      return DocSetUtil.toSmallSet(answer);
+    }
+    return DocSetUtil.getDocSet(answer, this);
+  }
+
+  /** All the matches of the weight in the segment, ignoring deletions. */
+  private static DocIdSet matchSegment(Weight weight, LeafReaderContext ctx) throws IOException {
+    final Scorer scorer = weight.scorer(ctx);
+    if (scorer == null) {
+      return DocIdSet.EMPTY;
+    }
+    final int maxDoc = ctx.reader().maxDoc();
+    final DocIdSetIterator it = scorer.iterator();
+    // like Lucene's LRUQueryCache: bits for dense sets, roaring for sparse ones
+    if (it.cost() * 100 >= maxDoc) {
+      FixedBitSet bits = new FixedBitSet(maxDoc);
+      bits.or(it);
+      return new BitDocIdSet(bits);
+    }
+    RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+    for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns true if the segment with the given core or reader cache key is part of this searcher's
+   * index. Unlike the core key, the reader key of a segment changes when documents are deleted.
+   */
+  boolean hasSegment(IndexReader.CacheKey segmentKey) {
+    for (LeafReaderContext ctx : getTopReaderContext().leaves()) {
+      IndexReader.CacheHelper coreHelper = ctx.reader().getCoreCacheHelper();
+      IndexReader.CacheHelper readerHelper = ctx.reader().getReaderCacheHelper();
+      if ((coreHelper != null && coreHelper.getKey() == segmentKey)
+          || (readerHelper != null && readerHelper.getKey() == segmentKey)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static final MatchAllDocsQuery MATCH_ALL_DOCS_QUERY = new MatchAllDocsQuery();
 
   /** Used as a synchronization point to handle the lazy-init of {@link #liveDocs}. */
@@ -1310,7 +1560,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       TermQuery key = new TermQuery(new Term(deState.fieldName, deState.termsEnum.term()));
       return filterCache.computeIfAbsent(
           key,
-          (IOFunction<? super Query, ? extends DocSet>) k -> getResult(deState, largestPossible));
+          (IOFunction<? super Query, ? extends DocSet>)
+              k -> toCachedDocSet(getResult(deState, largestPossible)));
     }
 
     return getResult(deState, largestPossible);
@@ -1584,14 +1835,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
           // OPT: possible future optimization - if the doclist contains all the matches,
           // use it to make the docset instead of rerunning the query.
           if (out.docSet == null && ((flags & GET_DOCSET) != 0)) {
-            if (cmd.getFilterList() == null) {
-              out.docSet = getDocSet(cmd.getQuery());
-            } else {
-              List<Query> newList = new ArrayList<>(cmd.getFilterList().size() + 1);
-              newList.add(cmd.getQuery());
-              newList.addAll(cmd.getFilterList());
-              out.docSet = getDocSet(newList);
-            }
+            out.docSet = getDocSetForCommand(cmd);
           }
           return;
         }
@@ -1616,6 +1860,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     cmd.setSupersetMaxDoc(supersetMaxDoc);
 
     // OK, so now we need to generate an answer.
+    // If the query is sorted by fields, we may be able to merge the cached results of the
+    // segments that haven't changed since they were computed with those of new segments.
+    final DocList segmentsDocList =
+        segmentQueryResultCache == null ? null : getDocListFromSegments(cmd, flags);
     // One way to do that would be to check if we have an unordered list
     // of results for the base query. If so, we can apply the filters and then
     // sort by the resulting set. This can only be used if:
@@ -1657,7 +1905,12 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       useFilterCache = useFilterCacheForDynamicScoreQuery(needSort, cmd);
     }
 
-    if (useFilterCache) {
+    if (segmentsDocList != null) {
+      out.docList = segmentsDocList;
+      if (out.docSet == null && ((flags & GET_DOCSET) != 0)) {
+        out.docSet = getDocSetForCommand(cmd);
+      }
+    } else if (useFilterCache) {
       // now actually use the filter cache.
       // for large filters that match few documents, this may be
       // slower than simply re-executing the query.
@@ -1698,7 +1951,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
         DocSet qDocSet = getDocListAndSetNC(qr, cmd);
         // cache the docSet matching the query w/o filtering
         if (qDocSet != null && filterCache != null && !qr.isPartialResults())
-          filterCache.put(cmd.getQuery(), qDocSet);
+          filterCache.put(cmd.getQuery(), toCachedDocSet(qDocSet));
       } else {
         getDocListNC(qr, cmd);
       }
@@ -1732,6 +1985,125 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /** The DocSet matching both the query and the filters of the command. */
+  private DocSet getDocSetForCommand(QueryCommand cmd) throws IOException {
+    if (cmd.getFilterList() == null) {
+      return getDocSet(cmd.getQuery());
+    }
+    List<Query> newList = new ArrayList<>(cmd.getFilterList().size() + 1);
+    newList.add(cmd.getQuery());
+    newList.addAll(cmd.getFilterList());
+    return getDocSet(newList);
+  }
+
+  /**
+   * Returns the top <code>supersetMaxDoc</code> documents of a field-sorted query, merged from the
+   * top documents of each segment in the segmentQueryResultCache. Segments that are missing, or
+   * whose cached results are too short, are searched on their own and cached. Returns null if the
+   * command can't be answered this way, e.g. if it needs scores or its results in a segment depend
+   * on the rest of the index.
+   */
+  private DocList getDocListFromSegments(QueryCommand cmd, int flags) throws IOException {
+    final Sort sort = cmd.getSort();
+    final List<Query> filters = cmd.getFilterList();
+    if ((flags & (NO_CHECK_QCACHE | NO_SET_QCACHE)) == (NO_CHECK_QCACHE | NO_SET_QCACHE)
+        || (flags & (GET_SCORES | TERMINATE_EARLY | SEGMENT_TERMINATE_EARLY)) != 0
+        || cmd.getCursorMark() != null
+        || cmd.getQuery() instanceof RankQuery
+        || !isSegmentSort(sort)
+        || QueryLimits.getCurrentLimits().isLimitsEnabled()) {
+      return null;
+    }
+
+    final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    builder.add(QueryUtils.makeQueryable(cmd.getQuery()), Occur.MUST);
+    if (filters != null) {
+      for (Query filter : filters) {
+        if (filter instanceof PostFilter) {
+          return null;
+        }
+        builder.add(QueryUtils.makeQueryable(filter), Occur.FILTER);
+      }
+    }
+    final List<LeafReaderContext> leaves = getTopReaderContext().leaves();
+    final Weight weight = createWeight(rewrite(builder.build()), ScoreMode.COMPLETE_NO_SCORES, 1);
+    for (LeafReaderContext ctx : leaves) {
+      if (ctx.reader().getReaderCacheHelper() == null || !weight.isCacheable(ctx)) {
+        return null;
+      }
+    }
+
+    final int supersetMaxDoc = cmd.getSupersetMaxDoc();
+    final QueryResultKey resultKey = new QueryResultKey(cmd.getQuery(), filters, sort, 0);
+    final TopFieldDocs[] segmentDocs = new TopFieldDocs[leaves.size()];
+    long matches = 0;
+    for (LeafReaderContext ctx : leaves) {
+      SegmentQueryResult.Key key =
+          new SegmentQueryResult.Key(ctx.reader().getReaderCacheHelper().getKey(), resultKey);
+      SegmentQueryResult result = segmentQueryResultCache.get(key);
+      if (result == null || !result.covers(supersetMaxDoc)) {
+        result = new SegmentQueryResult(searchSegment(weight, sort, ctx, supersetMaxDoc));
+        segmentQueryResultCache.put(key, result);
+      }
+      segmentDocs[ctx.ord] = result.rebase(ctx.docBase, ctx.ord);
+      matches += result.getMatches();
+    }
+
+    final ScoreDoc[] scoreDocs =
+        supersetMaxDoc > 0
+            ? TopDocs.merge(sort, supersetMaxDoc, segmentDocs).scoreDocs
+            : new ScoreDoc[0];
+    final int[] ids = new int[scoreDocs.length];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = scoreDocs[i].doc;
+    }
+    return new DocSlice(
+        0, ids.length, ids, null, matches, matches > 0 ? Float.NaN : 0.0f, Relation.EQUAL_TO);
+  }
+
+  /**
+   * Returns true if documents compare by the sort in the same way whatever segments are in the
+   * index, i.e. it only sorts by the values of fields.
+   */
+  private static boolean isSegmentSort(Sort sort) {
+    if (sort == null) {
+      return false;
+    }
+    for (SortField sf : sort.getSort()) {
+      switch (sf.getType()) {
+        case STRING:
+        case STRING_VAL:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /** The top documents of the weight in one segment, with ids relative to the segment. */
+  private static TopFieldDocs searchSegment(
+      Weight weight, Sort sort, LeafReaderContext ctx, int numHits) throws IOException {
+    // count all the hits, so that the counts of the segments can be added up
+    final TopFieldCollector collector =
+        TopFieldCollector.create(sort, Math.max(1, numHits), Integer.MAX_VALUE);
+    final LeafCollector leafCollector = collector.getLeafCollector(ctx);
+    final BulkScorer scorer = weight.bulkScorer(ctx);
+    if (scorer != null) {
+      scorer.score(leafCollector, ctx.reader().getLiveDocs());
+    }
+    leafCollector.finish();
+    final TopFieldDocs topDocs = collector.topDocs();
+    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+      scoreDoc.doc -= ctx.docBase;
+    }
+    return topDocs;
+  }
+
   private Relation populateScoresIfNeeded(
       QueryCommand cmd, boolean needScores, TopDocs topDocs, Query query, ScoreMode scoreModeUsed)
       throws IOException {
@@ -1815,6 +2187,27 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     }
   }
 
+  /**
+   * Whether the main query of this command should be collected concurrently over the leaf slices of
+   * this searcher. This is only done when requested via {@link QueryCommand#getMultiThreaded()} and
+   * when nothing in the collector chain built by {@link #buildAndRunCollectorChain} (post filters,
+   * early termination, time limits, cancellation) or a {@link RankQuery} requires a single
+   * collector to see every hit.
+   */
+  boolean isMultiThreadedSearch(QueryCommand cmd, ProcessedFilter pf) {
+    return cmd.getMultiThreaded()
+        && getExecutor() != null
+        && getSlices().length > 1
+        && pf.postFilter == null
+        && !(cmd.getQuery() instanceof RankQuery)
+        && !cmd.getTerminateEarly()
+        && !cmd.getSegmentTerminateEarly()
+        && cmd.getTimeAllowed() <= 0
+        && !cmd.isQueryCancellable()
+        // limits are tracked per request thread, and would not be enforced on the executor
+        && !QueryLimits.getCurrentLimits().isLimitsEnabled();
+  }
+
   private void getDocListNC(QueryResult qr, QueryCommand cmd) throws IOException {
     final int len = cmd.getSupersetMaxDoc();
     int last = len;
@@ -1887,6 +2280,25 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
       // no docs on this page, so cursor doesn't change
       qr.setNextCursorMark(cmd.getCursorMark());
       hitsRelation = Relation.EQUAL_TO;
+    } else if (isMultiThreadedSearch(cmd, pf)) {
+      final MultiThreadedSearcher.SearchResult result =
+          new MultiThreadedSearcher(this)
+              .searchCollectorManagers(len, cmd, query, needScores, false);
+
+      totalHits = result.totalHits;
+      final TopDocs topDocs = result.topDocs;
+      hitsRelation = populateScoresIfNeeded(cmd, needScores, topDocs, query, result.scoreMode);
+      populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+
+      maxScore = totalHits > 0 ? result.maxScore : 0.0f;
+      nDocsReturned = topDocs.scoreDocs.length;
+      ids = new int[nDocsReturned];
+      scores = needScores ? new float[nDocsReturned] : null;
+      for (int i = 0; i < nDocsReturned; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        ids[i] = scoreDoc.doc;
+        if (scores != null) scores[i] = scoreDoc.score;
+      }
     } else {
       final TopDocsCollector<?> topCollector = buildTopDocsCollector(len, cmd);
       MaxScoreCollector maxScoreCollector = null;
@@ -1944,8 +2356,37 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     final Query query =
         QueryUtils.combineQueryAndFilter(QueryUtils.makeQueryable(cmd.getQuery()), pf.filter);
 
-    // handle zero case...
-    if (lastDocRequested <= 0) {
+    if (isMultiThreadedSearch(cmd, pf)) {
+      final MultiThreadedSearcher.SearchResult result =
+          new MultiThreadedSearcher(this)
+              .searchCollectorManagers(lastDocRequested, cmd, query, needScores, true);
+
+      set = result.docSet;
+      totalHits = set.size();
+      if (lastDocRequested <= 0) {
+        nDocsReturned = 0;
+        ids = new int[nDocsReturned];
+        scores = new float[nDocsReturned];
+        // matches the single threaded path, where the top score is only tracked if needed
+        maxScore = totalHits > 0 ? (needScores ? result.maxScore : Float.NEGATIVE_INFINITY) : 0.0f;
+        // no docs on this page, so cursor doesn't change
+        qr.setNextCursorMark(cmd.getCursorMark());
+      } else {
+        final TopDocs topDocs = result.topDocs;
+        populateScoresIfNeeded(cmd, needScores, topDocs, query, ScoreMode.COMPLETE);
+        populateNextCursorMarkFromTopDocs(qr, cmd, topDocs);
+        maxScore = totalHits > 0 ? result.maxScore : 0.0f;
+        nDocsReturned = topDocs.scoreDocs.length;
+
+        ids = new int[nDocsReturned];
+        scores = needScores ? new float[nDocsReturned] : null;
+        for (int i = 0; i < nDocsReturned; i++) {
+          ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+          ids[i] = scoreDoc.doc;
+          if (scores != null) scores[i] = scoreDoc.score;
+        }
+      }
+    } else if (lastDocRequested <= 0) { // handle zero case...
       final float[] topscore = new float[] {Float.NEGATIVE_INFINITY};
 
       final Collector collector;
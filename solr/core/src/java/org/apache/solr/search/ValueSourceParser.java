@@ -92,6 +92,7 @@ import org.apache.solr.search.facet.AggValueSource;
 import org.apache.solr.search.facet.AvgAgg;
 import org.apache.solr.search.facet.CountAgg;
 import org.apache.solr.search.facet.CountValsAgg;
+import org.apache.solr.search.facet.DDSketchAgg;
 import org.apache.solr.search.facet.HLLAgg;
 import org.apache.solr.search.facet.MinMaxAgg;
 import org.apache.solr.search.facet.MissingAgg;
@@ -1379,6 +1380,33 @@ public abstract class ValueSourceParser implements NamedListInitializedPlugin {
           }
         });
 
+    addParser(
+        "agg_ddsketch",
+        new ValueSourceParser() {
+          @Override
+          public ValueSource parse(FunctionQParser fp) throws SyntaxError {
+            List<Double> percentiles = new ArrayList<>();
+            ValueSource vs =
+                fp.parseValueSource(
+                    FunctionQParser.FLAG_DEFAULT | FunctionQParser.FLAG_USE_FIELDNAME_SOURCE);
+            while (fp.hasMoreArguments()) {
+              double val = fp.parseDouble();
+              if (val < 0 || val > 100) {
+                throw new SyntaxError(
+                    "requested percentile must be between 0 and 100.  got " + val);
+              }
+              percentiles.add(val);
+            }
+
+            if (percentiles.isEmpty()) {
+              throw new SyntaxError(
+                  "expected ddsketch(valsource,percent1[,percent2]*)  EXAMPLE:ddsketch(myfield,50)");
+            }
+
+            return new DDSketchAgg(vs, percentiles);
+          }
+        });
+
     addParser(
         "agg_" + RelatednessAgg.NAME,
         new ValueSourceParser() {
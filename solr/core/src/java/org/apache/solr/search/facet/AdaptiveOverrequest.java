@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sizes the overrequest of distributed terms facets with <code>overrequest:"adaptive"</code> from
+ * how skewed their field turned out to be across shards in previous requests.
+ *
+ * <p>The coordinator counts, while computing refinements, how many of the top buckets each shard
+ * failed to return although it had more buckets (see {@link Observation}). When that happens for
+ * more than {@link #TARGET_MISSING_RATE} of them, the overrequest factor of the field grows,
+ * otherwise it slowly decays back to the default. The factors of the fields in a request are sent
+ * to the shards along with phase #1 (see {@link #getFactors}), which use them in place of the
+ * default 10% (see {@link FacetContext#getOverrequestFactor}).
+ */
+class AdaptiveOverrequest {
+  /** The factor of the default overrequest heuristic, used until a field is known to be skewed */
+  static final double DEFAULT_FACTOR = 1.1;
+
+  static final double MAX_FACTOR = 4.0;
+
+  /** The fraction of (bucket, shard) pairs that may need refinement before the factor grows */
+  static final double TARGET_MISSING_RATE = 0.05;
+
+  private static final double DECAY = 0.95;
+
+  private final Map<String, Double> factors = new ConcurrentHashMap<>();
+
+  double getFactor(String field) {
+    return factors.getOrDefault(field, DEFAULT_FACTOR);
+  }
+
+  /**
+   * The factors of the adaptive facets in the request, keyed by field. Factors are rounded up to a
+   * quarter, so that the shard requests (and any facetCache entries for them) don't change with
+   * every request. Fields at the default factor are left out, the shards apply it by themselves.
+   */
+  Map<String, Object> getFactors(FacetRequest freq) {
+    Map<String, Object> ret = new HashMap<>();
+    addFactors(freq, ret);
+    return ret;
+  }
+
+  private void addFactors(FacetRequest freq, Map<String, Object> ret) {
+    if (freq instanceof FacetField && ((FacetField) freq).adaptiveOverrequest) {
+      String field = ((FacetField) freq).field;
+      Double factor = factors.get(field);
+      if (factor != null && factor > DEFAULT_FACTOR) {
+        ret.put(field, Math.ceil(factor * 4) / 4.0);
+      }
+    }
+    for (FacetRequest sub : freq.getSubFacets().values()) {
+      addFactors(sub, ret);
+    }
+  }
+
+  Observation newObservation() {
+    return new Observation();
+  }
+
+  /** The refinement needs of the adaptive facets of a single request, per field */
+  class Observation {
+    private final Map<String, long[]> counts = new HashMap<>();
+
+    /**
+     * @param field the field of the facet
+     * @param checked the number of top buckets that were checked for a shard
+     * @param missing how many of those were missing from that shard's response
+     */
+    void record(String field, long checked, long missing) {
+      long[] fieldCounts = counts.computeIfAbsent(field, k -> new long[2]);
+      fieldCounts[0] += checked;
+      fieldCounts[1] += missing;
+    }
+
+    /** Adjusts the factor of every observed field */
+    void commit() {
+      for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+        long checked = entry.getValue()[0];
+        if (checked == 0) continue;
+        double missingRate = entry.getValue()[1] / (double) checked;
+        factors.compute(
+            entry.getKey(),
+            (field, factor) -> {
+              double current = factor == null ? DEFAULT_FACTOR : factor;
+              return missingRate > TARGET_MISSING_RATE
+                  ? Math.min(MAX_FACTOR, current * (1 + missingRate))
+                  : Math.max(DEFAULT_FACTOR, current * DECAY);
+            });
+      }
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * The facets of a request, as held by the facetCache. The response is shared by every request that
+ * hits the entry, so it must not be modified once it has been cached.
+ */
+public final class CachedFacetResult implements Accountable {
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(CachedFacetResult.class);
+  private static final long NAMED_LIST_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(NamedList.class)
+          + RamUsageEstimator.shallowSizeOfInstance(ArrayList.class);
+  private static final long LIST_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(ArrayList.class);
+
+  private final Object facets;
+  private final long ramBytesUsed;
+
+  private CachedFacetResult(Object facets, long ramBytesUsed) {
+    this.facets = facets;
+    this.ramBytesUsed = BASE_RAM_BYTES_USED + ramBytesUsed;
+  }
+
+  /**
+   * Returns an entry for the given facets, or null if they can't be cached because some of their
+   * buckets are streamed to the response writer.
+   */
+  public static CachedFacetResult of(Object facets) {
+    long ram = sizeOf(facets);
+    return ram < 0 ? null : new CachedFacetResult(facets, ram);
+  }
+
+  /** The facets, which must not be modified. */
+  public Object getFacets() {
+    return facets;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Estimates the memory used by (part of) a facet response, -1 for streamed buckets */
+  private static long sizeOf(Object o) {
+    long ram;
+    if (o instanceof NamedList) {
+      NamedList<?> nl = (NamedList<?>) o;
+      ram =
+          NAMED_LIST_RAM_BYTES_USED
+              + RamUsageEstimator.alignObjectSize(
+                  RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                      + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * 2 * nl.size());
+      for (int i = 0; i < nl.size(); i++) {
+        long val = sizeOf(nl.getVal(i));
+        if (val < 0) return -1;
+        ram += RamUsageEstimator.sizeOfObject(nl.getName(i)) + val;
+      }
+    } else if (o instanceof Collection) {
+      Collection<?> c = (Collection<?>) o;
+      ram =
+          LIST_RAM_BYTES_USED
+              + RamUsageEstimator.alignObjectSize(
+                  RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                      + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * c.size());
+      for (Object e : c) {
+        long val = sizeOf(e);
+        if (val < 0) return -1;
+        ram += val;
+      }
+    } else if (o instanceof Map) {
+      ram = sizeOf(((Map<?, ?>) o).keySet()) + sizeOf(((Map<?, ?>) o).values());
+    } else if (o instanceof Iterator) {
+      return -1;
+    } else if (o instanceof String) {
+      ram = RamUsageEstimator.sizeOf((String) o);
+    } else {
+      ram = o == null ? 0 : RamUsageEstimator.shallowSizeOf(o);
+    }
+    return ram;
+  }
+
+  /**
+   * A key of the facetCache: the domain of the request, given by its query and filters, and its
+   * facet commands, along with the request parameters and JSON body the commands may refer to.
+   */
+  public static final class Key implements Accountable {
+    private static final long BASE_RAM_BYTES_USED =
+        RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+    // parameters that don't change the facets
+    private static final Set<String> IGNORED_PARAMS =
+        Set.of(
+            CommonParams.START,
+            CommonParams.ROWS,
+            CommonParams.SORT,
+            CommonParams.FL,
+            CommonParams.WT,
+            CommonParams.INDENT,
+            CommonParams.HEADER_ECHO_PARAMS,
+            CommonParams.OMIT_HEADER,
+            CommonParams.REQUEST_ID,
+            CommonParams.NOW);
+
+    final Query query;
+    final List<Query> filters;
+    final Map<String, List<String>> params;
+    final Map<String, Object> json;
+    final Map<String, Object> facetCommands;
+    private final int hc;
+    private final long ramBytesUsed;
+
+    private Key(
+        Query query,
+        List<Query> filters,
+        Map<String, List<String>> params,
+        Map<String, Object> json,
+        Map<String, Object> facetCommands) {
+      this.query = query;
+      this.filters = filters;
+      this.params = params;
+      this.json = json;
+      this.facetCommands = facetCommands;
+      this.hc = Objects.hash(query, filters, params, json, facetCommands);
+      this.ramBytesUsed =
+          BASE_RAM_BYTES_USED
+              + RamUsageEstimator.sizeOfObject(
+                  query, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
+              + RamUsageEstimator.sizeOfObject(
+                  filters, RamUsageEstimator.QUERY_DEFAULT_RAM_BYTES_USED)
+              + RamUsageEstimator.sizeOfObject(params)
+              + RamUsageEstimator.sizeOfObject(json)
+              + RamUsageEstimator.sizeOfObject(facetCommands);
+    }
+
+    /**
+     * Returns the key of the facets of a request, or null if they can't be cached because they use
+     * date math relative to <code>NOW</code> without a fixed <code>NOW</code> parameter.
+     */
+    public static Key of(
+        Query query,
+        List<Query> filters,
+        SolrParams params,
+        Map<String, Object> json,
+        Map<String, Object> facetCommands) {
+      Map<String, List<String>> keyParams = new TreeMap<>();
+      boolean usesNow = String.valueOf(json).contains("NOW");
+      for (Iterator<String> it = params.getParameterNamesIterator(); it.hasNext(); ) {
+        String name = it.next();
+        if (!IGNORED_PARAMS.contains(name)) {
+          List<String> values = List.of(params.getParams(name));
+          usesNow |= values.toString().contains("NOW");
+          keyParams.put(name, values);
+        }
+      }
+      usesNow |= facetCommands.toString().contains("NOW");
+      if (usesNow) {
+        // the facets depend on the time of the request
+        String now = params.get(CommonParams.NOW);
+        if (now == null) {
+          return null;
+        }
+        keyParams.put(CommonParams.NOW, List.of(now));
+      }
+      List<Query> keyFilters = new ArrayList<>();
+      if (filters != null) {
+        filters.stream().filter(Objects::nonNull).forEach(keyFilters::add);
+      }
+      return new Key(
+          query,
+          Collections.unmodifiableList(keyFilters),
+          Collections.unmodifiableMap(keyParams),
+          json,
+          facetCommands);
+    }
+
+    /** The parameters of the request, as far as they matter to the facets */
+    SolrParams getParams() {
+      ModifiableSolrParams params = new ModifiableSolrParams();
+      for (Map.Entry<String, List<String>> e : this.params.entrySet()) {
+        params.add(e.getKey(), e.getValue().toArray(new String[0]));
+      }
+      return params;
+    }
+
+    /** The base domain of the facets: the documents that match the query and the filters */
+    List<Query> getDomainQueries() {
+      List<Query> queries = new ArrayList<>(filters.size() + 1);
+      if (query != null) {
+        queries.add(query);
+      }
+      queries.addAll(filters);
+      return queries;
+    }
+
+    @Override
+    public int hashCode() {
+      return hc;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key other = (Key) o;
+      return hc == other.hc
+          && facetCommands.equals(other.facetCommands)
+          && params.equals(other.params)
+          && Objects.equals(json, other.json)
+          && Objects.equals(query, other.query)
+          && filters.equals(other.filters);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return ramBytesUsed;
+    }
+  }
+}
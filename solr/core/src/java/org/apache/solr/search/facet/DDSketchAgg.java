@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.function.FieldNameValueSource;
+import org.apache.solr.util.DDSketch;
+
+/**
+ * Percentiles computed with a {@link DDSketch}: <code>ddsketch(field,50,95,99)</code>. Compared to
+ * {@link PercentileAgg} the per bucket sketches are small, are reused when the accumulator is
+ * reset, merge exactly, and are sent between shards in a compact binary form.
+ *
+ * <p>When a bucket's domain contains every live document of a segment, the sketch of the whole
+ * segment is computed once and kept in the segment sketch cache of the core, see {@link
+ * FacetModule}, so repeated requests only read the values of new or partially matching segments.
+ */
+public class DDSketchAgg extends SimpleAggValueSource {
+  final List<Double> percentiles;
+
+  public DDSketchAgg(ValueSource vs, List<Double> percentiles) {
+    super("ddsketch", vs);
+    this.percentiles = percentiles;
+  }
+
+  @Override
+  public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots)
+      throws IOException {
+    ValueSource vs = getArg();
+
+    if (vs instanceof FieldNameValueSource) {
+      String field = ((FieldNameValueSource) vs).getFieldName();
+      SchemaField sf = fcontext.qcontext.searcher().getSchema().getField(field);
+      if (sf.getType().getNumberType() == null) {
+        throw new SolrException(
+            SolrException.ErrorCode.BAD_REQUEST,
+            name() + " aggregation not supported for " + sf.getType().getTypeName());
+      }
+      if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
+        if (!sf.hasDocValues() || !sf.getType().isPointField()) {
+          throw new SolrException(
+              SolrException.ErrorCode.BAD_REQUEST,
+              name() + " aggregation on multi-valued fields requires a PointField with docValues");
+        }
+        return new SortedNumericAcc(fcontext, sf, numSlots);
+      }
+      return new FuncAcc(
+          sf.getType().getValueSource(sf, null), segmentCacheKey(sf), fcontext, numSlots);
+    }
+    return new FuncAcc(vs, null, fcontext, numSlots);
+  }
+
+  @Override
+  public FacetMerger createFacetMerger(Object prototype) {
+    return new Merger();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof DDSketchAgg)) return false;
+    DDSketchAgg other = (DDSketchAgg) o;
+    return this.arg.equals(other.arg) && this.percentiles.equals(other.percentiles);
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode() * 31 + percentiles.hashCode();
+  }
+
+  protected Object getValueFromSketch(DDSketch sketch) {
+    if (sketch == null || sketch.getCount() == 0) {
+      return null;
+    }
+
+    if (percentiles.size() == 1) {
+      return sketch.quantile(percentiles.get(0) * 0.01);
+    }
+
+    List<Double> lst = new ArrayList<>(percentiles.size());
+    for (Double percentile : percentiles) {
+      lst.add(sketch.quantile(percentile * 0.01));
+    }
+    return lst;
+  }
+
+  // include the type, in case the field changed with a reload that kept the same segment readers
+  private static String segmentCacheKey(SchemaField sf) {
+    return sf.getName() + ':' + sf.getType().getTypeName();
+  }
+
+  private static DDSketch getSegmentSketch(
+      FacetContext fcontext, LeafReaderContext ctx, String field, SegmentSketchBuilder builder)
+      throws IOException {
+    SolrCache<SegmentSketchKey, DDSketch> cache = fcontext.segmentSketchCache;
+    IndexReader.CacheHelper cacheHelper = ctx.reader().getReaderCacheHelper();
+    if (cache == null || cacheHelper == null) {
+      return builder.build();
+    }
+    // entries of closed readers are never looked up again, and are evicted like any other
+    SegmentSketchKey key = new SegmentSketchKey(cacheHelper.getKey(), field);
+    DDSketch sketch = cache.get(key);
+    if (sketch == null) {
+      sketch = builder.build();
+      cache.put(key, sketch);
+    }
+    return sketch;
+  }
+
+  /** The key of the sketch of every live document of a segment in the segment sketch cache */
+  static final class SegmentSketchKey {
+    final IndexReader.CacheKey readerKey;
+    final String field;
+
+    SegmentSketchKey(IndexReader.CacheKey readerKey, String field) {
+      this.readerKey = readerKey;
+      this.field = field;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SegmentSketchKey)) return false;
+      SegmentSketchKey other = (SegmentSketchKey) o;
+      return readerKey == other.readerKey && field.equals(other.field);
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(readerKey) * 31 + field.hashCode();
+    }
+  }
+
+  private interface SegmentSketchBuilder {
+    DDSketch build() throws IOException;
+  }
+
+  abstract class BaseAcc extends SlotAcc {
+    // non-null if the values come straight from a field, so segment sketches can be cached
+    final String segmentCacheKey;
+    DDSketch[] sketches;
+    double[] sortvals;
+
+    BaseAcc(FacetContext fcontext, String segmentCacheKey, int numSlots) {
+      super(fcontext);
+      this.segmentCacheKey = segmentCacheKey;
+      this.sketches = new DDSketch[numSlots];
+    }
+
+    /** Adds the values of the doc in the current segment to the sketch */
+    abstract void addValues(int segDoc, DDSketch sketch) throws IOException;
+
+    DDSketch getSketch(int slot) {
+      DDSketch sketch = sketches[slot];
+      if (sketch == null) {
+        sketches[slot] = sketch = new DDSketch();
+      }
+      return sketch;
+    }
+
+    @Override
+    public void collect(int doc, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      addValues(doc, getSketch(slot));
+    }
+
+    @Override
+    public boolean collectsDocSets() {
+      return segmentCacheKey != null;
+    }
+
+    @Override
+    public int collect(DocSet docs, int slot, IntFunction<SlotContext> slotContext)
+        throws IOException {
+      if (segmentCacheKey == null) {
+        return super.collect(docs, slot, slotContext);
+      }
+
+      // first count the docs per segment, to find the segments that match completely
+      final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+      final int[] segCounts = new int[leaves.size()];
+      int leafIdx = -1;
+      int segMax = 0;
+      for (DocIterator it = docs.iterator(); it.hasNext(); ) {
+        int doc = it.nextDoc();
+        while (doc >= segMax) {
+          LeafReaderContext ctx = leaves.get(++leafIdx);
+          segMax = ctx.docBase + ctx.reader().maxDoc();
+        }
+        segCounts[leafIdx]++;
+      }
+
+      final DDSketch sketch = getSketch(slot);
+      int count = 0;
+      leafIdx = -1;
+      segMax = 0;
+      LeafReaderContext ctx = null;
+      boolean wholeSegment = false;
+      for (DocIterator it = docs.iterator(); it.hasNext(); ) {
+        int doc = it.nextDoc();
+        count++;
+        if (doc >= segMax) {
+          do {
+            ctx = leaves.get(++leafIdx);
+            segMax = ctx.docBase + ctx.reader().maxDoc();
+          } while (doc >= segMax);
+          wholeSegment = segCounts[leafIdx] == ctx.reader().numDocs();
+          if (wholeSegment) {
+            sketch.merge(
+                getSegmentSketch(fcontext, ctx, segmentCacheKey, segmentSketchBuilder(ctx)));
+          } else {
+            setNextReader(ctx);
+          }
+        }
+        if (!wholeSegment) {
+          addValues(doc - ctx.docBase, sketch);
+        }
+      }
+      return count;
+    }
+
+    private SegmentSketchBuilder segmentSketchBuilder(LeafReaderContext ctx) {
+      return () -> {
+        setNextReader(ctx);
+        DDSketch segmentSketch = new DDSketch();
+        Bits liveDocs = ctx.reader().getLiveDocs();
+        for (int doc = 0, maxDoc = ctx.reader().maxDoc(); doc < maxDoc; doc++) {
+          if (liveDocs == null || liveDocs.get(doc)) {
+            addValues(doc, segmentSketch);
+          }
+        }
+        return segmentSketch;
+      };
+    }
+
+    @Override
+    public int compare(int slotA, int slotB) {
+      if (sortvals == null) {
+        fillSortVals();
+      }
+      return Double.compare(sortvals[slotA], sortvals[slotB]);
+    }
+
+    private void fillSortVals() {
+      sortvals = new double[sketches.length];
+      double sortp = percentiles.get(0) * 0.01;
+      for (int i = 0; i < sketches.length; i++) {
+        DDSketch sketch = sketches[i];
+        if (sketch == null || sketch.getCount() == 0) {
+          sortvals[i] = Double.NEGATIVE_INFINITY;
+        } else {
+          sortvals[i] = sketch.quantile(sortp);
+        }
+      }
+    }
+
+    @Override
+    public Object getValue(int slotNum) throws IOException {
+      DDSketch sketch = sketches[slotNum];
+      if (fcontext.isShard()) {
+        return sketch == null || sketch.getCount() == 0 ? null : sketch.toBytes();
+      }
+      return getValueFromSketch(sketch);
+    }
+
+    @Override
+    public void reset() {
+      // keep the sketches (and their bins) around for the next use
+      for (DDSketch sketch : sketches) {
+        if (sketch != null) {
+          sketch.clear();
+        }
+      }
+      sortvals = null;
+    }
+
+    @Override
+    public void resize(Resizer resizer) {
+      sketches = resizer.resize(sketches, null);
+    }
+  }
+
+  class FuncAcc extends BaseAcc {
+    final ValueSource valueSource;
+    FunctionValues values;
+
+    FuncAcc(ValueSource valueSource, String segmentCacheKey, FacetContext fcontext, int numSlots) {
+      super(fcontext, segmentCacheKey, numSlots);
+      this.valueSource = valueSource;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public void setNextReader(LeafReaderContext readerContext) throws IOException {
+      super.setNextReader(readerContext);
+      values = valueSource.getValues(fcontext.qcontext, readerContext);
+    }
+
+    @Override
+    void addValues(int segDoc, DDSketch sketch) throws IOException {
+      if (values.exists(segDoc)) {
+        sketch.add(values.doubleVal(segDoc));
+      }
+    }
+  }
+
+  class SortedNumericAcc extends BaseAcc {
+    final SchemaField sf;
+    SortedNumericDocValues values;
+
+    SortedNumericAcc(FacetContext fcontext, SchemaField sf, int numSlots) {
+      super(fcontext, segmentCacheKey(sf), numSlots);
+      this.sf = sf;
+    }
+
+    @Override
+    public void setNextReader(LeafReaderContext readerContext) throws IOException {
+      super.setNextReader(readerContext);
+      values = DocValues.getSortedNumeric(readerContext.reader(), sf.getName());
+    }
+
+    @Override
+    void addValues(int segDoc, DDSketch sketch) throws IOException {
+      if (values.advanceExact(segDoc)) {
+        for (int i = 0, count = values.docValueCount(); i < count; i++) {
+          sketch.add(getDouble(values.nextValue()));
+        }
+      }
+    }
+
+    /** converts given long value to double based on field type */
+    private double getDouble(long val) {
+      switch (sf.getType().getNumberType()) {
+        case FLOAT:
+          return NumericUtils.sortableIntToFloat((int) val);
+        case DOUBLE:
+          return NumericUtils.sortableLongToDouble(val);
+        default:
+          return val;
+      }
+    }
+  }
+
+  class Merger extends FacetModule.FacetSortableMerger {
+    protected DDSketch sketch;
+    protected Double sortVal;
+
+    @Override
+    public void merge(Object facetResult, Context mcontext) {
+      byte[] arr = (byte[]) facetResult;
+      if (arr == null) return; // an explicit null can mean no values in the field
+      DDSketch subSketch = DDSketch.fromBytes(arr);
+      if (sketch == null) {
+        sketch = subSketch;
+      } else {
+        sketch.merge(subSketch);
+      }
+    }
+
+    @Override
+    public Object getMergedResult() {
+      return getValueFromSketch(sketch);
+    }
+
+    @Override
+    public int compareTo(
+        FacetModule.FacetSortableMerger other, FacetRequest.SortDirection direction) {
+      return Double.compare(getSortVal(), ((Merger) other).getSortVal());
+    }
+
+    private Double getSortVal() {
+      if (sortVal == null) {
+        sortVal =
+            sketch == null ? Double.NEGATIVE_INFINITY : sketch.quantile(percentiles.get(0) * 0.01);
+      }
+      return sortVal;
+    }
+  }
+}
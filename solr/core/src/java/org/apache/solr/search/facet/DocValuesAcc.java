@@ -107,11 +107,8 @@ public abstract class DocValuesAcc extends SlotAcc {
     public LongSortedNumericDVAcc(
         FacetContext fcontext, SchemaField sf, int numSlots, long initialValue) throws IOException {
       super(fcontext, sf, numSlots);
-      this.result = new long[numSlots];
       this.initialValue = initialValue;
-      if (initialValue != 0) {
-        Arrays.fill(result, initialValue);
-      }
+      this.result = newLongArray(numSlots, initialValue);
     }
 
     @Override
@@ -133,6 +130,12 @@ public abstract class DocValuesAcc extends SlotAcc {
     public void resize(Resizer resizer) {
       this.result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   abstract static class DoubleSortedNumericDVAcc extends SortedNumericDVAcc {
@@ -143,11 +146,8 @@ public abstract class DocValuesAcc extends SlotAcc {
         FacetContext fcontext, SchemaField sf, int numSlots, double initialValue)
         throws IOException {
       super(fcontext, sf, numSlots);
-      this.result = new double[numSlots];
       this.initialValue = initialValue;
-      if (initialValue != 0) {
-        Arrays.fill(result, initialValue);
-      }
+      this.result = newDoubleArray(numSlots, initialValue);
     }
 
     @Override
@@ -170,6 +170,12 @@ public abstract class DocValuesAcc extends SlotAcc {
       this.result = resizer.resize(result, initialValue);
     }
 
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
+
     /** converts given long value to double based on field type */
     protected double getDouble(long val) {
       switch (sf.getType().getNumberType()) {
@@ -295,11 +301,8 @@ public abstract class DocValuesAcc extends SlotAcc {
     public LongSortedSetDVAcc(
         FacetContext fcontext, SchemaField sf, int numSlots, long initialValue) throws IOException {
       super(fcontext, sf, numSlots);
-      result = new long[numSlots];
       this.initialValue = initialValue;
-      if (initialValue != 0) {
-        Arrays.fill(result, initialValue);
-      }
+      result = newLongArray(numSlots, initialValue);
     }
 
     @Override
@@ -321,6 +324,12 @@ public abstract class DocValuesAcc extends SlotAcc {
     public void resize(Resizer resizer) {
       this.result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   abstract static class DoubleSortedSetDVAcc extends SortedSetDVAcc {
@@ -331,11 +340,8 @@ public abstract class DocValuesAcc extends SlotAcc {
         FacetContext fcontext, SchemaField sf, int numSlots, double initialValue)
         throws IOException {
       super(fcontext, sf, numSlots);
-      result = new double[numSlots];
       this.initialValue = initialValue;
-      if (initialValue != 0) {
-        Arrays.fill(result, initialValue);
-      }
+      result = newDoubleArray(numSlots, initialValue);
     }
 
     @Override
@@ -357,6 +363,12 @@ public abstract class DocValuesAcc extends SlotAcc {
     public void resize(Resizer resizer) {
       this.result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   /**
@@ -18,10 +18,13 @@ package org.apache.solr.search.facet;
 
 import java.util.Map;
 import org.apache.lucene.search.Query;
+import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QueryContext;
+import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.DDSketch;
 
 public class FacetContext {
   // Context info for actually executing a local facet command
@@ -42,6 +45,14 @@ public class FacetContext {
   boolean cache = true;
   int flags;
   FacetDebugInfo debugInfo;
+  // overrequest factors per field sent by the coordinator, see AdaptiveOverrequest
+  Map<String, Object> overrequestFactors;
+  // the pool of the core to take slot arrays from, null to allocate them
+  SlotArrayPool slotArrayPool;
+  // the cache of the core for the ddsketch() values of whole segments, null to not cache them
+  SolrCache<DDSketchAgg.SegmentSketchKey, DDSketch> segmentSketchCache;
+  // the response of a query facet that was already counted along with its siblings
+  SimpleOrderedMap<Object> sweptResponse;
 
   public void setDebugInfo(FacetDebugInfo debugInfo) {
     this.debugInfo = debugInfo;
@@ -91,6 +102,17 @@ public class FacetContext {
     return flags;
   }
 
+  /**
+   * The factor to apply to the limit of a terms facet with <code>overrequest:"adaptive"</code> on
+   * the given field
+   */
+  double getOverrequestFactor(String field) {
+    Object factor = overrequestFactors == null ? null : overrequestFactors.get(field);
+    return factor instanceof Number
+        ? ((Number) factor).doubleValue()
+        : AdaptiveOverrequest.DEFAULT_FACTOR;
+  }
+
   /**
    * @param filter The filter for the bucket that resulted in this context/domain. Can be null if
    *     this is the root context.
@@ -108,6 +130,9 @@ public class FacetContext {
     ctx.qcontext = qcontext;
     ctx.req = req;
     ctx.searcher = searcher;
+    ctx.overrequestFactors = overrequestFactors;
+    ctx.slotArrayPool = slotArrayPool;
+    ctx.segmentSketchCache = segmentSketchCache;
 
     return ctx;
   }
@@ -34,6 +34,7 @@ public class FacetField extends FacetRequestSorted {
   String prefix;
   FacetMethod method;
   int cacheDf; // 0 means "default", -1 means "never cache"
+  int sketchSize; // number of counters for method=sketch, 0 means "default"
 
   // experimental - force perSeg collection when using dv method, currently for testing purposes
   // only.
@@ -51,6 +52,7 @@ public class FacetField extends FacetRequestSorted {
     DVHASH, // DocValues, collect into hash
     ENUM, // TermsEnum then intersect DocSet (stream-able)
     STREAM, // presently equivalent to ENUM
+    SKETCH, // approximate top counts in bounded memory, exact methods otherwise
     SMART,
     ;
 
@@ -67,6 +69,8 @@ public class FacetField extends FacetRequestSorted {
           return ENUM;
         case "stream":
           return STREAM; // TODO replace with enum?
+        case "sketch":
+          return SKETCH;
         case "smart":
           return SMART;
         default:
@@ -111,6 +115,10 @@ public class FacetField extends FacetRequestSorted {
       }
     }
 
+    if (method == FacetMethod.SKETCH && FacetFieldProcessorBySketch.canSketch(fcontext, this, sf)) {
+      return new FacetFieldProcessorBySketch(fcontext, this, sf);
+    }
+
     // TODO auto-pick ENUM/STREAM SOLR-9351 when index asc and DocSet cardinality is *not* much
     // smaller than term cardinality
     if (method == FacetMethod.ENUM) { // at the moment these two are the same
@@ -19,8 +19,12 @@ package org.apache.solr.search.facet;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.SimpleOrderedMap;
 
@@ -37,6 +41,17 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
   // the number of buckets in the bucket lists returned from all of the shards
   int numReturnedBuckets;
 
+  // method=sketch: the largest count a bucket could have on each shard that didn't return it, and
+  // the accumulated error of each bucket count. null unless some shard reported a bound.
+  long[] maxMissingCountPerShard;
+  Map<Object, Long> countErrs;
+
+  // method=stream: the bucket lists returned by the shards (and the shard of each), which are only
+  // merged one bucket at a time while the response is written. null unless streaming.
+  Boolean streaming;
+  List<List<SimpleOrderedMap<?>>> streamedBucketLists;
+  List<Integer> streamedShards;
+
   public FacetFieldMerger(FacetField freq) {
     super(freq);
   }
@@ -75,7 +90,16 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     List<SimpleOrderedMap<?>> bucketList = (List<SimpleOrderedMap<?>>) facetResult.get("buckets");
     numReturnedPerShard[mcontext.shardNum] = bucketList.size();
     numReturnedBuckets += bucketList.size();
-    mergeBucketList(bucketList, mcontext);
+    if (isStreaming(mcontext)) {
+      streamedBucketLists.add(bucketList);
+      streamedShards.add(mcontext.shardNum);
+    } else {
+      mergeBucketList(bucketList, mcontext);
+    }
+
+    if (freq.method == FacetField.FacetMethod.SKETCH) {
+      mergeSketchErrors(facetResult, bucketList, mcontext);
+    }
 
     if (freq.numBuckets) {
       Object nb = facetResult.get("numBuckets");
@@ -88,14 +112,100 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     }
   }
 
+  /**
+   * Whether the bucket lists of the shards can be merged lazily by {@link StreamedBuckets}: this is
+   * a <code>method:stream</code> facet returning every bucket in index order, so that the shards
+   * return complete lists in that same order, and neither this facet nor its sub-facets need
+   * refinement (which needs all of the merged buckets).
+   */
+  private boolean isStreaming(Context mcontext) {
+    if (streaming == null) {
+      FacetRequest.FacetSort shardSort = null == freq.prelim_sort ? freq.sort : freq.prelim_sort;
+      streaming =
+          freq.method == FacetField.FacetMethod.STREAM
+              && freq.limit < 0
+              && !freq.doRefine()
+              && "index".equals(freq.sort.sortVariable)
+              && freq.sort.equals(shardSort)
+              && mcontext.getSubsWithRefinement(freq).isEmpty();
+      if (streaming) {
+        streamedBucketLists = new ArrayList<>(mcontext.numShards);
+        streamedShards = new ArrayList<>(mcontext.numShards);
+      }
+    }
+    return streaming;
+  }
+
+  private void mergeSketchErrors(
+      SimpleOrderedMap<?> facetResult, List<SimpleOrderedMap<?>> bucketList, Context mcontext) {
+    Number maxMissingCount = (Number) facetResult.get("maxMissingCount");
+    if (maxMissingCount != null) {
+      if (maxMissingCountPerShard == null) {
+        maxMissingCountPerShard = new long[mcontext.numShards];
+      }
+      maxMissingCountPerShard[mcontext.shardNum] = maxMissingCount.longValue();
+    }
+    for (SimpleOrderedMap<?> bucketRes : bucketList) {
+      Number err = (Number) bucketRes.get("count_err");
+      if (err != null) {
+        if (countErrs == null) {
+          countErrs = new HashMap<>();
+        }
+        countErrs.merge(bucketRes.get("val"), err.longValue(), Long::sum);
+      }
+    }
+  }
+
+  /**
+   * Adds the bound of each shard that didn't return a bucket to the bucket's count and error, so
+   * that the merged count stays an upper bound and count - count_err a lower bound.
+   */
+  private void applyMaxMissingCounts() {
+    if (maxMissingCountPerShard == null) return;
+    if (countErrs == null) {
+      countErrs = new HashMap<>();
+    }
+    for (FacetBucket bucket : buckets.values()) {
+      for (int shard = 0; shard < maxMissingCountPerShard.length; shard++) {
+        long bound = maxMissingCountPerShard[shard];
+        if (bound > 0 && !mcontext.getShardFlag(bucket.bucketNumber, shard)) {
+          bucket.count += bound;
+          countErrs.merge(bucket.bucketValue, bound, Long::sum);
+        }
+      }
+    }
+    maxMissingCountPerShard = null; // only apply once
+  }
+
+  @Override
+  FacetMerger createFacetMerger(String key, Object val) {
+    if ("count_err".equals(key) && freq.method == FacetField.FacetMethod.SKETCH) {
+      return null; // handled by mergeSketchErrors
+    }
+    return super.createFacetMerger(key, val);
+  }
+
   @Override
   public Object getMergedResult() {
     SimpleOrderedMap<Object> result = new SimpleOrderedMap<>();
 
+    applyMaxMissingCounts();
+
     if (numBuckets != null) {
       result.add("numBuckets", ((Number) numBuckets.getMergedResult()).longValue());
     }
 
+    if (streamedBucketLists != null) {
+      result.add("buckets", new StreamedBuckets());
+      if (missingBucket != null) {
+        result.add("missing", missingBucket.getMergedBucket());
+      }
+      if (allBuckets != null) {
+        result.add("allBuckets", allBuckets.getMergedBucket());
+      }
+      return result;
+    }
+
     sortBuckets(freq.sort);
 
     long first = freq.offset;
@@ -132,7 +242,12 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
         break;
       }
 
-      resultBuckets.add(bucket.getMergedBucket());
+      SimpleOrderedMap<Object> mergedBucket = bucket.getMergedBucket();
+      Long countErr = countErrs == null ? null : countErrs.get(bucket.bucketValue);
+      if (countErr != null) {
+        mergedBucket.add("count_err", countErr);
+      }
+      resultBuckets.add(mergedBucket);
     }
 
     result.add("buckets", resultBuckets);
@@ -146,6 +261,101 @@ public class FacetFieldMerger extends FacetRequestSortedMerger<FacetField> {
     return result;
   }
 
+  /**
+   * A k-way merge of the shards' bucket lists, which are all in index order. Each shard bucket is
+   * released once it has been merged, so only the buckets that have not been written yet are kept.
+   */
+  private class StreamedBuckets implements Iterator<SimpleOrderedMap<Object>> {
+    private final int[] positions = new int[streamedBucketLists.size()];
+    // the lists that have more buckets, by their next bucket value
+    private final PriorityQueue<Integer> queue;
+    private long toSkip = freq.offset;
+    private SimpleOrderedMap<Object> next;
+
+    StreamedBuckets() {
+      final int dir = freq.sort.sortDirection == FacetRequest.SortDirection.desc ? -1 : 1;
+      queue =
+          new PriorityQueue<>(
+              Math.max(1, positions.length),
+              (a, b) -> compareIndexOrder(headValue(a), headValue(b)) * dir);
+      for (int i = 0; i < positions.length; i++) {
+        if (!streamedBucketLists.get(i).isEmpty()) {
+          queue.add(i);
+        }
+      }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Comparable headValue(int list) {
+      return (Comparable) streamedBucketLists.get(list).get(positions[list]).get("val");
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && !queue.isEmpty()) {
+        next = mergeNext();
+      }
+      return next != null;
+    }
+
+    @Override
+    public SimpleOrderedMap<Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      SimpleOrderedMap<Object> bucket = next;
+      next = null;
+      return bucket;
+    }
+
+    /** Merges the buckets with the smallest value, returns null if they are filtered out */
+    @SuppressWarnings("rawtypes")
+    private SimpleOrderedMap<Object> mergeNext() {
+      Comparable val = headValue(queue.peek());
+      FacetBucket bucket = newBucket(val, mcontext);
+      int prevShard = mcontext.shardNum;
+      while (!queue.isEmpty() && compareIndexOrder(val, headValue(queue.peek())) == 0) {
+        int list = queue.poll();
+        List<SimpleOrderedMap<?>> bucketList = streamedBucketLists.get(list);
+        mcontext.shardNum = streamedShards.get(list);
+        bucket.mergeBucket(bucketList.get(positions[list]), mcontext);
+        bucketList.set(positions[list]++, null);
+        if (positions[list] < bucketList.size()) {
+          queue.add(list);
+        }
+      }
+      mcontext.shardNum = prevShard;
+
+      if (bucket.getCount() < freq.mincount) {
+        return null;
+      }
+      if (toSkip > 0) {
+        toSkip--;
+        return null;
+      }
+      return bucket.getMergedBucket();
+    }
+  }
+
+  /** Compares bucket values in index order, where strings are ordered by code point */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  static int compareIndexOrder(Comparable a, Comparable b) {
+    if (a instanceof String && b instanceof String) {
+      String s1 = (String) a, s2 = (String) b;
+      int i = 0, j = 0;
+      while (i < s1.length() && j < s2.length()) {
+        int c1 = s1.codePointAt(i), c2 = s2.codePointAt(j);
+        if (c1 != c2) {
+          return Integer.compare(c1, c2);
+        }
+        i += Character.charCount(c1);
+        j += Character.charCount(c2);
+      }
+      return Integer.compare(s1.length() - i, s2.length() - j);
+    }
+    return a.compareTo(b);
+  }
+
   @Override
   public void finish(Context mcontext) {
     // TODO: check refine of subs?
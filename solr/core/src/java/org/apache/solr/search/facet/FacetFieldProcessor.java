@@ -26,15 +26,21 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
 import java.util.function.IntFunction;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
 import org.apache.lucene.util.PriorityQueue;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -120,6 +126,25 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     assert null != this.sort;
   }
 
+  @Override
+  void releaseSlotArrays(SlotArrayPool pool) {
+    if (isStreamable()) {
+      // the buckets are composed while they are written
+      return;
+    }
+    Set<SlotAcc> released = Collections.newSetFromMap(new IdentityHashMap<>());
+    releaseSlotArrays(pool, released, countAcc, collectAcc, sortAcc, indexOrderAcc);
+    if (accs != null) {
+      releaseSlotArrays(pool, released, accs);
+    }
+    if (otherAccs != null) {
+      releaseSlotArrays(pool, released, otherAccs);
+    }
+    if (accMap != null) {
+      releaseSlotArrays(pool, released, accMap.values().toArray(new SlotAcc[0]));
+    }
+  }
+
   /** This is used to create accs for second phase (or to create accs for all aggs) */
   @Override
   protected void createAccs(long docCount, int slotCount) throws IOException {
@@ -307,13 +332,13 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     }
   }
 
-  private static long applyDefaultOverrequest(long offset, long limit) {
+  private static long applyDefaultOverrequest(long offset, long limit, double factor) {
     // NOTE: consider modifying the below heuristic; see SOLR-15760
     // add over-request if this is a shard request and if we have a small offset (large offsets will
     // already be gathering many more buckets than needed)
     if (offset < 10) {
       return (long)
-          (limit * 1.1 + 4); // default: add 10% plus 4 (to overrequest for very small limits)
+          (limit * factor + 4); // default: add 10% plus 4 (to overrequest for very small limits)
     }
     return limit;
   }
@@ -328,6 +353,9 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
       @SuppressWarnings("rawtypes") Function<Comparable, String> fieldQueryValFunc)
       throws IOException {
     assert this.sortAcc != null;
+    if (isStreamable()) {
+      return streamTopSlots(numSlots, bucketValFromSlotNumFunc, fieldQueryValFunc);
+    }
     long numBuckets = 0;
 
     final int off = fcontext.isShard() ? 0 : (int) freq.offset;
@@ -356,7 +384,13 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
                 // "index" sort, hence there is no default/implicit overrequest for "index sort"
                 // (even if `resort` is also specified -- overrequest that is exclusively for
                 // `resort` must be explicit, even in a distrib context)
-                effectiveLimit = applyDefaultOverrequest(freq.offset, effectiveLimit);
+                effectiveLimit =
+                    applyDefaultOverrequest(
+                        freq.offset,
+                        effectiveLimit,
+                        freq.adaptiveOverrequest
+                            ? fcontext.getOverrequestFactor(freq.field)
+                            : AdaptiveOverrequest.DEFAULT_FACTOR);
               }
               break;
             default:
@@ -536,6 +570,144 @@ abstract class FacetFieldProcessor extends FacetProcessor<FacetField> {
     return res;
   }
 
+  /**
+   * Whether the buckets can be streamed to the response writer by {@link #streamTopSlots} instead
+   * of being built up front: <code>method:stream</code> was requested, every bucket is returned in
+   * index order, and there is no missing bucket (whose computation reuses the accumulators).
+   */
+  boolean isStreamable() {
+    return freq.method == FacetField.FacetMethod.STREAM
+        && freq.limit < 0
+        && null == resort
+        && !freq.missing
+        && "index".equals(sort.sortVariable);
+  }
+
+  /**
+   * Like {@link #findTopSlots}, but only sorts the numbers of the slots to return and hands the
+   * response writer an iterator that composes (and processes the sub-facets of) each bucket when it
+   * is written, so that huge facets never hold all of their buckets in memory at once.
+   */
+  private SimpleOrderedMap<Object> streamTopSlots(
+      final int numSlots,
+      @SuppressWarnings("rawtypes") IntFunction<Comparable> bucketValFromSlotNumFunc,
+      @SuppressWarnings("rawtypes") Function<Comparable, String> fieldQueryValFunc)
+      throws IOException {
+    long numBuckets = 0;
+    int[] slots = new int[16];
+    int numSortedSlots = 0;
+    for (int slotNum = 0; slotNum < numSlots; slotNum++) {
+      if (effectiveMincount > 0) {
+        long count = countAcc.getCount(slotNum);
+        if (count < effectiveMincount) {
+          if (count > 0) {
+            // Still increment numBuckets as long as we have some count. This is for
+            // consistency between distrib and non-distrib mode.
+            numBuckets++;
+          }
+          continue;
+        }
+      }
+      numBuckets++;
+      slots = ArrayUtil.grow(slots, numSortedSlots + 1);
+      slots[numSortedSlots++] = slotNum;
+    }
+    sortSlots(slots, numSortedSlots);
+
+    SimpleOrderedMap<Object> res = new SimpleOrderedMap<>();
+    if (freq.numBuckets) {
+      if (!fcontext.isShard()) {
+        res.add("numBuckets", numBuckets);
+      } else {
+        calculateNumBuckets(res);
+      }
+    }
+
+    FacetDebugInfo fdebug = fcontext.getDebugInfo();
+    if (fdebug != null) fdebug.putInfoItem("numBuckets", numBuckets);
+
+    if (freq.allBuckets) {
+      SimpleOrderedMap<Object> allBuckets = new SimpleOrderedMap<>();
+      allBuckets.add("count", allBucketsAcc.getSpecialCount());
+      allBucketsAcc.setValues(allBuckets, -1); // -1 slotNum is unused for SpecialSlotAcc
+      res.add("allBuckets", allBuckets);
+    }
+
+    final boolean needFilter = (!deferredAggs.isEmpty()) || freq.getSubFacets().size() > 0;
+    if (needFilter) {
+      createOtherAccs(-1, 1);
+    }
+
+    final int[] sortedSlots = slots;
+    final int end = numSortedSlots;
+    final int start = fcontext.isShard() ? 0 : (int) Math.min(freq.offset, end);
+    res.add(
+        "buckets",
+        new Iterator<SimpleOrderedMap<Object>>() {
+          final Slot slot = new Slot();
+          int pos = start;
+
+          @Override
+          public boolean hasNext() {
+            return pos < end;
+          }
+
+          @Override
+          public SimpleOrderedMap<Object> next() {
+            if (pos >= end) {
+              throw new NoSuchElementException();
+            }
+            slot.slot = sortedSlots[pos++];
+            slot.bucketVal = bucketValFromSlotNumFunc.apply(slot.slot);
+            if (needFilter) {
+              slot.bucketFilter = makeBucketQuery(fieldQueryValFunc.apply(slot.bucketVal));
+            }
+            SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+            bucket.add("val", slot.bucketVal);
+            try {
+              fillBucketFromSlot(bucket, slot, null);
+            } catch (IOException e) {
+              throw new SolrException(
+                  SolrException.ErrorCode.SERVER_ERROR, "Error during facet streaming", e);
+            }
+            return bucket;
+          }
+        });
+    return res;
+  }
+
+  /** Sorts the slot numbers with the sort accumulator, unless they already are in order */
+  private void sortSlots(int[] slots, int numSlots) {
+    final SlotAcc sortAcc = this.sortAcc;
+    final int sortMul = sort.sortDirection.getMultiplier();
+    // the same order as the priority queue of findTopSlots pops the slots in
+    final IntBinaryOperator cmp =
+        (a, b) -> {
+          int c = sortAcc.compare(a, b) * -sortMul;
+          return c == 0 ? Integer.compare(a, b) : c;
+        };
+    boolean sorted = true;
+    for (int i = 1; i < numSlots && sorted; i++) {
+      sorted = cmp.applyAsInt(slots[i - 1], slots[i]) <= 0;
+    }
+    if (sorted) {
+      return;
+    }
+    new InPlaceMergeSorter() {
+      @Override
+      protected int compare(int i, int j) {
+        return cmp.applyAsInt(slots[i], slots[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        int tmp = slots[i];
+        slots[i] = slots[j];
+        slots[j] = tmp;
+      }
+    }.sort(0, numSlots);
+  }
+
   /** Trivial helper method for building up a bucket query given the (Stringified) bucket value */
   protected Query makeBucketQuery(final String bucketValue) {
     return sf.getType().getFieldTermQuery(null, sf, bucketValue);
@@ -17,8 +17,11 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.MultiDocValues;
@@ -130,8 +133,13 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     if (freq.perSeg != null)
       accumSeg = canDoPerSeg && freq.perSeg; // internal - override perSeg heuristic
 
-    final int maxSize = others.size() + 1; // others + base
     final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    if (freq.threads != 0 && canDoPerSeg && others.isEmpty() && leaves.size() > 1) {
+      collectCountsConcurrently(leaves, base.countAcc);
+      return;
+    }
+
+    final int maxSize = others.size() + 1; // others + base
     final DocIdSetIterator[] subIterators = new DocIdSetIterator[maxSize];
     final CountSlotAcc[] activeCountAccs = new CountSlotAcc[maxSize];
 
@@ -210,6 +218,87 @@ class FacetFieldProcessorByArrayDV extends FacetFieldProcessorByArray {
     return si.lookupOrd(ord);
   }
 
+  /**
+   * Counts the leaves on up to {@code threads} threads, each counting into its own array of global
+   * ords, and adds up the arrays at the end.
+   */
+  private void collectCountsConcurrently(List<LeafReaderContext> leaves, CountSlotAcc countAcc)
+      throws IOException {
+    final int numTasks = freq.threads < 0 ? leaves.size() : Math.min(freq.threads, leaves.size());
+    final AtomicInteger nextLeaf = new AtomicInteger();
+    final List<Callable<int[]>> tasks = new ArrayList<>(numTasks);
+    for (int i = 0; i < numTasks; i++) {
+      tasks.add(
+          () -> {
+            int[] counts = null;
+            for (int subIdx; (subIdx = nextLeaf.getAndIncrement()) < leaves.size(); ) {
+              counts = countLeaf(leaves.get(subIdx), subIdx, counts);
+            }
+            return counts;
+          });
+    }
+
+    for (int[] counts : FacetProcessor.runConcurrently(fcontext, freq.threads, tasks)) {
+      if (counts == null) {
+        continue;
+      }
+      for (int ord = 0; ord < counts.length; ord++) {
+        if (counts[ord] != 0) {
+          countAcc.incrementCount(ord, counts[ord]);
+        }
+      }
+    }
+  }
+
+  private int[] countLeaf(LeafReaderContext subCtx, int subIdx, int[] counts) throws IOException {
+    DocIdSetIterator disi = fcontext.base.iterator(subCtx);
+    if (disi == null) {
+      return counts;
+    }
+    LongValues toGlobal = ordinalMap == null ? null : ordinalMap.getGlobalOrds(subIdx);
+
+    SortedDocValues singleDv = null;
+    SortedSetDocValues multiDv = null;
+    if (multiValuedField) {
+      multiDv = subCtx.reader().getSortedSetDocValues(sf.getName());
+      if (multiDv == null) {
+        return counts;
+      }
+      if (unwrap_singleValued_multiDv) {
+        singleDv = DocValues.unwrapSingleton(multiDv);
+      }
+    } else {
+      singleDv = subCtx.reader().getSortedDocValues(sf.getName());
+      if (singleDv == null) {
+        return counts;
+      }
+    }
+
+    if (counts == null) {
+      counts = new int[(int) si.getValueCount()];
+    }
+    int doc;
+    if (singleDv != null) {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (singleDv.advanceExact(doc)) {
+          int segOrd = singleDv.ordValue();
+          counts[toGlobal == null ? segOrd : (int) toGlobal.get(segOrd)]++;
+        }
+      }
+    } else {
+      while ((doc = disi.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (multiDv.advanceExact(doc)) {
+          for (; ; ) {
+            int segOrd = (int) multiDv.nextOrd();
+            if (segOrd < 0) break;
+            counts[toGlobal == null ? segOrd : (int) toGlobal.get(segOrd)]++;
+          }
+        }
+      }
+    }
+    return counts;
+  }
+
   private void collectPerSeg(SortedDocValues singleDv, SweepDISI disi, LongValues toGlobal)
       throws IOException {
     int segMax = singleDv.getValueCount();
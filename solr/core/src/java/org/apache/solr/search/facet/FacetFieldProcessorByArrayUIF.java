@@ -23,8 +23,17 @@ import org.apache.lucene.util.UnicodeUtil;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.schema.SchemaField;
 
-/** {@link UnInvertedField} implementation of field faceting. It's a top-level term cache. */
-class FacetFieldProcessorByArrayUIF extends FacetFieldProcessorByArray {
+/**
+ * {@link UnInvertedField} implementation of field faceting. It's a top-level term cache.
+ *
+ * <p>If {@link org.apache.solr.core.SolrConfig#perSegmentUnInvertedField} is set, the field is
+ * un-inverted per segment instead. The per-segment {@link org.apache.solr.uninverting.DocTermOrds}
+ * are kept in the field cache, which survives commits, and their term ordinals are mapped to global
+ * ordinals with an {@link org.apache.lucene.index.OrdinalMap} cached per searcher, so collection
+ * works the same as for {@link FacetFieldProcessorByArrayDV}.
+ */
+class FacetFieldProcessorByArrayUIF extends FacetFieldProcessorByArrayDV {
+  final boolean perSegment;
   UnInvertedField uif;
   TermsEnum te;
 
@@ -35,10 +44,16 @@ class FacetFieldProcessorByArrayUIF extends FacetFieldProcessorByArray {
           SolrException.ErrorCode.BAD_REQUEST,
           getClass() + " can not be used on fields where uninvertible='false'");
     }
+    perSegment = fcontext.searcher.getCore().getSolrConfig().perSegmentUnInvertedField;
   }
 
   @Override
   protected void findStartAndEndOrds() throws IOException {
+    if (perSegment) {
+      super.findStartAndEndOrds();
+      return;
+    }
+
     uif = UnInvertedField.getUnInvertedField(freq.field, fcontext.searcher);
     te = uif.getOrdTermsEnum(fcontext.searcher.getSlowAtomicReader()); // "te" can be null
 
@@ -64,11 +79,18 @@ class FacetFieldProcessorByArrayUIF extends FacetFieldProcessorByArray {
 
   @Override
   protected void collectDocs() throws IOException {
-    uif.collectDocs(this);
+    if (perSegment) {
+      super.collectDocs();
+    } else {
+      uif.collectDocs(this);
+    }
   }
 
   @Override
   protected BytesRef lookupOrd(int ord) throws IOException {
+    if (perSegment) {
+      return super.lookupOrd(ord);
+    }
     return uif.getTermValue(te, ord);
   }
 }
@@ -85,6 +85,11 @@ class FacetFieldProcessorByEnumTermsStream extends FacetFieldProcessor implement
     }
   }
 
+  @Override
+  void releaseSlotArrays(SlotArrayPool pool) {
+    // the accumulators are used while the buckets are written
+  }
+
   @Override
   public void process() throws IOException {
     super.process();
@@ -150,7 +155,8 @@ class FacetFieldProcessorByEnumTermsStream extends FacetFieldProcessor implement
         freq.facetStats.size() == 0
             || freq.facetStats.values().iterator().next() instanceof CountAgg;
     hasSubFacets = freq.subFacets.size() > 0;
-    bucketsToSkip = freq.offset;
+    // like the other field processors, shards leave the offset to the merger
+    bucketsToSkip = fcontext.isShard() ? 0 : freq.offset;
 
     effectiveLimit = freq.limit;
     if (freq.limit >= 0) {
@@ -167,6 +173,9 @@ class FacetFieldProcessorByEnumTermsStream extends FacetFieldProcessor implement
         // "shard" case, where it can affect the behavior of `isBucketComplete()` (see SOLR-14595).
         effectiveLimit += freq.overrequest;
       }
+      if (fcontext.isShard()) {
+        effectiveLimit += freq.offset;
+      }
     }
 
     createAccs(-1, 1);
@@ -218,7 +218,9 @@ class FacetFieldProcessorByHashDV extends FacetFieldProcessor {
   public void process() throws IOException {
     super.process();
     response = calcFacets();
-    table = null; // gc
+    if (!isStreamable()) {
+      table = null; // gc (streamed buckets look up their values while they are written)
+    }
   }
 
   private SimpleOrderedMap<Object> calcFacets() throws IOException {
@@ -0,0 +1,502 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSetUtil;
+import org.apache.solr.search.facet.SlotAcc.SlotContext;
+
+/**
+ * Finds the approximate top buckets by count using a bounded Space-Saving sketch, so memory use
+ * does not grow with the number of unique values in the domain. The number is either a raw numeric
+ * DocValues value, or a term global ordinal integer.
+ *
+ * <p>Once the sketch is full, a value that is not being tracked replaces the one with the lowest
+ * count and inherits that count as its error. Each returned bucket count is therefore an upper
+ * bound, and is at most {@code count_err} higher than the true count. Buckets are only annotated
+ * with {@code count_err} when it is non-zero, so results are identical to the exact methods as long
+ * as the domain has no more unique values than the sketch can hold.
+ *
+ * <p>Only used for {@code sort:"count desc"} with a limit; requests that need every bucket or exact
+ * per-bucket counts ({@code allBuckets}, {@code numBuckets}, {@code prefix}, {@code refine}, {@code
+ * prelim_sort}) fall back to an exact method.
+ */
+class FacetFieldProcessorBySketch extends FacetFieldProcessor {
+  static final int DEFAULT_SKETCH_SIZE = 1024;
+  // don't let a large limit allocate an unbounded sketch
+  static final int MAX_SKETCH_SIZE = 1 << 24;
+
+  /**
+   * A Space-Saving sketch with long keys. Counters live in parallel arrays (the counter index is
+   * the slot used by the rest of the processor); an open addressing table maps values to counters
+   * and an indexed min-heap finds the counter to replace. The arrays start small and grow up to
+   * maxCapacity, so a sparse domain doesn't pay for a large sketch.
+   */
+  static class LongSketch {
+    static final int INITIAL_CAPACITY = 1024;
+
+    final int maxCapacity;
+    long[] vals;
+    long[] counts;
+    long[] errs;
+    int size;
+    boolean evicted; // true once any value has been replaced
+
+    private int[] table; // counter index, or -1 if empty
+    private int mask;
+    private int[] heap; // counter indexes ordered by count
+    private int[] heapPos; // position of each counter in the heap
+
+    LongSketch(int maxCapacity) {
+      this.maxCapacity = maxCapacity;
+      int capacity = Math.min(maxCapacity, INITIAL_CAPACITY);
+      vals = new long[capacity];
+      counts = new long[capacity];
+      errs = new long[capacity];
+      heap = new int[capacity];
+      heapPos = new int[capacity];
+      rebuildTable();
+    }
+
+    /** Current number of counters */
+    int numSlots() {
+      return vals.length;
+    }
+
+    /** The smallest count being tracked; an upper bound on the count of any untracked value. */
+    long minCount() {
+      return size < maxCapacity ? 0 : counts[heap[0]];
+    }
+
+    void add(long val) {
+      int pos = find(val);
+      int counter = table[pos];
+      if (counter >= 0) {
+        counts[counter]++;
+        siftDown(heapPos[counter]);
+        return;
+      }
+
+      if (size == vals.length && size < maxCapacity) {
+        grow();
+        pos = find(val);
+      }
+
+      if (size < vals.length) {
+        counter = size++;
+        vals[counter] = val;
+        counts[counter] = 1;
+        table[pos] = counter;
+        heap[counter] = counter;
+        heapPos[counter] = counter;
+        siftUp(counter);
+        return;
+      }
+
+      // replace the value with the lowest count
+      counter = heap[0];
+      remove(find(vals[counter]));
+      evicted = true;
+      errs[counter] = counts[counter];
+      counts[counter]++;
+      vals[counter] = val;
+      table[find(val)] = counter;
+      siftDown(0);
+    }
+
+    private void grow() {
+      int capacity = (int) Math.min((long) vals.length << 1, maxCapacity);
+      vals = Arrays.copyOf(vals, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      errs = Arrays.copyOf(errs, capacity);
+      // counters keep their index, so the heap stays valid
+      heap = Arrays.copyOf(heap, capacity);
+      heapPos = Arrays.copyOf(heapPos, capacity);
+      rebuildTable();
+    }
+
+    private void rebuildTable() {
+      int tableSize = BitUtil.nextHighestPowerOfTwo(Math.max(2, vals.length * 2));
+      table = new int[tableSize];
+      Arrays.fill(table, -1);
+      mask = tableSize - 1;
+      for (int counter = 0; counter < size; counter++) {
+        table[find(vals[counter])] = counter;
+      }
+    }
+
+    private int hash(long val) {
+      return (int) ((val * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /** returns the table position holding val, or the empty position where it would go */
+    private int find(long val) {
+      int pos = hash(val) & mask;
+      while (table[pos] >= 0 && vals[table[pos]] != val) {
+        pos = (pos + 1) & mask;
+      }
+      return pos;
+    }
+
+    /** linear probing removal, shifting back entries so that no lookups are broken */
+    private void remove(int pos) {
+      table[pos] = -1;
+      for (int next = (pos + 1) & mask; table[next] >= 0; next = (next + 1) & mask) {
+        int home = hash(vals[table[next]]) & mask;
+        boolean reachable =
+            pos <= next ? (pos < home && home <= next) : (pos < home || home <= next);
+        if (!reachable) {
+          table[pos] = table[next];
+          table[next] = -1;
+          pos = next;
+        }
+      }
+    }
+
+    private void siftUp(int i) {
+      int counter = heap[i];
+      long count = counts[counter];
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (counts[heap[parent]] <= count) break;
+        heap[i] = heap[parent];
+        heapPos[heap[i]] = i;
+        i = parent;
+      }
+      heap[i] = counter;
+      heapPos[counter] = i;
+    }
+
+    private void siftDown(int i) {
+      int counter = heap[i];
+      long count = counts[counter];
+      while (true) {
+        int child = (i << 1) + 1;
+        if (child >= size) break;
+        if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+          child++;
+        }
+        if (count <= counts[heap[child]]) break;
+        heap[i] = heap[child];
+        heapPos[heap[i]] = i;
+        i = child;
+      }
+      heap[i] = counter;
+      heapPos[counter] = i;
+    }
+  }
+
+  /**
+   * Returns true if the sketch can answer the request; otherwise the caller should fall back to an
+   * exact method.
+   */
+  static boolean canSketch(FacetContext fcontext, FacetField freq, SchemaField sf) {
+    if (freq.limit < 0
+        || freq.offset + freq.limit >= MAX_SKETCH_SIZE // we'd return nearly everything anyway
+        || freq.mincount < 1
+        || freq.prefix != null
+        || freq.allBuckets
+        || freq.numBuckets
+        || freq.doRefine()
+        || freq.prelim_sort != null
+        || !FacetRequest.FacetSort.COUNT_DESC.equals(freq.sort)) {
+      return false;
+    }
+    FieldType ft = sf.getType();
+    if (ft.getNumberType() == null) {
+      return sf.hasDocValues() || sf.isUninvertible();
+    }
+    FieldInfo fieldInfo = fcontext.searcher.getFieldInfos().fieldInfo(sf.getName());
+    if (fieldInfo == null) {
+      return sf.hasDocValues();
+    }
+    return fieldInfo.getDocValuesType() == DocValuesType.NUMERIC
+        || fieldInfo.getDocValuesType() == DocValuesType.SORTED_NUMERIC;
+  }
+
+  FacetRangeProcessor.Calc calc; // null for strings
+  SortedSetDocValues globalDocValues; // null for numerics
+  OrdinalMap ordinalMap; // null unless there are multiple segments
+  LongSketch sketch;
+
+  FacetFieldProcessorBySketch(FacetContext fcontext, FacetField freq, SchemaField sf) {
+    super(fcontext, freq, sf);
+  }
+
+  @Override
+  public void process() throws IOException {
+    super.process();
+    response = calcFacets();
+    sketch = null; // gc
+  }
+
+  private SimpleOrderedMap<Object> calcFacets() throws IOException {
+    if (sf.getType().getNumberType() != null) {
+      calc = FacetRangeProcessor.getNumericCalc(sf);
+    } else if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
+      globalDocValues = FieldUtil.getSortedSetDocValues(fcontext.qcontext, sf, null);
+      if (globalDocValues instanceof MultiDocValues.MultiSortedSetDocValues) {
+        ordinalMap = ((MultiDocValues.MultiSortedSetDocValues) globalDocValues).mapping;
+      }
+    } else {
+      SortedDocValues single = FieldUtil.getSortedDocValues(fcontext.qcontext, sf, null);
+      globalDocValues = DocValues.singleton(single);
+      if (single instanceof MultiDocValues.MultiSortedDocValues) {
+        ordinalMap = ((MultiDocValues.MultiSortedDocValues) single).mapping;
+      }
+    }
+
+    // canSketch bounds offset + limit, so none of this can overflow
+    long numReturned = freq.offset + freq.limit;
+    long size =
+        freq.sketchSize > 0 ? freq.sketchSize : Math.max(DEFAULT_SKETCH_SIZE, 10 * numReturned);
+    // the sketch must be able to hold more than the number of buckets we return
+    size = Math.max(size, numReturned + 1);
+    sketch = new LongSketch((int) Math.min(size, MAX_SKETCH_SIZE));
+
+    createCollectAcc();
+
+    collectDocs();
+
+    SimpleOrderedMap<Object> res =
+        super.findTopSlots(
+            sketch.numSlots(),
+            sketch.size,
+            slotNum -> getBucketVal(sketch.vals[slotNum]),
+            val -> calc == null ? val.toString() : calc.formatValue(val));
+
+    if (fcontext.isShard() && sketch.evicted) {
+      // Tell the merger how large the count of a value this shard did not return could be
+      long maxMissingCount = sketch.minCount();
+      @SuppressWarnings("unchecked")
+      List<SimpleOrderedMap<?>> buckets = (List<SimpleOrderedMap<?>>) res.get("buckets");
+      if (res.get("more") != null && !buckets.isEmpty()) {
+        long lastCount = ((Number) buckets.get(buckets.size() - 1).get("count")).longValue();
+        maxMissingCount = Math.max(maxMissingCount, lastCount);
+      }
+      res.add("maxMissingCount", maxMissingCount);
+    }
+    return res;
+  }
+
+  @SuppressWarnings({"rawtypes"})
+  private Comparable getBucketVal(long val) {
+    if (calc != null) {
+      return calc.bitsToValue(val);
+    }
+    try {
+      BytesRef term = globalDocValues.lookupOrd(val);
+      return (Comparable) sf.getType().toObject(sf, term);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void createCollectAcc() throws IOException {
+    indexOrderAcc =
+        new SlotAcc(fcontext) {
+          @Override
+          public void collect(int doc, int slot, IntFunction<SlotContext> slotContext)
+              throws IOException {}
+
+          @Override
+          public int compare(int slotA, int slotB) {
+            long a = sketch.vals[slotA], b = sketch.vals[slotB];
+            return calc == null
+                ? Long.compare(a, b)
+                : Long.compare(calc.bitsToSortableBits(a), calc.bitsToSortableBits(b));
+          }
+
+          @Override
+          public Object getValue(int slotNum) throws IOException {
+            return null;
+          }
+
+          @Override
+          public void reset() {}
+
+          @Override
+          public void resize(Resizer resizer) {}
+        };
+
+    countAcc =
+        new SlotAcc.CountSlotAcc(fcontext) {
+          @Override
+          public void incrementCount(int slot, long count) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public long getCount(int slot) {
+            return sketch.counts[slot];
+          }
+
+          @Override
+          public Object getValue(int slotNum) {
+            return getCount(slotNum);
+          }
+
+          @Override
+          public void setValues(SimpleOrderedMap<Object> bucket, int slotNum) {
+            bucket.add("count", getCount(slotNum));
+            if (sketch.errs[slotNum] > 0) {
+              bucket.add("count_err", sketch.errs[slotNum]);
+            }
+          }
+
+          @Override
+          public void reset() {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public void collect(int doc, int slot, IntFunction<SlotContext> slotContext)
+              throws IOException {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public int compare(int slotA, int slotB) {
+            return Long.compare(sketch.counts[slotA], sketch.counts[slotB]);
+          }
+
+          @Override
+          public void resize(Resizer resizer) {
+            throw new UnsupportedOperationException();
+          }
+        };
+
+    // sorting is always by count, so every stat is deferred to the returned buckets
+    super.createCollectAcc(fcontext.base.size(), sketch.numSlots());
+  }
+
+  private void collectDocs() throws IOException {
+    if (calc == null) { // Strings
+      DocSetUtil.collectSortedDocSet(
+          fcontext.base,
+          fcontext.searcher.getIndexReader(),
+          new SimpleCollector() {
+            SortedSetDocValues values; // this segment/leaf. NN
+            LongValues toGlobal = LongValues.IDENTITY; // this segment to global ordinal. NN
+
+            @Override
+            public ScoreMode scoreMode() {
+              return ScoreMode.COMPLETE_NO_SCORES;
+            }
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+              setNextReaderFirstPhase(ctx);
+              values = DocValues.getSortedSet(ctx.reader(), sf.getName());
+              if (ordinalMap != null) {
+                toGlobal = ordinalMap.getGlobalOrds(ctx.ord);
+              }
+            }
+
+            @Override
+            public void collect(int segDoc) throws IOException {
+              if (values.advanceExact(segDoc)) {
+                for (int i = 0, count = values.docValueCount(); i < count; i++) {
+                  sketch.add(toGlobal.get(values.nextOrd()));
+                }
+              }
+            }
+          });
+
+    } else if (sf.multiValued()) {
+      DocSetUtil.collectSortedDocSet(
+          fcontext.base,
+          fcontext.searcher.getIndexReader(),
+          new SimpleCollector() {
+            SortedNumericDocValues values = null; // NN
+
+            @Override
+            public ScoreMode scoreMode() {
+              return ScoreMode.COMPLETE_NO_SCORES;
+            }
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+              setNextReaderFirstPhase(ctx);
+              values = DocValues.getSortedNumeric(ctx.reader(), sf.getName());
+            }
+
+            @Override
+            public void collect(int segDoc) throws IOException {
+              if (values.advanceExact(segDoc)) {
+                long l = values.nextValue(); // This document must have at least one value
+                sketch.add(l);
+                for (int i = 1, count = values.docValueCount(); i < count; i++) {
+                  long lnew = values.nextValue();
+                  // Skip the value if it's equal to the last one, we don't want to double-count it
+                  if (lnew != l) {
+                    sketch.add(lnew);
+                  }
+                  l = lnew;
+                }
+              }
+            }
+          });
+    } else {
+      DocSetUtil.collectSortedDocSet(
+          fcontext.base,
+          fcontext.searcher.getIndexReader(),
+          new SimpleCollector() {
+            NumericDocValues values = null; // NN
+
+            @Override
+            public ScoreMode scoreMode() {
+              return ScoreMode.COMPLETE_NO_SCORES;
+            }
+
+            @Override
+            protected void doSetNextReader(LeafReaderContext ctx) throws IOException {
+              setNextReaderFirstPhase(ctx);
+              values = DocValues.getNumeric(ctx.reader(), sf.getName());
+            }
+
+            @Override
+            public void collect(int segDoc) throws IOException {
+              if (values.advanceExact(segDoc)) {
+                sketch.add(values.longValue());
+              }
+            }
+          });
+    }
+  }
+}
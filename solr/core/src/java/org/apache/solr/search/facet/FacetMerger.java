@@ -58,6 +58,8 @@ public abstract class FacetMerger {
     int maxBucket;
     int shardNum = -1; // TODO: keep same mapping across multiple phases...
     boolean bucketWasMissing;
+    // collects the refinement needs of facets with adaptive overrequest, if not null
+    AdaptiveOverrequest.Observation overrequestObservation;
 
     public void newShard(String shard) {
       Integer prev = shardmap.put(shard, ++shardNum);
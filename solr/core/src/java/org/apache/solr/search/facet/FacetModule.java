@@ -19,10 +19,16 @@ package org.apache.solr.search.facet;
 import static org.apache.solr.common.util.Utils.fromJSONString;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
 import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
@@ -33,12 +39,27 @@ import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.Utils;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
 import org.apache.solr.handler.component.ShardRequest;
 import org.apache.solr.handler.component.ShardResponse;
+import org.apache.solr.metrics.MetricsMap;
+import org.apache.solr.metrics.SolrMetricsContext;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.CaffeineCache;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.QueryContext;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.QueryUtils;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.util.DDSketch;
 import org.noggit.CharArr;
 import org.noggit.JSONWriter;
 
@@ -56,6 +77,38 @@ public class FacetModule extends SearchComponent {
   // Internal information passed down from the top level to shards for distributed faceting.
   private static final String FACET_INFO = "_facet_";
   private static final String FACET_REFINE = "refine";
+  private static final String FACET_OVERREQUEST = "overrequest";
+
+  private final AdaptiveOverrequest adaptiveOverrequest = new AdaptiveOverrequest();
+
+  // the number of bytes of slot arrays each core may keep for reuse, 0 disables pooling
+  private static final long SLOT_ARRAY_POOL_SIZE =
+      Long.getLong("solr.facet.slotArrayPoolSize", 16L * 1024 * 1024); // internal setting
+
+  final SlotArrayPool slotArrayPool =
+      SLOT_ARRAY_POOL_SIZE > 0 ? new SlotArrayPool(SLOT_ARRAY_POOL_SIZE) : null;
+
+  // the size and maxRamMB of the cache of ddsketch() values of whole segments, 0 disables it
+  private static final int SEGMENT_SKETCH_CACHE_SIZE =
+      Integer.getInteger("solr.facet.segmentSketchCacheSize", 1024); // internal setting
+  private static final int SEGMENT_SKETCH_CACHE_MAX_RAM_MB =
+      Integer.getInteger("solr.facet.segmentSketchCacheMaxRamMB", 64); // internal setting
+
+  final SolrCache<DDSketchAgg.SegmentSketchKey, DDSketch> segmentSketchCache =
+      newSegmentSketchCache();
+
+  private static SolrCache<DDSketchAgg.SegmentSketchKey, DDSketch> newSegmentSketchCache() {
+    if (SEGMENT_SKETCH_CACHE_SIZE <= 0) {
+      return null;
+    }
+    Map<String, String> args = new HashMap<>();
+    args.put(SolrCache.SIZE_PARAM, Integer.toString(SEGMENT_SKETCH_CACHE_SIZE));
+    args.put(SolrCache.INITIAL_SIZE_PARAM, "16");
+    args.put(SolrCache.MAX_RAM_MB_PARAM, Integer.toString(SEGMENT_SKETCH_CACHE_MAX_RAM_MB));
+    CaffeineCache<DDSketchAgg.SegmentSketchKey, DDSketch> cache = new CaffeineCache<>();
+    cache.init(args, null, null);
+    return cache;
+  }
 
   public FacetComponentState getFacetComponentState(ResponseBuilder rb) {
     // TODO: put a map on ResponseBuilder?
@@ -134,12 +187,16 @@ public class FacetModule extends SearchComponent {
     fcontext.searcher = rb.req.getSearcher();
     fcontext.qcontext = QueryContext.newContext(fcontext.searcher);
     fcontext.cache = cache;
+    fcontext.slotArrayPool = slotArrayPool;
+    fcontext.segmentSketchCache = segmentSketchCache;
     if (isShard) {
       fcontext.flags |= FacetContext.IS_SHARD;
       fcontext.facetInfo =
           facetState.facetInfo.isEmpty()
               ? null
               : (Map<String, Object>) facetState.facetInfo.get(FACET_REFINE);
+      fcontext.overrequestFactors =
+          (Map<String, Object>) facetState.facetInfo.get(FACET_OVERREQUEST);
       if (fcontext.facetInfo != null) {
         fcontext.flags |= FacetContext.IS_REFINEMENT;
         fcontext.flags |=
@@ -153,9 +210,103 @@ public class FacetModule extends SearchComponent {
       rb.req.getContext().put("FacetDebugInfo", fdebug);
     }
 
+    SolrCache<CachedFacetResult.Key, CachedFacetResult> facetCache =
+        cache && fcontext.facetInfo == null && !rb.isDebug()
+            ? fcontext.searcher.getFacetCache()
+            : null;
+    CachedFacetResult.Key cacheKey = null;
+    if (facetCache != null) {
+      cacheKey =
+          CachedFacetResult.Key.of(
+              rb.getQuery(),
+              rb.getFilters(),
+              rb.req.getParams(),
+              rb.req.getJSON(),
+              facetState.facetCommands);
+      CachedFacetResult cached = cacheKey == null ? null : facetCache.get(cacheKey);
+      if (cached != null) {
+        rb.rsp.add("facets", cached.getFacets());
+        return;
+      }
+    }
+
     Object results = facetState.facetRequest.process(fcontext);
     // ExitableDirectory timeout causes absent "facets"
     rb.rsp.add("facets", results);
+
+    if (cacheKey != null && results != null && !rb.rsp.isPartialResults()) {
+      CachedFacetResult entry = CachedFacetResult.of(results);
+      if (entry != null) {
+        facetCache.put(cacheKey, entry);
+      }
+    }
+  }
+
+  /** Computes the facets of a facetCache entry with a new searcher, to autowarm its cache. */
+  public static void regenerate(
+      SolrIndexSearcher searcher,
+      SolrCache<CachedFacetResult.Key, CachedFacetResult> facetCache,
+      CachedFacetResult.Key key)
+      throws IOException {
+    SolrQueryRequest req =
+        new LocalSolrQueryRequest(searcher.getCore(), key.getParams()) {
+          @Override
+          public SolrIndexSearcher getSearcher() {
+            return searcher;
+          }
+        };
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    // date math is resolved against the NOW parameter of the request, if the key holds it
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+    try {
+      req.setJSON(key.json);
+      // excludeTags needs the tagged queries of the request, and its query and filters
+      ResponseBuilder rb = new ResponseBuilder(req, rsp, Collections.emptyList());
+      if (!parseDomain(rb, key)) {
+        // the domain came from more than the parameters, e.g. another component added filters
+        return;
+      }
+      SolrRequestInfo.getRequestInfo().setResponseBuilder(rb);
+      FacetContext fcontext = new FacetContext();
+      fcontext.base = searcher.getDocSet(key.getDomainQueries());
+      fcontext.req = req;
+      fcontext.searcher = searcher;
+      fcontext.qcontext = QueryContext.newContext(searcher);
+      if (req.getParams().getBool(ShardParams.IS_SHARD, false)) {
+        fcontext.flags |= FacetContext.IS_SHARD;
+      }
+      Object results = FacetRequest.parse(req, key.facetCommands).process(fcontext);
+      CachedFacetResult entry = results == null ? null : CachedFacetResult.of(results);
+      if (entry != null) {
+        facetCache.put(key, entry);
+      }
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+      req.close();
+    }
+  }
+
+  /**
+   * Parses the query and filters of the request of a facetCache key as {@link
+   * org.apache.solr.handler.component.QueryComponent} does, and returns whether they are those of
+   * the key.
+   */
+  private static boolean parseDomain(ResponseBuilder rb, CachedFacetResult.Key key) {
+    SolrParams params = rb.req.getParams();
+    String defType = params.get(QueryParsing.DEFTYPE, QParserPlugin.DEFAULT_QTYPE);
+    try {
+      Query query = QParser.getParser(params.get(CommonParams.Q), defType, rb.req).getQuery();
+      if (query == null) {
+        query = new MatchNoDocsQuery();
+      }
+      List<Query> filters = new ArrayList<>(QueryUtils.parseFilterQueries(rb.req));
+      filters.removeIf(Objects::isNull);
+      rb.setQuery(query);
+      rb.setFilters(filters.isEmpty() ? null : filters);
+      return query.equals(key.query) && filters.equals(key.filters);
+    } catch (SyntaxError e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
   }
 
   private void clearFaceting(List<ShardRequest> outgoing) {
@@ -263,6 +414,11 @@ public class FacetModule extends SearchComponent {
       }
     }
 
+    if (facetState.mcontext.overrequestObservation != null) {
+      facetState.mcontext.overrequestObservation.commit();
+      facetState.mcontext.overrequestObservation = null;
+    }
+
     // clearFaceting(rb.outgoing);
     return ResponseBuilder.STAGE_DONE;
   }
@@ -275,7 +431,10 @@ public class FacetModule extends SearchComponent {
     if ((sreq.purpose & ShardRequest.PURPOSE_GET_TOP_IDS) != 0) {
       sreq.purpose |= FacetModule.PURPOSE_GET_JSON_FACETS;
       // The presence of FACET_INFO (_facet_) turns on json faceting
-      sreq.params.set(FACET_INFO, "{}");
+      Map<String, Object> factors = adaptiveOverrequest.getFactors(facetState.facetRequest);
+      sreq.params.set(
+          FACET_INFO,
+          factors.isEmpty() ? "{}" : Utils.toJSONString(Map.of(FACET_OVERREQUEST, factors)));
     } else {
       // turn off faceting on other requests
       /* distributedProcess will need to use other requests for refinement
@@ -310,6 +469,7 @@ public class FacetModule extends SearchComponent {
       if (facetState.merger == null) {
         facetState.merger = facetState.facetRequest.createFacetMerger(facet);
         facetState.mcontext = new FacetMerger.Context(sreq.responses.size());
+        facetState.mcontext.overrequestObservation = adaptiveOverrequest.newObservation();
       }
 
       if ((sreq.purpose & PURPOSE_REFINE_JSON_FACETS) != 0) {
@@ -341,6 +501,35 @@ public class FacetModule extends SearchComponent {
     }
   }
 
+  @Override
+  public void initializeMetrics(SolrMetricsContext parentContext, String scope) {
+    super.initializeMetrics(parentContext, scope);
+    if (segmentSketchCache != null) {
+      segmentSketchCache.initializeMetrics(solrMetricsContext, "segmentSketchCache");
+    }
+    if (slotArrayPool == null) {
+      return;
+    }
+    MetricsMap slotArrayPoolMap =
+        new MetricsMap(
+            map -> {
+              map.putNoEx("allocated", slotArrayPool.getNumAllocated());
+              map.putNoEx("reused", slotArrayPool.getNumReused());
+              map.putNoEx("pooledBytes", slotArrayPool.getPooledBytes());
+              map.putNoEx("maxBytes", slotArrayPool.getMaxBytes());
+            });
+    this.solrMetricsContext.gauge(
+        slotArrayPoolMap, true, "slotArrayPool", getCategory().toString(), scope);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (segmentSketchCache != null) {
+      segmentSketchCache.close();
+    }
+    super.close();
+  }
+
   @Override
   public String getDescription() {
     return "Facet Module";
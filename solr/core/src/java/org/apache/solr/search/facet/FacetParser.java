@@ -75,6 +75,12 @@ abstract class FacetParser<T extends FacetRequest> {
           continue;
         }
 
+        // a number, so that a facet may still be named "threads"
+        if ("threads".equals(key) && value instanceof Number) {
+          facet.threads = (int) getLong(m, "threads", 0);
+          continue;
+        }
+
         // "my_prices" : { "range" : { "field":...
         // key="my_prices", value={"range":..
 
@@ -551,7 +557,11 @@ abstract class FacetParser<T extends FacetRequest> {
         facet.field = getField(m);
         facet.offset = getLong(m, "offset", facet.offset);
         facet.limit = getLong(m, "limit", facet.limit);
-        facet.overrequest = (int) getLong(m, "overrequest", facet.overrequest);
+        if ("adaptive".equals(m.get("overrequest"))) {
+          facet.adaptiveOverrequest = true;
+        } else {
+          facet.overrequest = (int) getLong(m, "overrequest", facet.overrequest);
+        }
         facet.overrefine = (int) getLong(m, "overrefine", facet.overrefine);
         if (facet.limit == 0)
           facet.offset = 0; // normalize.  an offset with a limit of non-zero isn't useful.
@@ -562,11 +572,13 @@ abstract class FacetParser<T extends FacetRequest> {
         facet.allBuckets = getBoolean(m, "allBuckets", facet.allBuckets);
         facet.method = FacetField.FacetMethod.fromString(getString(m, "method", null));
         facet.cacheDf = (int) getLong(m, "cacheDf", facet.cacheDf);
+        facet.sketchSize = (int) getLong(m, "sketchSize", facet.sketchSize);
 
         // TODO: pull up to higher level?
         facet.refine = FacetRequest.RefineMethod.fromObj(m.get("refine"));
 
         facet.perSeg = getBooleanOrNull(m, "perSeg");
+        facet.threads = (int) getLong(m, "threads", facet.threads);
 
         // facet.sort may depend on a facet stat...
         // should we be parsing / validating this here, or in the execution environment?
@@ -18,11 +18,20 @@ package org.apache.solr.search.facet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.function.IntFunction;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.BooleanClause;
@@ -38,6 +47,7 @@ import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryContext;
 import org.apache.solr.search.QueryUtils;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.SyntaxError;
@@ -71,6 +81,31 @@ public abstract class FacetProcessor<T extends FacetRequest> {
     handleDomainChanges();
   }
 
+  /**
+   * Hands the arrays of the accumulators back to the pool once the response has been built.
+   * Processors whose response still reads from the accumulators when it is written (i.e. streaming
+   * ones) must not release them.
+   */
+  void releaseSlotArrays(SlotArrayPool pool) {
+    Set<SlotAcc> released = Collections.newSetFromMap(new IdentityHashMap<>());
+    releaseSlotArrays(pool, released, countAcc);
+    if (accs != null) {
+      releaseSlotArrays(pool, released, accs);
+    }
+    if (accMap != null) {
+      releaseSlotArrays(pool, released, accMap.values().toArray(new SlotAcc[0]));
+    }
+  }
+
+  /** Releases the arrays of the given accumulators that weren't released yet */
+  static void releaseSlotArrays(SlotArrayPool pool, Set<SlotAcc> released, SlotAcc... accs) {
+    for (SlotAcc acc : accs) {
+      if (acc != null && released.add(acc)) {
+        acc.releaseArrays(pool);
+      }
+    }
+  }
+
   private void evalFilters() throws IOException {
     if (freq.domain.filters == null || freq.domain.filters.isEmpty()) return;
     this.filter =
@@ -354,6 +389,26 @@ public abstract class FacetProcessor<T extends FacetRequest> {
       return count;
     }
 
+    // hand the whole set to the accumulators that ask for it, and collect the rest per segment
+    SlotAcc[] segAccs = accs;
+    if (accs != null) {
+      int numSegAccs = 0;
+      for (SlotAcc acc : accs) {
+        if (!acc.collectsDocSets()) numSegAccs++;
+      }
+      if (numSegAccs < accs.length) {
+        segAccs = new SlotAcc[numSegAccs];
+        numSegAccs = 0;
+        for (SlotAcc acc : accs) {
+          if (acc.collectsDocSets()) {
+            acc.collect(docs, slot, slotContext);
+          } else {
+            segAccs[numSegAccs++] = acc;
+          }
+        }
+      }
+    }
+
     final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
     final Iterator<LeafReaderContext> ctxIt = leaves.iterator();
     LeafReaderContext ctx = null;
@@ -374,15 +429,21 @@ public abstract class FacetProcessor<T extends FacetRequest> {
           adjustedMax = segBase + segMax;
         } while (doc >= adjustedMax);
         assert doc >= ctx.docBase;
-        setNextReader(ctx);
+        setNextReader(ctx, segAccs);
       }
       count++;
-      collect(doc - segBase, slot, slotContext); // per-seg collectors
+      collect(doc - segBase, slot, slotContext, segAccs); // per-seg collectors
     }
     return count;
   }
 
   void collect(int segDoc, int slot, IntFunction<SlotContext> slotContext) throws IOException {
+    collect(segDoc, slot, slotContext, accs);
+  }
+
+  private static void collect(
+      int segDoc, int slot, IntFunction<SlotContext> slotContext, SlotAcc[] accs)
+      throws IOException {
     if (accs != null) {
       for (SlotAcc acc : accs) {
         acc.collect(segDoc, slot, slotContext);
@@ -391,6 +452,10 @@ public abstract class FacetProcessor<T extends FacetRequest> {
   }
 
   void setNextReader(LeafReaderContext ctx) throws IOException {
+    setNextReader(ctx, accs);
+  }
+
+  private static void setNextReader(LeafReaderContext ctx, SlotAcc[] accs) throws IOException {
     // countAcc.setNextReader is a no-op
     for (SlotAcc acc : accs) {
       acc.setNextReader(ctx);
@@ -461,6 +526,10 @@ public abstract class FacetProcessor<T extends FacetRequest> {
       throws IOException {
 
     boolean emptyDomain = domain == null || domain.size() == 0;
+    List<String> keys = new ArrayList<>();
+    List<Callable<Object>> tasks = new ArrayList<>();
+    List<FacetQuery> sweepRequests = new ArrayList<>();
+    List<FacetContext> sweepContexts = new ArrayList<>();
 
     for (Map.Entry<String, FacetRequest> sub : freq.getSubFacets().entrySet()) {
       FacetRequest subRequest = sub.getValue();
@@ -497,10 +566,98 @@ public abstract class FacetProcessor<T extends FacetRequest> {
         fcontext.getDebugInfo().addChild(fdebug);
       }
 
-      Object result = subRequest.process(subContext);
+      if (freq.threads != 0) {
+        // the context is a plain map that function queries keep their state in
+        subContext.qcontext = QueryContext.newContext(fcontext.searcher);
+      }
 
-      response.add(sub.getKey(), result);
+      if (domain != null && QueryFacetSweep.canSweep(subRequest, subContext)) {
+        sweepRequests.add((FacetQuery) subRequest);
+        sweepContexts.add(subContext);
+      }
+
+      keys.add(sub.getKey());
+      tasks.add(() -> subRequest.process(subContext));
+    }
+
+    if (sweepRequests.size() > 1 && QueryFacetSweep.isDense(domain, fcontext.searcher.maxDoc())) {
+      QueryFacetSweep.sweep(domain, sweepRequests, sweepContexts);
+    }
+
+    List<Object> results = runConcurrently(fcontext, freq.threads, tasks);
+    for (int i = 0; i < keys.size(); i++) {
+      response.add(keys.get(i), results.get(i));
+    }
+  }
+
+  /**
+   * Runs the tasks and returns their results in order. Like {@code facet.threads}, at most {@code
+   * threads} of them run at a time, a negative number means no limit and 0 runs them all on the
+   * calling thread.
+   */
+  static <R> List<R> runConcurrently(FacetContext fcontext, int threads, List<Callable<R>> tasks)
+      throws IOException {
+    List<R> results = new ArrayList<>(tasks.size());
+    if (threads == 0 || tasks.size() <= 1) {
+      for (Callable<R> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (IOException | RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+        }
+      }
+      return results;
+    }
+
+    Executor executor = fcontext.req.getCoreContainer().getUpdateShardHandler().getUpdateExecutor();
+    Semaphore semaphore = new Semaphore(threads < 0 ? Integer.MAX_VALUE : threads);
+    List<Future<R>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<R> task : tasks) {
+        RunnableFuture<R> future =
+            new FutureTask<>(
+                () -> {
+                  try {
+                    return task.call();
+                  } finally {
+                    semaphore.release();
+                  }
+                });
+        semaphore.acquire(); // may block and/or interrupt
+        executor.execute(future);
+        futures.add(future);
+      }
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(
+          SolrException.ErrorCode.SERVER_ERROR,
+          "Error while processing facets: InterruptedException",
+          e);
+    } catch (ExecutionException ee) {
+      Throwable e = ee.getCause(); // unwrap
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e instanceof IOException) {
+        throw (IOException) e;
+      }
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      throw new SolrException(
+          SolrException.ErrorCode.SERVER_ERROR, "Error while processing facets: " + e, e);
+    } finally {
+      // don't leave the remaining tasks running if one failed, but don't interrupt running ones
+      for (Future<R> future : futures) {
+        future.cancel(false);
+      }
     }
+    return results;
   }
 
   @SuppressWarnings("unused")
@@ -53,6 +53,12 @@ class FacetQueryProcessor extends FacetProcessor<FacetQuery> {
   public void process() throws IOException {
     super.process();
 
+    if (fcontext.sweptResponse != null) {
+      // already counted by our parent, along with our siblings
+      response = fcontext.sweptResponse;
+      return;
+    }
+
     if (fcontext.facetInfo != null) {
       // FIXME - what needs to be done here?
     }
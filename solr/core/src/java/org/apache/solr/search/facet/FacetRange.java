@@ -20,6 +20,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import org.apache.solr.common.params.FacetParams.FacetRangeInclude;
+import org.apache.solr.common.params.FacetParams.FacetRangeMethod;
 import org.apache.solr.common.params.FacetParams.FacetRangeOther;
 
 public class FacetRange extends FacetRequestSorted {
@@ -33,6 +34,12 @@ public class FacetRange extends FacetRequestSorted {
   EnumSet<FacetRangeInclude> include;
   EnumSet<FacetRangeOther> others;
 
+  /**
+   * How the buckets are counted, or null to let the processor pick. {@link FacetRangeMethod#DV} is
+   * only a hint, and falls back to {@link FacetRangeMethod#FILTER} where it can't be used.
+   */
+  FacetRangeMethod method;
+
   {
     // defaults
     mincount = 0;
@@ -49,6 +49,11 @@ class FacetRangeParser extends FacetParser<FacetRange> {
     facet.hardend = getBoolean(m, "hardend", facet.hardend);
     facet.mincount = getLong(m, "mincount", 0);
 
+    String method = getString(m, "method", null);
+    if (method != null) {
+      facet.method = FacetParams.FacetRangeMethod.get(method);
+    }
+
     // TODO: refactor list-of-options code
 
     List<String> list = getStringList(m, "include", false);
@@ -21,10 +21,16 @@ import static org.apache.solr.search.facet.FacetContext.SKIP_FACET;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.EnumFieldValue;
@@ -41,10 +47,12 @@ import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.schema.TrieDateField;
 import org.apache.solr.schema.TrieField;
+import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.ExtendedQuery;
 import org.apache.solr.search.SyntaxError;
 import org.apache.solr.search.WrappedQuery;
+import org.apache.solr.search.facet.SlotAcc.SlotContext;
 import org.apache.solr.util.DateMathParser;
 
 class FacetRangeProcessor extends FacetProcessor<FacetRange> {
@@ -527,12 +535,16 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
 
     createAccs(fcontext.base.size(), slotCount);
 
-    for (int idx = 0; idx < rangeList.size(); idx++) {
-      rangeStats(rangeList.get(idx), idx, hasSubFacets);
-    }
+    if (!hasSubFacets && canCollectDocValues()) {
+      collectDocValues();
+    } else {
+      for (int idx = 0; idx < rangeList.size(); idx++) {
+        rangeStats(rangeList.get(idx), idx, hasSubFacets);
+      }
 
-    for (int idx = 0; idx < otherList.size(); idx++) {
-      rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      for (int idx = 0; idx < otherList.size(); idx++) {
+        rangeStats(otherList.get(idx), rangeList.size() + idx, hasSubFacets);
+      }
     }
 
     final SimpleOrderedMap res = new SimpleOrderedMap<>();
@@ -569,28 +581,7 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
   private DocSet[] intersections;
 
   private void rangeStats(Range range, int slot, boolean hasSubFacets) throws IOException {
-    final Query rangeQ;
-    {
-      final Query rangeQuery =
-          sf.getType()
-              .getRangeQuery(
-                  null,
-                  sf,
-                  range.low == null ? null : calc.formatValue(range.low),
-                  range.high == null ? null : calc.formatValue(range.high),
-                  range.includeLower,
-                  range.includeUpper);
-      if (fcontext.cache) {
-        rangeQ = rangeQuery;
-      } else if (rangeQuery instanceof ExtendedQuery) {
-        ((ExtendedQuery) rangeQuery).setCache(false);
-        rangeQ = rangeQuery;
-      } else {
-        final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
-        wrappedQuery.setCache(false);
-        rangeQ = wrappedQuery;
-      }
-    }
+    final Query rangeQ = buildRangeQuery(range);
     // TODO: specialize count only
     DocSet intersection = fcontext.searcher.getDocSet(rangeQ, fcontext.base);
     if (hasSubFacets) {
@@ -609,6 +600,227 @@ class FacetRangeProcessor extends FacetProcessor<FacetRange> {
     countAcc.incrementCount(slot, num); // TODO: roll this into collect()
   }
 
+  private Query buildRangeQuery(Range range) {
+    final Query rangeQuery =
+        sf.getType()
+            .getRangeQuery(
+                null,
+                sf,
+                range.low == null ? null : calc.formatValue(range.low),
+                range.high == null ? null : calc.formatValue(range.high),
+                range.includeLower,
+                range.includeUpper);
+    if (fcontext.cache) {
+      return rangeQuery;
+    } else if (rangeQuery instanceof ExtendedQuery) {
+      ((ExtendedQuery) rangeQuery).setCache(false);
+      return rangeQuery;
+    } else {
+      final WrappedQuery wrappedQuery = new WrappedQuery(rangeQuery);
+      wrappedQuery.setCache(false);
+      return wrappedQuery;
+    }
+  }
+
+  /** Number of docs whose values are read from the docValues before they are bucketed */
+  private static final int DV_BLOCK_SIZE = 1024;
+
+  /**
+   * Whether the buckets can be counted with a single pass over the docValues of the field, instead
+   * of intersecting the base domain with a range query per bucket. That needs a single valued point
+   * field with docValues, and accumulators that can be fed doc by doc.
+   */
+  private boolean canCollectDocValues() {
+    if (freq.method == FacetParams.FacetRangeMethod.FILTER || ranges != null) return false;
+    if (!sf.getType().isPointField() || !sf.hasDocValues() || sf.multiValued()) return false;
+    if (!(calc instanceof IntCalc
+        || calc instanceof LongCalc
+        || calc instanceof FloatCalc
+        || calc instanceof DoubleCalc
+        || calc instanceof DateCalc)) {
+      return false;
+    }
+    for (SlotAcc acc : accs) {
+      if (acc.collectsDocSets()) return false;
+    }
+    // gap generated ranges are contiguous, but a tiny float gap can still produce empty ones
+    long prevLow = Long.MIN_VALUE;
+    long prevHigh = Long.MIN_VALUE;
+    for (Range range : rangeList) {
+      long low = sortableLow(range);
+      long high = sortableHigh(range);
+      if (low > high || low < prevLow || high < prevHigh) return false;
+      prevLow = low;
+      prevHigh = high;
+    }
+    return true;
+  }
+
+  /** The lowest value in the range, as sortable bits, inclusive */
+  private long sortableLow(Range range) {
+    if (range.low == null) {
+      return sortableBits(
+          calc instanceof FloatCalc
+              ? Float.NEGATIVE_INFINITY
+              : (calc instanceof DoubleCalc ? Double.NEGATIVE_INFINITY : Long.MIN_VALUE));
+    }
+    long bits = sortableBits(range.low);
+    return range.includeLower ? bits : bits + 1;
+  }
+
+  /** The highest value in the range, as sortable bits, inclusive */
+  private long sortableHigh(Range range) {
+    if (range.high == null) {
+      return sortableBits(
+          calc instanceof FloatCalc
+              ? Float.POSITIVE_INFINITY
+              : (calc instanceof DoubleCalc ? Double.POSITIVE_INFINITY : Long.MAX_VALUE));
+    }
+    long bits = sortableBits(range.high);
+    return range.includeUpper ? bits : bits - 1;
+  }
+
+  /**
+   * Maps a value to bits that sort like the values do, the same way as {@link #toSortableBits} maps
+   * the bits from the docValues
+   */
+  private long sortableBits(Object value) {
+    if (calc instanceof FloatCalc) {
+      return NumericUtils.floatToSortableInt(((Number) value).floatValue());
+    } else if (calc instanceof DoubleCalc) {
+      return NumericUtils.doubleToSortableLong(((Number) value).doubleValue());
+    } else if (value instanceof Date) {
+      return ((Date) value).getTime();
+    }
+    return ((Number) value).longValue();
+  }
+
+  /** Maps the docValues of the field in place to bits that sort like the values do */
+  private void toSortableBits(long[] values, int count) {
+    if (calc instanceof FloatCalc) {
+      for (int i = 0; i < count; i++) {
+        values[i] = NumericUtils.sortableFloatBits((int) values[i]);
+      }
+    } else if (calc instanceof DoubleCalc) {
+      for (int i = 0; i < count; i++) {
+        values[i] = NumericUtils.sortableDoubleBits(values[i]);
+      }
+    }
+    // int, long and date docValues already sort like their values
+  }
+
+  /**
+   * Counts all buckets, including the <code>other</code> ones, with a single pass over the base
+   * domain: values are read from the docValues a block at a time, and each value is mapped to its
+   * buckets directly (by arithmetic when the gap is uniform, or else by binary search) instead of
+   * intersecting the domain with a range query per bucket.
+   */
+  private void collectDocValues() throws IOException {
+    final int numRanges = rangeList.size();
+    final int numOthers = otherList.size();
+    final int slotCount = numRanges + numOthers;
+    final long[] lows = new long[numRanges];
+    final long[] highs = new long[numRanges];
+    for (int i = 0; i < numRanges; i++) {
+      lows[i] = sortableLow(rangeList.get(i));
+      highs[i] = sortableHigh(rangeList.get(i));
+    }
+    final long[] otherLows = new long[numOthers];
+    final long[] otherHighs = new long[numOthers];
+    for (int i = 0; i < numOthers; i++) {
+      otherLows[i] = sortableLow(otherList.get(i));
+      otherHighs[i] = sortableHigh(otherList.get(i));
+    }
+
+    // when every bucket is as wide as the first, the bucket of a value can be computed directly
+    long width = 0;
+    if (numRanges > 1 && !(calc instanceof FloatCalc || calc instanceof DoubleCalc)) {
+      width = lows[1] - lows[0];
+      for (int i = 1; i < numRanges && width > 0; i++) {
+        if (lows[i] - lows[i - 1] != width) width = 0;
+      }
+      // the offset of a value from the first bucket must not overflow either
+      if (width > 0 && highs[numRanges - 1] - lows[0] < 0) width = 0;
+    }
+
+    final Query[] slotQueries = new Query[slotCount];
+    final IntFunction<SlotContext> slotContext =
+        slot -> {
+          if (slotQueries[slot] == null) {
+            slotQueries[slot] =
+                buildRangeQuery(
+                    slot < numRanges ? rangeList.get(slot) : otherList.get(slot - numRanges));
+          }
+          return new SlotContext(slotQueries[slot]);
+        };
+
+    final boolean countOnly = accs.length == 0;
+    final long[] counts = new long[slotCount];
+    final int[] docs = new int[DV_BLOCK_SIZE];
+    final long[] values = new long[DV_BLOCK_SIZE];
+
+    final List<LeafReaderContext> leaves = fcontext.searcher.getIndexReader().leaves();
+    final DocIterator docsIt = fcontext.base.iterator();
+    int doc = docsIt.hasNext() ? docsIt.nextDoc() : DocIdSetIterator.NO_MORE_DOCS;
+    for (LeafReaderContext ctx : leaves) {
+      final int segMax = ctx.docBase + ctx.reader().maxDoc();
+      if (doc >= segMax) continue;
+      final NumericDocValues dv = DocValues.getNumeric(ctx.reader(), sf.getName());
+      if (!countOnly) setNextReader(ctx);
+      while (doc < segMax) {
+        // read a block of values, then bucket them all in one tight loop
+        int numValues = 0;
+        while (doc < segMax && numValues < DV_BLOCK_SIZE) {
+          final int segDoc = doc - ctx.docBase;
+          if (dv.advanceExact(segDoc)) {
+            docs[numValues] = segDoc;
+            values[numValues++] = dv.longValue();
+          }
+          doc = docsIt.hasNext() ? docsIt.nextDoc() : DocIdSetIterator.NO_MORE_DOCS;
+        }
+        toSortableBits(values, numValues);
+
+        for (int i = 0; i < numValues; i++) {
+          final long value = values[i];
+          if (numRanges > 0 && value >= lows[0] && value <= highs[numRanges - 1]) {
+            int idx;
+            if (width > 0) {
+              idx = (int) Math.min((value - lows[0]) / width, numRanges - 1);
+            } else {
+              idx = Arrays.binarySearch(lows, value);
+              if (idx < 0) {
+                idx = -idx - 2;
+              } else {
+                // find the last bucket starting at the value
+                while (idx + 1 < numRanges && lows[idx + 1] == value) idx++;
+              }
+            }
+            // a value on a bound may be included by both buckets sharing it
+            for (; idx >= 0 && value <= highs[idx]; idx--) {
+              counts[idx]++;
+              if (!countOnly) collect(docs[i], idx, slotContext);
+            }
+          }
+          for (int o = 0; o < numOthers; o++) {
+            if (value >= otherLows[o] && value <= otherHighs[o]) {
+              counts[numRanges + o]++;
+              if (!countOnly) collect(docs[i], numRanges + o, slotContext);
+            }
+          }
+        }
+      }
+    }
+
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (counts[slot] == 0) {
+        // like the filter path, let the accumulators know about the empty bucket
+        collect(DocSet.empty(), slot, slotContext);
+      } else {
+        countAcc.incrementCount(slot, counts[slot]);
+      }
+    }
+  }
+
   @SuppressWarnings({"unchecked", "rawtypes"})
   private void doSubs(SimpleOrderedMap bucket, int slot) throws IOException {
     // handle sub-facets for this bucket
@@ -143,6 +143,8 @@ public abstract class FacetRequest {
   protected Map<String, AggValueSource> facetStats; // per-bucket statistics
   protected Map<String, FacetRequest> subFacets; // per-bucket sub-facets
   protected boolean processEmpty;
+  // max threads used to count segments and to run sub-facets; 0 is none, negative is unlimited
+  protected int threads;
   protected Domain domain;
 
   // domain changes
@@ -479,7 +481,11 @@ public abstract class FacetRequest {
       }
     }
 
-    return facetProcessor.getResponse();
+    Object response = facetProcessor.getResponse();
+    if (fcontext.slotArrayPool != null) {
+      facetProcessor.releaseSlotArrays(fcontext.slotArrayPool);
+    }
+    return response;
   }
 
   public abstract FacetProcessor<? extends FacetRequest> createFacetProcessor(
@@ -28,6 +28,12 @@ abstract class FacetRequestSorted extends FacetRequest {
    */
   int overrequest = -1;
 
+  /**
+   * Whether the default overrequest is sized from the skew seen for the field in previous
+   * distributed requests, see {@link AdaptiveOverrequest}
+   */
+  boolean adaptiveOverrequest;
+
   /**
    * Number of buckets to fill in beyond the limit to do internally during refinement of distributed
    * search. -1 means default heuristic.
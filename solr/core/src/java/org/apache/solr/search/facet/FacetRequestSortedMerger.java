@@ -206,6 +206,10 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
     if (returnedAllBuckets && tags.isEmpty() && tagsWithPartial.isEmpty()) {
       // this shard returned all of its possible buckets, and there were no sub-facets with partial
       // results or sub-facets that require refining
+      recordMissing(
+          mcontext,
+          Math.min(buckets.size(), freq.limit >= 0 ? freq.offset + freq.limit : buckets.size()),
+          0);
       return null;
     }
 
@@ -268,12 +272,16 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
     // requirements. each entry is [bucketval, subs]
     ArrayList<Object> skipBuckets = null;
 
+    long numChecked = 0;
+    long numMissing = 0;
     for (FacetBucket bucket : bucketList) {
       if (numBucketsToCheck-- <= 0) break;
+      numChecked++;
       // if this bucket is missing,
       assert !thisMissing || !mcontext.getShardFlag(bucket.bucketNumber);
       boolean saw = !thisMissing && mcontext.getShardFlag(bucket.bucketNumber);
       if (!saw && !returnedAllBuckets) {
+        numMissing++;
         // we didn't see the bucket for this shard, and it's possible that the shard has it
         Map<String, Object> bucketRefinement = null;
 
@@ -306,6 +314,11 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
       }
     }
 
+    // a facet missing as a whole says nothing about the skew of its own field
+    if (!thisMissing) {
+      recordMissing(mcontext, numChecked, numMissing);
+    }
+
     // TODO: what if we don't need to refine any variable buckets, but we do need to contribute to
     // numBuckets, missing, allBuckets, etc... because we were "partial".  That will be handled at a
     // higher level (i.e. we'll be in someone's missing bucket?)
@@ -322,6 +335,18 @@ abstract class FacetRequestSortedMerger<FacetRequestT extends FacetRequestSorted
     return refinement;
   }
 
+  /**
+   * Lets {@link AdaptiveOverrequest} know how many of the top buckets checked for the current shard
+   * were missing from its response
+   */
+  private void recordMissing(Context mcontext, long numChecked, long numMissing) {
+    if (freq.adaptiveOverrequest
+        && freq instanceof FacetField
+        && mcontext.overrequestObservation != null) {
+      mcontext.overrequestObservation.record(((FacetField) freq).field, numChecked, numMissing);
+    }
+  }
+
   // utility method for subclasses to override to finish calculating faceting (special buckets in
   // field facets)... this feels hacky and we should find a better way.
   Map<String, Object> getRefinementSpecial(
@@ -17,12 +17,16 @@
 package org.apache.solr.search.facet;
 
 import java.io.IOException;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.util.Hash;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.HLLField;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.util.hll.HLL;
 import org.apache.solr.util.hll.HLLType;
@@ -57,6 +61,9 @@ public class HLLAgg extends StrAggValueSource {
   public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots)
       throws IOException {
     SchemaField sf = fcontext.qcontext.searcher().getSchema().getField(getArg());
+    if (sf.getType() instanceof HLLField) {
+      return new SketchAcc(fcontext, getArg(), numSlots);
+    }
     if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
       if (sf.getType().isPointField()) {
         return new SortedNumericAcc(fcontext, getArg(), numSlots);
@@ -83,7 +90,7 @@ public class HLLAgg extends StrAggValueSource {
     return new Merger();
   }
 
-  private static class Merger extends FacetModule.FacetSortableMerger {
+  static class Merger extends FacetModule.FacetSortableMerger {
     HLL aggregate = null;
     long answer = -1; // -1 means unset
 
@@ -148,11 +155,15 @@ public class HLLAgg extends StrAggValueSource {
     protected void collectValues(int doc, int slot) throws IOException {
       HLL hll = sets[slot];
       if (hll == null) {
-        hll = sets[slot] = factory.getHLL();
+        hll = sets[slot] = newHLL();
       }
       collectValues(doc, hll);
     }
 
+    protected HLL newHLL() {
+      return factory.getHLL();
+    }
+
     protected abstract void collectValues(int doc, HLL hll) throws IOException;
 
     @Override
@@ -237,4 +248,47 @@ public class HLLAgg extends StrAggValueSource {
       }
     }
   }
+
+  /** Unions the sketches stored in an {@link HLLField} rather than hashing values */
+  class SketchAcc extends BaseNumericAcc {
+    BinaryDocValues values;
+
+    public SketchAcc(FacetContext fcontext, String field, int numSlots) throws IOException {
+      super(fcontext, field, numSlots);
+    }
+
+    @Override
+    public void setNextReader(LeafReaderContext readerContext) throws IOException {
+      super.setNextReader(readerContext);
+      values = DocValues.getBinary(readerContext.reader(), sf.getName());
+    }
+
+    @Override
+    protected boolean advanceExact(int doc) throws IOException {
+      return values.advanceExact(doc);
+    }
+
+    @Override
+    protected HLL newHLL() {
+      // the stored sketches may use other parameters than the factory
+      return ((HLLField) sf.getType()).newHLL();
+    }
+
+    @Override
+    protected void collectValues(int doc, HLL hll) throws IOException {
+      BytesRef bytes = values.binaryValue();
+      hll.union(
+          HLL.fromBytes(
+              ArrayUtil.copyOfSubArray(bytes.bytes, bytes.offset, bytes.offset + bytes.length)));
+    }
+
+    @Override
+    public Object getShardValue(int slot) throws IOException {
+      if (sets[slot] == null) {
+        // always send a sketch, so that unique() can tell how to merge the shard responses
+        sets[slot] = newHLL();
+      }
+      return super.getShardValue(slot);
+    }
+  }
 }
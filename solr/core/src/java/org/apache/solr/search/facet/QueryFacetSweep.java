@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.DocSetUtil;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Counts sibling <code>type:query</code> facets, along with the {@link RelatednessAgg} of each of
+ * them, with a single pass over the bitsets of the parent's domain, the queries, and the
+ * foreground/background sets -- instead of intersecting the domain and the foreground/background
+ * sets with each query in turn.
+ *
+ * <p>Only facets without nested facets, domain changes, or stats other than <code>relatedness()
+ * </code> (with {@link RelatednessAgg#SWEEP_COLLECTION} enabled) can be swept, and only over a
+ * dense domain (see {@link #isDense}). The response of each swept facet is left in its {@link
+ * FacetContext#sweptResponse}.
+ */
+final class QueryFacetSweep {
+
+  static final String SWEEP_COLLECTION_DEBUG_KEY = "sweep_collection";
+
+  /** Number of words of each bitset that are swept for every query before moving on */
+  private static final int BLOCK_WORDS = 1024;
+
+  private QueryFacetSweep() {}
+
+  static boolean canSweep(FacetRequest freq, FacetContext fcontext) {
+    if (!(freq instanceof FacetQuery) || freq.domain != null || !freq.getSubFacets().isEmpty()) {
+      return false;
+    }
+    if (fcontext.facetInfo != null || (fcontext.flags & FacetContext.SKIP_FACET) != 0) {
+      return false;
+    }
+    for (AggValueSource stat : freq.getFacetStats().values()) {
+      if (!(stat instanceof RelatednessAgg) || !((RelatednessAgg) stat).useSweep()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the domain is dense enough to be swept. A sweep reads every word of the bitsets, which
+   * costs O(maxDoc) per query, while intersecting a sparse domain with a query costs O(domain
+   * size): so domains that are small enough to be kept as a sorted list of docs (as nested buckets
+   * often are) are intersected as before.
+   */
+  static boolean isDense(DocSet domain, int maxDoc) {
+    return domain instanceof BitDocSet || domain.size() > DocSetUtil.smallSetSize(maxDoc);
+  }
+
+  /**
+   * @param domain the domain shared by all the facets
+   * @param requests the facets to sweep
+   * @param contexts the context of each facet, all of them children of the same context
+   */
+  static void sweep(DocSet domain, List<FacetQuery> requests, List<FacetContext> contexts)
+      throws IOException {
+    final SolrIndexSearcher searcher = contexts.get(0).searcher;
+    final int maxDoc = searcher.maxDoc();
+
+    // every query is intersected with each of these: the domain, and the distinct
+    // foreground/background sets of the relatedness() stats
+    final List<DocSet> rows = new ArrayList<>();
+    final Map<DocSet, Integer> rowIndexes = new IdentityHashMap<>();
+    rows.add(domain);
+    rowIndexes.put(domain, 0);
+    final Map<Query, DocSet> foregrounds = new HashMap<>();
+    final Map<Query, DocSet> backgrounds = new HashMap<>();
+    final List<int[]> statRows = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      final FacetContext fcontext = contexts.get(i);
+      final Map<String, AggValueSource> stats = requests.get(i).getFacetStats();
+      final int[] rowsOfStats = new int[stats.size() * 2];
+      int s = 0;
+      for (AggValueSource stat : stats.values()) {
+        final RelatednessAgg agg = (RelatednessAgg) stat;
+        // all the contexts share the same ancestors, so the foreground only depends on its query
+        DocSet fgSet = foregrounds.get(agg.fgQ);
+        if (fgSet == null) {
+          fgSet = agg.getForegroundSet(fcontext);
+          foregrounds.put(agg.fgQ, fgSet);
+        }
+        DocSet bgSet = backgrounds.get(agg.bgQ);
+        if (bgSet == null) {
+          bgSet = agg.getBackgroundSet(fcontext);
+          backgrounds.put(agg.bgQ, bgSet);
+        }
+        rowsOfStats[s++] = rowIndex(fgSet, rows, rowIndexes);
+        rowsOfStats[s++] = rowIndex(bgSet, rows, rowIndexes);
+      }
+      statRows.add(rowsOfStats);
+    }
+
+    final long[][] rowWords = new long[rows.size()][];
+    for (int r = 0; r < rowWords.length; r++) {
+      rowWords[r] = words(rows.get(r), maxDoc);
+    }
+    final long[][] queryWords = new long[requests.size()][];
+    for (int q = 0; q < queryWords.length; q++) {
+      final DocSet querySet = searcher.getDocSet(requests.get(q).q);
+      queryWords[q] = querySet.size() == 0 ? null : words(querySet, maxDoc);
+    }
+
+    // counts[q][r] is the size of the intersection of query q and row r. The bitsets are swept a
+    // block at a time, so that the block of each row stays in cache while all the queries go by.
+    final long[][] counts = new long[queryWords.length][rowWords.length];
+    final int numWords = FixedBitSet.bits2words(maxDoc);
+    for (int from = 0; from < numWords; from += BLOCK_WORDS) {
+      final int to = Math.min(from + BLOCK_WORDS, numWords);
+      for (int q = 0; q < queryWords.length; q++) {
+        final long[] query = queryWords[q];
+        if (query == null) continue;
+        final long[] queryCounts = counts[q];
+        for (int r = 0; r < rowWords.length; r++) {
+          final long[] row = rowWords[r];
+          long count = 0;
+          for (int w = from; w < to; w++) {
+            count += Long.bitCount(row[w] & query[w]);
+          }
+          queryCounts[r] += count;
+        }
+      }
+    }
+
+    for (int i = 0; i < requests.size(); i++) {
+      final FacetQuery freq = requests.get(i);
+      final FacetContext fcontext = contexts.get(i);
+      final SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+      final long count = counts[i][0];
+      bucket.add("count", count);
+      if (count > 0 || freq.processEmpty) {
+        final int[] rowsOfStats = statRows.get(i);
+        int s = 0;
+        for (Map.Entry<String, AggValueSource> stat : freq.getFacetStats().entrySet()) {
+          final int fgRow = rowsOfStats[s++];
+          final int bgRow = rowsOfStats[s++];
+          bucket.add(
+              stat.getKey(),
+              ((RelatednessAgg) stat.getValue())
+                  .getValue(
+                      fcontext,
+                      counts[i][fgRow],
+                      rows.get(fgRow).size(),
+                      counts[i][bgRow],
+                      rows.get(bgRow).size()));
+        }
+      }
+      fcontext.sweptResponse = bucket;
+      if (fcontext.getDebugInfo() != null) {
+        fcontext.getDebugInfo().putInfoItem(SWEEP_COLLECTION_DEBUG_KEY, (long) requests.size());
+      }
+    }
+  }
+
+  private static int rowIndex(DocSet set, List<DocSet> rows, Map<DocSet, Integer> rowIndexes) {
+    Integer idx = rowIndexes.get(set);
+    if (idx == null) {
+      idx = rows.size();
+      rows.add(set);
+      rowIndexes.put(set, idx);
+    }
+    return idx;
+  }
+
+  private static long[] words(DocSet set, int maxDoc) {
+    final Bits bits = set.getBits();
+    if (bits instanceof FixedBitSet && bits.length() >= maxDoc) {
+      return ((FixedBitSet) bits).getBits();
+    }
+    final FixedBitSet fixedBits = new FixedBitSet(maxDoc);
+    set.addAllTo(fixedBits);
+    return fixedBits.getBits();
+  }
+}
@@ -151,6 +151,13 @@ public class RelatednessAgg extends AggValueSource {
     // How do we find our what key we have in the current context?
     // loop over all the stats in the current context until we find one that's '==' to this???
 
+    DocSet fgSet = getForegroundSet(fcontext);
+    DocSet bgSet = getBackgroundSet(fcontext);
+    return new SKGSlotAcc(this, fcontext, numSlots, fgSet, bgSet);
+  }
+
+  /** The foreground query, restricted by the filters of every enclosing facet bucket */
+  DocSet getForegroundSet(FacetContext fcontext) throws IOException {
     List<Query> fgFilters = new ArrayList<>(3);
     fgFilters.add(fgQ);
     for (FacetContext ctx = fcontext; ctx != null; ctx = ctx.parent) {
@@ -172,9 +179,27 @@ public class RelatednessAgg extends AggValueSource {
       }
     }
 
-    DocSet fgSet = fcontext.searcher.getDocSet(fgFilters);
-    DocSet bgSet = fcontext.searcher.getDocSet(bgQ);
-    return new SKGSlotAcc(this, fcontext, numSlots, fgSet, bgSet);
+    return fcontext.searcher.getDocSet(fgFilters);
+  }
+
+  DocSet getBackgroundSet(FacetContext fcontext) throws IOException {
+    return fcontext.searcher.getDocSet(bgQ);
+  }
+
+  /** Whether the counts may be collected by sweeping, see {@link #SWEEP_COLLECTION} */
+  boolean useSweep() {
+    return useSweep;
+  }
+
+  /**
+   * The externalized value of this function for a bucket whose foreground and background counts
+   * were already computed, e.g. by a {@link QueryFacetSweep}
+   */
+  Object getValue(FacetContext fcontext, long fgCount, long fgSize, long bgCount, long bgSize) {
+    final BucketData slotVal = new BucketData(this);
+    slotVal.incSizes(fgSize, bgSize);
+    slotVal.incCounts(fgCount, bgCount);
+    return slotVal.externalize(fcontext.isShard());
   }
 
   @Override
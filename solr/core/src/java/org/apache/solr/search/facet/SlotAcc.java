@@ -132,6 +132,15 @@ public abstract class SlotAcc implements Closeable {
     return count;
   }
 
+  /**
+   * Returns true if this accumulator would rather be handed the whole domain of a bucket through
+   * {@link #collect(DocSet, int, IntFunction)} than be called once per document, for example
+   * because it can reuse work done for segments that match completely. Defaults to false.
+   */
+  public boolean collectsDocSets() {
+    return false;
+  }
+
   public abstract int compare(int slotA, int slotB);
 
   public abstract Object getValue(int slotNum) throws IOException;
@@ -156,6 +165,46 @@ public abstract class SlotAcc implements Closeable {
   @Override
   public void close() throws IOException {}
 
+  /**
+   * Called once the response has been built from this accumulator, to hand the arrays it took from
+   * the {@link SlotArrayPool} back. The accumulator must not be used afterwards.
+   */
+  void releaseArrays(SlotArrayPool pool) {}
+
+  /** An array for the given number of slots, taken from the pool of the core if it has one */
+  long[] newLongArray(int numSlots, long initialValue) {
+    if (fcontext != null && fcontext.slotArrayPool != null) {
+      return fcontext.slotArrayPool.newLongArray(numSlots, initialValue);
+    }
+    long[] values = new long[numSlots];
+    if (initialValue != 0) {
+      Arrays.fill(values, initialValue);
+    }
+    return values;
+  }
+
+  int[] newIntArray(int numSlots, int initialValue) {
+    if (fcontext != null && fcontext.slotArrayPool != null) {
+      return fcontext.slotArrayPool.newIntArray(numSlots, initialValue);
+    }
+    int[] values = new int[numSlots];
+    if (initialValue != 0) {
+      Arrays.fill(values, initialValue);
+    }
+    return values;
+  }
+
+  double[] newDoubleArray(int numSlots, double initialValue) {
+    if (fcontext != null && fcontext.slotArrayPool != null) {
+      return fcontext.slotArrayPool.newDoubleArray(numSlots, initialValue);
+    }
+    double[] values = new double[numSlots];
+    if (initialValue != 0) {
+      Arrays.fill(values, initialValue);
+    }
+    return values;
+  }
+
   public abstract static class Resizer {
     public abstract int getNewSize();
 
@@ -308,10 +357,7 @@ public abstract class SlotAcc implements Closeable {
         ValueSource values, FacetContext fcontext, int numSlots, double initialValue) {
       super(values, fcontext, numSlots);
       this.initialValue = initialValue;
-      result = new double[numSlots];
-      if (initialValue != 0) {
-        reset();
-      }
+      result = newDoubleArray(numSlots, initialValue);
     }
 
     @Override
@@ -333,6 +379,12 @@ public abstract class SlotAcc implements Closeable {
     public void resize(Resizer resizer) {
       result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   public abstract static class LongFuncSlotAcc extends FuncSlotAcc {
@@ -343,10 +395,7 @@ public abstract class SlotAcc implements Closeable {
         ValueSource values, FacetContext fcontext, int numSlots, long initialValue) {
       super(values, fcontext, numSlots);
       this.initialValue = initialValue;
-      result = new long[numSlots];
-      if (initialValue != 0) {
-        reset();
-      }
+      result = newLongArray(numSlots, initialValue);
     }
 
     @Override
@@ -368,6 +417,12 @@ public abstract class SlotAcc implements Closeable {
     public void resize(Resizer resizer) {
       result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   public abstract static class IntSlotAcc extends SlotAcc {
@@ -377,10 +432,7 @@ public abstract class SlotAcc implements Closeable {
     public IntSlotAcc(FacetContext fcontext, int numSlots, int initialValue) {
       super(fcontext);
       this.initialValue = initialValue;
-      result = new int[numSlots];
-      if (initialValue != 0) {
-        reset();
-      }
+      result = newIntArray(numSlots, initialValue);
     }
 
     @Override
@@ -402,6 +454,12 @@ public abstract class SlotAcc implements Closeable {
     public void resize(Resizer resizer) {
       result = resizer.resize(result, initialValue);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   static class SumSlotAcc extends DoubleFuncSlotAcc {
@@ -725,14 +783,21 @@ public abstract class SlotAcc implements Closeable {
      *     sweep count collection
      */
     public ReadOnlyCountSlotAcc add(String key, DocSet docs, int numSlots) {
-      final CountSlotAcc count = new CountSlotArrAcc(fcontext, numSlots);
-      count.key = key;
-      final SweepCountAccStruct ret = new SweepCountAccStruct(docs, false, count);
       if (null != debug) {
         @SuppressWarnings("unchecked")
         List<String> accsDebug = (List<String>) debug.get("accs");
-        accsDebug.add(ret.toString());
+        accsDebug.add(key);
       }
+      // several relatedness() stats commonly share a foreground or background (cached) set, which
+      // then only needs to be swept once
+      for (SweepCountAccStruct other : others) {
+        if (other.docSet == docs) {
+          return other.roCountAcc();
+        }
+      }
+      final CountSlotAcc count = new CountSlotArrAcc(fcontext, numSlots);
+      count.key = key;
+      final SweepCountAccStruct ret = new SweepCountAccStruct(docs, false, count);
       others.add(ret);
       return ret.roCountAcc();
     }
@@ -850,7 +915,7 @@ public abstract class SlotAcc implements Closeable {
 
     public CountSlotArrAcc(FacetContext fcontext, int numSlots) {
       super(fcontext);
-      result = new long[numSlots];
+      result = newLongArray(numSlots, 0);
     }
 
     @Override
@@ -894,6 +959,12 @@ public abstract class SlotAcc implements Closeable {
     public void resize(Resizer resizer) {
       result = resizer.resize(result, 0);
     }
+
+    @Override
+    void releaseArrays(SlotArrayPool pool) {
+      pool.release(result);
+      result = null;
+    }
   }
 
   static class SortSlotAcc extends SlotAcc {
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * A pool of the primitive arrays that {@link SlotAcc}s keep their per-slot values in, so that
+ * faceting on the same fields again (by the next request, or in the next bucket of a parent facet)
+ * doesn't allocate them again.
+ *
+ * <p>Arrays are taken with {@link #newLongArray} and friends and handed back with {@link #release}
+ * once the response of the facet has been built from them (see {@link
+ * FacetProcessor#releaseSlotArrays}). To be shared by facets on fields with about the same number
+ * of terms, arrays are allocated with their length rounded up by at most 1/8th, see {@link
+ * #pooledLength}. The pool holds at most <code>maxBytes</code> of arrays, making room for a new
+ * array by dropping arrays of other lengths.
+ */
+class SlotArrayPool {
+  /** Arrays shorter than this are cheaper to allocate than to pool */
+  static final int MIN_POOLED_LENGTH = 128;
+
+  private final long maxBytes;
+  private final Map<Integer, ArrayDeque<long[]>> longArrays = new HashMap<>();
+  private final Map<Integer, ArrayDeque<int[]>> intArrays = new HashMap<>();
+  private final Map<Integer, ArrayDeque<double[]>> doubleArrays = new HashMap<>();
+  private long pooledBytes;
+  private long numAllocated;
+  private long numReused;
+
+  SlotArrayPool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** The length of the array to allocate for the given number of slots */
+  static int pooledLength(int numSlots) {
+    if (numSlots < MIN_POOLED_LENGTH) {
+      return numSlots;
+    }
+    int step = Integer.highestOneBit(numSlots) >>> 3;
+    long length = ((long) numSlots + step - 1) / step * step;
+    return length > ArrayUtil.MAX_ARRAY_LENGTH ? numSlots : (int) length;
+  }
+
+  long[] newLongArray(int numSlots, long initialValue) {
+    int length = pooledLength(numSlots);
+    long[] array = length < MIN_POOLED_LENGTH ? null : take(longArrays, length, Long.BYTES);
+    if (array == null) {
+      array = new long[length];
+      if (initialValue == 0) {
+        return array;
+      }
+    }
+    Arrays.fill(array, initialValue);
+    return array;
+  }
+
+  int[] newIntArray(int numSlots, int initialValue) {
+    int length = pooledLength(numSlots);
+    int[] array = length < MIN_POOLED_LENGTH ? null : take(intArrays, length, Integer.BYTES);
+    if (array == null) {
+      array = new int[length];
+      if (initialValue == 0) {
+        return array;
+      }
+    }
+    Arrays.fill(array, initialValue);
+    return array;
+  }
+
+  double[] newDoubleArray(int numSlots, double initialValue) {
+    int length = pooledLength(numSlots);
+    double[] array = length < MIN_POOLED_LENGTH ? null : take(doubleArrays, length, Double.BYTES);
+    if (array == null) {
+      array = new double[length];
+      if (initialValue == 0) {
+        return array;
+      }
+    }
+    Arrays.fill(array, initialValue);
+    return array;
+  }
+
+  /** Hands the array back, it must not be used by the caller anymore */
+  void release(long[] array) {
+    if (array != null) {
+      put(longArrays, array, array.length, Long.BYTES);
+    }
+  }
+
+  void release(int[] array) {
+    if (array != null) {
+      put(intArrays, array, array.length, Integer.BYTES);
+    }
+  }
+
+  void release(double[] array) {
+    if (array != null) {
+      put(doubleArrays, array, array.length, Double.BYTES);
+    }
+  }
+
+  private synchronized <A> A take(Map<Integer, ArrayDeque<A>> arrays, int length, int bytes) {
+    ArrayDeque<A> free = arrays.get(length);
+    A array = free == null ? null : free.poll();
+    if (array == null) {
+      numAllocated++;
+    } else {
+      numReused++;
+      pooledBytes -= (long) length * bytes;
+    }
+    return array;
+  }
+
+  private synchronized <A> void put(
+      Map<Integer, ArrayDeque<A>> arrays, A array, int length, int bytes) {
+    if (length < MIN_POOLED_LENGTH || length != pooledLength(length)) {
+      // not one of ours (e.g. resized), nobody would ask for this length
+      return;
+    }
+    long size = (long) length * bytes;
+    if (size > maxBytes) {
+      return;
+    }
+    if (pooledBytes + size > maxBytes) {
+      evict(pooledBytes + size - maxBytes, arrays.get(length));
+      if (pooledBytes + size > maxBytes) {
+        return;
+      }
+    }
+    arrays.computeIfAbsent(length, k -> new ArrayDeque<>()).push(array);
+    pooledBytes += size;
+  }
+
+  /** Drops arrays, but none of the given deque, until the given number of bytes is freed */
+  private void evict(long bytesNeeded, ArrayDeque<?> keep) {
+    long freed = 0;
+    freed += evict(longArrays, Long.BYTES, bytesNeeded - freed, keep);
+    freed += evict(doubleArrays, Double.BYTES, bytesNeeded - freed, keep);
+    evict(intArrays, Integer.BYTES, bytesNeeded - freed, keep);
+  }
+
+  private <A> long evict(
+      Map<Integer, ArrayDeque<A>> arrays, int bytes, long bytesNeeded, ArrayDeque<?> keep) {
+    long freed = 0;
+    for (Iterator<Map.Entry<Integer, ArrayDeque<A>>> it = arrays.entrySet().iterator();
+        it.hasNext() && freed < bytesNeeded; ) {
+      Map.Entry<Integer, ArrayDeque<A>> entry = it.next();
+      if (entry.getValue() == keep) {
+        continue;
+      }
+      long size = (long) entry.getKey() * bytes;
+      ArrayDeque<A> free = entry.getValue();
+      while (!free.isEmpty() && freed < bytesNeeded) {
+        free.pop();
+        freed += size;
+      }
+      if (free.isEmpty()) {
+        it.remove();
+      }
+    }
+    pooledBytes -= freed;
+    return freed;
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /** The number of arrays that could have been, but were not, taken from the pool */
+  synchronized long getNumAllocated() {
+    return numAllocated;
+  }
+
+  /** The number of arrays that were taken from the pool */
+  synchronized long getNumReused() {
+    return numReused;
+  }
+}
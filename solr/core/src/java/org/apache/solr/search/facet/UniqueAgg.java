@@ -29,6 +29,7 @@ import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.solr.common.util.CollectionUtil;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.schema.HLLField;
 import org.apache.solr.schema.SchemaField;
 
 public class UniqueAgg extends StrAggValueSource {
@@ -45,6 +46,10 @@ public class UniqueAgg extends StrAggValueSource {
   public SlotAcc createSlotAcc(FacetContext fcontext, long numDocs, int numSlots)
       throws IOException {
     SchemaField sf = fcontext.qcontext.searcher().getSchema().getField(getArg());
+    if (sf.getType() instanceof HLLField) {
+      // exact counts aren't possible from sketches, so estimate them as hll() does
+      return new HLLAgg(getArg()).createSlotAcc(fcontext, numDocs, numSlots);
+    }
     if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
       if (sf.getType().isPointField()) {
         return new SortedNumericAcc(fcontext, getArg(), numSlots);
@@ -64,6 +69,11 @@ public class UniqueAgg extends StrAggValueSource {
 
   @Override
   public FacetMerger createFacetMerger(Object prototype) {
+    if (prototype instanceof SimpleOrderedMap
+        && ((SimpleOrderedMap<?>) prototype).get("hll") != null) {
+      // the shards unioned stored sketches of an HLLField
+      return new HLLAgg.Merger();
+    }
     return new Merger();
   }
 
@@ -0,0 +1,702 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.function;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.OfflineSorter;
+import org.apache.lucene.util.StringHelper;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.util.VersionedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The values of one version of the external file of a {@link FileFloatSource}.
+ *
+ * <p>The first time a version of the file is seen it is parsed into a binary dictionary, sorted by
+ * the indexed form of the keys, in the <code>externalFileCache</code> directory under the data
+ * directory. The values of each segment are looked up in that dictionary the first time the segment
+ * is searched and written to a file of one float per document, which is memory-mapped. Both are
+ * keyed by the file version (and the segment), so an unchanged file is never parsed again, not even
+ * after a restart, and a commit only has to look up the values of the new segments.
+ *
+ * <p>The value files of older versions and of merged-away segments are deleted once no open segment
+ * maps them any more: right away if none does, otherwise when the last segment that does is closed.
+ */
+final class ExternalFileValues {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final String CACHE_DIR = "externalFileCache";
+  private static final String DICT_CODEC = "ExternalFileDict";
+  private static final String VALUES_CODEC = "ExternalFileValues";
+  private static final int VERSION_CURRENT = 0;
+  private static final int BLOCK_SHIFT = 4; // entries per block in the dictionary's index
+  private static final int CHUNK_SHIFT = 28; // floats per mapped buffer
+
+  /** Sorts the entries of the unsorted file: by key, and in file order for the same key. */
+  private static final Comparator<BytesRef> ENTRY_COMPARATOR =
+      (a, b) -> {
+        int cmp =
+            Arrays.compareUnsigned(
+                a.bytes,
+                a.offset,
+                a.offset + a.length - 12,
+                b.bytes,
+                b.offset,
+                b.offset + b.length - 12);
+        if (cmp != 0) {
+          return cmp;
+        }
+        return Long.compare(
+            (long) BitUtil.VH_BE_LONG.get(a.bytes, a.offset + a.length - 12),
+            (long) BitUtil.VH_BE_LONG.get(b.bytes, b.offset + b.length - 12));
+      };
+
+  /** The state of each cache directory, and so of each core, while it has open readers. */
+  private static final Map<Path, CacheState> cacheStates = new HashMap<>();
+
+  /** The number of segments whose values were looked up in a dictionary; for tests. */
+  static volatile int segmentsBuilt;
+
+  private final FileFloatSource source;
+  private final CacheState state; // null if there is no external file
+  private final Path cacheDir; // null if there is no external file
+  private final String prefix; // of the names of all files of this version
+
+  private ExternalFileValues(FileFloatSource source, CacheState state, String prefix) {
+    this.source = source;
+    this.state = state;
+    this.cacheDir = state == null ? null : state.cacheDir;
+    this.prefix = prefix;
+  }
+
+  /**
+   * Opens the latest version of the external file of the source for the reader, parsing it into a
+   * dictionary if that wasn't done before. If the reader is the latest one, the files of older
+   * versions and of segments that are no longer part of the index are deleted, or will be once they
+   * are not mapped any more.
+   */
+  static ExternalFileValues open(FileFloatSource source, IndexReader reader) {
+    final String fname = "external_" + source.getField().getName();
+    final File file = VersionedFile.getLatestVersion(source.getDataDir(), fname);
+    if (file == null) {
+      log.error("Error opening external value source file: {} not found", fname);
+      return new ExternalFileValues(source, null, null);
+    }
+    final CacheState state = getCacheState(Path.of(source.getDataDir(), CACHE_DIR), reader);
+    final String base = fileNameBase(source);
+    try {
+      final String prefix = base + '-' + version(source, file);
+      Files.createDirectories(state.cacheDir);
+      if (!Files.exists(state.cacheDir.resolve(prefix + ".dict"))) {
+        synchronized (state.buildLock) {
+          if (!Files.exists(state.cacheDir.resolve(prefix + ".dict"))) {
+            try (Directory dir = FSDirectory.open(state.cacheDir)) {
+              buildDictionary(source, file, dir, prefix);
+            }
+          }
+        }
+      }
+      if (state.isLatest(reader)) {
+        // the files of older versions and of merged-away segments won't be used by new searchers
+        final Set<String> names = new HashSet<>();
+        for (LeafReaderContext context : reader.leaves()) {
+          names.add(prefix + '-' + segmentId(context.reader()) + ".vals");
+        }
+        state.deleteUnmapped(
+            name ->
+                name.startsWith(base + '-')
+                    && (!isOfVersion(name, prefix)
+                        || (name.endsWith(".vals") && !names.contains(name))));
+      }
+      return new ExternalFileValues(source, state, prefix);
+    } catch (IOException e) {
+      // log, use defaults
+      log.error("Error loading external value source: ", e);
+      return new ExternalFileValues(source, null, null);
+    }
+  }
+
+  /**
+   * The state of the cache directory, which is forgotten once the last reader that opened it is
+   * closed, as it is when the core is.
+   */
+  private static CacheState getCacheState(Path cacheDir, IndexReader reader) {
+    synchronized (cacheStates) {
+      final CacheState state = cacheStates.computeIfAbsent(cacheDir, CacheState::new);
+      state.opened(reader);
+      return state;
+    }
+  }
+
+  /** Whether the state of the cache directory is known; for tests. */
+  static boolean hasCacheState(Path cacheDir) {
+    synchronized (cacheStates) {
+      return cacheStates.containsKey(cacheDir);
+    }
+  }
+
+  /** The values of the documents of the segment, built if that wasn't done before. */
+  SegmentValues getValues(LeafReaderContext context) throws IOException {
+    if (cacheDir == null) {
+      return new SegmentValues(null, source.getDefVal());
+    }
+    final LeafReader reader = context.reader();
+    final String segmentId = segmentId(reader);
+    final IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+    if (segmentId == null || cacheHelper == null) {
+      // the values can't be cached, so don't bother with a file
+      return new SegmentValues(toBuffers(lookupValues(reader)), source.getDefVal());
+    }
+
+    final String name = prefix + '-' + segmentId + ".vals";
+    final SegmentFiles files = state.getSegmentFiles(cacheHelper);
+    synchronized (files) {
+      SegmentValues values = files.values.get(name);
+      if (values == null) {
+        values = openValues(reader, name);
+        // the values of older versions of this source won't be used by new searchers
+        final String base = fileNameBase(source) + '-';
+        files.values.keySet().removeIf(n -> n.startsWith(base) && !isOfVersion(n, prefix));
+        files.values.put(name, values);
+        state.mapped(files, name);
+      }
+      return values;
+    }
+  }
+
+  private SegmentValues openValues(LeafReader reader, String name) throws IOException {
+    final Path path = cacheDir.resolve(name);
+    final int maxDoc = reader.maxDoc();
+    final long dataOffset = CodecUtil.headerLength(VALUES_CODEC) + Integer.BYTES;
+    try (Directory dir = FSDirectory.open(cacheDir)) {
+      if (!Files.exists(path)) {
+        writeValues(dir, name, lookupValues(reader));
+      }
+      try (IndexInput in = dir.openInput(name, IOContext.READONCE)) {
+        CodecUtil.checkHeader(in, VALUES_CODEC, VERSION_CURRENT, VERSION_CURRENT);
+        if (in.readInt() != maxDoc) {
+          throw new IOException("Wrong number of documents in " + path);
+        }
+        CodecUtil.retrieveChecksum(
+            in, dataOffset + (long) maxDoc * Float.BYTES + CodecUtil.footerLength());
+      }
+    }
+
+    // mapped directly rather than through the Directory, so that the mapping is released when the
+    // last searcher that uses it is gone instead of having to be closed
+    final FloatBuffer[] buffers = new FloatBuffer[(maxDoc >>> CHUNK_SHIFT) + 1];
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      for (int i = 0; i < buffers.length; i++) {
+        final long start = (long) i << CHUNK_SHIFT;
+        final long size = Math.min(1L << CHUNK_SHIFT, maxDoc - start) * Float.BYTES;
+        final MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start * Float.BYTES, size);
+        buffers[i] = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+      }
+    }
+    return new SegmentValues(buffers, source.getDefVal());
+  }
+
+  private static void writeValues(Directory dir, String name, float[] values) throws IOException {
+    String tmpName = null;
+    boolean success = false;
+    try {
+      try (IndexOutput out = dir.createTempOutput(name, "tmp", IOContext.DEFAULT)) {
+        tmpName = out.getName();
+        CodecUtil.writeHeader(out, VALUES_CODEC, VERSION_CURRENT);
+        out.writeInt(values.length);
+        for (float value : values) {
+          out.writeInt(Float.floatToRawIntBits(value)); // little-endian
+        }
+        CodecUtil.writeFooter(out);
+      }
+      dir.sync(Set.of(tmpName));
+      dir.rename(tmpName, name);
+      success = true;
+    } finally {
+      if (!success && tmpName != null) {
+        IOUtils.deleteFilesIgnoringExceptions(dir, tmpName);
+      }
+    }
+  }
+
+  /** Looks up the values of the documents of the segment in the dictionary. */
+  private float[] lookupValues(LeafReader reader) throws IOException {
+    final float[] values = new float[reader.maxDoc()];
+    if (source.getDefVal() != 0) {
+      Arrays.fill(values, source.getDefVal());
+    }
+    final Terms terms = reader.terms(source.getKeyField().getName());
+    if (terms == null) {
+      return values;
+    }
+    try (Directory dir = FSDirectory.open(cacheDir);
+        IndexInput in = dir.openInput(prefix + ".dict", IOContext.READONCE)) {
+      final Dictionary dict = new Dictionary(in);
+      final TermsEnum termsEnum = terms.iterator();
+      PostingsEnum postingsEnum = null;
+      // removing deleted docs shouldn't matter
+      for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+        if (dict.seek(term)) {
+          final float value = dict.value;
+          postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+          for (int doc = postingsEnum.nextDoc();
+              doc != DocIdSetIterator.NO_MORE_DOCS;
+              doc = postingsEnum.nextDoc()) {
+            values[doc] = value;
+          }
+        }
+      }
+    }
+    segmentsBuilt++;
+    return values;
+  }
+
+  /**
+   * Parses the external file into a dictionary: the entries sorted by key, each with a vInt length
+   * and the bytes of the key followed by the float, and after that the file offsets of every 16th
+   * entry, the number of entries and the offset of those offsets.
+   */
+  private static void buildDictionary(FileFloatSource source, File file, Directory dir, String name)
+      throws IOException {
+    final long startTime = System.nanoTime();
+    final String fname = file.getName();
+    final FieldType idType = source.getKeyField().getType();
+    final char delimiter = '=';
+    final BytesRefBuilder internalKey = new BytesRefBuilder();
+    final BytesRefBuilder entry = new BytesRefBuilder();
+    final byte[] suffix = new byte[12];
+
+    String unsorted = null, sorted = null, tmpName = null;
+    boolean success = false;
+    try {
+      int otherErrors = 0;
+      try (BufferedReader r =
+              new BufferedReader(
+                  new InputStreamReader(
+                      Files.newInputStream(file.toPath()), StandardCharsets.UTF_8));
+          IndexOutput out = dir.createTempOutput(name, "unsorted", IOContext.DEFAULT);
+          OfflineSorter.ByteSequencesWriter writer = new OfflineSorter.ByteSequencesWriter(out)) {
+        unsorted = out.getName();
+        long lineNumber = 0;
+        for (String line; (line = r.readLine()) != null; lineNumber++) {
+          int delimIndex = line.lastIndexOf(delimiter);
+          if (delimIndex < 0) continue;
+
+          String key = line.substring(0, delimIndex);
+          String val = line.substring(delimIndex + 1);
+
+          float fval;
+          try {
+            idType.readableToIndexed(key, internalKey);
+            fval = Float.parseFloat(val);
+          } catch (Exception e) {
+            if (++otherErrors <= 10) {
+              log.error(
+                  "Error loading external value source: {} {}{}",
+                  fname,
+                  e,
+                  (otherErrors < 10 ? "" : "\tSkipping future errors for this file."));
+            }
+            continue; // go to next line in file.. leave values as default.
+          }
+
+          // later lines win, so sort by line number after the key
+          BitUtil.VH_BE_LONG.set(suffix, 0, lineNumber);
+          BitUtil.VH_BE_INT.set(suffix, 8, Float.floatToRawIntBits(fval));
+          entry.copyBytes(internalKey.get());
+          entry.append(suffix, 0, suffix.length);
+          writer.write(entry.get());
+        }
+        CodecUtil.writeFooter(out);
+      }
+
+      sorted = new OfflineSorter(dir, name, ENTRY_COMPARATOR).sort(unsorted);
+
+      long numEntries = 0;
+      long[] blockOffsets = new long[16];
+      try (ChecksumIndexInput in = dir.openChecksumInput(sorted, IOContext.READONCE);
+          OfflineSorter.ByteSequencesReader reader =
+              new OfflineSorter.ByteSequencesReader(in, sorted);
+          IndexOutput out = dir.createTempOutput(name, "dict", IOContext.DEFAULT)) {
+        tmpName = out.getName();
+        CodecUtil.writeHeader(out, DICT_CODEC, VERSION_CURRENT);
+        final BytesRefBuilder last = new BytesRefBuilder();
+        boolean hasLast = false;
+        for (BytesRef next = reader.next(); ; next = reader.next()) {
+          // only write an entry once we know it's the last one for its key
+          if (hasLast
+              && (next == null
+                  || !Arrays.equals(
+                      last.bytes(),
+                      0,
+                      last.length() - 12,
+                      next.bytes,
+                      next.offset,
+                      next.offset + next.length - 12))) {
+            if ((numEntries & ((1 << BLOCK_SHIFT) - 1)) == 0) {
+              final int block = (int) (numEntries >>> BLOCK_SHIFT);
+              blockOffsets = ArrayUtil.grow(blockOffsets, block + 1);
+              blockOffsets[block] = out.getFilePointer();
+            }
+            out.writeVInt(last.length() - 12);
+            out.writeBytes(last.bytes(), 0, last.length() - 12);
+            out.writeInt((int) BitUtil.VH_BE_INT.get(last.bytes(), last.length() - 4));
+            numEntries++;
+          }
+          if (next == null) {
+            break;
+          }
+          last.copyBytes(next);
+          hasLast = true;
+        }
+        final long indexOffset = out.getFilePointer();
+        final int numBlocks = (int) ((numEntries + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT);
+        for (int i = 0; i < numBlocks; i++) {
+          out.writeLong(blockOffsets[i]);
+        }
+        out.writeLong(numEntries);
+        out.writeLong(indexOffset);
+        CodecUtil.writeFooter(out);
+      }
+      dir.sync(Set.of(tmpName));
+      dir.rename(tmpName, name + ".dict");
+      dir.syncMetaData();
+      success = true;
+
+      if (log.isInfoEnabled()) {
+        log.info(
+            "Loaded external value source {} with {} keys in {}ms",
+            fname,
+            numEntries,
+            (System.nanoTime() - startTime) / 1_000_000);
+      }
+    } finally {
+      IOUtils.deleteFilesIgnoringExceptions(dir, unsorted, sorted);
+      if (!success && tmpName != null) {
+        IOUtils.deleteFilesIgnoringExceptions(dir, tmpName);
+      }
+    }
+  }
+
+  /** Looks up keys, in increasing order, in a dictionary. */
+  private static final class Dictionary {
+    private final IndexInput in;
+    private final long numEntries;
+    private final long indexOffset;
+    private final int numBlocks;
+    private final BytesRefBuilder key = new BytesRefBuilder();
+    private int minBlock; // keys are looked up in order, so never look before this block
+    float value;
+
+    Dictionary(IndexInput in) throws IOException {
+      this.in = in;
+      CodecUtil.checkHeader(in, DICT_CODEC, VERSION_CURRENT, VERSION_CURRENT);
+      in.seek(in.length() - CodecUtil.footerLength() - 2 * Long.BYTES);
+      numEntries = in.readLong();
+      indexOffset = in.readLong();
+      numBlocks = (int) ((numEntries + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT);
+    }
+
+    private BytesRef readKey() throws IOException {
+      final int length = in.readVInt();
+      key.grow(length);
+      in.readBytes(key.bytes(), 0, length);
+      key.setLength(length);
+      return key.get();
+    }
+
+    private void seekBlock(int block) throws IOException {
+      in.seek(indexOffset + (long) block * Long.BYTES);
+      in.seek(in.readLong());
+    }
+
+    /** Positions on the key, returning whether it exists; its value is then in {@link #value}. */
+    boolean seek(BytesRef target) throws IOException {
+      // find the last block whose first key is not after the target
+      int lo = minBlock, hi = numBlocks - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        seekBlock(mid);
+        if (readKey().compareTo(target) <= 0) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      if (hi < minBlock) {
+        return false;
+      }
+      minBlock = hi;
+      seekBlock(hi);
+      final long end = Math.min(numEntries, ((long) hi + 1) << BLOCK_SHIFT);
+      for (long i = (long) hi << BLOCK_SHIFT; i < end; i++) {
+        final int cmp = readKey().compareTo(target);
+        final int bits = in.readInt();
+        if (cmp == 0) {
+          value = Float.intBitsToFloat(bits);
+          return true;
+        } else if (cmp > 0) {
+          return false;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The value files in the cache directory of a core, and which of them are mapped by its open
+   * segments. A mapped file is never deleted, since that would fail on some platforms: it is marked
+   * as obsolete instead, and deleted once the segments that mapped it are closed.
+   */
+  private static final class CacheState {
+    final Path cacheDir;
+    final Object buildLock = new Object();
+    private final Map<IndexReader.CacheKey, SegmentFiles> segments = new HashMap<>();
+    private final Set<String> obsolete = new HashSet<>();
+    private final Set<IndexReader.CacheKey> readers = new HashSet<>();
+    private long latestVersion = -1;
+
+    CacheState(Path cacheDir) {
+      this.cacheDir = cacheDir;
+    }
+
+    synchronized SegmentFiles getSegmentFiles(IndexReader.CacheHelper cacheHelper) {
+      return segments.computeIfAbsent(
+          cacheHelper.getKey(),
+          key -> {
+            cacheHelper.addClosedListener(this::segmentClosed);
+            return new SegmentFiles();
+          });
+    }
+
+    /** Keeps the state around until the reader is closed; called with cacheStates locked. */
+    synchronized void opened(IndexReader reader) {
+      final IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+      if (cacheHelper != null && readers.add(cacheHelper.getKey())) {
+        cacheHelper.addClosedListener(this::readerClosed);
+      }
+    }
+
+    private void readerClosed(IndexReader.CacheKey key) {
+      synchronized (cacheStates) {
+        synchronized (this) {
+          readers.remove(key);
+          if (readers.isEmpty()) {
+            cacheStates.remove(cacheDir, this);
+          }
+        }
+      }
+    }
+
+    synchronized void mapped(SegmentFiles files, String name) {
+      files.mapped.add(name);
+      obsolete.remove(name);
+    }
+
+    /** Whether the reader is the most recent one seen, so that it knows the current segments. */
+    synchronized boolean isLatest(IndexReader reader) {
+      if (!(reader instanceof DirectoryReader)) {
+        return false;
+      }
+      final long version = ((DirectoryReader) reader).getVersion();
+      if (version < latestVersion) {
+        return false;
+      }
+      latestVersion = version;
+      return true;
+    }
+
+    /** Deletes the files that match, or marks them as obsolete if an open segment maps them. */
+    synchronized void deleteUnmapped(Predicate<String> filter) throws IOException {
+      try (Directory dir = FSDirectory.open(cacheDir)) {
+        for (String name : dir.listAll()) {
+          if (!filter.test(name)) {
+            continue;
+          }
+          if (isMapped(name)) {
+            obsolete.add(name);
+          } else {
+            delete(name);
+          }
+        }
+      }
+    }
+
+    private synchronized void segmentClosed(IndexReader.CacheKey key) {
+      final SegmentFiles files = segments.remove(key);
+      if (files == null) {
+        return;
+      }
+      for (String name : files.mapped) {
+        if (obsolete.contains(name) && !isMapped(name)) {
+          obsolete.remove(name);
+          delete(name);
+        }
+      }
+    }
+
+    private boolean isMapped(String name) {
+      for (SegmentFiles files : segments.values()) {
+        if (files.mapped.contains(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void delete(String name) {
+      try {
+        Files.deleteIfExists(cacheDir.resolve(name));
+      } catch (IOException e) {
+        log.warn("Unable to delete the external value file {} of {}", name, cacheDir, e);
+      }
+    }
+  }
+
+  /** The values a segment core has of each version of each source, and all files it mapped. */
+  private static final class SegmentFiles {
+    final Map<String, SegmentValues> values = new HashMap<>();
+    final Set<String> mapped = new HashSet<>();
+  }
+
+  /** The values of the documents of one segment. */
+  static final class SegmentValues {
+    private final FloatBuffer[] buffers; // null if all documents have the default
+    private final float defVal;
+
+    SegmentValues(FloatBuffer[] buffers, float defVal) {
+      this.buffers = buffers;
+      this.defVal = defVal;
+    }
+
+    float get(int doc) {
+      if (buffers == null) {
+        return defVal;
+      }
+      return buffers[doc >>> CHUNK_SHIFT].get(doc & ((1 << CHUNK_SHIFT) - 1));
+    }
+  }
+
+  private static FloatBuffer[] toBuffers(float[] values) {
+    return new FloatBuffer[] {FloatBuffer.wrap(values)};
+  }
+
+  /** Identifies the segment across searchers and restarts, or null if it isn't a segment. */
+  private static String segmentId(LeafReader reader) {
+    final LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+    if (!(unwrapped instanceof SegmentReader)) {
+      return null;
+    }
+    final SegmentCommitInfo info = ((SegmentReader) unwrapped).getSegmentInfo();
+    return info.info.name + '_' + StringHelper.idToString(info.info.getId());
+  }
+
+  /**
+   * The start of the names of the files of the source: the name of the field with every character
+   * other than a lowercase letter or a digit escaped as '_' and its four hex digits, so that it is
+   * safe to use in a file name, even on a case-insensitive file system, and no two fields share it.
+   * It never contains a '-', which separates it from the rest of the name.
+   */
+  private static String fileNameBase(FileFloatSource source) {
+    final String name = source.getField().getName();
+    final StringBuilder sb = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+        sb.append(c);
+      } else {
+        sb.append('_').append(String.format(Locale.ROOT, "%04X", (int) c));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Whether the file belongs to the version with the prefix: its dictionary, its values of a
+   * segment, or a temporary file of one of those. The prefix ends with the hex digits of the
+   * version, which the next character must not continue.
+   */
+  private static boolean isOfVersion(String name, String prefix) {
+    return name.length() > prefix.length()
+        && name.startsWith(prefix)
+        && "-._".indexOf(name.charAt(prefix.length())) >= 0;
+  }
+
+  /** Identifies the version of the file, and anything else the values depend on. */
+  private static String version(FileFloatSource source, File file) throws IOException {
+    final String version =
+        source.getField().getName()
+            + '|'
+            + source.getKeyField().getName()
+            + '|'
+            + source.getDefVal()
+            + '|'
+            + file.getName()
+            + '|'
+            + Files.getLastModifiedTime(file.toPath()).toString()
+            + '|'
+            + Files.size(file.toPath());
+    return Long.toHexString(Hash.lookup3ycs64(version, 0, version.length(), 0))
+        .toUpperCase(Locale.ROOT);
+  }
+}
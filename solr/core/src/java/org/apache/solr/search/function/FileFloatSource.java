@@ -16,45 +16,34 @@
  */
 package org.apache.solr.search.function;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.invoke.MethodHandles;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.LeafReaderContext;
-import org.apache.lucene.index.MultiTerms;
-import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.ReaderUtil;
-import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
 import org.apache.lucene.queries.function.docvalues.FloatDocValues;
-import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.handler.RequestHandlerUtils;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
-import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.security.AuthorizationContext;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
-import org.apache.solr.util.VersionedFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Obtains float field values from an external file.
  *
+ * <p>The values are kept off-heap, in memory-mapped files per segment that are only built once for
+ * each version of the external file.
+ *
  * @see org.apache.solr.schema.ExternalFileField
  * @see org.apache.solr.schema.ExternalFileFieldReloader
  */
@@ -90,14 +79,13 @@ public class FileFloatSource extends ValueSource {
   @Override
   public FunctionValues getValues(Map<Object, Object> context, LeafReaderContext readerContext)
       throws IOException {
-    final int off = readerContext.docBase;
     IndexReaderContext topLevelContext = ReaderUtil.getTopLevelContext(readerContext);
 
-    final float[] arr = getCachedFloats(topLevelContext.reader());
+    final ExternalFileValues.SegmentValues vals = getSegmentValues(topLevelContext, readerContext);
     return new FloatDocValues(this) {
       @Override
       public float floatVal(int doc) {
-        return arr[doc + off];
+        return vals.get(doc);
       }
 
       @Override
@@ -107,6 +95,22 @@ public class FileFloatSource extends ValueSource {
     };
   }
 
+  SchemaField getField() {
+    return field;
+  }
+
+  SchemaField getKeyField() {
+    return keyField;
+  }
+
+  float getDefVal() {
+    return defVal;
+  }
+
+  String getDataDir() {
+    return dataDir;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof FileFloatSource)) return false;
@@ -143,7 +147,9 @@ public class FileFloatSource extends ValueSource {
 
   /**
    * Refresh the cache for an IndexReader. The new values are loaded in the background and then
-   * swapped in, so queries against the cache should not block while the reload is happening.
+   * swapped in, so queries against the cache should not block while the reload is happening. Only
+   * the values of segments that are new, or of all segments if the external file changed, have to
+   * be loaded.
    *
    * @param reader the IndexReader whose cache needs refreshing
    */
@@ -152,20 +158,40 @@ public class FileFloatSource extends ValueSource {
       log.info("Refreshing FileFloatSource cache for field {}", this.field.getName());
     }
     floatCache.refresh(reader, new Entry(this));
+    ExternalFileValues values = getCachedValues(reader);
+    for (LeafReaderContext context : reader.leaves()) {
+      getSegmentValues(values, context);
+    }
     if (log.isInfoEnabled()) {
       log.info("FileFloatSource cache for field {} reloaded", this.field.getName());
     }
   }
 
-  private final float[] getCachedFloats(IndexReader reader) {
-    return (float[]) floatCache.get(reader, new Entry(this));
+  private ExternalFileValues getCachedValues(IndexReader reader) {
+    return (ExternalFileValues) floatCache.get(reader, new Entry(this));
+  }
+
+  private ExternalFileValues.SegmentValues getSegmentValues(
+      IndexReaderContext topLevelContext, LeafReaderContext context) {
+    return getSegmentValues(getCachedValues(topLevelContext.reader()), context);
+  }
+
+  private ExternalFileValues.SegmentValues getSegmentValues(
+      ExternalFileValues values, LeafReaderContext context) {
+    try {
+      return values.getValues(context);
+    } catch (IOException e) {
+      // log, use defaults
+      log.error("Error loading external value source: ", e);
+      return new ExternalFileValues.SegmentValues(null, defVal);
+    }
   }
 
   static Cache floatCache =
       new Cache() {
         @Override
         protected Object createValue(IndexReader reader, Object key) {
-          return getFloats(((Entry) key).ffs, reader);
+          return ExternalFileValues.open(((Entry) key).ffs, reader);
         }
       };
 
@@ -253,101 +279,6 @@ public class FileFloatSource extends ValueSource {
     }
   }
 
-  private static float[] getFloats(FileFloatSource ffs, IndexReader reader) {
-    float[] vals = new float[reader.maxDoc()];
-    if (ffs.defVal != 0) {
-      Arrays.fill(vals, ffs.defVal);
-    }
-    InputStream is;
-    String fname = "external_" + ffs.field.getName();
-    try {
-      is = VersionedFile.getLatestFile(ffs.dataDir, fname);
-    } catch (IOException e) {
-      // log, use defaults
-      log.error("Error opening external value source file: ", e);
-      return vals;
-    }
-
-    BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-
-    String idName = ffs.keyField.getName();
-    FieldType idType = ffs.keyField.getType();
-
-    // warning: lucene's termEnum.skipTo() is not optimized... it simply does a next()
-    // because of this, simply ask the reader for a new termEnum rather than
-    // trying to use skipTo()
-
-    List<String> notFound = new ArrayList<>();
-    int notFoundCount = 0;
-    int otherErrors = 0;
-
-    char delimiter = '=';
-
-    BytesRefBuilder internalKey = new BytesRefBuilder();
-
-    try {
-      TermsEnum termsEnum = MultiTerms.getTerms(reader, idName).iterator();
-      PostingsEnum postingsEnum = null;
-
-      // removing deleted docs shouldn't matter
-      // final Bits liveDocs = MultiLeafReader.getLiveDocs(reader);
-
-      for (String line; (line = r.readLine()) != null; ) {
-        int delimIndex = line.lastIndexOf(delimiter);
-        if (delimIndex < 0) continue;
-
-        int endIndex = line.length();
-        String key = line.substring(0, delimIndex);
-        String val = line.substring(delimIndex + 1, endIndex);
-
-        float fval;
-        try {
-          idType.readableToIndexed(key, internalKey);
-          fval = Float.parseFloat(val);
-        } catch (Exception e) {
-          if (++otherErrors <= 10) {
-            log.error(
-                "Error loading external value source: {} {}{}",
-                fname,
-                e,
-                (otherErrors < 10 ? "" : "\tSkipping future errors for this file."));
-          }
-          continue; // go to next line in file.. leave values as default.
-        }
-
-        if (!termsEnum.seekExact(internalKey.get())) {
-          if (notFoundCount < 10) { // collect first 10 not found for logging
-            notFound.add(key);
-          }
-          notFoundCount++;
-          continue;
-        }
-
-        postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
-        int doc;
-        while ((doc = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
-          vals[doc] = fval;
-        }
-      }
-
-    } catch (IOException e) {
-      // log, use defaults
-      log.error("Error loading external value source: ", e);
-    } finally {
-      // swallow exceptions on close so we don't override any
-      // exceptions that happened in the loop
-      try {
-        r.close();
-      } catch (Exception e) {
-      }
-    }
-    if (log.isInfoEnabled()) {
-      String tmp = (notFoundCount == 0 ? "" : " :" + notFoundCount + " missing keys " + notFound);
-      log.info("Loaded external value source {}{}", fname, tmp);
-    }
-    return vals;
-  }
-
   public static class ReloadCacheRequestHandler extends RequestHandlerBase {
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
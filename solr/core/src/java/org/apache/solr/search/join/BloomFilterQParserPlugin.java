@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.QueryParsing;
+
+/**
+ * Matches the documents with a value of a string field with docValues that might be in a {@link
+ * JoinKeyBloomFilter}, given encoded as the query string.
+ *
+ * <p>Example: <code>{!bloom_filter f=product_id_s}AAEAAA...</code>
+ *
+ * <p>A {@link CrossCollectionJoinQuery} sends it to the remote collection, so that only the join
+ * keys that may exist on the local shard are streamed back.
+ */
+public class BloomFilterQParserPlugin extends QParserPlugin {
+
+  public static final String NAME = "bloom_filter";
+
+  @Override
+  public QParser createParser(
+      String qstr, SolrParams localParams, SolrParams params, SolrQueryRequest req) {
+    return new QParser(qstr, localParams, params, req) {
+      @Override
+      public Query parse() {
+        String field = localParams.get("f");
+        SchemaField schemaField = req.getSchema().getField(field);
+        if (!(schemaField.getType() instanceof StrField) || !schemaField.hasDocValues()) {
+          throw new SolrException(
+              SolrException.ErrorCode.BAD_REQUEST,
+              NAME + " requires a string field with docValues, not " + field);
+        }
+        String encoded = localParams.get(QueryParsing.V);
+        if (encoded == null) {
+          throw new SolrException(
+              SolrException.ErrorCode.BAD_REQUEST, NAME + " requires an encoded bloom filter");
+        }
+        return new JoinKeyBloomFilterQuery(field, JoinKeyBloomFilter.decode(encoded));
+      }
+    };
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+}
@@ -17,6 +17,7 @@
 
 package org.apache.solr.search.join;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,6 +40,7 @@ public class CrossCollectionJoinQParser extends QParser {
   public static final String TO = "to";
   public static final String ROUTED_BY_JOIN_KEY = "routed";
   public static final String TTL = "ttl";
+  public static final String BLOOM_FILTER = "bloomFilter";
 
   public static final int TTL_DEFAULT = 60 * 60; // in seconds
 
@@ -53,10 +55,12 @@ public class CrossCollectionJoinQParser extends QParser {
               FROM,
               TO,
               ROUTED_BY_JOIN_KEY,
-              TTL));
+              TTL,
+              BLOOM_FILTER));
 
   private final String routerField;
   private final Set<String> allowSolrUrls;
+  private final Cache<String, CrossCollectionJoinQuery.RemoteKeys> remoteKeysCache;
 
   public CrossCollectionJoinQParser(
       String qstr,
@@ -65,10 +69,22 @@ public class CrossCollectionJoinQParser extends QParser {
       SolrQueryRequest req,
       String routerField,
       Set<String> allowSolrUrls) {
+    this(qstr, localParams, params, req, routerField, allowSolrUrls, null);
+  }
+
+  public CrossCollectionJoinQParser(
+      String qstr,
+      SolrParams localParams,
+      SolrParams params,
+      SolrQueryRequest req,
+      String routerField,
+      Set<String> allowSolrUrls,
+      Cache<String, CrossCollectionJoinQuery.RemoteKeys> remoteKeysCache) {
     super(qstr, localParams, params, req);
     this.routerField = routerField;
     // If specified in the config, this will limit which solr url's the parser can connect to.
     this.allowSolrUrls = allowSolrUrls;
+    this.remoteKeysCache = remoteKeysCache;
   }
 
   @Override
@@ -93,6 +109,7 @@ public class CrossCollectionJoinQParser extends QParser {
 
     boolean routedByJoinKey = localParams.getBool(ROUTED_BY_JOIN_KEY, toField.equals(routerField));
     int ttl = localParams.getInt(TTL, TTL_DEFAULT);
+    boolean bloomFilter = localParams.getBool(BLOOM_FILTER, false);
 
     ModifiableSolrParams otherParams = new ModifiableSolrParams();
     for (Iterator<String> it = localParams.getParameterNamesIterator(); it.hasNext(); ) {
@@ -103,6 +120,16 @@ public class CrossCollectionJoinQParser extends QParser {
     }
 
     return new CrossCollectionJoinQuery(
-        query, zkHost, solrUrl, collection, fromField, toField, routedByJoinKey, ttl, otherParams);
+        query,
+        zkHost,
+        solrUrl,
+        collection,
+        fromField,
+        toField,
+        routedByJoinKey,
+        ttl,
+        otherParams,
+        bloomFilter,
+        remoteKeysCache);
   }
 }
@@ -17,7 +17,13 @@
 
 package org.apache.solr.search.join;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -35,6 +41,7 @@ import org.apache.lucene.search.QueryVisitor;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.client.solrj.io.SolrClientCache;
@@ -56,12 +63,16 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.StrField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.DocSetUtil;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CrossCollectionJoinQuery extends Query {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   protected final String query;
   protected final String zkHost;
@@ -77,6 +88,9 @@ public class CrossCollectionJoinQuery extends Query {
   protected SolrParams otherParams;
   protected String otherParamsString;
 
+  protected final boolean bloomFilter;
+  protected final Cache<String, RemoteKeys> remoteKeysCache;
+
   public CrossCollectionJoinQuery(
       String query,
       String zkHost,
@@ -87,6 +101,38 @@ public class CrossCollectionJoinQuery extends Query {
       boolean routedByJoinKey,
       int ttl,
       SolrParams otherParams) {
+    this(
+        query,
+        zkHost,
+        solrUrl,
+        collection,
+        fromField,
+        toField,
+        routedByJoinKey,
+        ttl,
+        otherParams,
+        false,
+        null);
+  }
+
+  /**
+   * @param bloomFilter whether to send a {@link JoinKeyBloomFilter} of the local values of the to
+   *     field, so that the remote collection only streams the keys that may match
+   * @param remoteKeysCache where the keys streamed from the remote collection are kept for the ttl,
+   *     may be null
+   */
+  public CrossCollectionJoinQuery(
+      String query,
+      String zkHost,
+      String solrUrl,
+      String collection,
+      String fromField,
+      String toField,
+      boolean routedByJoinKey,
+      int ttl,
+      SolrParams otherParams,
+      boolean bloomFilter,
+      Cache<String, RemoteKeys> remoteKeysCache) {
 
     this.query = query;
     this.zkHost = zkHost;
@@ -95,6 +141,8 @@ public class CrossCollectionJoinQuery extends Query {
     this.fromField = fromField;
     this.toField = toField;
     this.routedByJoinKey = routedByJoinKey;
+    this.bloomFilter = bloomFilter;
+    this.remoteKeysCache = remoteKeysCache;
 
     this.timestamp = System.nanoTime();
     this.ttl = ttl;
@@ -106,6 +154,62 @@ public class CrossCollectionJoinQuery extends Query {
     }
   }
 
+  /**
+   * The keys streamed from a remote collection by a query, with the Bloom filter they were streamed
+   * with if any.
+   */
+  public static final class RemoteKeys {
+    final Object[] keys;
+    final JoinKeyBloomFilter bloomFilter;
+    final long createdNanos = System.nanoTime();
+    final int ttl;
+
+    RemoteKeys(Object[] keys, JoinKeyBloomFilter bloomFilter, int ttl) {
+      this.keys = keys;
+      this.bloomFilter = bloomFilter;
+      this.ttl = ttl;
+    }
+
+    /**
+     * Whether these keys include all those that would be streamed with the given filter (null for
+     * none) within the ttl
+     */
+    boolean covers(JoinKeyBloomFilter filter, int ttl) {
+      return TimeUnit.SECONDS.convert(System.nanoTime() - createdNanos, TimeUnit.NANOSECONDS) < ttl
+          && (bloomFilter == null || (filter != null && bloomFilter.containsAll(filter)));
+    }
+  }
+
+  /**
+   * A cache for the keys streamed from remote collections, bounded by their total number, whose
+   * entries expire after the ttl of the query that streamed them
+   */
+  public static Cache<String, RemoteKeys> newRemoteKeysCache(long maxKeys) {
+    return Caffeine.newBuilder()
+        .maximumWeight(maxKeys)
+        .weigher((String key, RemoteKeys value) -> Math.max(1, value.keys.length))
+        .expireAfter(
+            new Expiry<String, RemoteKeys>() {
+              @Override
+              public long expireAfterCreate(String key, RemoteKeys value, long currentTime) {
+                return TimeUnit.SECONDS.toNanos(value.ttl);
+              }
+
+              @Override
+              public long expireAfterUpdate(
+                  String key, RemoteKeys value, long currentTime, long currentDuration) {
+                return TimeUnit.SECONDS.toNanos(value.ttl);
+              }
+
+              @Override
+              public long expireAfterRead(
+                  String key, RemoteKeys value, long currentTime, long currentDuration) {
+                return currentDuration;
+              }
+            })
+        .build();
+  }
+
   private interface JoinKeyCollector {
     void collect(Object value) throws IOException;
 
@@ -215,7 +319,8 @@ public class CrossCollectionJoinQuery extends Query {
       }
     }
 
-    private TupleStream createCloudSolrStream(SolrClientCache solrClientCache) throws IOException {
+    private TupleStream createCloudSolrStream(SolrClientCache solrClientCache, List<String> fqs)
+        throws IOException {
       String streamZkHost;
       if (zkHost != null) {
         streamZkHost = zkHost;
@@ -225,8 +330,7 @@ public class CrossCollectionJoinQuery extends Query {
 
       ModifiableSolrParams params = new ModifiableSolrParams(otherParams);
       params.set(CommonParams.Q, query);
-      String fq = createHashRangeFq();
-      if (fq != null) {
+      for (String fq : fqs) {
         params.add(CommonParams.FQ, fq);
       }
       params.set(CommonParams.FL, fromField);
@@ -243,13 +347,12 @@ public class CrossCollectionJoinQuery extends Query {
       return uniqueStream;
     }
 
-    private TupleStream createSolrStream() {
+    private TupleStream createSolrStream(List<String> fqs) {
       StreamExpression searchExpr =
           new StreamExpression("search")
               .withParameter(collection)
               .withParameter(new StreamExpressionNamedParameter(CommonParams.Q, query));
-      String fq = createHashRangeFq();
-      if (fq != null) {
+      for (String fq : fqs) {
         searchExpr.withParameter(new StreamExpressionNamedParameter(CommonParams.FQ, fq));
       }
       searchExpr
@@ -276,27 +379,44 @@ public class CrossCollectionJoinQuery extends Query {
       return new SolrStream(solrUrl + "/" + collection, params);
     }
 
-    private DocSet getDocSet() throws IOException {
+    /**
+     * A Bloom filter of the values of the to field on this shard, or null if they can't be compared
+     * with the values of the from field
+     */
+    private JoinKeyBloomFilter createBloomFilter() throws IOException {
+      if (!(searcher.getSchema().getFieldType(toField) instanceof StrField)) {
+        return null;
+      }
+      long numKeys = 0;
+      for (LeafReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+        Terms terms = ctx.reader().terms(toField);
+        if (terms != null) {
+          numKeys += Math.max(0, terms.size());
+        }
+      }
+      JoinKeyBloomFilter filter = JoinKeyBloomFilter.forKeys(numKeys);
+      for (LeafReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+        Terms terms = ctx.reader().terms(toField);
+        if (terms != null) {
+          TermsEnum termsEnum = terms.iterator();
+          for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            filter.add(term);
+          }
+        }
+      }
+      return filter;
+    }
+
+    private Object[] streamRemoteKeys(List<String> fqs) throws IOException {
       SolrClientCache solrClientCache = searcher.getCore().getCoreContainer().getSolrClientCache();
       TupleStream solrStream;
       if (zkHost != null || solrUrl == null) {
-        solrStream = createCloudSolrStream(solrClientCache);
+        solrStream = createCloudSolrStream(solrClientCache, fqs);
       } else {
-        solrStream = createSolrStream();
-      }
-
-      FieldType fieldType = searcher.getSchema().getFieldType(toField);
-      JoinKeyCollector collector;
-      if (fieldType.isPointField()) {
-        collector = new PointJoinKeyCollector(searcher);
-      } else {
-        Terms terms = searcher.getSlowAtomicReader().terms(toField);
-        if (terms == null) {
-          return DocSet.empty();
-        }
-        collector = new TermsJoinKeyCollector(fieldType, terms, searcher);
+        solrStream = createSolrStream(fqs);
       }
 
+      List<Object> keys = new ArrayList<>();
       try {
         solrStream.open();
         while (true) {
@@ -310,7 +430,7 @@ public class CrossCollectionJoinQuery extends Query {
 
           Object value = tuple.get(fromField);
           if (null != value) {
-            collector.collect(value);
+            keys.add(value);
           }
         }
       } catch (IOException e) {
@@ -318,7 +438,77 @@ public class CrossCollectionJoinQuery extends Query {
       } finally {
         solrStream.close();
       }
+      return keys.toArray();
+    }
+
+    private DocSet getDocSet() throws IOException {
+      FieldType fieldType = searcher.getSchema().getFieldType(toField);
+      JoinKeyCollector collector;
+      if (fieldType.isPointField()) {
+        collector = new PointJoinKeyCollector(searcher);
+      } else {
+        Terms terms = searcher.getSlowAtomicReader().terms(toField);
+        if (terms == null) {
+          return DocSet.empty();
+        }
+        collector = new TermsJoinKeyCollector(fieldType, terms, searcher);
+      }
 
+      List<String> fqs = new ArrayList<>(2);
+      String hashRangeFq = createHashRangeFq();
+      if (hashRangeFq != null) {
+        fqs.add(hashRangeFq);
+      }
+      JoinKeyBloomFilter filter = bloomFilter ? createBloomFilter() : null;
+
+      // the keys of the remote collection stay valid for the ttl, like the results of this query
+      String cacheKey =
+          String.join(
+              "\n",
+              String.valueOf(zkHost),
+              String.valueOf(solrUrl),
+              collection,
+              fromField,
+              query,
+              String.valueOf(otherParamsString),
+              String.valueOf(hashRangeFq));
+      RemoteKeys remoteKeys =
+          remoteKeysCache == null ? null : remoteKeysCache.getIfPresent(cacheKey);
+      if (remoteKeys == null || !remoteKeys.covers(filter, ttl)) {
+        Object[] keys = null;
+        if (filter != null) {
+          // the filter changes with every commit, so it isn't worth caching on the remote side
+          List<String> filteredFqs = new ArrayList<>(fqs);
+          filteredFqs.add(
+              "{!"
+                  + BloomFilterQParserPlugin.NAME
+                  + " cache=false f="
+                  + fromField
+                  + "}"
+                  + filter.encode());
+          try {
+            keys = streamRemoteKeys(filteredFqs);
+          } catch (SolrException e) {
+            // the from field may not be a string field with docValues, which the filter requires
+            log.warn(
+                "Unable to stream the keys of {} with a bloom filter, streaming all of them",
+                collection,
+                e);
+            filter = null;
+          }
+        }
+        if (keys == null) {
+          keys = streamRemoteKeys(fqs);
+        }
+        remoteKeys = new RemoteKeys(keys, filter, ttl);
+        if (remoteKeysCache != null) {
+          remoteKeysCache.put(cacheKey, remoteKeys);
+        }
+      }
+
+      for (Object key : remoteKeys.keys) {
+        collector.collect(key);
+      }
       return collector.getDocSet();
     }
 
@@ -364,7 +554,7 @@ public class CrossCollectionJoinQuery extends Query {
     result = prime * result + Objects.hashCode(toField);
     result = prime * result + Boolean.hashCode(routedByJoinKey);
     result = prime * result + Objects.hashCode(otherParamsString);
-    // timestamp and ttl should not be included in hash code
+    // timestamp, ttl and bloomFilter should not be included in hash code
     return result;
   }
 
@@ -390,12 +580,13 @@ public class CrossCollectionJoinQuery extends Query {
   public String toString(String field) {
     return String.format(
         Locale.ROOT,
-        "{!xcjf collection=%s from=%s to=%s routed=%b ttl=%d}%s",
+        "{!xcjf collection=%s from=%s to=%s routed=%b ttl=%d bloomFilter=%b}%s",
         collection,
         fromField,
         toField,
         routedByJoinKey,
         ttl,
+        bloomFilter,
         query.toString());
   }
 }
@@ -17,7 +17,7 @@
 package org.apache.solr.search.join;
 
 import java.io.IOException;
-import java.util.TreeSet;
+import java.util.Arrays;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
@@ -32,7 +32,6 @@ import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.util.BitSet;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash;
-import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.DaciukMihovAutomatonBuilder;
 import org.apache.solr.schema.SchemaField;
@@ -67,10 +66,18 @@ abstract class GraphEdgeCollector extends SimpleCollector implements Collector {
 
   // Set to use to collect docs being visited
   // TODO: this should be replaced with a more general delegating collector
-  public void setCollectDocs(FixedBitSet target) {
+  public void setCollectDocs(BitSet target) {
     this.bits = target;
   }
 
+  /**
+   * Adds the hits and edges of another collector of the same level of the traversal, which
+   * collected other segments
+   */
+  void merge(GraphEdgeCollector other) {
+    numHits += other.numHits;
+  }
+
   // the number of docs visited
   public int getNumHits() {
     return numHits;
@@ -120,6 +127,9 @@ abstract class GraphEdgeCollector extends SimpleCollector implements Collector {
   }
 
   static class GraphTermsCollector extends GraphEdgeCollector {
+    /** Frontiers with more terms are matched by intersecting their sorted terms with the field */
+    static final int MAX_AUTOMATON_TERMS = 1024;
+
     // all the collected terms
     private BytesRefHash collectorTerms;
     private SortedSetDocValues docTermOrds;
@@ -153,6 +163,16 @@ abstract class GraphEdgeCollector extends SimpleCollector implements Collector {
       }
     }
 
+    @Override
+    void merge(GraphEdgeCollector other) {
+      super.merge(other);
+      BytesRefHash otherTerms = ((GraphTermsCollector) other).collectorTerms;
+      BytesRef ref = new BytesRef();
+      for (int i = 0; i < otherTerms.size(); i++) {
+        collectorTerms.add(otherTerms.get(i, ref));
+      }
+    }
+
     @Override
     public Query getResultQuery(SchemaField matchField, boolean useAutomaton) {
       if (collectorTerms == null || collectorTerms.size() == 0) {
@@ -161,41 +181,35 @@ abstract class GraphEdgeCollector extends SimpleCollector implements Collector {
       } else {
         // Create a query
         Query q = null;
+        BytesRef[] termList = sortedTerms(collectorTerms);
 
-        // TODO: see if we should dynamically select this based on the frontier size.
-        if (useAutomaton) {
+        // the automaton of a large frontier costs more to build than intersecting the sorted terms
+        // with the terms of the field, which TermInSetQuery does
+        if (useAutomaton && termList.length <= MAX_AUTOMATON_TERMS) {
           // build an automaton based query for the frontier.
-          Automaton autn = buildAutomaton(collectorTerms);
+          Automaton autn = DaciukMihovAutomatonBuilder.build(Arrays.asList(termList));
           AutomatonQuery autnQuery = new AutomatonQuery(new Term(matchField.getName()), autn);
           q = autnQuery;
         } else {
-          BytesRef[] termList = new BytesRef[collectorTerms.size()];
-          for (int i = 0; i < collectorTerms.size(); i++) {
-            BytesRef ref = new BytesRef();
-            collectorTerms.get(i, ref);
-            termList[i] = ref;
-          }
           q =
               (matchField.hasDocValues() && !matchField.indexed())
                   ? SortedDocValuesField.newSlowSetQuery(matchField.getName(), termList)
-                  : new TermInSetQuery(matchField.getName(), termList);
+                  : new TermInSetQuery(matchField.getName(), Arrays.asList(termList));
         }
 
         return q;
       }
     }
 
-    /** Build an automaton to represent the frontier query */
-    private Automaton buildAutomaton(BytesRefHash termBytesHash) {
-      // need top pass a sorted set of terms to the autn builder (maybe a better way to avoid this?)
-      final TreeSet<BytesRef> terms = new TreeSet<>();
-      for (int i = 0; i < termBytesHash.size(); i++) {
-        BytesRef ref = new BytesRef();
-        termBytesHash.get(i, ref);
-        terms.add(ref);
+    /** The terms of the hash in sorted order; the hash can't be added to anymore. */
+    private static BytesRef[] sortedTerms(BytesRefHash termBytesHash) {
+      int size = termBytesHash.size();
+      int[] ids = termBytesHash.sort();
+      BytesRef[] terms = new BytesRef[size];
+      for (int i = 0; i < size; i++) {
+        terms[i] = termBytesHash.get(ids[i], new BytesRef());
       }
-      final Automaton a = DaciukMihovAutomatonBuilder.build(terms);
-      return a;
+      return terms;
     }
   }
 }
@@ -69,6 +69,12 @@ public class GraphPointsCollector extends GraphEdgeCollector {
     }
   }
 
+  @Override
+  void merge(GraphEdgeCollector other) {
+    super.merge(other);
+    set.addAll(((GraphPointsCollector) other).set);
+  }
+
   @Override
   public Query getResultQuery(SchemaField matchField, boolean useAutomaton) {
     if (set.isEmpty()) return null;
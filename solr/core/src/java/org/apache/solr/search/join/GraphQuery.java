@@ -18,6 +18,7 @@ package org.apache.solr.search.join;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.TreeSet;
@@ -26,6 +27,7 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
@@ -37,11 +39,15 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.SparseFixedBitSet;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.DaciukMihovAutomatonBuilder;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocSet;
@@ -144,6 +150,8 @@ public class GraphQuery extends Query {
     private DocSet resultSet;
     SchemaField collectSchemaField; // the field to collect values from
     SchemaField matchSchemaField; // the field to match those values
+    // whether the request allows collecting each level on the searcher's executor
+    final boolean multiThreaded;
 
     public GraphQueryWeight(SolrIndexSearcher searcher, float boost) {
       // Grab the searcher so we can run additional searches.
@@ -151,6 +159,9 @@ public class GraphQuery extends Query {
       this.fromSearcher = searcher;
       this.matchSchemaField = searcher.getSchema().getField(fromField);
       this.collectSchemaField = searcher.getSchema().getField(toField);
+      SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+      this.multiThreaded =
+          info != null && info.getReq().getParams().getBool(CommonParams.MULTI_THREADED, false);
     }
 
     GraphQuery getGraphQuery() {
@@ -204,18 +215,9 @@ public class GraphQuery extends Query {
           frontierQuery = null;
         } else {
           // when we're not at the max depth level, we need to collect edges
-          // Create the graph result collector for this level
-          GraphEdgeCollector graphResultCollector =
-              collectSchemaField.getType().isPointField()
-                  ? new GraphPointsCollector(
-                      collectSchemaField, new BitDocSet(resultBits), leafNodes)
-                  : new GraphEdgeCollector.GraphTermsCollector(
-                      collectSchemaField, new BitDocSet(resultBits), leafNodes);
-
           fromSet = new BitDocSet(new FixedBitSet(capacity));
-          graphResultCollector.setCollectDocs(fromSet.getBits());
-
-          fromSearcher.search(frontierQuery, graphResultCollector);
+          GraphEdgeCollector graphResultCollector =
+              collectEdges(frontierQuery, new BitDocSet(resultBits), leafNodes, fromSet.getBits());
 
           frontierQuery = graphResultCollector.getResultQuery(matchSchemaField, isUseAutn());
           // If there is a filter to be used while crawling the graph, add that.
@@ -251,6 +253,57 @@ public class GraphQuery extends Query {
       }
     }
 
+    /** Creates the graph result collector for a level */
+    private GraphEdgeCollector newEdgeCollector(DocSet skipSet, DocSet leafNodes) {
+      return collectSchemaField.getType().isPointField()
+          ? new GraphPointsCollector(collectSchemaField, skipSet, leafNodes)
+          : new GraphEdgeCollector.GraphTermsCollector(collectSchemaField, skipSet, leafNodes);
+    }
+
+    /**
+     * Collects the documents of the frontier into the bits, and their edges. If the request is
+     * multi-threaded the slices of the index are collected concurrently, each by its own collector,
+     * and the edges of the collectors are merged.
+     */
+    private GraphEdgeCollector collectEdges(
+        Query frontierQuery, DocSet skipSet, DocSet leafNodes, FixedBitSet frontierBits)
+        throws IOException {
+      if (!multiThreaded
+          || fromSearcher.getExecutor() == null
+          || fromSearcher.getSlices().length < 2) {
+        GraphEdgeCollector collector = newEdgeCollector(skipSet, leafNodes);
+        collector.setCollectDocs(frontierBits);
+        fromSearcher.search(frontierQuery, collector);
+        return collector;
+      }
+      return fromSearcher.search(
+          frontierQuery,
+          new CollectorManager<GraphEdgeCollector, GraphEdgeCollector>() {
+            @Override
+            public GraphEdgeCollector newCollector() {
+              GraphEdgeCollector collector = newEdgeCollector(skipSet, leafNodes);
+              // slices can't share a FixedBitSet, whose words may span two segments
+              collector.setCollectDocs(new SparseFixedBitSet(frontierBits.length()));
+              return collector;
+            }
+
+            @Override
+            public GraphEdgeCollector reduce(Collection<GraphEdgeCollector> collectors)
+                throws IOException {
+              GraphEdgeCollector merged = null;
+              for (GraphEdgeCollector collector : collectors) {
+                frontierBits.or(new BitSetIterator(collector.bits, collector.numHits));
+                if (merged == null) {
+                  merged = collector;
+                } else {
+                  merged.merge(collector);
+                }
+              }
+              return merged;
+            }
+          });
+    }
+
     private DocSet resolveLeafNodes() throws IOException {
       String field = collectSchemaField.getName();
       BooleanQuery.Builder leafNodeQuery = new BooleanQuery.Builder();
@@ -289,7 +342,8 @@ public class GraphQuery extends Query {
 
     @Override
     public boolean isCacheable(LeafReaderContext ctx) {
-      return true;
+      // the matches in a segment depend on the traversal of the whole index
+      return false;
     }
   }
 
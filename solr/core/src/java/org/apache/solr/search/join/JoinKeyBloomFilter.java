@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.Hash;
+
+/**
+ * A Bloom filter of the join keys of a shard, which a {@link CrossCollectionJoinQuery} sends to the
+ * remote collection so that it only streams the keys that may exist locally. It has about 1% false
+ * positives, and no false negatives.
+ *
+ * <p>The number of bits is a power of two, so that the filters of the same field before and after a
+ * few updates usually have the same size and can be compared with {@link #containsAll}.
+ *
+ * @lucene.internal
+ */
+public final class JoinKeyBloomFilter {
+
+  // 10 bits per key with 7 hashes give about 1% false positives
+  static final int BITS_PER_KEY = 10;
+  static final int NUM_HASHES = 7;
+  static final int MIN_BITS = 64;
+  static final int MAX_BITS = 1 << 30;
+
+  private final long[] bits;
+  private final int mask;
+
+  private JoinKeyBloomFilter(long[] bits) {
+    this.bits = bits;
+    this.mask = bits.length * Long.SIZE - 1;
+  }
+
+  /** An empty filter sized for the given number of keys */
+  public static JoinKeyBloomFilter forKeys(long numKeys) {
+    long wanted = Math.min(MAX_BITS, Math.max(MIN_BITS, numKeys * BITS_PER_KEY));
+    int numBits = Integer.highestOneBit((int) wanted - 1) << 1;
+    return new JoinKeyBloomFilter(new long[numBits / Long.SIZE]);
+  }
+
+  public void add(BytesRef key) {
+    int h1 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, 0);
+    int h2 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, h1);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      int bit = (h1 + i * h2) & mask;
+      bits[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  public boolean mightContain(BytesRef key) {
+    int h1 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, 0);
+    int h2 = Hash.murmurhash3_x86_32(key.bytes, key.offset, key.length, h1);
+    for (int i = 0; i < NUM_HASHES; i++) {
+      int bit = (h1 + i * h2) & mask;
+      if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether every key the other filter might contain is also let through by this one, which is the
+   * case if it has the same size and a subset of its bits.
+   */
+  public boolean containsAll(JoinKeyBloomFilter other) {
+    if (other.bits.length != bits.length) {
+      return false;
+    }
+    for (int i = 0; i < bits.length; i++) {
+      if ((other.bits[i] & ~bits[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int getNumBits() {
+    return bits.length * Long.SIZE;
+  }
+
+  /** The bits of the filter in URL-safe base64, which needs no escaping in local params */
+  public String encode() {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(bits.length * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.asLongBuffer().put(bits);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+  }
+
+  public static JoinKeyBloomFilter decode(String encoded) {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(encoded);
+    } catch (IllegalArgumentException e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Invalid bloom filter", e);
+    }
+    int numLongs = bytes.length / Long.BYTES;
+    if (numLongs == 0 || bytes.length % Long.BYTES != 0 || Integer.bitCount(numLongs) != 1) {
+      throw new SolrException(
+          SolrException.ErrorCode.BAD_REQUEST,
+          "Invalid bloom filter of " + bytes.length + " bytes");
+    }
+    long[] bits = new long[numLongs];
+    ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(bits);
+    return new JoinKeyBloomFilter(bits);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof JoinKeyBloomFilter
+        && Arrays.equals(bits, ((JoinKeyBloomFilter) other).bits);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bits);
+  }
+}
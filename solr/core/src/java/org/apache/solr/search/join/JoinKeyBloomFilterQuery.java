@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Objects;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Matches the documents with a value of a string field that a {@link JoinKeyBloomFilter} might
+ * contain. The values of each segment are tested against the filter once, by ordinal.
+ */
+public class JoinKeyBloomFilterQuery extends Query {
+
+  protected final String field;
+  protected final JoinKeyBloomFilter filter;
+
+  public JoinKeyBloomFilterQuery(String field, JoinKeyBloomFilter filter) {
+    this.field = field;
+    this.filter = filter;
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost)
+      throws IOException {
+    return new ConstantScoreWeight(this, boost) {
+
+      @Override
+      public boolean isCacheable(LeafReaderContext context) {
+        return DocValues.isCacheable(context, field);
+      }
+
+      @Override
+      public Scorer scorer(LeafReaderContext context) throws IOException {
+        SortedSetDocValues docValues = DocValues.getSortedSet(context.reader(), field);
+        FixedBitSet matchingOrds = matchingOrds(docValues);
+        if (matchingOrds == null) {
+          return null;
+        }
+
+        TwoPhaseIterator iterator =
+            new TwoPhaseIterator(docValues) {
+              @Override
+              public boolean matches() throws IOException {
+                for (int i = 0; i < docValues.docValueCount(); i++) {
+                  if (matchingOrds.get((int) docValues.nextOrd())) {
+                    return true;
+                  }
+                }
+                return false;
+              }
+
+              @Override
+              public float matchCost() {
+                return 2;
+              }
+            };
+        return new ConstantScoreScorer(this, score(), scoreMode, iterator);
+      }
+
+      /** The ordinals of the values the filter might contain, or null if there are none */
+      private FixedBitSet matchingOrds(SortedSetDocValues docValues) throws IOException {
+        long valueCount = docValues.getValueCount();
+        FixedBitSet ords = new FixedBitSet(Math.toIntExact(valueCount));
+        for (int ord = 0; ord < valueCount; ord++) {
+          if (filter.mightContain(docValues.lookupOrd(ord))) {
+            ords.set(ord);
+          }
+        }
+        return ords.cardinality() == 0 ? null : ords;
+      }
+    };
+  }
+
+  @Override
+  public void visit(QueryVisitor visitor) {
+    visitor.visitLeaf(this);
+  }
+
+  @Override
+  public String toString(String field) {
+    return String.format(
+        Locale.ROOT,
+        "{!%s f=%s}(%d bits)",
+        BloomFilterQParserPlugin.NAME,
+        this.field,
+        filter.getNumBits());
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return sameClassAs(other) && equalsTo(getClass().cast(other));
+  }
+
+  private boolean equalsTo(JoinKeyBloomFilterQuery other) {
+    return Objects.equals(field, other.field) && Objects.equals(filter, other.filter);
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = classHash();
+    result = prime * result + Objects.hashCode(field);
+    result = prime * result + Objects.hashCode(filter);
+    return result;
+  }
+}
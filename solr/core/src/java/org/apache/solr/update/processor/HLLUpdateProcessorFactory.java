@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update.processor;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.HLLField;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.NumberType;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.util.hll.HLL;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+/**
+ * An update processor that computes an {@link HLL} sketch of the values of the <code>source</code>
+ * field of each added document, and stores it in the <code>dest</code> field, which must be an
+ * {@link HLLField}. Faceting with <code>hll(dest)</code> then unions the precomputed sketches
+ * instead of hashing every value at query time.
+ *
+ * <p>Values are hashed the same way the <code>hll()</code> aggregation hashes the values of a
+ * single valued field of the source type, so the sketches of documents indexed with and without
+ * this processor estimate the same distinct values.
+ *
+ * <pre class="prettyprint">
+ * &lt;processor class="solr.HLLUpdateProcessorFactory"&gt;
+ *   &lt;str name="source"&gt;visitor_ss&lt;/str&gt;
+ *   &lt;str name="dest"&gt;visitors_hll&lt;/str&gt;
+ * &lt;/processor&gt;
+ * </pre>
+ *
+ * <p>Documents without values in the source field are left unchanged, and partial updates may not
+ * change the source field.
+ *
+ * @since 10.0.0
+ */
+public class HLLUpdateProcessorFactory extends UpdateRequestProcessorFactory
+    implements SolrCoreAware {
+
+  public static final String SOURCE_PARAM = "source";
+  public static final String DEST_PARAM = "dest";
+
+  private String sourceField;
+  private String destField;
+
+  @Override
+  public void init(NamedList<?> args) {
+    Object source = args.remove(SOURCE_PARAM);
+    Object dest = args.remove(DEST_PARAM);
+    if (!(source instanceof CharSequence) || !(dest instanceof CharSequence)) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR,
+          "HLLUpdateProcessorFactory requires a '"
+              + SOURCE_PARAM
+              + "' and a '"
+              + DEST_PARAM
+              + "' field name");
+    }
+    sourceField = source.toString();
+    destField = dest.toString();
+    if (0 < args.size()) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Unexpected init param(s): " + args);
+    }
+  }
+
+  @Override
+  public void inform(SolrCore core) {
+    checkFields(core.getLatestSchema());
+  }
+
+  private HLLField checkFields(IndexSchema schema) {
+    if (schema.getFieldOrNull(sourceField) == null) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Source field does not exist in schema: " + sourceField);
+    }
+    SchemaField dest = schema.getFieldOrNull(destField);
+    if (dest == null || !(dest.getType() instanceof HLLField)) {
+      throw new SolrException(
+          ErrorCode.SERVER_ERROR, "Dest field must be an HLLField in the schema: " + destField);
+    }
+    return (HLLField) dest.getType();
+  }
+
+  @Override
+  public UpdateRequestProcessor getInstance(
+      SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    final IndexSchema schema = req.getSchema();
+    final SchemaField source = schema.getField(sourceField);
+    final HLLField destType = checkFields(schema);
+
+    return new UpdateRequestProcessor(next) {
+      final Hash.LongPair hashResult = new Hash.LongPair();
+      final BytesRefBuilder term = new BytesRefBuilder();
+
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+        SolrInputDocument doc = cmd.getSolrInputDocument();
+        Collection<Object> values = doc.getFieldValues(sourceField);
+        if (values != null && !values.isEmpty()) {
+          if (AtomicUpdateDocumentMerger.isAtomicUpdate(cmd)) {
+            throw new SolrException(
+                ErrorCode.BAD_REQUEST,
+                "Can't use HLLUpdateProcessor with partial updates on field " + sourceField);
+          }
+          HLL hll = destType.newHLL();
+          for (Object value : values) {
+            if (value != null) {
+              hll.addRaw(hash(source, value));
+            }
+          }
+          doc.setField(destField, hll.toBytes());
+        }
+        super.processAdd(cmd);
+      }
+
+      private long hash(SchemaField sf, Object value) {
+        FieldType type = sf.getType();
+        NumberType numberType = type.getNumberType();
+        if (numberType == null) {
+          type.readableToIndexed(value.toString(), term);
+          Hash.murmurhash3_x64_128(term.bytes(), 0, term.length(), 0, hashResult);
+          return hashResult.val1;
+        }
+
+        // the bits of the single valued numeric docValues
+        Object nativeValue = type.toNativeType(value);
+        final long bits;
+        switch (numberType) {
+          case FLOAT:
+            bits = Float.floatToIntBits(((Number) nativeValue).floatValue());
+            break;
+          case DOUBLE:
+            bits = Double.doubleToLongBits(((Number) nativeValue).doubleValue());
+            break;
+          case DATE:
+            bits = ((Date) nativeValue).getTime();
+            break;
+          default:
+            bits = ((Number) nativeValue).longValue();
+        }
+        return Hash.fmix64(bits);
+      }
+    };
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A mergeable quantile sketch with relative-error guarantees (DDSketch). Values are counted in
+ * logarithmically sized bins, so any quantile is returned within the relative accuracy of a value
+ * of that rank. Two sketches with the same accuracy merge exactly by adding their bin counts.
+ *
+ * <p>The bins of each sign are kept in a dense array that grows as needed up to {@link #MAX_BINS};
+ * beyond that the bins closest to zero are collapsed. With the default accuracy that limit spans
+ * values over 30 orders of magnitude.
+ *
+ * @lucene.internal
+ */
+public final class DDSketch implements Accountable {
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+  /** The maximum number of bins for each sign */
+  public static final int MAX_BINS = 2048;
+
+  private static final byte VERSION = 1;
+  private static final long BASE_RAM_BYTES_USED =
+      RamUsageEstimator.shallowSizeOfInstance(DDSketch.class)
+          + 2 * RamUsageEstimator.shallowSizeOfInstance(Bins.class);
+  // values closer to zero than this are counted as zero
+  private static final double MIN_INDEXABLE_VALUE = 1e-300;
+
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final Bins positive = new Bins();
+  private final Bins negative = new Bins();
+  private long zeroCount;
+  private long count;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public DDSketch() {
+    this(DEFAULT_RELATIVE_ACCURACY);
+  }
+
+  public DDSketch(double relativeAccuracy) {
+    if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+      throw new IllegalArgumentException(
+          "relative accuracy must be between 0 and 1, got " + relativeAccuracy);
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+  }
+
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  /** The number of values added to this sketch */
+  public long getCount() {
+    return count;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  /** Adds a value. NaN is ignored. */
+  public void add(double value) {
+    if (value > MIN_INDEXABLE_VALUE) {
+      positive.add(index(value), 1);
+    } else if (value < -MIN_INDEXABLE_VALUE) {
+      negative.add(index(-value), 1);
+    } else if (Double.isNaN(value)) {
+      return;
+    } else {
+      zeroCount++;
+    }
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Adds all values of the other sketch, which must have the same relative accuracy. */
+  public void merge(DDSketch other) {
+    if (other.relativeAccuracy != relativeAccuracy) {
+      throw new IllegalArgumentException(
+          "Can't merge sketches with relative accuracy "
+              + relativeAccuracy
+              + " and "
+              + other.relativeAccuracy);
+    }
+    positive.merge(other.positive);
+    negative.merge(other.negative);
+    zeroCount += other.zeroCount;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  /** Removes all values, keeping the allocated bins for reuse. */
+  public void clear() {
+    positive.clear();
+    negative.clear();
+    zeroCount = 0;
+    count = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Returns the value at the given quantile (between 0 and 1), or NaN if the sketch is empty. The
+   * extremes are exact, anything else is within the relative accuracy.
+   */
+  public double quantile(double quantile) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (quantile <= 0) {
+      return min;
+    }
+    if (quantile >= 1) {
+      return max;
+    }
+
+    long rank = (long) (quantile * (count - 1));
+    long n = 0;
+    // the most negative values are in the highest negative bins
+    for (int i = negative.maxIndex; i >= negative.minIndex; i--) {
+      n += negative.get(i);
+      if (n > rank) {
+        return clamp(-value(i));
+      }
+    }
+    n += zeroCount;
+    if (n > rank) {
+      return clamp(0);
+    }
+    for (int i = positive.minIndex; i <= positive.maxIndex; i++) {
+      n += positive.get(i);
+      if (n > rank) {
+        return clamp(value(i));
+      }
+    }
+    return max;
+  }
+
+  private int index(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  /**
+   * the value of bin i, which is within the relative accuracy of anything in (gamma^(i-1), gamma^i]
+   */
+  private double value(int index) {
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+
+  private double clamp(double value) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return BASE_RAM_BYTES_USED
+        + RamUsageEstimator.sizeOf(positive.counts)
+        + RamUsageEstimator.sizeOf(negative.counts);
+  }
+
+  /** Serializes this sketch; see {@link #fromBytes(byte[])} */
+  public byte[] toBytes() {
+    ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+    try {
+      out.writeByte(VERSION);
+      out.writeLong(Double.doubleToLongBits(relativeAccuracy));
+      out.writeVLong(count);
+      out.writeVLong(zeroCount);
+      out.writeLong(Double.doubleToLongBits(min));
+      out.writeLong(Double.doubleToLongBits(max));
+      positive.write(out);
+      negative.write(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // can't happen with an in-memory output
+    }
+    return out.toArrayCopy();
+  }
+
+  public static DDSketch fromBytes(byte[] bytes) {
+    ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+    try {
+      byte version = in.readByte();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unknown DDSketch serialization version " + version);
+      }
+      DDSketch sketch = new DDSketch(Double.longBitsToDouble(in.readLong()));
+      sketch.count = in.readVLong();
+      sketch.zeroCount = in.readVLong();
+      sketch.min = Double.longBitsToDouble(in.readLong());
+      sketch.max = Double.longBitsToDouble(in.readLong());
+      sketch.positive.read(in);
+      sketch.negative.read(in);
+      return sketch;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // can't happen with an in-memory input
+    }
+  }
+
+  /** Counts by bin index for one sign. */
+  private static final class Bins {
+    private static final long[] EMPTY = new long[0];
+
+    long[] counts = EMPTY;
+    int offset; // the bin index of counts[0]
+    // the range of bins in use, empty if maxIndex < minIndex
+    int minIndex = Integer.MAX_VALUE;
+    int maxIndex = Integer.MIN_VALUE;
+
+    long get(int index) {
+      return counts[index - offset];
+    }
+
+    void add(int index, long n) {
+      int newMax = Math.max(maxIndex, index);
+      int lowest = newMax - MAX_BINS + 1;
+      index = Math.max(index, lowest);
+
+      // collapse the bins that fall out of range into the lowest one
+      long collapsed = 0;
+      if (minIndex < lowest) {
+        for (int i = minIndex, end = Math.min(maxIndex, lowest - 1); i <= end; i++) {
+          collapsed += counts[i - offset];
+          counts[i - offset] = 0;
+        }
+        minIndex = lowest;
+      }
+
+      int newMin = Math.min(minIndex, index);
+      ensureCapacity(newMin, newMax);
+      minIndex = newMin;
+      maxIndex = newMax;
+      counts[index - offset] += n;
+      if (collapsed != 0) {
+        counts[lowest - offset] += collapsed;
+      }
+    }
+
+    private void ensureCapacity(int lo, int hi) {
+      if (lo >= offset && hi < offset + counts.length) {
+        return;
+      }
+      int needed = hi - lo + 1;
+      int length = Math.max(needed, Math.min(MAX_BINS, Math.max(8, counts.length << 1)));
+      int newOffset = lo - (length - needed) / 2; // leave room to grow both ways
+      long[] newCounts = new long[length];
+      int from = Math.max(offset, newOffset);
+      int to = Math.min(offset + counts.length, newOffset + length);
+      if (from < to) {
+        System.arraycopy(counts, from - offset, newCounts, from - newOffset, to - from);
+      }
+      counts = newCounts;
+      offset = newOffset;
+    }
+
+    void merge(Bins other) {
+      for (int i = other.minIndex; i <= other.maxIndex; i++) {
+        long n = other.get(i);
+        if (n != 0) {
+          add(i, n);
+        }
+      }
+    }
+
+    void clear() {
+      for (int i = minIndex; i <= maxIndex; i++) {
+        counts[i - offset] = 0;
+      }
+      minIndex = Integer.MAX_VALUE;
+      maxIndex = Integer.MIN_VALUE;
+    }
+
+    void write(DataOutput out) throws IOException {
+      if (maxIndex < minIndex) {
+        out.writeVInt(0);
+        return;
+      }
+      out.writeVInt(maxIndex - minIndex + 1);
+      out.writeZInt(minIndex);
+      for (int i = minIndex; i <= maxIndex; i++) {
+        out.writeVLong(get(i));
+      }
+    }
+
+    void read(DataInput in) throws IOException {
+      int numBins = in.readVInt();
+      if (numBins == 0) {
+        return;
+      }
+      int lo = in.readZInt();
+      ensureCapacity(lo, lo + numBins - 1);
+      minIndex = lo;
+      maxIndex = lo + numBins - 1;
+      for (int i = minIndex; i <= maxIndex; i++) {
+        counts[i - offset] = in.readVLong();
+      }
+    }
+  }
+}
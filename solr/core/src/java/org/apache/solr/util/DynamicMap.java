@@ -22,9 +22,17 @@ package org.apache.solr.util;
  * By automatically switching from a hashMap (which is memory efficient) to an array (which is
  * faster) on increasing number of keys. So it SHOULD not be used for other cases where key can be
  * any arbitrary integer.
+ *
+ * <p>The array is split in pages of {@link #PAGE_SIZE} values that are only allocated once a key in
+ * their range is put, so that a map over many keys only holds memory for the ranges of keys that
+ * are actually used. Pages may be taken from, and handed back to, a {@link DynamicMapPagePool}.
  */
 public interface DynamicMap {
 
+  int PAGE_SHIFT = 12;
+  int PAGE_SIZE = 1 << PAGE_SHIFT;
+  int PAGE_MASK = PAGE_SIZE - 1;
+
   default boolean useArrayBased(int expectedKeyMax) {
     boolean assertsEnabled = false;
     assert assertsEnabled = true; // Intentional side-effect!
@@ -37,6 +45,22 @@ public interface DynamicMap {
     return expectedKeyMax < (1 << 12);
   }
 
+  /** The number of pages needed to hold keys up to (excluding) the given one */
+  default int numPages(int maxKey) {
+    return (maxKey + PAGE_MASK) >>> PAGE_SHIFT;
+  }
+
+  /** An estimate of the memory held by this map, in bytes, or 0 if it isn't tracked */
+  default long ramBytesUsed() {
+    return 0;
+  }
+
+  /**
+   * Hands the pages of this map back to its pool, if it has one. The map must not be used anymore
+   * afterwards. Does nothing by default.
+   */
+  default void release() {}
+
   /** Compute threshold for switching from hashMap based to array */
   default int threshold(int expectedKeyMax) {
     return expectedKeyMax >>> 6;
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A bounded pool of the pages that {@link DynamicMap}s keep their values in once they switched to
+ * arrays, so that the next map doesn't allocate them again. All pages have {@link
+ * DynamicMap#PAGE_SIZE} values, so any page handed back can be reused by any map of the same value
+ * type. The pool holds at most <code>maxBytes</code> of pages; pages handed back beyond that are
+ * left to the garbage collector.
+ */
+public class DynamicMapPagePool {
+  private final long maxBytes;
+  private final ArrayDeque<int[]> intPages = new ArrayDeque<>();
+  private final ArrayDeque<float[]> floatPages = new ArrayDeque<>();
+  private final ArrayDeque<long[]> longPages = new ArrayDeque<>();
+  private long pooledBytes;
+  private long numAllocated;
+  private long numReused;
+
+  public DynamicMapPagePool(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  int[] newIntPage(int emptyValue) {
+    int[] page = take(intPages, Integer.BYTES);
+    if (page == null) {
+      page = new int[DynamicMap.PAGE_SIZE];
+      if (emptyValue == 0) {
+        return page;
+      }
+    }
+    Arrays.fill(page, emptyValue);
+    return page;
+  }
+
+  float[] newFloatPage(float emptyValue) {
+    float[] page = take(floatPages, Float.BYTES);
+    if (page == null) {
+      page = new float[DynamicMap.PAGE_SIZE];
+      if (emptyValue == 0.0f) {
+        return page;
+      }
+    }
+    Arrays.fill(page, emptyValue);
+    return page;
+  }
+
+  long[] newLongPage(long emptyValue) {
+    long[] page = take(longPages, Long.BYTES);
+    if (page == null) {
+      page = new long[DynamicMap.PAGE_SIZE];
+      if (emptyValue == 0) {
+        return page;
+      }
+    }
+    Arrays.fill(page, emptyValue);
+    return page;
+  }
+
+  /** Hands the page back, it must not be used by the caller anymore */
+  void release(int[] page) {
+    put(intPages, page, Integer.BYTES);
+  }
+
+  void release(float[] page) {
+    put(floatPages, page, Float.BYTES);
+  }
+
+  void release(long[] page) {
+    put(longPages, page, Long.BYTES);
+  }
+
+  private synchronized <P> P take(ArrayDeque<P> pages, int bytes) {
+    P page = pages.poll();
+    if (page == null) {
+      numAllocated++;
+    } else {
+      numReused++;
+      pooledBytes -= (long) DynamicMap.PAGE_SIZE * bytes;
+    }
+    return page;
+  }
+
+  private synchronized <P> void put(ArrayDeque<P> pages, P page, int bytes) {
+    long size = (long) DynamicMap.PAGE_SIZE * bytes;
+    if (pooledBytes + size <= maxBytes) {
+      pages.push(page);
+      pooledBytes += size;
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /** The number of pages that could not be taken from the pool */
+  public synchronized long getNumAllocated() {
+    return numAllocated;
+  }
+
+  /** The number of pages that were taken from the pool */
+  public synchronized long getNumReused() {
+    return numReused;
+  }
+}
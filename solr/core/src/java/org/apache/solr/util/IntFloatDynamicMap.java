@@ -22,11 +22,14 @@ import com.carrotsearch.hppc.cursors.FloatCursor;
 import com.carrotsearch.hppc.procedures.IntFloatProcedure;
 import java.util.Arrays;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 public class IntFloatDynamicMap implements DynamicMap {
   private int maxSize;
   private IntFloatHashMap hashMap;
-  private float[] keyValues;
+  private float[][] pages;
+  private int numPages;
+  private final DynamicMapPagePool pool;
   private float emptyValue;
   private int threshold;
 
@@ -36,9 +39,19 @@ public class IntFloatDynamicMap implements DynamicMap {
    * expectedKeyMax} is discourage since it can leads to use LOT OF memory.
    */
   public IntFloatDynamicMap(int expectedKeyMax, float emptyValue) {
+    this(expectedKeyMax, emptyValue, null);
+  }
+
+  /**
+   * Create map with expected max value of key, that takes its pages from the given pool.
+   *
+   * @param pool where pages are taken from and handed back to on {@link #release()}, may be null
+   */
+  public IntFloatDynamicMap(int expectedKeyMax, float emptyValue, DynamicMapPagePool pool) {
     this.threshold = threshold(expectedKeyMax);
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
+    this.pool = pool;
     if (useArrayBased(expectedKeyMax)) {
       upgradeToArray();
     } else {
@@ -47,33 +60,38 @@ public class IntFloatDynamicMap implements DynamicMap {
   }
 
   private void upgradeToArray() {
-    keyValues = new float[maxSize];
-    if (emptyValue != 0.0f) {
-      Arrays.fill(keyValues, emptyValue);
-    }
+    pages = new float[numPages(maxSize)][];
     if (hashMap != null) {
-      hashMap.forEach((IntFloatProcedure) (key, value) -> keyValues[key] = value);
+      hashMap.forEach((IntFloatProcedure) (key, value) -> page(key)[key & PAGE_MASK] = value);
       hashMap = null;
     }
   }
 
-  private void growBuffer(int minSize) {
-    assert keyValues != null;
-    int size = keyValues.length;
-    keyValues = ArrayUtil.grow(keyValues, minSize);
-    if (emptyValue != 0.0f) {
-      for (int i = size; i < keyValues.length; i++) {
-        keyValues[i] = emptyValue;
+  /** The page holding the given key, allocated if needed */
+  private float[] page(int key) {
+    int index = key >>> PAGE_SHIFT;
+    if (index >= pages.length) {
+      pages = ArrayUtil.grow(pages, index + 1);
+    }
+    float[] page = pages[index];
+    if (page == null) {
+      if (pool != null) {
+        page = pool.newFloatPage(emptyValue);
+      } else {
+        page = new float[PAGE_SIZE];
+        if (emptyValue != 0.0f) {
+          Arrays.fill(page, emptyValue);
+        }
       }
+      pages[index] = page;
+      numPages++;
     }
+    return page;
   }
 
   public void put(int key, float value) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
-        growBuffer(key + 1);
-      }
-      keyValues[key] = value;
+    if (pages != null) {
+      page(key)[key & PAGE_MASK] = value;
     } else {
       this.hashMap.put(key, value);
       this.maxSize = Math.max(key + 1, maxSize);
@@ -84,20 +102,24 @@ public class IntFloatDynamicMap implements DynamicMap {
   }
 
   public float get(int key) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index >= pages.length || pages[index] == null) {
         return emptyValue;
       }
-      return keyValues[key];
+      return pages[index][key & PAGE_MASK];
     } else {
       return this.hashMap.getOrDefault(key, emptyValue);
     }
   }
 
   public void forEachValue(FloatConsumer consumer) {
-    if (keyValues != null) {
-      for (float val : keyValues) {
-        if (val != emptyValue) consumer.accept(val);
+    if (pages != null) {
+      for (float[] page : pages) {
+        if (page == null) continue;
+        for (float val : page) {
+          if (val != emptyValue) consumer.accept(val);
+        }
       }
     } else {
       for (FloatCursor ord : hashMap.values()) {
@@ -107,10 +129,32 @@ public class IntFloatDynamicMap implements DynamicMap {
   }
 
   public void remove(int key) {
-    if (keyValues != null) {
-      if (key < keyValues.length) keyValues[key] = emptyValue;
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index < pages.length && pages[index] != null) pages[index][key & PAGE_MASK] = emptyValue;
     } else {
       hashMap.remove(key);
     }
   }
+
+  @Override
+  public long ramBytesUsed() {
+    if (pages != null) {
+      return RamUsageEstimator.shallowSizeOf(pages)
+          + numPages * (RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) PAGE_SIZE * Float.BYTES);
+    } else {
+      return hashMap.ramBytesAllocated();
+    }
+  }
+
+  @Override
+  public void release() {
+    if (pages != null && pool != null) {
+      for (float[] page : pages) {
+        if (page != null) pool.release(page);
+      }
+    }
+    pages = null;
+    hashMap = null;
+  }
 }
@@ -23,11 +23,14 @@ import com.carrotsearch.hppc.procedures.IntIntProcedure;
 import java.util.Arrays;
 import java.util.function.IntConsumer;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 public class IntIntDynamicMap implements DynamicMap {
   private int maxSize;
   private IntIntHashMap hashMap;
-  private int[] keyValues;
+  private int[][] pages;
+  private int numPages;
+  private final DynamicMapPagePool pool;
   private int emptyValue;
   private int threshold;
 
@@ -37,9 +40,19 @@ public class IntIntDynamicMap implements DynamicMap {
    * expectedKeyMax} is discourage since it can leads to use LOT OF memory.
    */
   public IntIntDynamicMap(int expectedKeyMax, int emptyValue) {
+    this(expectedKeyMax, emptyValue, null);
+  }
+
+  /**
+   * Create map with expected max value of key, that takes its pages from the given pool.
+   *
+   * @param pool where pages are taken from and handed back to on {@link #release()}, may be null
+   */
+  public IntIntDynamicMap(int expectedKeyMax, int emptyValue, DynamicMapPagePool pool) {
     this.threshold = threshold(expectedKeyMax);
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
+    this.pool = pool;
     if (useArrayBased(expectedKeyMax)) {
       upgradeToArray();
     } else {
@@ -48,33 +61,38 @@ public class IntIntDynamicMap implements DynamicMap {
   }
 
   private void upgradeToArray() {
-    keyValues = new int[maxSize];
-    if (emptyValue != 0) {
-      Arrays.fill(keyValues, emptyValue);
-    }
+    pages = new int[numPages(maxSize)][];
     if (hashMap != null) {
-      hashMap.forEach((IntIntProcedure) (key, value) -> keyValues[key] = value);
+      hashMap.forEach((IntIntProcedure) (key, value) -> page(key)[key & PAGE_MASK] = value);
       hashMap = null;
     }
   }
 
-  private void growBuffer(int minSize) {
-    assert keyValues != null;
-    int size = keyValues.length;
-    keyValues = ArrayUtil.grow(keyValues, minSize);
-    if (emptyValue != 0) {
-      for (int i = size; i < keyValues.length; i++) {
-        keyValues[i] = emptyValue;
+  /** The page holding the given key, allocated if needed */
+  private int[] page(int key) {
+    int index = key >>> PAGE_SHIFT;
+    if (index >= pages.length) {
+      pages = ArrayUtil.grow(pages, index + 1);
+    }
+    int[] page = pages[index];
+    if (page == null) {
+      if (pool != null) {
+        page = pool.newIntPage(emptyValue);
+      } else {
+        page = new int[PAGE_SIZE];
+        if (emptyValue != 0) {
+          Arrays.fill(page, emptyValue);
+        }
       }
+      pages[index] = page;
+      numPages++;
     }
+    return page;
   }
 
   public void put(int key, int value) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
-        growBuffer(key + 1);
-      }
-      keyValues[key] = value;
+    if (pages != null) {
+      page(key)[key & PAGE_MASK] = value;
     } else {
       this.maxSize = Math.max(key + 1, maxSize);
       this.hashMap.put(key, value);
@@ -85,20 +103,24 @@ public class IntIntDynamicMap implements DynamicMap {
   }
 
   public int get(int key) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index >= pages.length || pages[index] == null) {
         return emptyValue;
       }
-      return keyValues[key];
+      return pages[index][key & PAGE_MASK];
     } else {
       return this.hashMap.getOrDefault(key, emptyValue);
     }
   }
 
   public void forEachValue(IntConsumer consumer) {
-    if (keyValues != null) {
-      for (int val : keyValues) {
-        if (val != emptyValue) consumer.accept(val);
+    if (pages != null) {
+      for (int[] page : pages) {
+        if (page == null) continue;
+        for (int val : page) {
+          if (val != emptyValue) consumer.accept(val);
+        }
       }
     } else {
       for (IntCursor ord : hashMap.values()) {
@@ -108,10 +130,33 @@ public class IntIntDynamicMap implements DynamicMap {
   }
 
   public void remove(int key) {
-    if (keyValues != null) {
-      if (key < keyValues.length) keyValues[key] = emptyValue;
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index < pages.length && pages[index] != null) pages[index][key & PAGE_MASK] = emptyValue;
     } else {
       hashMap.remove(key);
     }
   }
+
+  @Override
+  public long ramBytesUsed() {
+    if (pages != null) {
+      return RamUsageEstimator.shallowSizeOf(pages)
+          + numPages
+              * (RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) PAGE_SIZE * Integer.BYTES);
+    } else {
+      return hashMap.ramBytesAllocated();
+    }
+  }
+
+  @Override
+  public void release() {
+    if (pages != null && pool != null) {
+      for (int[] page : pages) {
+        if (page != null) pool.release(page);
+      }
+    }
+    pages = null;
+    hashMap = null;
+  }
 }
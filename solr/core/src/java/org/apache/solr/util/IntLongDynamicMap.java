@@ -23,11 +23,14 @@ import com.carrotsearch.hppc.procedures.IntLongProcedure;
 import java.util.Arrays;
 import java.util.function.LongConsumer;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 public class IntLongDynamicMap implements DynamicMap {
   private int maxSize;
   private IntLongHashMap hashMap;
-  private long[] keyValues;
+  private long[][] pages;
+  private int numPages;
+  private final DynamicMapPagePool pool;
   private long emptyValue;
   private int threshold;
 
@@ -37,9 +40,19 @@ public class IntLongDynamicMap implements DynamicMap {
    * expectedKeyMax} is discourage since it can leads to use LOT OF memory.
    */
   public IntLongDynamicMap(int expectedKeyMax, long emptyValue) {
+    this(expectedKeyMax, emptyValue, null);
+  }
+
+  /**
+   * Create map with expected max value of key, that takes its pages from the given pool.
+   *
+   * @param pool where pages are taken from and handed back to on {@link #release()}, may be null
+   */
+  public IntLongDynamicMap(int expectedKeyMax, long emptyValue, DynamicMapPagePool pool) {
     this.threshold = threshold(expectedKeyMax);
     this.maxSize = expectedKeyMax;
     this.emptyValue = emptyValue;
+    this.pool = pool;
     if (useArrayBased(expectedKeyMax)) {
       upgradeToArray();
     } else {
@@ -48,36 +61,41 @@ public class IntLongDynamicMap implements DynamicMap {
   }
 
   private void upgradeToArray() {
-    keyValues = new long[maxSize];
-    if (emptyValue != 0) {
-      Arrays.fill(keyValues, emptyValue);
-    }
+    pages = new long[numPages(maxSize)][];
     if (hashMap != null) {
-      hashMap.forEach((IntLongProcedure) (key, value) -> keyValues[key] = value);
+      hashMap.forEach((IntLongProcedure) (key, value) -> page(key)[key & PAGE_MASK] = value);
       hashMap = null;
     }
   }
 
-  private void growBuffer(int minSize) {
-    assert keyValues != null;
-    int size = keyValues.length;
-    keyValues = ArrayUtil.grow(keyValues, minSize);
-    if (emptyValue != 0) {
-      for (int i = size; i < keyValues.length; i++) {
-        keyValues[i] = emptyValue;
+  /** The page holding the given key, allocated if needed */
+  private long[] page(int key) {
+    int index = key >>> PAGE_SHIFT;
+    if (index >= pages.length) {
+      pages = ArrayUtil.grow(pages, index + 1);
+    }
+    long[] page = pages[index];
+    if (page == null) {
+      if (pool != null) {
+        page = pool.newLongPage(emptyValue);
+      } else {
+        page = new long[PAGE_SIZE];
+        if (emptyValue != 0) {
+          Arrays.fill(page, emptyValue);
+        }
       }
+      pages[index] = page;
+      numPages++;
     }
+    return page;
   }
 
   public void put(int key, long value) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
-        growBuffer(key + 1);
-      }
-      keyValues[key] = value;
+    if (pages != null) {
+      page(key)[key & PAGE_MASK] = value;
     } else {
-      this.maxSize = Math.max(key + 1, maxSize);
       this.hashMap.put(key, value);
+      this.maxSize = Math.max(key + 1, maxSize);
       if (this.hashMap.size() >= threshold) {
         upgradeToArray();
       }
@@ -85,20 +103,24 @@ public class IntLongDynamicMap implements DynamicMap {
   }
 
   public long get(int key) {
-    if (keyValues != null) {
-      if (key >= keyValues.length) {
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index >= pages.length || pages[index] == null) {
         return emptyValue;
       }
-      return keyValues[key];
+      return pages[index][key & PAGE_MASK];
     } else {
       return this.hashMap.getOrDefault(key, emptyValue);
     }
   }
 
   public void forEachValue(LongConsumer consumer) {
-    if (keyValues != null) {
-      for (long val : keyValues) {
-        if (val != emptyValue) consumer.accept(val);
+    if (pages != null) {
+      for (long[] page : pages) {
+        if (page == null) continue;
+        for (long val : page) {
+          if (val != emptyValue) consumer.accept(val);
+        }
       }
     } else {
       for (LongCursor ord : hashMap.values()) {
@@ -108,10 +130,32 @@ public class IntLongDynamicMap implements DynamicMap {
   }
 
   public void remove(int key) {
-    if (keyValues != null) {
-      if (key < keyValues.length) keyValues[key] = emptyValue;
+    if (pages != null) {
+      int index = key >>> PAGE_SHIFT;
+      if (index < pages.length && pages[index] != null) pages[index][key & PAGE_MASK] = emptyValue;
     } else {
       hashMap.remove(key);
     }
   }
+
+  @Override
+  public long ramBytesUsed() {
+    if (pages != null) {
+      return RamUsageEstimator.shallowSizeOf(pages)
+          + numPages * (RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) PAGE_SIZE * Long.BYTES);
+    } else {
+      return hashMap.ramBytesAllocated();
+    }
+  }
+
+  @Override
+  public void release() {
+    if (pages != null && pool != null) {
+      for (long[] page : pages) {
+        if (page != null) pool.release(page);
+      }
+    }
+    pages = null;
+    hashMap = null;
+  }
 }
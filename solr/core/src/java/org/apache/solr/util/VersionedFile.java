@@ -88,6 +88,29 @@ public class VersionedFile {
     return is;
   }
 
+  /**
+   * Returns the latest version of a file, as {@link #getLatestFile} would open it, or null if there
+   * is none. Older versions of the file are deleted.
+   */
+  public static File getLatestVersion(String dirName, String fileName) {
+    final String prefix = fileName + '.';
+    File f = new File(dirName, fileName);
+    if (f.exists()) {
+      return f;
+    }
+    String[] names = new File(dirName).list((dir, name) -> name.startsWith(prefix));
+    if (names == null || names.length == 0) {
+      return null;
+    }
+    Arrays.sort(names);
+    List<File> oldFiles = new ArrayList<>();
+    for (int i = 0; i < names.length - 1; i++) {
+      oldFiles.add(new File(dirName, names[i]));
+    }
+    delete(oldFiles);
+    return new File(dirName, names[names.length - 1]);
+  }
+
   private static final Set<File> deleteList = new HashSet<>();
 
   private static synchronized void delete(Collection<File> files) {
@@ -328,6 +328,20 @@ public class HLL implements Cloneable {
     initializeStorage(type);
   }
 
+  /**
+   * @return log-base-2 of the number of registers used by this instance.
+   */
+  public int getLog2m() {
+    return log2m;
+  }
+
+  /**
+   * @return the number of bits used per register by this instance.
+   */
+  public int getRegwidth() {
+    return regwidth;
+  }
+
   /**
    * @return the type in the promotion hierarchy of this instance. This will never be <code>null
    *     </code>.
@@ -396,6 +396,8 @@ public class TestJoin extends SolrTestCaseJ4 {
                 "true",
                 "echoParams",
                 "all",
+                "multiThreaded",
+                String.valueOf(random().nextBoolean()),
                 "q",
                 "{!join from="
                     + fromField
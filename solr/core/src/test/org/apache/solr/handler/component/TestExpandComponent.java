@@ -18,9 +18,12 @@ package org.apache.solr.handler.component;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.CollapsingQParserPlugin;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -1098,6 +1101,109 @@ public class TestExpandComponent extends SolrTestCaseJ4 {
     resetExceptionIgnores();
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testExpandFromCollapsedDocsMatchesSearchingAgain() throws Exception {
+    String[][] docs = new String[200][];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] =
+          random().nextInt(10) == 0
+              ? new String[] {"id", Integer.toString(i), "test_i", Integer.toString(i % 37)}
+              : new String[] {
+                "id",
+                Integer.toString(i),
+                "group_s",
+                "g" + random().nextInt(20),
+                "test_i",
+                Integer.toString(i % 37),
+                "term_s",
+                random().nextBoolean() ? "YYYY" : "XXXX"
+              };
+    }
+    createIndex(docs);
+
+    String[] queries = {"*:*", "term_s:YYYY", "{!func}test_i"};
+    String[] collapses = {
+      "{!collapse field=group_s}",
+      "{!collapse field=group_s max=test_i}",
+      "{!collapse field=group_s nullPolicy=expand}"
+    };
+    String[] sorts = {null, "score desc, id asc", "test_i asc, id asc"};
+    String[] expandSorts = {null, "test_i desc, id asc"};
+
+    int matchedDocsLimit = ExpandComponent.matchedDocsLimit;
+    boolean usedCollapsedDocs = false;
+    try {
+      for (String q : queries) {
+        for (String collapse : collapses) {
+          for (String sort : sorts) {
+            for (String expandSort : expandSorts) {
+              ModifiableSolrParams params = new ModifiableSolrParams();
+              params.add("q", q);
+              params.add("fq", collapse);
+              if (random().nextBoolean()) {
+                params.add("fq", "-id:1" + random().nextInt(10));
+              }
+              params.add("expand", "true");
+              params.add("expand.rows", "3");
+              // past the limit, the groups are collected by searching again
+              ExpandComponent.matchedDocsLimit = random().nextBoolean() ? 50 : matchedDocsLimit;
+              params.add("fl", "id,score");
+              params.add("wt", "json");
+              if (sort != null) {
+                params.add("sort", sort);
+              }
+              if (expandSort != null) {
+                params.add("expand.sort", expandSort);
+              }
+
+              SolrQueryRequest singlePass = req(params);
+              Map<String, Object> expected =
+                  (Map<String, Object>) Utils.fromJSONString(h.query(singlePass));
+              CollapsingQParserPlugin.MatchedDocs matchedDocs =
+                  (CollapsingQParserPlugin.MatchedDocs)
+                      singlePass.getContext().get(CollapsingQParserPlugin.MATCHED_DOCS);
+              usedCollapsedDocs |= matchedDocs != null && matchedDocs.isComplete();
+              if (matchedDocs != null && matchedDocs.isComplete() && expandSort != null) {
+                // scores aren't recorded when the groups are not sorted by them
+                assertFalse(params.toString(), matchedDocs.hasScores());
+              }
+
+              // an explicit expand.q always runs the group query again
+              params.add("expand.q", q);
+              Map<String, Object> actual =
+                  (Map<String, Object>) Utils.fromJSONString(JQ(req(params)));
+              assertEquals(params.toString(), expected.get("expanded"), actual.get("expanded"));
+            }
+          }
+        }
+      }
+      assertTrue(usedCollapsedDocs);
+
+      // the docs of the main search aren't held on to past the limit
+      for (int limit : new int[] {matchedDocsLimit, 50}) {
+        ExpandComponent.matchedDocsLimit = limit;
+        SolrQueryRequest request =
+            req(
+                "q",
+                "*:*",
+                "fq",
+                "{!collapse field=group_s}",
+                "fq",
+                "-id:" + limit,
+                "expand",
+                "true");
+        h.query(request);
+        CollapsingQParserPlugin.MatchedDocs matchedDocs =
+            (CollapsingQParserPlugin.MatchedDocs)
+                request.getContext().get(CollapsingQParserPlugin.MATCHED_DOCS);
+        assertEquals(limit == matchedDocsLimit, matchedDocs.isComplete());
+      }
+    } finally {
+      ExpandComponent.matchedDocsLimit = matchedDocsLimit;
+    }
+  }
+
   /**
    * randomize addition of docs into bunch of segments TODO: there ought to be a test utility to do
    * this; even add in batches
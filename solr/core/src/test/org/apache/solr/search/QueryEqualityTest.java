@@ -22,11 +22,13 @@ import java.util.Map;
 import java.util.Set;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.tests.search.QueryUtils;
+import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.join.JoinKeyBloomFilter;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
@@ -1533,6 +1535,7 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
     assertFuncEquals("agg_hll(foo_i)", "agg_hll(foo_i)");
     assertFuncEquals("agg_sumsq(foo_i)", "agg_sumsq(foo_i)");
     assertFuncEquals("agg_percentile(foo_i,50)", "agg_percentile(foo_i,50)");
+    assertFuncEquals("agg_ddsketch(foo_i,50,99)", "agg_ddsketch(foo_i,50,99)");
     assertFuncEquals("agg_variance(foo_i)", "agg_variance(foo_i)");
     assertFuncEquals("agg_stddev(foo_i)", "agg_stddev(foo_i)");
     assertFuncEquals("agg_missing(foo_i)", "agg_missing(foo_i)");
@@ -1648,6 +1651,22 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
         "{!hash_range l='107347968' u='214695935' f='x_id'}");
   }
 
+  public void testBloomFilterQuery() throws Exception {
+    JoinKeyBloomFilter filter = JoinKeyBloomFilter.forKeys(3);
+    filter.add(new BytesRef("a"));
+    filter.add(new BytesRef("b"));
+    SolrQueryRequest req = req("filter", filter.encode());
+    try {
+      assertQueryEquals(
+          "bloom_filter",
+          req,
+          "{!bloom_filter f=foo_s_dvo}" + filter.encode(),
+          "{!bloom_filter f=foo_s_dvo v=$filter}");
+    } finally {
+      req.close();
+    }
+  }
+
   // Override req to add df param
   public static SolrQueryRequest req(String... q) {
     return SolrTestCaseJ4.req(q, "df", "text");
@@ -26,11 +26,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.lucene.tests.util.TestUtil;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.SolrTestCase;
 import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.metrics.SolrMetricsContext;
@@ -355,4 +358,268 @@ public class TestCaffeineCache extends SolrTestCase {
     cache.close();
     assertEquals(emptySize, cache.ramBytesUsed());
   }
+
+  @Test
+  public void testOffHeap() throws IOException {
+    CaffeineCache<Integer, DocSet> cache = new CaffeineCache<>();
+    cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope);
+    Map<String, String> params =
+        Map.of(
+            SolrCache.SIZE_PARAM, "100",
+            SolrCache.INITIAL_SIZE_PARAM, "10",
+            SolrCache.OFF_HEAP_PARAM, Boolean.TRUE.toString());
+    cache.init(params, null, new NoOpRegenerator());
+    long emptySize = cache.ramBytesUsed();
+
+    FixedBitSet bits = new FixedBitSet(10000);
+    bits.set(3);
+    bits.set(9999);
+    DocSet cached = cache.put(0, new BitDocSet(bits));
+    assertNull(cached);
+    cached = cache.get(0);
+    assertTrue(cached instanceof OffHeapBitDocSet);
+    assertEquals(2, cached.size());
+    assertTrue(cached.exists(3));
+    assertTrue(cached.exists(9999));
+    assertFalse(cached.exists(4));
+
+    // the bits are accounted for separately, so the heap estimate stays small
+    assertEquals(10000 / 8, cache.offHeapBytesUsed(), 8);
+    assertTrue(cache.ramBytesUsed() - emptySize < 10000 / 8);
+    assertEquals(
+        cache.offHeapBytesUsed(),
+        cache.getMetricsMap().getValue().get(SolrCache.OFF_HEAP_BYTES_USED_PARAM));
+
+    // small sets are cached as they are
+    DocSet small = new SortedIntDocSet(new int[] {1, 2});
+    cache.put(1, small);
+    assertSame(small, cache.get(1));
+
+    DocSet computed = cache.computeIfAbsent(2, k -> new BitDocSet(bits.clone()));
+    assertTrue(computed instanceof OffHeapBitDocSet);
+    assertSame(computed, cache.get(2));
+    assertEquals(2 * ((OffHeapBitDocSet) computed).offHeapBytesUsed(), cache.offHeapBytesUsed());
+
+    cache.remove(0);
+    assertEquals(((OffHeapBitDocSet) computed).offHeapBytesUsed(), cache.offHeapBytesUsed());
+    cache.clear();
+    assertEquals(0, cache.offHeapBytesUsed());
+    assertEquals(emptySize, cache.ramBytesUsed());
+    cache.close();
+  }
+
+  @Test
+  public void testFrequencyAdmission() throws IOException {
+    for (boolean async : new boolean[] {true, false}) {
+      CaffeineCache<Integer, String> cache = new CaffeineCache<>();
+      cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope);
+      Map<String, String> params =
+          Map.of(
+              SolrCache.SIZE_PARAM, "100",
+              SolrCache.ASYNC_PARAM, Boolean.toString(async),
+              FrequencyAdmissionPolicy.MIN_COUNT_PARAM, "2");
+      cache.init(params, null, new NoOpRegenerator());
+      FrequencyAdmissionPolicy policy = new FrequencyAdmissionPolicy();
+      policy.init(params);
+      cache.setAdmissionPolicy(policy);
+      long emptySize = cache.ramBytesUsed();
+
+      // everything is admitted while warming
+      assertEquals("warm", cache.computeIfAbsent(0, k -> "warm"));
+      assertEquals("warm", cache.get(0));
+      assertEquals(0, policy.frequency(0));
+      long warmedSize = cache.ramBytesUsed();
+
+      cache.setState(SolrCache.State.LIVE);
+      assertEquals("a", cache.computeIfAbsent(1, k -> "a"));
+      assertNull(cache.get(1));
+      assertEquals(warmedSize, cache.ramBytesUsed());
+      assertEquals("b", cache.computeIfAbsent(1, k -> "b"));
+      assertEquals("b", cache.get(1));
+
+      assertNull(cache.put(2, "c"));
+      assertNull(cache.get(2));
+      cache.put(2, "d");
+      assertEquals("d", cache.get(2));
+
+      Map<String, Object> metrics = cache.getMetricsMap().getValue();
+      assertEquals(2L, metrics.get(SolrCache.ADMISSIONS_PARAM));
+      assertEquals(2L, metrics.get(SolrCache.REJECTIONS_PARAM));
+      assertEquals(3L, metrics.get(SolrCache.INSERTS_PARAM));
+      cache.clear();
+      assertEquals(emptySize, cache.ramBytesUsed());
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testComputeCostAdmission() throws IOException {
+    CaffeineCache<Integer, String> cache = new CaffeineCache<>();
+    Map<String, String> params =
+        Map.of(
+            SolrCache.SIZE_PARAM, "100",
+            ComputeCostAdmissionPolicy.MIN_COMPUTE_MS_PARAM, "20");
+    cache.init(params, null, new NoOpRegenerator());
+    CacheAdmissionPolicy policy = new ComputeCostAdmissionPolicy();
+    policy.init(params);
+    cache.setAdmissionPolicy(policy);
+    cache.setState(SolrCache.State.LIVE);
+
+    assertEquals("cheap", cache.computeIfAbsent(0, k -> "cheap"));
+    assertNull(cache.get(0));
+    String value =
+        cache.computeIfAbsent(
+            0,
+            k -> {
+              try {
+                Thread.sleep(30);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return "expensive";
+            });
+    assertEquals("expensive", value);
+    assertEquals("expensive", cache.get(0));
+    // the cost of an explicit put isn't known
+    cache.put(1, "put");
+    assertEquals("put", cache.get(1));
+    cache.close();
+  }
+
+  @Test
+  public void testFrequencySketch() {
+    FrequencyAdmissionPolicy policy = new FrequencyAdmissionPolicy();
+    policy.init(Map.of(FrequencyAdmissionPolicy.WINDOW_PARAM, "1000"));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i + 1, policy.increment("hot"));
+    }
+    // the sketch never under-counts
+    for (int i = 0; i < 500; i++) {
+      int key = random().nextInt(200);
+      int before = policy.frequency(key);
+      assertTrue(policy.increment(key) > before || before == Integer.MAX_VALUE);
+    }
+    int hot = policy.frequency("hot");
+    assertTrue(hot >= 100);
+    // ageing halves the counts once the window is full
+    for (int i = 0; i < 400; i++) {
+      policy.increment(-1 - i);
+    }
+    assertTrue(policy.frequency("hot") <= hot / 2 + 1);
+    assertTrue(policy.frequency("hot") >= 50);
+  }
+
+  /** Regenerates entries as-is after a delay, remembering which thread did so. */
+  private static class SlowRegenerator implements CacheRegenerator {
+    final long delayMs;
+    final Set<String> threads = ConcurrentHashMap.newKeySet();
+    final AtomicInteger interrupted = new AtomicInteger();
+
+    SlowRegenerator(long delayMs) {
+      this.delayMs = delayMs;
+    }
+
+    @Override
+    public <K, V> boolean regenerateItem(
+        SolrIndexSearcher newSearcher,
+        SolrCache<K, V> newCache,
+        SolrCache<K, V> oldCache,
+        K oldKey,
+        V oldVal)
+        throws IOException {
+      try {
+        Thread.sleep(delayMs);
+      } catch (InterruptedException e) {
+        interrupted.incrementAndGet();
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      threads.add(Thread.currentThread().getName());
+      newCache.put(oldKey, oldVal);
+      return true;
+    }
+  }
+
+  private CaffeineCache<Integer, String> newWarmedCache(
+      Map<String, String> params, CacheRegenerator regenerator, int numEntries) {
+    CaffeineCache<Integer, String> old = new CaffeineCache<>();
+    old.init(params, null, regenerator);
+    old.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < numEntries; i++) {
+      old.put(i, Integer.toString(i));
+    }
+    CaffeineCache<Integer, String> cache = new CaffeineCache<>();
+    cache.initializeMetrics(new SolrMetricsContext(metricManager, registry, "foo"), scope);
+    cache.init(params, null, regenerator);
+    cache.warm(null, old);
+    return cache;
+  }
+
+  @Test
+  public void testConcurrentWarm() throws IOException {
+    Map<String, String> params =
+        Map.of(
+            SolrCache.SIZE_PARAM,
+            "100",
+            "autowarmCount",
+            "50",
+            SolrCache.AUTOWARM_THREADS_PARAM,
+            "4");
+    SlowRegenerator regenerator = new SlowRegenerator(1);
+    CaffeineCache<Integer, String> cache = newWarmedCache(params, regenerator, 100);
+
+    // warm() waits for all of them without a time budget
+    assertEquals(50, cache.size());
+    assertTrue(regenerator.threads.toString(), regenerator.threads.size() > 1);
+    Map<String, Object> metrics = cache.getMetricsMap().getValue();
+    assertEquals(50L, metrics.get(SolrCache.WARMUP_ITEMS_PARAM));
+    assertEquals(50L, metrics.get(SolrCache.WARMUP_ITEMS_DONE_PARAM));
+    assertEquals(0L, metrics.get(SolrCache.WARMUP_ITEMS_SKIPPED_PARAM));
+    cache.close();
+  }
+
+  @Test
+  public void testWarmTimeBudget() throws Exception {
+    Map<String, String> params =
+        Map.of(
+            SolrCache.SIZE_PARAM,
+            "100",
+            "autowarmCount",
+            "20",
+            SolrCache.AUTOWARM_TIME_MS_PARAM,
+            "0");
+    CaffeineCache<Integer, String> cache = newWarmedCache(params, new SlowRegenerator(20), 20);
+    cache.setState(SolrCache.State.LIVE);
+
+    // the rest is warmed in the background
+    Map<String, Object> metrics = cache.getMetricsMap().getValue();
+    assertEquals(20L, metrics.get(SolrCache.WARMUP_ITEMS_PARAM));
+    assertTrue(metrics.toString(), (Long) metrics.get(SolrCache.WARMUP_ITEMS_DONE_PARAM) < 20L);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while ((Long) cache.getMetricsMap().getValue().get("warmupTime") < 20 * 20
+        && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(20, cache.size());
+    // the warmup time includes the background warming
+    metrics = cache.getMetricsMap().getValue();
+    assertTrue(metrics.toString(), (Long) metrics.get("warmupTime") >= 20 * 20);
+    cache.close();
+
+    // closing the cache stops warming, skipping whatever is left, without interrupting the entry
+    // being warmed
+    SlowRegenerator regenerator = new SlowRegenerator(20);
+    cache = newWarmedCache(params, regenerator, 20);
+    cache.close();
+    deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    do {
+      Thread.sleep(10);
+      metrics = cache.getMetricsMap().getValue();
+    } while ((Long) metrics.get(SolrCache.WARMUP_ITEMS_DONE_PARAM)
+                + (Long) metrics.get(SolrCache.WARMUP_ITEMS_SKIPPED_PARAM)
+            < 20L
+        && System.nanoTime() < deadline);
+    assertTrue(metrics.toString(), (Long) metrics.get(SolrCache.WARMUP_ITEMS_SKIPPED_PARAM) > 0L);
+    assertEquals(0, regenerator.interrupted.get());
+  }
 }
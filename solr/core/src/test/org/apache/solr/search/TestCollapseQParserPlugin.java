@@ -18,6 +18,7 @@ package org.apache.solr.search;
 
 import static org.hamcrest.core.StringContains.containsString;
 
+import com.codahale.metrics.Histogram;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -1591,4 +1592,36 @@ public class TestCollapseQParserPlugin extends SolrTestCaseJ4 {
       }
     }
   }
+
+  @Test
+  public void testGroupHeadBytesMetric() {
+    // enough groups for the collectors to switch to pages
+    for (int i = 0; i < 300; i++) {
+      assertU(adoc("id", String.valueOf(i), "group_s", "group" + i, "test_i", String.valueOf(i)));
+    }
+    assertU(commit());
+
+    Histogram groupHeadBytes =
+        h.getCore()
+            .getCoreMetricManager()
+            .getRegistry()
+            .histogram("QUERY." + CollapsingQParserPlugin.NAME + ".groupHeadBytes");
+    long count = groupHeadBytes.getCount();
+    for (String selector : Arrays.asList("", " max=test_i", " sort='test_i desc'")) {
+      // a query that no other test runs, so that it can't be answered by an autowarmed
+      // queryResultCache entry without collapsing
+      assertQ(
+          req(
+              "q",
+              "*:* -id:groupHeadBytes",
+              "fq",
+              "{!collapse field=group_s" + selector + "}",
+              "fl",
+              "id,score"),
+          "*[count(//doc)=10]",
+          "//result[@numFound='300']");
+    }
+    assertEquals(count + 3, groupHeadBytes.getCount());
+    assertTrue(groupHeadBytes.getSnapshot().getMax() > 0);
+  }
 }
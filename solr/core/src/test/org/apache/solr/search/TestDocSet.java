@@ -107,6 +107,14 @@ public class TestDocSet extends SolrTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getOffHeapBitDocSet(FixedBitSet bs) {
+    return OffHeapBitDocSet.fromBitDocSet(new BitDocSet(bs));
+  }
+
+  public DocSet getRoaringDocSet(FixedBitSet bs) {
+    return RoaringDocSet.fromBitSet(bs);
+  }
+
   public DocSlice getDocSlice(FixedBitSet bs) {
     int len = bs.cardinality();
     int[] arr = new int[len + 5];
@@ -128,7 +136,7 @@ public class TestDocSet extends SolrTestCase {
   }
 
   public DocSet getDocSet(FixedBitSet bs) {
-    switch (rand.nextInt(9)) {
+    switch (rand.nextInt(11)) {
       case 0:
       case 1:
       case 2:
@@ -145,6 +153,10 @@ public class TestDocSet extends SolrTestCase {
         return getIntDocSet(bs);
       case 8:
         return getIntDocSet(bs);
+      case 9:
+        return getOffHeapBitDocSet(bs);
+      case 10:
+        return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -224,6 +236,116 @@ public class TestDocSet extends SolrTestCase {
     // doMany(130, 1000000);
   }
 
+  /** A set spanning several roaring blocks, with sparse, dense and clustered regions. */
+  private FixedBitSet getClusteredSet(int maxDoc) {
+    FixedBitSet bs = new FixedBitSet(maxDoc);
+    int nRegions = rand.nextInt(8);
+    for (int r = 0; r < nRegions; r++) {
+      int start = rand.nextInt(maxDoc);
+      int end = Math.min(maxDoc, start + rand.nextInt(RoaringDocSet.BLOCK_SIZE * 2));
+      switch (rand.nextInt(3)) {
+        case 0:
+          bs.set(start, end);
+          break;
+        case 1:
+          for (int i = start; i < end; i += 1 + rand.nextInt(50)) bs.set(i);
+          break;
+        default:
+          for (int i = start; i < end; i += 1 + rand.nextInt(3)) bs.set(i);
+      }
+    }
+    return bs;
+  }
+
+  private DocSet getAnyDocSet(FixedBitSet bs) {
+    switch (rand.nextInt(4)) {
+      case 0:
+        return getBitDocSet(bs);
+      case 1:
+        return getIntDocSet(bs);
+      case 2:
+        return getOffHeapBitDocSet(bs);
+      default:
+        return getRoaringDocSet(bs);
+    }
+  }
+
+  public void testRoaringDocSets() {
+    for (int iter = 0; iter < 100; iter++) {
+      int maxDoc = 1 + rand.nextInt(RoaringDocSet.BLOCK_SIZE * 5);
+      FixedBitSet bs1 = getClusteredSet(maxDoc);
+      FixedBitSet bs2 = rand.nextBoolean() ? getClusteredSet(maxDoc) : getRandomSet(maxDoc, 1000);
+
+      DocSet a = getRoaringDocSet(bs1);
+      DocSet b = getAnyDocSet(bs2);
+      if (rand.nextBoolean()) {
+        DocSet tmp = a;
+        a = b;
+        b = tmp;
+        FixedBitSet tmpBits = bs1;
+        bs1 = bs2;
+        bs2 = tmpBits;
+      }
+
+      checkEqual(bs1, a);
+      iter(new BitDocSet(bs1), a);
+      assertEquals(bs1.cardinality(), a.size());
+      for (int i = 0; i < 100; i++) {
+        int doc = rand.nextInt(maxDoc);
+        assertEquals(bs1.get(doc), a.exists(doc));
+        assertEquals(bs1.get(doc), a.getBits().get(doc));
+      }
+
+      FixedBitSet and = bs1.clone();
+      and.and(bs2);
+      FixedBitSet or = bs1.clone();
+      or.or(bs2);
+      FixedBitSet andNot = bs1.clone();
+      andNot.andNot(bs2);
+
+      iter(new BitDocSet(and), a.intersection(b));
+      iter(new BitDocSet(or), a.union(b));
+      iter(new BitDocSet(andNot), a.andNot(b));
+      assertEquals(and.cardinality(), a.intersectionSize(b));
+      assertEquals(and.cardinality() > 0, a.intersects(b));
+      assertEquals(or.cardinality(), a.unionSize(b));
+      assertEquals(andNot.cardinality(), a.andNotSize(b));
+
+      FixedBitSet target = new FixedBitSet(maxDoc);
+      a.addAllTo(target);
+      assertEquals(bs1, target);
+    }
+  }
+
+  public void testCompress() {
+    int maxDoc = RoaringDocSet.BLOCK_SIZE * 10;
+
+    // docs clustered in a few ranges compress to run containers
+    FixedBitSet clustered = new FixedBitSet(maxDoc);
+    clustered.set(1000, 200000);
+    clustered.set(300000, 300100);
+    BitDocSet bits = new BitDocSet(clustered);
+    DocSet compressed = DocSetUtil.compress(bits);
+    assertTrue(compressed instanceof RoaringDocSet);
+    assertTrue(compressed.ramBytesUsed() * 10 < bits.ramBytesUsed());
+    assertEquals(RoaringDocSet.estimateRamBytesUsed(clustered), compressed.ramBytesUsed(), 200);
+    iter(bits, compressed);
+
+    // sparse docs compress to array containers
+    FixedBitSet sparse = getRandomSet(maxDoc, 2000);
+    compressed = DocSetUtil.compress(new BitDocSet(sparse));
+    assertTrue(compressed instanceof RoaringDocSet);
+    iter(new BitDocSet(sparse), compressed);
+
+    // uniformly dense docs don't compress
+    FixedBitSet dense = getRandomSet(maxDoc, maxDoc / 2);
+    DocSet denseSet = new BitDocSet(dense);
+    assertSame(denseSet, DocSetUtil.compress(denseSet));
+
+    DocSet small = getIntDocSet(sparse);
+    assertSame(small, DocSetUtil.compress(small));
+  }
+
   public DocSet getRandomDocSet(int n, int maxDoc) {
     FixedBitSet obs = new FixedBitSet(maxDoc);
     int[] a = new int[n];
@@ -573,16 +695,19 @@ public class TestDocSet extends SolrTestCase {
   }
 
   /**
-   * Tests equivalence among {@link DocIdSetIterator} instances retrieved from {@link BitDocSet} and
-   * {@link SortedIntDocSet} implementations, via {@link DocSet#makeQuery()} and directly via {@link
-   * DocSet#iterator(LeafReaderContext)}. Also tests corresponding random-access {@link Bits}
-   * instances retrieved via {@link DocSet#makeQuery()}/ {@link DocIdSet#bits()}.
+   * Tests equivalence among {@link DocIdSetIterator} instances retrieved from {@link BitDocSet},
+   * {@link OffHeapBitDocSet}, {@link RoaringDocSet} and {@link SortedIntDocSet} implementations,
+   * via {@link DocSet#makeQuery()} and directly via {@link DocSet#iterator(LeafReaderContext)}.
+   * Also tests corresponding random-access {@link Bits} instances retrieved via {@link
+   * DocSet#makeQuery()}/ {@link DocIdSet#bits()}.
    */
   public void doFilterTest(IndexReader reader) throws IOException {
     IndexReaderContext topLevelContext = reader.getContext();
     FixedBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc() + 1));
     DocSet a = new BitDocSet(bs);
     DocSet b = getIntDocSet(bs);
+    DocSet c = getOffHeapBitDocSet(bs);
+    DocSet d = getRoaringDocSet(bs);
 
     //    Query fa = a.makeQuery();
     //    Query fb = b.makeQuery();
@@ -602,7 +727,9 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext),
+          () -> d.iterator(readerContext));
     }
 
     int nReaders = leaves.size();
@@ -612,7 +739,9 @@ public class TestDocSet extends SolrTestCase {
       doTestIteratorEqual(
           getExpectedBits(a, readerContext),
           () -> a.iterator(readerContext),
-          () -> b.iterator(readerContext));
+          () -> b.iterator(readerContext),
+          () -> c.iterator(readerContext),
+          () -> d.iterator(readerContext));
     }
   }
 
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.core.DirectoryFactory.DirContext;
+import org.apache.solr.core.SolrCore;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestHotCacheKeys extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.persistHotCacheKeys", "10");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.persistHotCacheKeys");
+  }
+
+  private static List<Query> filterCacheKeys() throws Exception {
+    return h.getCore().withSearcher(searcher -> searcher.getFilterCache().getHottestKeys(100));
+  }
+
+  private static List<QueryResultKey> queryResultCacheKeys() throws Exception {
+    return h.getCore().withSearcher(searcher -> searcher.getQueryResultCache().getHottestKeys(100));
+  }
+
+  @Test
+  public void testWarmedOnRestart() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i_p", Integer.toString(i), "cat_s1", cat(i)));
+    }
+    assertU(commit());
+    // caches start out empty after a reload
+    h.reload();
+
+    assertQ(req("q", "*:*", "fq", "cat_s1:even"), "//*[@numFound='10']");
+    assertQ(
+        req("q", "cat_s1:odd", "fq", "val_i_p:[5 TO 15]", "sort", "val_i_p desc, id asc"),
+        "//*[@numFound='6']");
+    // function queries don't parse back from their string form, so they can't be persisted
+    assertQ(req("q", "*:*", "fq", "{!frange l=0 u=5}val_i_p"), "//*[@numFound='6']");
+    final List<Query> filters = filterCacheKeys();
+    final List<QueryResultKey> results = queryResultCacheKeys();
+    assertEquals(filters.toString(), 3, filters.size());
+    // a range of a point field with docValues, whose string form is not that of its range
+    assertTrue(
+        filters.toString(), filters.stream().anyMatch(f -> f instanceof IndexOrDocValuesQuery));
+
+    // the keys are saved by the old core, and warmed by the new core's first searcher
+    h.reload();
+    assertEquals(2, filterCacheKeys().size());
+    for (Query filter : filterCacheKeys()) {
+      assertTrue(filter.toString(), filters.contains(filter));
+      assertFalse(filter.toString(), filter instanceof FunctionRangeQuery);
+    }
+    for (QueryResultKey key : queryResultCacheKeys()) {
+      assertTrue(key.query.toString(), results.contains(key));
+    }
+    assertEquals(2, queryResultCacheKeys().size());
+
+    // requests are now served from the warmed caches
+    final SolrCore core = h.getCore();
+    final long hits = filterCacheHits(core);
+    assertQ(req("q", "*:*", "fq", "cat_s1:even"), "//*[@numFound='10']");
+    assertEquals(hits + 1, filterCacheHits(core));
+  }
+
+  @Test
+  public void testCorruptFile() throws Exception {
+    final SolrCore core = h.getCore();
+    final Directory dir =
+        core.getDirectoryFactory()
+            .get(
+                core.getDataDir(), DirContext.META_DATA, core.getSolrConfig().indexConfig.lockType);
+    try {
+      IOUtils.deleteFilesIgnoringExceptions(dir, HotCacheKeys.FILE_NAME);
+      try (IndexOutput out = dir.createOutput(HotCacheKeys.FILE_NAME, IOContext.DEFAULT)) {
+        out.writeString("not a query");
+      }
+    } finally {
+      core.getDirectoryFactory().release(dir);
+    }
+    core.withSearcher(
+        searcher -> {
+          expectThrows(IOException.class, () -> HotCacheKeys.load(core, searcher));
+          // the searcher is not warmed, but doesn't fail either
+          HotCacheKeys.warm(core, searcher);
+          return null;
+        });
+  }
+
+  private static long filterCacheHits(SolrCore core) throws Exception {
+    return core.withSearcher(
+        searcher ->
+            (Long)
+                ((CaffeineCache<?, ?>) searcher.getFilterCache())
+                    .getMetricsMap()
+                    .getValue()
+                    .get(SolrCache.HITS_PARAM));
+  }
+
+  private static String cat(int i) {
+    return i % 2 == 0 ? "even" : "odd";
+  }
+}
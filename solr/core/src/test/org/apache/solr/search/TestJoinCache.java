@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.index.NoMergePolicyFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestJoinCache extends SolrTestCaseJ4 {
+
+  // the groups of each user, and the groups that may read each document
+  private final Map<String, Set<String>> userGroups = new HashMap<>();
+  private final Map<String, Set<String>> docGroups = new HashMap<>();
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    System.setProperty("solr.joinCache.enabled", "true");
+    // every commit adds a segment
+    systemSetPropertySolrTestsMergePolicyFactory(NoMergePolicyFactory.class.getName());
+    initCore("solrconfig.xml", "schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("enable.update.log");
+    System.clearProperty("solr.joinCache.enabled");
+    systemClearPropertySolrTestsMergePolicyFactory();
+  }
+
+  private void addUser(String user, String... groups) {
+    userGroups.computeIfAbsent(user, k -> new HashSet<>()).addAll(Arrays.asList(groups));
+    List<String> fields = new ArrayList<>(List.of("id", user + "_" + groups[0], "user_s", user));
+    for (String group : groups) {
+      fields.addAll(List.of("group_s", group, "group_ss_dv", group));
+    }
+    assertU(adoc(fields.toArray(new String[0])));
+  }
+
+  private void addAclDoc(String id, String... groups) {
+    docGroups.put(id, new HashSet<>(Arrays.asList(groups)));
+    List<String> fields = new ArrayList<>(List.of("id", id));
+    for (String group : groups) {
+      fields.addAll(List.of("acl_s", group));
+    }
+    assertU(adoc(fields.toArray(new String[0])));
+  }
+
+  private void deleteDoc(String id) {
+    docGroups.remove(id);
+    assertU(delI(id));
+  }
+
+  /** Joins from the groups of the user to the documents, checking the result */
+  private int[] join(String fromField, String user) throws Exception {
+    JoinQuery query =
+        new JoinQuery(fromField, "acl_s", null, new TermQuery(new Term("user_s", user)));
+    return h.getCore()
+        .withSearcher(
+            searcher -> {
+              JoinQuery.JoinQueryWeight weight =
+                  (JoinQuery.JoinQueryWeight)
+                      query.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1);
+              DocSet result = weight.getDocSet();
+
+              Set<String> expected = new HashSet<>();
+              Set<String> groups = userGroups.getOrDefault(user, Set.of());
+              for (Map.Entry<String, Set<String>> doc : docGroups.entrySet()) {
+                if (doc.getValue().stream().anyMatch(groups::contains)) {
+                  expected.add(doc.getKey());
+                }
+              }
+              Set<String> actual = new HashSet<>();
+              for (DocIterator it = result.iterator(); it.hasNext(); ) {
+                actual.add(searcher.storedFields().document(it.nextDoc()).get("id"));
+              }
+              assertEquals(expected, actual);
+              return new int[] {weight.fromSegmentsJoined, weight.toSegmentsJoined};
+            });
+  }
+
+  private void assertJoined(int fromSegments, int toSegments) throws Exception {
+    for (String fromField : new String[] {"group_s", "group_ss_dv"}) {
+      assertArrayEquals(new int[] {fromSegments, toSegments}, join(fromField, "u1"));
+      // any other user's join is cached separately
+      join(fromField, "u2");
+    }
+  }
+
+  @Test
+  public void testIncrementalJoins() throws Exception {
+    clearIndex();
+    assertU(commit());
+    addUser("u1", "g1", "g2");
+    addUser("u2", "g3");
+    for (int i = 0; i < 20; i++) {
+      addAclDoc("d" + i, "g" + (i % 5));
+    }
+    assertU(commit());
+    addUser("u1", "g4");
+    for (int i = 20; i < 40; i++) {
+      addAclDoc("d" + i, "g" + (i % 5), "g" + (i % 7));
+    }
+    assertU(commit());
+
+    assertJoined(2, 2);
+    assertJoined(0, 0);
+
+    // documents in a new segment only need joining that segment
+    for (int i = 40; i < 50; i++) {
+      addAclDoc("d" + i, "g" + (i % 6));
+    }
+    assertU(commit());
+    assertJoined(1, 1);
+
+    // a new group of the user changes the result of every segment
+    addUser("u1", "g5");
+    assertU(commit());
+    assertJoined(1, 4);
+    assertJoined(0, 0);
+
+    // deletions only change the result of their segment
+    deleteDoc("d3");
+    deleteDoc("d4");
+    assertU(commit());
+    assertJoined(1, 1);
+
+    // the user lost a group
+    assertU(delI("u1_g5"));
+    userGroups.put("u1", new HashSet<>(List.of("g1", "g2", "g4")));
+    assertU(commit());
+    // the user's segment is gone, and the remaining ones need joining with the old groups
+    for (String fromField : new String[] {"group_s", "group_ss_dv"}) {
+      assertEquals(3, join(fromField, "u1")[1]);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.List;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.CommonParams;
+import org.junit.BeforeClass;
+
+public class TestMultiThreadedSearcher extends SolrTestCaseJ4 {
+
+  private static final int NUM_SEGMENTS = 12;
+  private static final int DOCS_PER_SEGMENT = 50;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    // one slice holds up to 5 small segments, so make sure we get several slices
+    initCore("solrconfig-nomergepolicyfactory.xml", "schema.xml");
+    int id = 0;
+    for (int seg = 0; seg < NUM_SEGMENTS; seg++) {
+      for (int i = 0; i < DOCS_PER_SEGMENT; i++, id++) {
+        assertU(
+            adoc(
+                "id",
+                String.valueOf(id),
+                "field1_s",
+                "foo",
+                "field2_s",
+                String.valueOf(id % 3),
+                "field3_i_dvo",
+                String.valueOf(random().nextInt(1000)),
+                "field4_t",
+                "a " + (id % 7 == 0 ? "b b" : "c")));
+      }
+      assertU(commit());
+    }
+  }
+
+  public void testSlices() throws Exception {
+    h.getCore()
+        .withSearcher(
+            searcher -> {
+              assertNotNull(searcher.getExecutor());
+              assertTrue(searcher.getSlices().length > 1);
+              return null;
+            });
+  }
+
+  public void testSameResultsAsSingleThreaded() throws Exception {
+    final Query scored =
+        new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("field4_t", "a")), BooleanClause.Occur.MUST)
+            .add(new TermQuery(new Term("field4_t", "b")), BooleanClause.Occur.SHOULD)
+            .build();
+    final List<Query> filters = List.of(new TermQuery(new Term("field2_s", "1")));
+    final Sort byField = new Sort(new SortField("field3_i_dvo", SortField.Type.INT, true));
+
+    for (Sort sort : new Sort[] {null, byField}) {
+      for (int flags :
+          new int[] {
+            0,
+            SolrIndexSearcher.GET_SCORES,
+            SolrIndexSearcher.GET_DOCSET,
+            SolrIndexSearcher.GET_SCORES | SolrIndexSearcher.GET_DOCSET
+          }) {
+        for (int len : new int[] {0, 10, 1000}) {
+          assertSameResults(scored, null, sort, len, flags);
+          assertSameResults(scored, filters, sort, len, flags);
+        }
+      }
+    }
+  }
+
+  public void testRequestParam() {
+    assertQ(
+        req("q", "field4_t:b", "fq", "field2_s:1", CommonParams.MULTI_THREADED, "true"),
+        "//*[@numFound='" + expectedMatches() + "']");
+  }
+
+  private static int expectedMatches() {
+    int count = 0;
+    for (int id = 0; id < NUM_SEGMENTS * DOCS_PER_SEGMENT; id++) {
+      if (id % 7 == 0 && id % 3 == 1) count++;
+    }
+    return count;
+  }
+
+  private void assertSameResults(Query q, List<Query> filters, Sort sort, int len, int flags)
+      throws Exception {
+    final QueryResult single = search(q, filters, sort, len, flags, false);
+    final QueryResult multi = search(q, filters, sort, len, flags, true);
+    final String msg =
+        "q=" + q + " fq=" + filters + " sort=" + sort + " len=" + len + " f=" + flags;
+
+    final DocList expected = single.getDocList();
+    final DocList actual = multi.getDocList();
+    assertEquals(msg, expected.matches(), actual.matches());
+    assertEquals(msg, expected.size(), actual.size());
+    assertEquals(msg, expected.maxScore(), actual.maxScore(), 0.0f);
+    final DocIterator expectedIter = expected.iterator();
+    final DocIterator actualIter = actual.iterator();
+    while (expectedIter.hasNext()) {
+      assertTrue(msg, actualIter.hasNext());
+      assertEquals(msg, expectedIter.nextDoc(), actualIter.nextDoc());
+      if (expected.hasScores()) {
+        assertEquals(msg, expectedIter.score(), actualIter.score(), 0.0f);
+      }
+    }
+    if ((flags & SolrIndexSearcher.GET_DOCSET) != 0) {
+      assertTrue(msg, DocSetUtil.equals(single.getDocSet(), multi.getDocSet()));
+    }
+  }
+
+  private QueryResult search(
+      Query q, List<Query> filters, Sort sort, int len, int flags, boolean multiThreaded)
+      throws Exception {
+    return h.getCore()
+        .withSearcher(
+            searcher -> {
+              final QueryCommand cmd =
+                  new QueryCommand()
+                      .setQuery(q)
+                      .setFilterList(filters)
+                      .setSort(sort)
+                      .setLen(len)
+                      .setFlags(
+                          flags
+                              | SolrIndexSearcher.NO_CHECK_QCACHE
+                              | SolrIndexSearcher.NO_SET_QCACHE
+                              | SolrIndexSearcher.NO_CHECK_FILTERCACHE)
+                      .setMultiThreaded(multiThreaded);
+              return searcher.search(new QueryResult(), cmd);
+            });
+  }
+}
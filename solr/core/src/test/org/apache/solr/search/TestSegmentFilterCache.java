@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.segmentFilterCache.enabled", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.segmentFilterCache.enabled");
+  }
+
+  private static Set<IndexReader.CacheKey> segmentKeys() throws Exception {
+    return h.getCore()
+        .withSearcher(
+            searcher -> {
+              Set<IndexReader.CacheKey> keys = new HashSet<>();
+              List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+              for (LeafReaderContext ctx : leaves) {
+                keys.add(ctx.reader().getCoreCacheHelper().getKey());
+              }
+              return keys;
+            });
+  }
+
+  private static CaffeineCache<SegmentFilterKey, ?> segmentFilterCache() throws Exception {
+    return h.getCore()
+        .withSearcher(
+            searcher -> (CaffeineCache<SegmentFilterKey, ?>) searcher.getSegmentFilterCache());
+  }
+
+  @Test
+  public void testSurvivesCommits() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i1", Integer.toString(i), "cat_s", cat(i)));
+      if (i == 9) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    final String fq = "cat_s:even OR val_i1:[15 TO 17]";
+    assertQ(req("q", "*:*", "fq", fq), "//*[@numFound='12']");
+    Set<IndexReader.CacheKey> oldSegments = segmentKeys();
+    assertEquals(oldSegments.size(), segmentFilterCache().size());
+
+    // function queries don't tell whether they are cacheable per segment, so they are not
+    assertQ(req("q", "*:*", "fq", "{!frange l=0 u=5}val_i1"), "//*[@numFound='6']");
+    assertEquals(oldSegments.size(), segmentFilterCache().size());
+
+    assertU(adoc("id", "20", "val_i1", "20", "cat_s", cat(20)));
+    assertU(delI("0"));
+    assertU(delI("16"));
+    assertU(commit());
+
+    // unchanged segments are carried over, and autowarming the filterCache only had to search
+    // the new ones
+    Set<IndexReader.CacheKey> newSegments = segmentKeys();
+    Set<IndexReader.CacheKey> added = new HashSet<>(newSegments);
+    added.removeAll(oldSegments);
+    assertFalse(added.isEmpty());
+    CaffeineCache<SegmentFilterKey, ?> cache = segmentFilterCache();
+    assertEquals(newSegments.size(), cache.size());
+    assertEquals(
+        (long) added.size(), cache.getMetricsMap().getValue().get(SolrCache.INSERTS_PARAM));
+
+    // deletions in the unchanged segments are applied to their cached matches
+    assertQ(
+        req("q", "*:*", "fq", fq, "sort", "id asc", "fl", "id"),
+        "//*[@numFound='11']",
+        "not(//str[@name='id'][.='0'])",
+        "not(//str[@name='id'][.='16'])",
+        "//str[@name='id'][.='20']");
+  }
+
+  private static String cat(int i) {
+    return i % 2 == 0 ? "even" : "odd";
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSegmentQueryResultCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.segmentQueryResultCache.enabled", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.segmentQueryResultCache.enabled");
+  }
+
+  /** The cached results of each segment for the query of {@link #testSurvivesCommits}. */
+  private static Map<IndexReader.CacheKey, SegmentQueryResult> segmentResults() throws Exception {
+    try (SolrQueryRequest req = req()) {
+      Sort sort = SortSpecParsing.parseSortSpec("val_i1 desc", req).getSort();
+      QueryResultKey resultKey =
+          new QueryResultKey(
+              new MatchAllDocsQuery(), List.of(new TermQuery(new Term("cat_s", "even"))), sort, 0);
+      return h.getCore()
+          .withSearcher(
+              searcher -> {
+                Map<IndexReader.CacheKey, SegmentQueryResult> results = new HashMap<>();
+                for (LeafReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+                  IndexReader.CacheKey key = ctx.reader().getReaderCacheHelper().getKey();
+                  results.put(
+                      key,
+                      searcher
+                          .getSegmentQueryResultCache()
+                          .get(new SegmentQueryResult.Key(key, resultKey)));
+                }
+                return results;
+              });
+    }
+  }
+
+  private static CaffeineCache<SegmentQueryResult.Key, SegmentQueryResult> segmentCache()
+      throws Exception {
+    return h.getCore()
+        .withSearcher(
+            searcher ->
+                (CaffeineCache<SegmentQueryResult.Key, SegmentQueryResult>)
+                    searcher.getSegmentQueryResultCache());
+  }
+
+  @Test
+  public void testSurvivesCommits() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_i1", Integer.toString(i), "cat_s", cat(i)));
+      if (i == 9) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    assertQ(
+        req("q", "*:*", "fq", "cat_s:even", "sort", "val_i1 desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='10']",
+        "//result/doc[1]/str[@name='id'][.='18']",
+        "//result/doc[2]/str[@name='id'][.='16']",
+        "//result/doc[3]/str[@name='id'][.='14']");
+    Map<IndexReader.CacheKey, SegmentQueryResult> oldResults = segmentResults();
+    assertFalse(oldResults.containsValue(null));
+
+    // relevance sorts depend on index-wide statistics, so they are not cached per segment
+    int size = segmentCache().size();
+    assertQ(req("q", "cat_s:odd", "rows", "3"), "//*[@numFound='10']");
+    assertEquals(size, segmentCache().size());
+
+    assertU(adoc("id", "30", "val_i1", "30", "cat_s", cat(30)));
+    assertU(delI("18"));
+    assertU(commit());
+
+    // autowarming the queryResultCache reused the results of the unchanged segments, and only
+    // searched the new segment and the one with a deletion
+    Map<IndexReader.CacheKey, SegmentQueryResult> newResults = segmentResults();
+    assertFalse(newResults.containsValue(null));
+    int reused = 0;
+    for (Map.Entry<IndexReader.CacheKey, SegmentQueryResult> e : newResults.entrySet()) {
+      if (oldResults.containsKey(e.getKey())) {
+        assertSame(oldResults.get(e.getKey()), e.getValue());
+        reused++;
+      }
+    }
+    assertTrue(reused < newResults.size());
+
+    assertQ(
+        req("q", "*:*", "fq", "cat_s:even", "sort", "val_i1 desc", "rows", "3", "fl", "id"),
+        "//*[@numFound='10']",
+        "//result/doc[1]/str[@name='id'][.='30']",
+        "//result/doc[2]/str[@name='id'][.='16']",
+        "//result/doc[3]/str[@name='id'][.='14']");
+  }
+
+  @Test
+  public void testSameResultsAsUncached() throws Exception {
+    clearIndex();
+    int numDocs = atLeast(50);
+    for (int i = 0; i < numDocs; i++) {
+      assertU(
+          adoc(
+              "id", Integer.toString(i),
+              "val_i1", Integer.toString(random().nextInt(10)),
+              "cat_s", cat(random().nextInt(3)),
+              "cat_s1", cat(random().nextInt(3))));
+      if (random().nextInt(10) == 0) {
+        assertU(commit());
+      }
+      if (random().nextInt(20) == 0) {
+        assertU(delI(Integer.toString(random().nextInt(i + 1))));
+      }
+    }
+    assertU(commit());
+
+    String[] sorts = {"val_i1 desc", "val_i1 asc,id desc", "cat_s1 asc,val_i1 desc", "id asc"};
+    for (int iter = 0; iter < 20; iter++) {
+      String sort = sorts[random().nextInt(sorts.length)];
+      String fq = random().nextBoolean() ? "cat_s:even" : "val_i1:[2 TO 7]";
+      String start = Integer.toString(random().nextInt(20));
+      String rows = Integer.toString(random().nextInt(20));
+      String expected = query(false, fq, sort, start, rows);
+      assertEquals(expected, query(true, fq, sort, start, rows));
+      if (random().nextInt(5) == 0) {
+        assertU(adoc("id", Integer.toString(numDocs + iter), "val_i1", "5", "cat_s", "even"));
+        assertU(commit());
+      }
+    }
+  }
+
+  private static String query(boolean cache, String fq, String sort, String start, String rows)
+      throws Exception {
+    String q = cache ? "*:*" : "{!cache=false}*:*";
+    try (SolrQueryRequest req =
+        req("q", q, "fq", fq, "sort", sort, "start", start, "rows", rows, "fl", "id")) {
+      String response = h.query(req);
+      return response.substring(response.indexOf("<result"), response.indexOf("</result>"));
+    }
+  }
+
+  private static String cat(int i) {
+    return i % 2 == 0 ? "even" : "odd";
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.util.DDSketch;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the <code>ddsketch()</code> percentile aggregation. */
+public class TestDDSketchAgg extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  private static final String[] CATS = {"A", "B", "C"};
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  /** values of each field, by category ("*" for all) */
+  private final Map<String, Map<String, List<Double>>> expected = new HashMap<>();
+
+  private void addExpected(String field, String cat, double value) {
+    for (String key : new String[] {cat, "*"}) {
+      expected
+          .computeIfAbsent(field, k -> new HashMap<>())
+          .computeIfAbsent(key, k -> new ArrayList<>())
+          .add(value);
+    }
+  }
+
+  private void index(Client client) throws Exception {
+    client.deleteByQuery("*:*", null);
+    expected.clear();
+    int numDocs = atLeast(300);
+    for (int id = 0; id < numDocs; id++) {
+      String cat = CATS[random().nextInt(CATS.length)];
+      // latency like values: mostly small, with a long tail
+      double lat = Math.exp(random().nextGaussian() * 2) * 10;
+      double lat2 = -lat / 2;
+      long latLong = Math.round(lat * 1000);
+      client.add(
+          sdoc(
+              "id",
+              id,
+              "cat_s",
+              cat,
+              "lat_dp",
+              lat,
+              "lats_dps",
+              List.of(lat, lat2),
+              "lat_lp",
+              latLong),
+          null);
+      addExpected("lat_dp", cat, lat);
+      addExpected("lats_dps", cat, lat);
+      addExpected("lats_dps", cat, lat2);
+      addExpected("lat_lp", cat, latLong);
+      if (rarely()) {
+        client.commit();
+      }
+    }
+    client.commit();
+  }
+
+  private void assertPercentiles(String field, String cat, Object actual, double... percentiles) {
+    List<?> actualValues = actual instanceof List ? (List<?>) actual : List.of(actual);
+    assertEquals(percentiles.length, actualValues.size());
+
+    double[] sorted =
+        expected.get(field).get(cat).stream().mapToDouble(Double::doubleValue).toArray();
+    Arrays.sort(sorted);
+    for (int i = 0; i < percentiles.length; i++) {
+      double value = sorted[(int) (percentiles[i] * 0.01 * (sorted.length - 1))];
+      double delta = Math.abs(value) * DDSketch.DEFAULT_RELATIVE_ACCURACY * 1.0001;
+      assertEquals(
+          field + " " + cat + " p" + percentiles[i],
+          value,
+          ((Number) actualValues.get(i)).doubleValue(),
+          delta);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void doTestPercentiles(SolrClient client, String... params) throws Exception {
+    String stats =
+        "{p:'ddsketch(lat_dp,50,95,99)', pm:'ddsketch(lats_dps,50,99)', pl:'ddsketch(lat_lp,50)'}";
+    ModifiableSolrParams p =
+        params(
+            "q",
+            "*:*",
+            "rows",
+            "0",
+            "json.facet",
+            "{x:{type:terms, field:cat_s, sort:'p desc', facet:"
+                + stats
+                + "}, p:'ddsketch(lat_dp,50,95,99)', pf:'ddsketch(sum(lat_dp,1),50)'}");
+    p.add(params(params));
+    Map<String, Object> rsp = (Map<String, Object>) Utils.fromJSONString(getJSON(client, p));
+    Map<String, Object> facets = (Map<String, Object>) rsp.get("facets");
+
+    assertPercentiles("lat_dp", "*", facets.get("p"), 50, 95, 99);
+    double median = ((Number) ((List<?>) facets.get("p")).get(0)).doubleValue();
+    // both sketches may be off by the relative accuracy, in opposite directions
+    assertEquals(median + 1, ((Number) facets.get("pf")).doubleValue(), (median + 1) * 0.021);
+
+    List<Map<String, Object>> buckets =
+        (List<Map<String, Object>>) ((Map<String, Object>) facets.get("x")).get("buckets");
+    assertEquals(CATS.length, buckets.size());
+    double last = Double.POSITIVE_INFINITY;
+    for (Map<String, Object> bucket : buckets) {
+      String cat = (String) bucket.get("val");
+      assertPercentiles("lat_dp", cat, bucket.get("p"), 50, 95, 99);
+      assertPercentiles("lats_dps", cat, bucket.get("pm"), 50, 99);
+      assertPercentiles("lat_lp", cat, bucket.get("pl"), 50);
+      double p50 = ((Number) ((List<?>) bucket.get("p")).get(0)).doubleValue();
+      assertTrue(p50 <= last);
+      last = p50;
+    }
+  }
+
+  @Test
+  public void testPercentiles() throws Exception {
+    Client client = Client.localClient();
+    index(client);
+    doTestPercentiles(null);
+
+    // the whole index matched, so each segment's sketch is cached by the core and reused
+    FacetModule facetModule =
+        (FacetModule) h.getCore().getSearchComponent(FacetModule.COMPONENT_NAME);
+    assertTrue(facetModule.segmentSketchCache.size() > 0);
+    assertTrue(
+        h.getCore()
+            .getCoreMetricManager()
+            .getRegistry()
+            .getMetrics()
+            .containsKey("CACHE.segmentSketchCache"));
+    doTestPercentiles(null);
+
+    // deleting docs changes the segment readers, which must not reuse the old sketches
+    client.deleteByQuery("cat_s:A", null);
+    client.commit();
+    for (Map<String, List<Double>> byCat : expected.values()) {
+      List<Double> a = byCat.remove("A");
+      for (Double v : a) {
+        byCat.get("*").remove(v);
+      }
+      byCat.put("A", List.of());
+    }
+    assertPercentilesAfterDelete();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void assertPercentilesAfterDelete() throws Exception {
+    Map<String, Object> rsp =
+        (Map<String, Object>)
+            Utils.fromJSONString(
+                getJSON(
+                    null,
+                    params(
+                        "q",
+                        "*:*",
+                        "rows",
+                        "0",
+                        "json.facet",
+                        "{p:'ddsketch(lat_dp,50,95,99)', pm:'ddsketch(lats_dps,1,50)'}")));
+    Map<String, Object> facets = (Map<String, Object>) rsp.get("facets");
+    assertPercentiles("lat_dp", "*", facets.get("p"), 50, 95, 99);
+    assertPercentiles("lats_dps", "*", facets.get("pm"), 1, 50);
+  }
+
+  @Test
+  public void testPercentilesDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    index(client);
+    doTestPercentiles(client.getClientProvider().all().get(0), "shards", servers.getShards());
+  }
+
+  @Test
+  public void testUnsupportedField() throws Exception {
+    assertU(adoc("id", "1", "cat_s", "A"));
+    assertU(commit());
+    assertQEx(
+        "only numeric fields are supported",
+        req("q", "*:*", "json.facet", "{p:'ddsketch(cat_s,50)'}"),
+        400);
+  }
+}
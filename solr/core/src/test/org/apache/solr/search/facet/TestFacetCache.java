@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestFacetCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.facetCache.enabled", "true");
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    System.clearProperty("solr.facetCache.enabled");
+  }
+
+  @Before
+  public void index() throws Exception {
+    clearIndex();
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", "" + i, "cat_s", i % 2 == 0 ? "even" : "odd", "val_i_dv", "" + i));
+    }
+    assertU(commit());
+  }
+
+  private static final String FACETS =
+      "{cats:{type:terms, field:cat_s, facet:{sum:'sum(val_i_dv)'}}, big:{type:query, q:'val_i_dv:[10 TO *]'}}";
+
+  /** Returns the "facets" object of the response to a request, as added by the facet module */
+  private static Object facets(String... params) throws Exception {
+    SolrQueryRequest req = req(params);
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+    try {
+      h.getCore().execute(h.getCore().getRequestHandler(null), req, rsp);
+      return rsp.getValues().get("facets");
+    } finally {
+      SolrRequestInfo.clearRequestInfo();
+      req.close();
+    }
+  }
+
+  private static int cacheSize() throws Exception {
+    return h.getCore().withSearcher(searcher -> searcher.getFacetCache().size());
+  }
+
+  @Test
+  public void testHits() throws Exception {
+    Object facets = facets("q", "*:*", "rows", "0", "json.facet", FACETS);
+    int size = cacheSize();
+    // the same facets, whatever documents are returned
+    assertSame(facets, facets("q", "*:*", "rows", "5", "sort", "id desc", "json.facet", FACETS));
+    assertEquals(size, cacheSize());
+
+    assertNotSame(facets, facets("q", "*:*", "cache", "false", "json.facet", FACETS));
+    assertNotSame(facets, facets("q", "*:*", "debug", "true", "json.facet", FACETS));
+    assertEquals(size, cacheSize());
+
+    assertJQ(
+        req("q", "*:*", "fq", "val_i_dv:[0 TO 9]", "rows", "0", "json.facet", FACETS),
+        "facets=={count:10, big:{count:0},"
+            + " cats:{buckets:[{val:even, count:5, sum:20.0}, {val:odd, count:5, sum:25.0}]}}");
+    assertEquals(size + 1, cacheSize());
+    // the domain of a facet may refer to request parameters
+    String domainFacets = "{x:{type:query, q:'*:*', domain:{filter:'{!v=$dfq}'}}}";
+    assertJQ(
+        req("q", "*:*", "rows", "0", "dfq", "cat_s:odd", "json.facet", domainFacets),
+        "facets=={count:20, x:{count:10}}");
+    assertJQ(
+        req("q", "*:*", "rows", "0", "dfq", "val_i_dv:[0 TO 3]", "json.facet", domainFacets),
+        "facets=={count:20, x:{count:4}}");
+  }
+
+  @Test
+  public void testNotCached() throws Exception {
+    // date math relative to NOW is only cached for a fixed NOW
+    int size = cacheSize();
+    String nowFacets = "{x:{type:query, q:'*:*', domain:{filter:'id:[* TO NOW]'}}}";
+    assertNotSame(
+        facets("q", "*:*", "json.facet", nowFacets), facets("q", "*:*", "json.facet", nowFacets));
+    assertEquals(size, cacheSize());
+    Object facets = facets("q", "*:*", "NOW", "1000", "json.facet", nowFacets);
+    assertSame(facets, facets("q", "*:*", "NOW", "1000", "json.facet", nowFacets));
+    assertNotSame(facets, facets("q", "*:*", "NOW", "2000", "json.facet", nowFacets));
+
+    // streamed buckets can't be cached
+    String streamedFacets = "{x:{type:terms, field:cat_s, limit:-1, sort:index, method:stream}}";
+    assertNotSame(
+        facets("q", "*:*", "json.facet", streamedFacets),
+        facets("q", "*:*", "json.facet", streamedFacets));
+  }
+
+  @Test
+  public void testAutowarming() throws Exception {
+    Object facets = facets("q", "*:*", "json.facet", FACETS);
+    assertU(adoc("id", "20", "cat_s", "even", "val_i_dv", "20"));
+    assertU(commit());
+    // the new searcher recomputed the facets while it was warmed
+    int size = cacheSize();
+    Object warmed = facets("q", "*:*", "json.facet", FACETS);
+    assertNotSame(facets, warmed);
+    assertSame(warmed, facets("q", "*:*", "json.facet", FACETS));
+    assertEquals(size, cacheSize());
+    assertJQ(
+        req("q", "*:*", "rows", "0", "json.facet", FACETS),
+        "facets=={count:21, big:{count:11},"
+            + " cats:{buckets:[{val:even, count:11, sum:110.0}, {val:odd, count:10, sum:100.0}]}}");
+  }
+
+  @Test
+  public void testAutowarmingExcludeTags() throws Exception {
+    String tagFacets = "{cats:{type:terms, field:cat_s, domain:{excludeTags:x}}}";
+    String[] params = {"q", "*:*", "fq", "{!tag=x}cat_s:odd", "rows", "0", "json.facet", tagFacets};
+    assertJQ(
+        req(params),
+        "facets=={count:10, cats:{buckets:[{val:even, count:10}, {val:odd, count:10}]}}");
+    assertU(adoc("id", "20", "cat_s", "even", "val_i_dv", "20"));
+    assertU(commit());
+    // the warmed facets exclude the tagged filter too
+    int size = cacheSize();
+    assertJQ(
+        req(params),
+        "facets=={count:10, cats:{buckets:[{val:even, count:11}, {val:odd, count:10}]}}");
+    assertEquals(size, cacheSize());
+  }
+}
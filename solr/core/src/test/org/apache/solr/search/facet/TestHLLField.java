@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.schema.HLLField;
+import org.apache.solr.util.hll.HLL;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests faceting over {@link HLLField} sketches computed by {@link
+ * org.apache.solr.update.processor.HLLUpdateProcessorFactory}.
+ */
+public class TestHLLField extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  private static final String[] CATS = {"A", "B", "C"};
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-hll.xml", "schema-hll.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-hll.xml", "schema-hll.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  /** distinct visitors by category ("*" for all) */
+  private final Map<String, Set<Integer>> expected = new HashMap<>();
+
+  private void index(Client client) throws Exception {
+    client.deleteByQuery("*:*", null);
+    expected.clear();
+    int numDocs = atLeast(200);
+    for (int id = 0; id < numDocs; id++) {
+      String cat = CATS[random().nextInt(CATS.length)];
+      List<Integer> visitors = new ArrayList<>();
+      for (int i = random().nextInt(5); i >= 0; i--) {
+        visitors.add(random().nextInt(1000));
+      }
+      client.add(
+          sdoc(
+              "id", id, "cat_s", cat, "visitor_ss", stringValues(visitors), "visitor_is", visitors),
+          null);
+      expected.computeIfAbsent(cat, k -> new HashSet<>()).addAll(visitors);
+      expected.computeIfAbsent("*", k -> new HashSet<>()).addAll(visitors);
+      if (rarely()) {
+        client.commit();
+      }
+    }
+    client.commit();
+  }
+
+  private static List<String> stringValues(List<Integer> values) {
+    List<String> strings = new ArrayList<>(values.size());
+    for (Integer value : values) {
+      strings.add(value.toString());
+    }
+    return strings;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> facets(SolrClient client, String json, String... params)
+      throws Exception {
+    ModifiableSolrParams p = params("q", "*:*", "rows", "0", "json.facet", json);
+    p.add(params(params));
+    Map<String, Object> rsp = (Map<String, Object>) Utils.fromJSONString(getJSON(client, p));
+    return (Map<String, Object>) rsp.get("facets");
+  }
+
+  private static long getLong(Map<String, Object> bucket, String key) {
+    return ((Number) bucket.get(key)).longValue();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void doTestSketches(SolrClient client, boolean distrib, String... params)
+      throws Exception {
+    Map<String, Object> facets =
+        facets(
+            client,
+            "{x:{type:terms, field:cat_s, sort:'h desc', facet:{"
+                + "h:'hll(visitors_hll)', u:'unique(visitors_hll)', hi:'hll(visitors_i_hll)',"
+                + "h10:'hll(visitors_hll10)', raw:'hll(visitor_ss)', rawi:'hll(visitor_is)'}},"
+                + "h:'hll(visitors_hll)', raw:'hll(visitor_ss)'}",
+            params);
+
+    assertEstimate(expected.get("*").size(), getLong(facets, "h"));
+    if (distrib) {
+      // the shards hash the raw values exactly like the update processor did
+      assertEquals(getLong(facets, "raw"), getLong(facets, "h"));
+    }
+
+    List<Map<String, Object>> buckets =
+        (List<Map<String, Object>>) ((Map<String, Object>) facets.get("x")).get("buckets");
+    assertEquals(CATS.length, buckets.size());
+    long last = Long.MAX_VALUE;
+    for (Map<String, Object> bucket : buckets) {
+      int exact = expected.get((String) bucket.get("val")).size();
+      long h = getLong(bucket, "h");
+      assertEstimate(exact, h);
+      assertEstimate(exact, getLong(bucket, "hi"));
+      assertEstimate(exact, getLong(bucket, "h10"));
+      assertEquals(h, getLong(bucket, "u"));
+      if (distrib) {
+        assertEquals(getLong(bucket, "raw"), h);
+        assertEquals(getLong(bucket, "rawi"), getLong(bucket, "hi"));
+      }
+      assertTrue(h <= last);
+      last = h;
+    }
+  }
+
+  private static void assertEstimate(long exact, long estimate) {
+    assertEquals(exact, estimate, exact * 0.05);
+  }
+
+  @Test
+  public void testSketches() throws Exception {
+    Client client = Client.localClient();
+    index(client);
+    doTestSketches(null, false);
+  }
+
+  @Test
+  public void testSketchesDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    index(client);
+    doTestSketches(client.getClientProvider().all().get(0), true, "shards", servers.getShards());
+  }
+
+  @Test
+  public void testPrecomputedSketches() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+
+    // documents that each roll up the visitors of a whole day
+    Hash.LongPair hash = new Hash.LongPair();
+    Set<Long> all = new HashSet<>();
+    int numDays = 3;
+    for (int day = 0; day < numDays; day++) {
+      HLL hll = new HLL(HLLField.DEFAULT_LOG2M, HLLField.DEFAULT_REGWIDTH);
+      for (int i = 0; i < 2000; i++) {
+        long visitor = day * 1000 + i; // consecutive days overlap
+        Hash.murmurhash3_x64_128(new byte[] {(byte) visitor, (byte) (visitor >> 8)}, 0, 2, 0, hash);
+        hll.addRaw(hash.val1);
+        all.add(visitor);
+      }
+      client.add(
+          sdoc("id", day, "visitors_hll", Base64.getEncoder().encodeToString(hll.toBytes())), null);
+    }
+    client.commit();
+
+    Map<String, Object> facets = facets(null, "{h:'hll(visitors_hll)', u:'unique(visitors_hll)'}");
+    assertEstimate(all.size(), getLong(facets, "h"));
+    assertEquals(getLong(facets, "h"), getLong(facets, "u"));
+  }
+
+  @Test
+  public void testInvalidSketches() throws Exception {
+    SolrException e =
+        expectThrows(
+            SolrException.class, () -> assertU(adoc("id", "1", "visitors_hll", "not a sketch")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    assertTrue(e.getMessage(), e.getMessage().contains("visitors_hll"));
+
+    // the parameters of the sketch must match the field type's
+    HLL hll = new HLL(10, 5);
+    hll.addRaw(42);
+    String sketch = Base64.getEncoder().encodeToString(hll.toBytes());
+    assertFailedU(adoc("id", "1", "visitors_hll", sketch));
+    assertU(adoc("id", "1", "visitors_hll10", sketch));
+    assertU(commit());
+    assertJQ(
+        req("q", "id:1", "fl", "visitors_hll10"),
+        "/response/docs/[0]/visitors_hll10=='" + sketch + "'");
+
+    assertQEx("sketch fields can't be searched", req("q", "visitors_hll:foo"), 400);
+  }
+}
@@ -21,11 +21,13 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.apache.lucene.tests.util.TestUtil;
 import org.apache.solr.JSONTestUtil;
 import org.apache.solr.SolrTestCaseHS;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.common.util.Utils;
 import org.apache.solr.request.SolrQueryRequest;
@@ -1183,6 +1185,133 @@ public class TestJsonFacetRefinement extends SolrTestCaseHS {
             + "  ] } }");
   }
 
+  @Test
+  public void testAdaptiveOverrequestShardRequest() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    int id = 0;
+    for (int term = 0; term < 12; term++) {
+      for (int i = term; i < 20; i++) {
+        client.add(sdoc("id", Integer.toString(id++), "cat_s", "t" + (10 + term)), null);
+      }
+    }
+    client.commit();
+
+    // limit:2 overrequests 2 * 1.1 + 4 buckets by default, or 2 * factor + 4 when adaptive
+    final String facet = "{f:{type:terms, field:cat_s, limit:2, overrequest:'adaptive'}}";
+    final String plainFacet = "{f:{type:terms, field:cat_s, limit:2}}";
+    final String factors = "{overrequest:{cat_s:3.0}}";
+    assertEquals(6, numShardBuckets(facet, "{}"));
+    assertEquals(10, numShardBuckets(facet, factors));
+    assertEquals(6, numShardBuckets(plainFacet, factors));
+    assertEquals(6, numShardBuckets(facet, "{overrequest:{other_s:3.0}}"));
+  }
+
+  @Test
+  public void testAdaptiveOverrequestFactors() throws Exception {
+    final AdaptiveOverrequest adaptive = new AdaptiveOverrequest();
+    final FacetRequest freq;
+    try (SolrQueryRequest req = req()) {
+      freq =
+          FacetRequest.parse(
+              req,
+              Map.of("f", Map.of("type", "terms", "field", "cat_s", "overrequest", "adaptive")));
+    }
+    assertTrue(adaptive.getFactors(freq).isEmpty());
+
+    // a skew spike grows the factor, which is sent rounded up to a quarter
+    AdaptiveOverrequest.Observation observation = adaptive.newObservation();
+    observation.record("cat_s", 10, 5);
+    observation.commit();
+    assertEquals(1.75, (Double) adaptive.getFactors(freq).get("cat_s"), 0.0);
+
+    // as it decays, the factor sent never falls below the default
+    while (adaptive.getFactor("cat_s") > AdaptiveOverrequest.DEFAULT_FACTOR) {
+      observation = adaptive.newObservation();
+      observation.record("cat_s", 10, 0);
+      observation.commit();
+      Double sent = (Double) adaptive.getFactors(freq).get("cat_s");
+      if (sent != null) {
+        assertTrue(sent.toString(), sent >= adaptive.getFactor("cat_s"));
+        assertTrue(sent.toString(), sent > AdaptiveOverrequest.DEFAULT_FACTOR);
+      }
+    }
+    // once decayed to the default, the shards apply it by themselves
+    assertTrue(adaptive.getFactors(freq).isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  private int numShardBuckets(String facet, String facetInfo) throws Exception {
+    String response =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "rows",
+                "0",
+                "wt",
+                "json",
+                "isShard",
+                "true",
+                "distrib",
+                "false",
+                "_facet_",
+                facetInfo,
+                "json.facet",
+                facet));
+    Map<String, Object> facets =
+        (Map<String, Object>) ((Map<String, Object>) Utils.fromJSONString(response)).get("facets");
+    return ((List<Object>) ((Map<String, Object>) facets.get("f")).get("buckets")).size();
+  }
+
+  @Test
+  public void testAdaptiveOverrequest() throws Exception {
+    initServers();
+    final Client client = servers.getClient(random().nextInt());
+    final List<SolrClient> clients = client.getClientProvider().all();
+    assertTrue(clients.size() >= 3);
+    client.deleteByQuery("*:*", null);
+
+    // every shard has 6 local terms that beat the term they all share on that shard, even though
+    // the shared term is the top term overall
+    int id = 0;
+    for (int shard = 0; shard < 3; shard++) {
+      for (int term = 0; term < 6; term++) {
+        for (int i = 0; i < 10; i++) {
+          clients.get(shard).add(sdoc("id", Integer.toString(id++), "cat_s", "l" + shard + term));
+        }
+      }
+      for (int i = 0; i < 4; i++) {
+        clients.get(shard).add(sdoc("id", Integer.toString(id++), "cat_s", "common"));
+      }
+    }
+    client.commit();
+
+    // the default overrequest never sees the shared term...
+    final SolrParams p =
+        params("q", "*:*", "rows", "0", "wt", "json", "shards", servers.getShards());
+    assertEquals(
+        "l00", topBucket(clients.get(0), p, "{f:{type:terms, field:cat_s, limit:1, refine:true}}"));
+
+    // ...while the adaptive one learns from the refinements it needed that the field is skewed
+    final String adaptive =
+        "{f:{type:terms, field:cat_s, limit:1, refine:true, overrequest:'adaptive'}}";
+    String top = null;
+    for (int i = 0; i < 5 && !"common".equals(top); i++) {
+      top = topBucket(clients.get(0), p, adaptive);
+    }
+    assertEquals("common", top);
+  }
+
+  @SuppressWarnings("unchecked")
+  private String topBucket(SolrClient coordinator, SolrParams p, String facet) throws Exception {
+    String response = getQueryResponse(coordinator, "json", params(p, "json.facet", facet));
+    Map<String, Object> facets =
+        (Map<String, Object>) ((Map<String, Object>) Utils.fromJSONString(response)).get("facets");
+    List<Object> buckets = (List<Object>) ((Map<String, Object>) facets.get("f")).get("buckets");
+    return (String) ((Map<String, Object>) buckets.get(0)).get("val");
+  }
+
   @Test
   public void testBasicRefinement() throws Exception {
     ModifiableSolrParams p;
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.Utils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests the approximate <code>method:sketch</code> for terms facets. */
+public class TestJsonFacetSketch extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  // counts of the heavy hitters; every other value occurs exactly once
+  private static final int[] HEAVY_COUNTS = {200, 160, 120, 80, 40};
+  private static final int NUM_TAIL = 400;
+
+  // single valued string, multi valued string (uninverted) and numeric fields
+  private static final String[] FIELDS = {"cat_sd", "cat_ss", "num_id"};
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  /** Indexes the skewed data set and returns the true count of each bucket value. */
+  private Map<String, Integer> indexSkewed(Client client) throws Exception {
+    client.deleteByQuery("*:*", null);
+
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < HEAVY_COUNTS.length; i++) {
+      values.addAll(Collections.nCopies(HEAVY_COUNTS[i], i));
+    }
+    for (int i = 0; i < NUM_TAIL; i++) {
+      values.add(HEAVY_COUNTS.length + i);
+    }
+    Collections.shuffle(values, random());
+
+    Map<String, Integer> counts = new HashMap<>();
+    int id = 0;
+    for (int value : values) {
+      SolrInputDocument doc =
+          sdoc("id", id++, "cat_sd", "v" + value, "cat_ss", "v" + value, "num_id", value);
+      client.add(doc, null);
+      counts.merge(Integer.toString(value), 1, Integer::sum);
+      if (rarely()) {
+        client.commit();
+      }
+    }
+    client.commit();
+    return counts;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> getFacet(SolrClient client, String json, String... params)
+      throws Exception {
+    ModifiableSolrParams p = params("q", "*:*", "rows", "0", "json.facet", json);
+    p.add(params(params));
+    Map<String, Object> rsp = (Map<String, Object>) Utils.fromJSONString(getJSON(client, p));
+    return (Map<String, Object>) ((Map<String, Object>) rsp.get("facets")).get("x");
+  }
+
+  @SuppressWarnings("unchecked")
+  private void assertHeavyHitters(Map<String, Object> facet, Map<String, Integer> counts) {
+    List<Map<String, Object>> buckets = (List<Map<String, Object>>) facet.get("buckets");
+    assertEquals(facet.toString(), HEAVY_COUNTS.length, buckets.size());
+    for (int i = 0; i < buckets.size(); i++) {
+      Map<String, Object> bucket = buckets.get(i);
+      String val = bucket.get("val").toString();
+      assertEquals(
+          facet.toString(), Integer.toString(i), val.startsWith("v") ? val.substring(1) : val);
+      long count = ((Number) bucket.get("count")).longValue();
+      Number err = (Number) bucket.get("count_err");
+      long lower = count - (err == null ? 0 : err.longValue());
+      int actual = counts.get(Integer.toString(i));
+      assertTrue(facet.toString(), lower <= actual && actual <= count);
+    }
+    assertNull(facet.get("maxMissingCount"));
+  }
+
+  private void doTestSketch(Client client, SolrClient solrClient, String... params)
+      throws Exception {
+    Map<String, Integer> counts = indexSkewed(client);
+
+    for (String field : FIELDS) {
+      // the sketch is much smaller than the number of unique values
+      assertHeavyHitters(
+          getFacet(
+              solrClient,
+              "{x:{type:terms, field:" + field + ", method:sketch, sketchSize:50, limit:5}}",
+              params),
+          counts);
+
+      // a sketch that can hold every value is exact
+      for (String options :
+          new String[] {
+            "limit:7, facet:{s:'sum(num_id)'}",
+            "limit:3, offset:2, missing:true",
+            "limit:5, sort:'index asc'", // not supported by the sketch, falls back to exact
+            "limit:5, numBuckets:true"
+          }) {
+        String facet = "{x:{type:terms, field:" + field + ", " + options + ", method:";
+        assertEquals(
+            getFacet(solrClient, facet + "smart}}", params),
+            getFacet(solrClient, facet + "sketch}}", params));
+      }
+    }
+  }
+
+  @Test
+  public void testSketch() throws Exception {
+    doTestSketch(Client.localClient(), null);
+  }
+
+  @Test
+  public void testSketchDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    doTestSketch(client, client.getClientProvider().all().get(0), "shards", servers.getShards());
+  }
+}
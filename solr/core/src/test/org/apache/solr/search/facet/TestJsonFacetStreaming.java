@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.solr.SolrTestCaseHS;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests streaming the buckets of <code>method:stream</code> terms facets with no limit. */
+public class TestJsonFacetStreaming extends SolrTestCaseHS {
+
+  private static SolrInstances servers; // for distributed testing
+
+  // indexed string, docValues string, multi valued docValues string and point fields
+  private static final String[] FIELDS = {"cat_s", "cat_sd", "cats_sds", "num_ip"};
+
+  // the variations of each facet, all of which return every bucket
+  private static final String[] OPTIONS = {
+    "sort:index,",
+    "sort:index, numBuckets:true, allBuckets:true,",
+    "sort:'index desc',",
+    "sort:index, offset:3, mincount:2,",
+    "sort:index, missing:true,"
+  };
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    systemSetPropertySolrDisableUrlAllowList("true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  public static void initServers() throws Exception {
+    if (servers == null) {
+      servers = new SolrInstances(3, "solrconfig-tlog.xml", "schema_latest.xml");
+    }
+  }
+
+  @AfterClass
+  public static void afterTests() throws Exception {
+    if (servers != null) {
+      servers.stop();
+      servers = null;
+    }
+    systemClearPropertySolrDisableUrlAllowList();
+  }
+
+  private static String cat(int i) {
+    return i % 5 == 0 ? "ﬁ" + i : "cat" + i;
+  }
+
+  private void index(Client client) throws Exception {
+    client.deleteByQuery("*:*", null);
+    int numDocs = atLeast(200);
+    for (int id = 0; id < numDocs; id++) {
+      List<Object> fields = new ArrayList<>();
+      fields.add("id");
+      fields.add(id);
+      if (random().nextInt(10) > 0) { // some docs are missing the values
+        String cat = cat(random().nextInt(60));
+        fields.addAll(List.of("cat_s", cat, "cat_sd", cat, "num_ip", random().nextInt(50) - 10));
+        fields.addAll(List.of("cats_sds", List.of(cat, cat(random().nextInt(60)))));
+      }
+      client.add(sdoc(fields.toArray()), null);
+      if (rarely()) {
+        client.commit();
+      }
+    }
+    client.commit();
+  }
+
+  private Object facets(SolrClient client, String json, String... params) throws Exception {
+    ModifiableSolrParams p = params("q", "*:*", "rows", "0", "json.facet", json);
+    p.add(params(params));
+    return ((Map<?, ?>) Utils.fromJSONString(getJSON(client, p))).get("facets");
+  }
+
+  private void doTestSameAsSmart(SolrClient client, String... params) throws Exception {
+    for (String field : FIELDS) {
+      for (String options : OPTIONS) {
+        String facet =
+            "{x:{type:terms, field:"
+                + field
+                + ", limit:-1, "
+                + options
+                + " method:%s, facet:{sum:'sum(num_ip)', "
+                + "sub:{type:terms, field:cat_sd, limit:-1, sort:index, method:%<s}}}}";
+        assertEquals(
+            facet,
+            facets(client, String.format(Locale.ROOT, facet, "smart"), params),
+            facets(client, String.format(Locale.ROOT, facet, "stream"), params));
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsSmart() throws Exception {
+    Client client = Client.localClient();
+    index(client);
+    doTestSameAsSmart(null);
+  }
+
+  @Test
+  public void testSameAsSmartDistrib() throws Exception {
+    initServers();
+    Client client = servers.getClient(random().nextInt());
+    index(client);
+    doTestSameAsSmart(client.getClientProvider().all().get(0), "shards", servers.getShards());
+  }
+
+  @Test
+  public void testBucketsAreStreamed() throws Exception {
+    index(Client.localClient());
+    for (String field : FIELDS) {
+      // numBuckets keeps the enum based stream processor from being picked
+      SolrQueryRequest req =
+          req(
+              "q",
+              "*:*",
+              "rows",
+              "0",
+              "json.facet",
+              "{x:{type:terms, field:"
+                  + field
+                  + ", limit:-1, sort:index, method:stream, numBuckets:true}}");
+      try {
+        SolrQueryResponse rsp = h.queryAndResponse(null, req);
+        NamedList<?> x = (NamedList<?>) ((NamedList<?>) rsp.getValues().get("facets")).get("x");
+        assertTrue(field, x.get("buckets") instanceof Iterator);
+      } finally {
+        req.close();
+      }
+    }
+  }
+
+  private static SimpleOrderedMap<Object> shardResponse(Object... valsAndCounts) {
+    List<SimpleOrderedMap<?>> buckets = new ArrayList<>();
+    for (int i = 0; i < valsAndCounts.length; i += 2) {
+      SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<>();
+      bucket.add("val", valsAndCounts[i]);
+      bucket.add("count", valsAndCounts[i + 1]);
+      buckets.add(bucket);
+    }
+    SimpleOrderedMap<Object> res = new SimpleOrderedMap<>();
+    res.add("buckets", buckets);
+    return res;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testMergerStreams() throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      FacetRequest freq =
+          FacetRequest.parse(
+              req,
+              Map.of(
+                  "x",
+                  Map.of(
+                      "type", "terms", "field", "cat_s", "limit", -1, "sort", "index", "method",
+                      "stream")));
+      FacetFieldMerger merger = new FacetFieldMerger((FacetField) freq.getSubFacets().get("x"));
+      FacetMerger.Context mcontext = new FacetMerger.Context(3);
+
+      List<SimpleOrderedMap<Object>> shardResponses =
+          List.of(
+              shardResponse("a", 1, "c", 2, "😀", 1),
+              shardResponse("b", 1, "c", 3, "ﬁ", 4, "😀", 2),
+              shardResponse());
+      for (int i = 0; i < shardResponses.size(); i++) {
+        mcontext.newShard("shard" + i);
+        merger.merge((Object) shardResponses.get(i), mcontext);
+      }
+
+      SimpleOrderedMap<Object> result = (SimpleOrderedMap<Object>) merger.getMergedResult();
+      Iterator<SimpleOrderedMap<Object>> buckets =
+          (Iterator<SimpleOrderedMap<Object>>) result.get("buckets");
+      List<String> merged = new ArrayList<>();
+      while (buckets.hasNext()) {
+        SimpleOrderedMap<Object> bucket = buckets.next();
+        merged.add(bucket.get("val") + ":" + bucket.get("count"));
+      }
+      // strings are merged in code point (UTF-8) order, like the terms in the shards' indexes
+      assertEquals(List.of("a:1", "b:1", "c:5", "ﬁ:4", "😀:3"), merged);
+
+      // the shards' buckets are released as they are merged
+      for (SimpleOrderedMap<Object> shardResponse : shardResponses) {
+        for (Object bucket : (List<Object>) shardResponse.get("buckets")) {
+          assertNull(bucket);
+        }
+      }
+    } finally {
+      req.close();
+    }
+  }
+}
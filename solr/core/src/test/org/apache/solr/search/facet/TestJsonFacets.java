@@ -28,6 +28,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 import org.apache.lucene.tests.util.LuceneTestCase;
 import org.apache.solr.JSONTestUtil;
 import org.apache.solr.SolrTestCaseHS;
@@ -80,6 +81,8 @@ public class TestJsonFacets extends SolrTestCaseHS {
     if (Boolean.getBoolean(NUMERIC_POINTS_SYSPROP))
       System.setProperty(NUMERIC_DOCVALUES_SYSPROP, "true");
 
+    System.setProperty("solr.perSegmentUnInvertedField", String.valueOf(random().nextBoolean()));
+
     initCore("solrconfig-tlog.xml", "schema_latest.xml");
   }
 
@@ -94,6 +97,7 @@ public class TestJsonFacets extends SolrTestCaseHS {
   @AfterClass
   public static void afterTests() throws Exception {
     systemClearPropertySolrDisableUrlAllowList();
+    System.clearProperty("solr.perSegmentUnInvertedField");
     JSONTestUtil.failRepeatedKeys = false;
     FacetFieldProcessorByHashDV.MAXIMUM_STARTING_TABLE_SIZE = origTableSize;
     FacetField.FacetMethod.DEFAULT_METHOD = origDefaultFacetMethod;
@@ -1071,6 +1075,141 @@ public class TestJsonFacets extends SolrTestCaseHS {
     }
   }
 
+  @Test
+  public void testSKGSweepQueryFacets() throws Exception {
+    Client client = Client.localClient();
+    indexSimple(client);
+
+    // sibling query facets are counted together, unless one of them opts out of sweeping
+    for (String sweep : Arrays.asList("true", "false")) {
+      final String skg =
+          "skg: { type: 'func', func:'relatedness($fore,$back)', "
+              + RelatednessAgg.SWEEP_COLLECTION
+              + ": "
+              + sweep
+              + " }";
+      assertJQ(
+          req(
+              "q",
+              "cat_s:[* TO *]",
+              "rows",
+              "0",
+              "fore",
+              "where_s:NY",
+              "back",
+              "*:*",
+              "json.facet",
+              ""
+                  + "{a: { type: query, q:'cat_s:A', facet: { "
+                  + skg
+                  + " } }, "
+                  + " b: { type: query, q:'cat_s:B', facet: { "
+                  + skg
+                  + " } }, "
+                  + " c: { type: query, q:'cat_s:C', facet: { "
+                  + skg
+                  + " } }, "
+                  + " d: { type: query, q:'where_s:NJ' } }"),
+          "facets=={count:5, "
+              + " a:{ count:2, "
+              + "     skg : { relatedness: 0.00554, "
+              + "             foreground_popularity: 0.16667,"
+              + "             background_popularity: 0.33333, } }, "
+              + " b:{ count:3, "
+              + "     skg : { relatedness: 0.0, " // perfectly average and uncorrelated
+              + "             foreground_popularity: 0.16667,"
+              + "             background_popularity: 0.5 } }, "
+              + " c:{ count:0 }, "
+              + " d:{ count:3 } }");
+    }
+
+    // the foreground of nested query facets is restricted by their parent bucket, whether swept or
+    // not
+    final String[] responses = new String[2];
+    for (int i = 0; i < responses.length; i++) {
+      final String skg =
+          "skg: { type: 'func', func:'relatedness($fore,$back)', "
+              + RelatednessAgg.SWEEP_COLLECTION
+              + ": "
+              + (i == 0)
+              + " }";
+      responses[i] =
+          h.query(
+              req(
+                  "q",
+                  "*:*",
+                  "rows",
+                  "0",
+                  "omitHeader",
+                  "true",
+                  "fore",
+                  "num_i:[0 TO *]",
+                  "back",
+                  "*:*",
+                  "json.facet",
+                  "{x: { type: terms, field: 'where_s', facet: {"
+                      + "  a: { type: query, q:'cat_s:A', facet: { "
+                      + skg
+                      + " } }, "
+                      + "  b: { type: query, q:'cat_s:B', facet: { "
+                      + skg
+                      + " } }, "
+                      + "  n: { type: query, q:'-cat_s:A' } } } }"));
+    }
+    assertEquals(responses[1], responses[0]);
+
+    // only dense domains are swept: the whole index is, while the buckets of a terms facet are too
+    // sparse to be worth reading every word of the bitsets for
+    final String skg =
+        "skg: { type: 'func', func:'relatedness($fore,$back)', "
+            + RelatednessAgg.SWEEP_COLLECTION
+            + ": true }";
+    final String queryFacets =
+        "a: { type: query, q:'cat_s:A', facet: { "
+            + skg
+            + " } }, b: { type: query, q:'cat_s:B', facet: { "
+            + skg
+            + " } }";
+    final Pattern swept =
+        Pattern.compile("\"" + QueryFacetSweep.SWEEP_COLLECTION_DEBUG_KEY + "\":\\s*2\\b");
+    String trace =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "rows",
+                "0",
+                "debug",
+                "true",
+                "wt",
+                "json",
+                "fore",
+                "num_i:[0 TO *]",
+                "back",
+                "*:*",
+                "json.facet",
+                "{" + queryFacets + "}"));
+    assertTrue(trace, swept.matcher(trace).find());
+    trace =
+        h.query(
+            req(
+                "q",
+                "*:*",
+                "rows",
+                "0",
+                "debug",
+                "true",
+                "wt",
+                "json",
+                "fore",
+                "num_i:[0 TO *]",
+                "back",
+                "*:*",
+                "json.facet",
+                "{x: { type: terms, field: 'where_s', facet: {" + queryFacets + "} } }"));
+    assertFalse(trace, swept.matcher(trace).find());
+  }
+
   @Test
   public void testRepeatedNumerics() throws Exception {
     Client client = Client.localClient();
@@ -4360,6 +4499,70 @@ public class TestJsonFacets extends SolrTestCaseHS {
             + "}");
   }
 
+  @Test
+  public void testThreads() throws Exception {
+    clearIndex();
+    int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; i++) {
+      String a = "a" + random().nextInt(20);
+      String b = "b" + random().nextInt(20);
+      assertU(
+          adoc(
+              "id", Integer.toString(i),
+              "cat_s", a,
+              "cat_sd", a,
+              "cat_ss", a,
+              "cat_ss", b,
+              "cat_sds", a,
+              "cat_sds", b,
+              "num_i", Integer.toString(i)));
+      if (random().nextInt(10) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    String facets =
+        "x:{type:terms, field:cat_s, limit:5, ${threads}},"
+            + "y:{type:terms, field:cat_sd, limit:-1, ${threads}},"
+            + "z:{type:terms, field:cat_ss, sort:'index asc', ${threads}},"
+            + "w:{type:terms, field:cat_sds, limit:3, ${threads},"
+            + "   facet:{${threads}, sum:'sum(num_i)', u:{type:terms, field:cat_ss, limit:2},"
+            + "          q:{type:query, q:'num_i:[0 TO 50]'}}},"
+            + "q:{type:query, q:'cat_ss:(a1 OR b1)', facet:{${threads},"
+            + "   x:{type:terms, field:cat_sds, limit:5}, y:{type:terms, field:cat_s}}},"
+            + "stat:'unique(cat_ss)'";
+    String expected =
+        JQ(
+            req(
+                "q",
+                "*:*",
+                "rows",
+                "0",
+                "omitHeader",
+                "true",
+                "threads",
+                "threads:0",
+                "json.facet",
+                "{" + facets + "}"));
+    for (String threads : new String[] {"1", "3", "-1"}) {
+      String actual =
+          JQ(
+              req(
+                  "q",
+                  "*:*",
+                  "rows",
+                  "0",
+                  "omitHeader",
+                  "true",
+                  "threads",
+                  "threads:" + threads,
+                  "json.facet",
+                  "{threads:" + threads + ", " + facets + "}"));
+      assertEquals("threads=" + threads, expected, actual);
+    }
+  }
+
   @Test
   public void testBigger() throws Exception {
     ModifiableSolrParams p = params("rows", "0", "cat_s", "cat_ss", "where_s", "where_ss");
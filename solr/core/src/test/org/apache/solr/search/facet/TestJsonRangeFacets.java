@@ -358,6 +358,88 @@ public class TestJsonRangeFacets extends SolrTestCaseHS {
             + "}}");
   }
 
+  @Test
+  public void testDocValuesMethodMatchesFilter() throws Exception {
+    Client client = Client.localClient();
+    client.deleteByQuery("*:*", null);
+    final int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; i++) {
+      if (random().nextInt(10) == 0) {
+        client.add(sdoc("id", Integer.toString(i)), null);
+        continue;
+      }
+      // small values, so that many of them fall on the bounds of the buckets
+      int val = random().nextInt(41) - 20;
+      client.add(
+          sdoc(
+              "id", Integer.toString(i),
+              "num_ip", Integer.toString(val),
+              "num_lp", Long.toString(val * 1000000000L),
+              "num_fp", Float.toString(val / 4f),
+              "num_dp", Double.toString(val / 4d),
+              "num_dt", (2000 + val) + "-01-01T00:00:00Z",
+              "cat_s", random().nextBoolean() ? "A" : "B"),
+          null);
+      if (random().nextInt(25) == 0) client.commit();
+    }
+    client.commit();
+
+    final String[][] fields = {
+      {"num_ip", "-15", "16", "3"},
+      {"num_lp", "-15000000000", "16000000000", "3000000000"},
+      {"num_fp", "-4", "4.25", "0.75"},
+      {"num_dp", "-4", "4.25", "0.75"},
+      {"num_dt", "1985-01-01T00:00:00Z", "2016-01-01T00:00:00Z", "+3YEARS"},
+    };
+    final String[] includes = {"lower", "upper", "edge", "outer", "all", "lower,upper"};
+    for (int iter = 0; iter < 30; iter++) {
+      final String[] field = fields[random().nextInt(fields.length)];
+      final String facet =
+          "{field:"
+              + field[0]
+              + ", start:'"
+              + field[1]
+              + "', end:'"
+              + field[2]
+              + "', gap:'"
+              + field[3]
+              + "', hardend:"
+              + random().nextBoolean()
+              + ", include:["
+              + includes[random().nextInt(includes.length)]
+              + "], other:"
+              + (random().nextBoolean() ? "all" : "none")
+              + ", mincount:"
+              + random().nextInt(2)
+              + (random().nextBoolean() ? ", facet:{x:'sum(num_ip)', y:'unique(cat_s)'}" : "")
+              + ", method:";
+      final String q = random().nextBoolean() ? "*:*" : "cat_s:A";
+      final String filter =
+          h.query(
+              req(
+                  "q",
+                  q,
+                  "rows",
+                  "0",
+                  "omitHeader",
+                  "true",
+                  "json.facet",
+                  "{r:{type:range, " + facet.substring(1) + "filter}}"));
+      final String dv =
+          h.query(
+              req(
+                  "q",
+                  q,
+                  "rows",
+                  "0",
+                  "omitHeader",
+                  "true",
+                  "json.facet",
+                  "{r:{type:range, " + facet.substring(1) + "dv}}"));
+      assertEquals(facet, filter, dv);
+    }
+  }
+
   @Test
   public void testRangeFacetWithRangesDistrib() throws Exception {
     initServers();
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Accountable;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.uninverting.FieldCache;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestPerSegmentUnInvertedField extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    System.setProperty("solr.perSegmentUnInvertedField", "true");
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  @AfterClass
+  public static void afterTests() {
+    System.clearProperty("solr.perSegmentUnInvertedField");
+  }
+
+  /** The un-inverted values of each segment of the current searcher, by segment. */
+  private static Map<Object, Accountable> segmentValues(String field) throws Exception {
+    Map<Object, Accountable> entries = new HashMap<>();
+    for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+      if (field.equals(entry.getFieldName())) {
+        entries.put(entry.getReaderKey(), entry.getValue());
+      }
+    }
+    return h.getCore()
+        .withSearcher(
+            searcher -> {
+              Map<Object, Accountable> values = new HashMap<>();
+              for (LeafReaderContext ctx : searcher.getIndexReader().leaves()) {
+                IndexReader.CacheKey key = ctx.reader().getCoreCacheHelper().getKey();
+                if (entries.containsKey(key)) {
+                  values.put(key, entries.get(key));
+                }
+              }
+              assertNull(UnInvertedField.checkUnInvertedField(field, searcher));
+              return values;
+            });
+  }
+
+  @Test
+  public void testFacets() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1", "cat_ss", "a", "cat_ss", "b", "num_i", "1"));
+    assertU(adoc("id", "2", "cat_ss", "b", "cat_ss", "c", "num_i", "2"));
+    assertU(commit());
+    assertU(adoc("id", "3", "cat_ss", "c", "cat_ss", "d", "num_i", "4"));
+    assertU(adoc("id", "4", "num_i", "8"));
+    assertU(commit());
+
+    final String expected =
+        "facets=={count:4, f:{buckets:["
+            + "{val:b, count:2, x:3.0},"
+            + "{val:c, count:2, x:6.0},"
+            + "{val:a, count:1, x:1.0},"
+            + "{val:d, count:1, x:4.0}]}}";
+    for (String method : new String[] {"uif", "enum"}) {
+      assertJQ(
+          req(
+              "q", "*:*",
+              "rows", "0",
+              "json.facet",
+                  "{f:{type:terms, field:cat_ss, method:" + method + ", facet:{x:'sum(num_i)'}}}"),
+          expected);
+    }
+    assertJQ(
+        req(
+            "q", "*:*",
+            "rows", "0",
+            "json.facet", "{f:{type:terms, field:cat_ss, method:uif, prefix:c}}"),
+        "facets=={count:4, f:{buckets:[{val:c, count:2}]}}");
+
+    Map<Object, Accountable> before = segmentValues("cat_ss");
+    assertFalse(before.isEmpty());
+
+    // segments that survive a commit aren't un-inverted again
+    assertU(adoc("id", "5", "cat_ss", "a", "cat_ss", "e", "num_i", "16"));
+    assertU(commit());
+    assertJQ(
+        req(
+            "q", "*:*",
+            "fq", "-id:2",
+            "rows", "0",
+            "json.facet", "{f:{type:terms, field:cat_ss, method:uif}}"),
+        "facets=={count:4, f:{buckets:["
+            + "{val:a, count:2},"
+            + "{val:b, count:1},"
+            + "{val:c, count:1},"
+            + "{val:d, count:1},"
+            + "{val:e, count:1}]}}");
+    Map<Object, Accountable> after = segmentValues("cat_ss");
+    for (Map.Entry<Object, Accountable> entry : before.entrySet()) {
+      if (after.containsKey(entry.getKey())) {
+        assertSame(entry.getValue(), after.get(entry.getKey()));
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.facet;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests reusing the slot arrays of facet accumulators through the {@link SlotArrayPool}. */
+public class TestSlotArrayPool extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeTests() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema_latest.xml");
+  }
+
+  @Test
+  public void testPooledLength() {
+    assertEquals(0, SlotArrayPool.pooledLength(0));
+    assertEquals(100, SlotArrayPool.pooledLength(100));
+    assertEquals(128, SlotArrayPool.pooledLength(128));
+    assertEquals(144, SlotArrayPool.pooledLength(129));
+    assertEquals(1024, SlotArrayPool.pooledLength(1000));
+    for (int i = 0; i < 100; i++) {
+      int numSlots = random().nextInt(1 << 24);
+      int length = SlotArrayPool.pooledLength(numSlots);
+      assertTrue(length >= numSlots);
+      assertTrue(length <= numSlots + numSlots / 8 + 1);
+      assertEquals(length, SlotArrayPool.pooledLength(length));
+    }
+  }
+
+  @Test
+  public void testReuse() {
+    SlotArrayPool pool = new SlotArrayPool(1 << 20);
+    long[] longs = pool.newLongArray(1000, 0);
+    longs[5] = 42;
+    pool.release(longs);
+    assertEquals(1024L * Long.BYTES, pool.getPooledBytes());
+
+    // a somewhat different number of slots gets the same array, reset to the initial value
+    long[] reused = pool.newLongArray(1010, -1);
+    assertSame(longs, reused);
+    for (long value : reused) {
+      assertEquals(-1, value);
+    }
+    assertEquals(0, pool.getPooledBytes());
+    assertEquals(1, pool.getNumAllocated());
+    assertEquals(1, pool.getNumReused());
+
+    // arrays of other types or lengths aren't shared
+    pool.release(reused);
+    assertNotSame(longs, pool.newLongArray(2000, 0));
+    assertNotNull(pool.newDoubleArray(1000, 0));
+    assertEquals(3, pool.getNumAllocated());
+
+    // small arrays aren't pooled at all
+    int[] ints = pool.newIntArray(10, 7);
+    assertEquals(10, ints.length);
+    assertEquals(7, ints[9]);
+    pool.release(ints);
+    assertNotSame(ints, pool.newIntArray(10, 7));
+  }
+
+  @Test
+  public void testMaxBytes() {
+    SlotArrayPool pool = new SlotArrayPool(2048L * Double.BYTES);
+    double[] doubles = pool.newDoubleArray(1024, 0);
+    long[] longs = pool.newLongArray(1024, 0);
+    int[] huge = pool.newIntArray(8192, 0);
+    pool.release(doubles);
+    pool.release(longs);
+    pool.release(huge); // larger than the pool
+    assertEquals(2048L * Double.BYTES, pool.getPooledBytes());
+
+    // other lengths make room for a new one
+    pool.release(pool.newLongArray(2000, 0));
+    assertEquals(2048L * Long.BYTES, pool.getPooledBytes());
+    assertNotSame(doubles, pool.newDoubleArray(1024, 0));
+    assertNotSame(longs, pool.newLongArray(1024, 0));
+  }
+
+  @Test
+  public void testNestedFacets() throws Exception {
+    for (int i = 0; i < 600; i++) {
+      assertU(
+          adoc(
+              "id",
+              "" + i,
+              "parent_s",
+              "p" + (i % 3),
+              "child_s",
+              "c" + (i % 300),
+              "num_i",
+              "" + i));
+      if (random().nextInt(100) == 0) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+
+    FacetModule facetModule =
+        (FacetModule) h.getCore().getSearchComponent(FacetModule.COMPONENT_NAME);
+    SlotArrayPool pool = facetModule.slotArrayPool;
+    assertNotNull(pool);
+    long reused = pool.getNumReused();
+
+    // child c<j> of parent p<k> has docs j and j+300 if j%3 == k
+    for (int i = 0; i < 2; i++) {
+      assertJQ(
+          req(
+              "q",
+              "*:*",
+              "rows",
+              "0",
+              "json.facet",
+              "{p:{type:terms, field:parent_s, sort:index, facet:{"
+                  + "c:{type:terms, field:child_s, limit:3, sort:'x desc', facet:{x:'sum(num_i)'}}"
+                  + "}}}"),
+          "facets=={count:600, p:{buckets:["
+              + "{val:p0, count:200, c:{buckets:["
+              + "{val:c297, count:2, x:894.0},{val:c294, count:2, x:888.0},{val:c291, count:2, x:882.0}]}},"
+              + "{val:p1, count:200, c:{buckets:["
+              + "{val:c298, count:2, x:896.0},{val:c295, count:2, x:890.0},{val:c292, count:2, x:884.0}]}},"
+              + "{val:p2, count:200, c:{buckets:["
+              + "{val:c299, count:2, x:898.0},{val:c296, count:2, x:892.0},{val:c293, count:2, x:886.0}]}}"
+              + "]}}");
+    }
+
+    // every child facet but the very first could count with the arrays of the previous one
+    assertTrue(pool.getNumReused() - reused >= 5);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.function;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.solr.SolrTestCaseJ4;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestExternalFileValues extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-functionquery.xml", "schema11.xml");
+  }
+
+  private static int version = 0;
+
+  private static void makeExternalFile(String contents) throws Exception {
+    makeExternalFile("foo_extf", contents);
+  }
+
+  private static void makeExternalFile(String field, String contents) throws Exception {
+    Path path = Path.of(h.getCore().getDataDir(), "external_" + field + "." + (version++));
+    Files.writeString(path, contents, StandardCharsets.UTF_8);
+  }
+
+  private static Set<IndexReader.CacheKey> segments() throws Exception {
+    return h.getCore()
+        .withSearcher(
+            searcher -> {
+              Set<IndexReader.CacheKey> keys = new HashSet<>();
+              for (LeafReaderContext ctx : searcher.getIndexReader().leaves()) {
+                keys.add(ctx.reader().getCoreCacheHelper().getKey());
+              }
+              return keys;
+            });
+  }
+
+  private static List<String> cacheFiles(String suffix) throws Exception {
+    return cacheFiles("foo", suffix);
+  }
+
+  /** The names of the cache files of the fields whose names start with the letters or digits. */
+  private static List<String> cacheFiles(String start, String suffix) throws Exception {
+    Path dir = Path.of(h.getCore().getDataDir(), ExternalFileValues.CACHE_DIR);
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .map(p -> p.getFileName().toString())
+          .filter(name -> name.startsWith(start) && name.endsWith(suffix))
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void testIncrementalSegments() throws Exception {
+    clearIndex();
+    for (int i = 1; i <= 5; i++) {
+      assertU(adoc("id", Integer.toString(i)));
+      if (i == 3) {
+        assertU(commit());
+      }
+    }
+    assertU(commit());
+    // later lines win, keys that aren't in the index are ignored
+    makeExternalFile("1=10\n2=20\n2=22\n9=90\nbad line\n3=x\n");
+    FileFloatSource.resetCache();
+
+    int built = ExternalFileValues.segmentsBuilt;
+    assertQ(
+        req("q", "{!frange l=21 u=23}foo_extf"), "//*[@numFound='1']", "//str[@name='id'][.='2']");
+    assertQ(req("q", "{!frange l=10 u=10}foo_extf"), "//*[@numFound='1']");
+    // the default value
+    assertQ(req("q", "{!frange l=1 u=1}foo_extf"), "//*[@numFound='3']");
+    Set<IndexReader.CacheKey> segments = segments();
+    assertEquals(built + segments.size(), ExternalFileValues.segmentsBuilt);
+    assertEquals(1, cacheFiles(".dict").size());
+
+    // only new segments are looked up in the dictionary
+    assertU(adoc("id", "6"));
+    assertU(commit());
+    built = ExternalFileValues.segmentsBuilt;
+    Set<IndexReader.CacheKey> newSegments = segments();
+    newSegments.removeAll(segments);
+    assertQ(req("q", "{!frange l=1 u=1}foo_extf"), "//*[@numFound='4']");
+    assertEquals(built + newSegments.size(), ExternalFileValues.segmentsBuilt);
+
+    // an unchanged file isn't parsed again
+    List<String> dicts = cacheFiles(".dict");
+    FileFloatSource.resetCache();
+    assertQ(req("q", "{!frange l=21 u=23}foo_extf"), "//*[@numFound='1']");
+    assertEquals(dicts, cacheFiles(".dict"));
+
+    // a new version replaces the files of the old one
+    makeExternalFile("6=60\n");
+    assertU(h.query("/reloadCache", lrf.makeRequest("", "")));
+    assertQ(
+        req("q", "{!frange l=60 u=60}foo_extf"), "//*[@numFound='1']", "//str[@name='id'][.='6']");
+    assertQ(req("q", "{!frange l=1 u=1}foo_extf"), "//*[@numFound='5']");
+    assertEquals(1, cacheFiles(".dict").size());
+    assertFalse(dicts.equals(cacheFiles(".dict")));
+    String prefix = cacheFiles(".dict").get(0).replace(".dict", "");
+    // the value files of the old version are still mapped by the open segments...
+    assertFalse(cacheFiles(".vals").stream().allMatch(name -> name.startsWith(prefix)));
+
+    // ...and are deleted with the segments that mapped them, along with the files of the new
+    // version for segments that are gone
+    assertU(delQ("*:*"));
+    assertU(adoc("id", "7"));
+    assertU(commit());
+    assertQ(req("q", "{!frange l=1 u=1}foo_extf"), "//*[@numFound='1']");
+    assertEquals(1, segments().size());
+    List<String> vals = cacheFiles(".vals");
+    assertEquals(vals.toString(), 1, vals.size());
+    assertTrue(vals.get(0), vals.get(0).startsWith(prefix));
+  }
+
+  @Test
+  public void testSimilarFieldNames() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1"));
+    assertU(commit());
+    makeExternalFile("rank.a_extf", "1=10\n");
+    makeExternalFile("rank_a_extf", "1=20\n");
+    FileFloatSource.resetCache();
+
+    // the fields don't share the names of their files, so opening one doesn't delete the other's
+    assertQ(req("q", "{!frange l=10 u=10}rank.a_extf"), "//*[@numFound='1']");
+    assertQ(req("q", "{!frange l=20 u=20}rank_a_extf"), "//*[@numFound='1']");
+    assertEquals(2, cacheFiles("rank", ".dict").size());
+    assertEquals(2, cacheFiles("rank", ".vals").size());
+    int built = ExternalFileValues.segmentsBuilt;
+    FileFloatSource.resetCache();
+    assertQ(req("q", "{!frange l=10 u=10}rank.a_extf"), "//*[@numFound='1']");
+    assertQ(req("q", "{!frange l=20 u=20}rank_a_extf"), "//*[@numFound='1']");
+    assertEquals(built, ExternalFileValues.segmentsBuilt);
+  }
+
+  @Test
+  public void testCacheStateForgottenOnClose() throws Exception {
+    clearIndex();
+    assertU(adoc("id", "1"));
+    assertU(commit());
+    makeExternalFile("1=10\n");
+    FileFloatSource.resetCache();
+    assertQ(req("q", "{!frange l=10 u=10}foo_extf"), "//*[@numFound='1']");
+    Path cacheDir = Path.of(h.getCore().getDataDir(), ExternalFileValues.CACHE_DIR);
+    assertTrue(ExternalFileValues.hasCacheState(cacheDir));
+    try {
+      deleteCore();
+      assertFalse(ExternalFileValues.hasCacheState(cacheDir));
+    } finally { // put back the core expected by the other tests
+      initCore("solrconfig-functionquery.xml", "schema11.xml");
+    }
+  }
+}
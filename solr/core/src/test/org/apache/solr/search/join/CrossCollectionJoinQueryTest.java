@@ -85,6 +85,7 @@ public class CrossCollectionJoinQueryTest extends SolrCloudTestCase {
               "product_id_i", String.valueOf(productId),
               "product_id_l", String.valueOf(productId),
               "product_id_s", String.valueOf(productId),
+              "product_id_txt", String.valueOf(productId),
               "size_s", size));
 
       // Index 1 parts document for each small product, 2 for each medium, 3 for each large, etc.
@@ -244,6 +245,43 @@ public class CrossCollectionJoinQueryTest extends SolrCloudTestCase {
     testCcJoinQuery(
         "{!join_nonrouted method=crossCollection fromIndex=products from=product_id_s to=product_id_s routed=true}size_s:M",
         false);
+
+    // A bloom filter of the local keys only lets through the remote keys that may match.
+    testCcJoinQuery(
+        "{!join method=crossCollection fromIndex=products from=product_id_s to=product_id_s routed=false bloomFilter=true}size_s:M",
+        true);
+    // It is only used with string fields.
+    testCcJoinQuery(
+        "{!join method=crossCollection fromIndex=products from=product_id_i to=product_id_i routed=false bloomFilter=true}size_s:M",
+        true);
+    // The remote side rejects it for a from field that isn't a string field, so the keys are
+    // streamed without it.
+    testCcJoinQuery(
+        "{!join method=crossCollection fromIndex=products from=product_id_txt to=product_id_s routed=false bloomFilter=true}size_s:M",
+        true);
+  }
+
+  @Test
+  public void testRemoteKeysCache() throws Exception {
+    setupIndexes(false);
+    String query =
+        "{!join_nonrouted method=crossCollection fromIndex=products from=product_id_s to=product_id_s ttl=%d}size_s:M";
+    testCcJoinQuery(String.format(Locale.ROOT, query, 3600), true);
+
+    // a new medium product, and a part of it
+    indexDocs(
+        "products",
+        List.of(
+            new SolrInputDocument(
+                "id", "1000", "product_id_s", "1000", "product_id_i", "1000", "size_s", "M")));
+    cluster.getSolrClient().commit("products");
+    indexDocs("parts", List.of(new SolrInputDocument("id", "1000_0", "product_id_s", "1000")));
+    cluster.getSolrClient().commit("parts");
+
+    // the remote keys are still cached, even though the local index changed
+    testCcJoinQuery(String.format(Locale.ROOT, query, 3600), true);
+    // once they expire the new product is joined
+    assertResultCount("parts", String.format(Locale.ROOT, query, 0), NUM_PRODUCTS / 2 + 1, true);
   }
 
   @Test
@@ -16,6 +16,10 @@
  */
 package org.apache.solr.search.join;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.SolrParams;
@@ -142,6 +146,82 @@ public class GraphQueryTest extends SolrTestCaseJ4 {
         "/response/numFound==1");
   }
 
+  @Test
+  public void testMultiThreadedGraph() throws Exception {
+    doMultiThreadedGraph(params("node_id", "node_s", "edge_id", "edge_ss"));
+    doMultiThreadedGraph(params("node_id", "node_ip", "edge_id", "edge_ips"));
+  }
+
+  public void doMultiThreadedGraph(SolrParams p) throws Exception {
+    String node_id = p.get("node_id");
+    String edge_id = p.get("edge_id");
+    clearIndex();
+
+    // chains of ten nodes, with an edge from each node to the node three times its id
+    int numNodes = 100;
+    for (int i = 0; i < numNodes; i++) {
+      List<Object> fields = new ArrayList<>(List.of("id", "g_" + i, node_id, i));
+      if (i % 10 != 9) {
+        fields.addAll(List.of(edge_id, i + 1));
+      }
+      fields.addAll(List.of(edge_id, (i * 3) % numNodes));
+      assertU(adoc(fields.stream().map(String::valueOf).toArray(String[]::new)));
+      if (i % 10 == 9) {
+        // several segments, so that they are collected concurrently
+        assertU(commit());
+      }
+    }
+
+    for (int maxDepth : new int[] {-1, 1, 2, 4}) {
+      // the number of nodes reachable from node 1 in at most maxDepth hops
+      Set<Integer> reached = new HashSet<>(List.of(1));
+      List<Integer> frontier = List.of(1);
+      for (int depth = 0; !frontier.isEmpty() && depth != maxDepth; depth++) {
+        List<Integer> next = new ArrayList<>();
+        for (int node : frontier) {
+          for (int edge : new int[] {node % 10 != 9 ? node + 1 : -1, (node * 3) % numNodes}) {
+            if (edge >= 0 && reached.add(edge)) {
+              next.add(edge);
+            }
+          }
+        }
+        frontier = next;
+      }
+      for (String multiThreaded : new String[] {"true", "false"}) {
+        assertJQ(
+            req(
+                p,
+                "q",
+                "{!graph from=${node_id} to=${edge_id} maxDepth=" + maxDepth + "}id:g_1",
+                "multiThreaded",
+                multiThreaded),
+            "/response/numFound==" + reached.size());
+      }
+    }
+    clearIndex();
+  }
+
+  @Test
+  public void testLargeFrontier() throws Exception {
+    clearIndex();
+    // more edges than are matched with an automaton
+    int numLeaves = GraphEdgeCollector.GraphTermsCollector.MAX_AUTOMATON_TERMS + 10;
+    List<String> root = new ArrayList<>(List.of("id", "root", "node_s", "root"));
+    for (int i = 0; i < numLeaves; i++) {
+      root.addAll(List.of("edge_ss", "leaf_" + i));
+      assertU(adoc("id", "leaf_" + i, "node_s", "leaf_" + i));
+    }
+    assertU(adoc(root.toArray(new String[0])));
+    assertU(commit());
+
+    for (String useAutn : new String[] {"true", "false"}) {
+      assertJQ(
+          req("q", "{!graph from=node_s to=edge_ss useAutn=" + useAutn + "}id:root"),
+          "/response/numFound==" + (numLeaves + 1));
+    }
+    clearIndex();
+  }
+
   @Test
   public void testGraphQueryParserValidation() {
     // from schema field existence
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search.join;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCase;
+import org.apache.solr.common.SolrException;
+import org.junit.Test;
+
+public class JoinKeyBloomFilterTest extends SolrTestCase {
+
+  private static BytesRef key(int i) {
+    return new BytesRef("key_" + i);
+  }
+
+  @Test
+  public void testNoFalseNegatives() {
+    int numKeys = atLeast(1000);
+    JoinKeyBloomFilter filter = JoinKeyBloomFilter.forKeys(numKeys);
+    for (int i = 0; i < numKeys; i++) {
+      filter.add(key(i));
+    }
+    for (int i = 0; i < numKeys; i++) {
+      assertTrue(filter.mightContain(key(i)));
+    }
+
+    int falsePositives = 0;
+    for (int i = numKeys; i < 11 * numKeys; i++) {
+      if (filter.mightContain(key(i))) {
+        falsePositives++;
+      }
+    }
+    // about 1% expected
+    assertTrue("false positives: " + falsePositives, falsePositives < numKeys / 10);
+  }
+
+  @Test
+  public void testEncoding() {
+    JoinKeyBloomFilter filter = JoinKeyBloomFilter.forKeys(100);
+    for (int i = 0; i < 100; i++) {
+      filter.add(key(i));
+    }
+    JoinKeyBloomFilter decoded = JoinKeyBloomFilter.decode(filter.encode());
+    assertEquals(filter, decoded);
+    assertEquals(filter.getNumBits(), decoded.getNumBits());
+
+    expectThrows(SolrException.class, () -> JoinKeyBloomFilter.decode("not base64!"));
+    // not a whole number of longs
+    expectThrows(SolrException.class, () -> JoinKeyBloomFilter.decode("AAAA"));
+  }
+
+  @Test
+  public void testContainsAll() {
+    JoinKeyBloomFilter before = JoinKeyBloomFilter.forKeys(100);
+    JoinKeyBloomFilter after = JoinKeyBloomFilter.forKeys(90);
+    for (int i = 0; i < 100; i++) {
+      before.add(key(i));
+      if (i % 2 == 0) {
+        after.add(key(i));
+      }
+    }
+    // some of the keys, in a filter of the same size
+    assertTrue(before.containsAll(after));
+    after.add(key(1000));
+    assertFalse(before.containsAll(after));
+    // filters of other sizes can't be compared
+    assertFalse(before.containsAll(JoinKeyBloomFilter.forKeys(100_000)));
+  }
+}
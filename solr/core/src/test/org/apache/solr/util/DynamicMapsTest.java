@@ -86,4 +86,65 @@ public class DynamicMapsTest extends SolrTestCase {
     assertEquals(-1, map.get(101));
     assertEquals(-1, map.get(0));
   }
+
+  public void testPagedIntIntMap() {
+    DynamicMapPagePool pool = new DynamicMapPagePool(1024 * 1024);
+    int maxKey = 1 << 16;
+    IntIntDynamicMap map = new IntIntDynamicMap(maxKey, -1, pool);
+    Map<Integer, Integer> standard = new HashMap<>();
+    // enough keys to switch to pages, all in the first pages
+    for (int i = 0; i < maxKey / 32; i++) {
+      int key = random().nextInt(4 * DynamicMap.PAGE_SIZE);
+      int val = random().nextInt(Integer.MAX_VALUE);
+      standard.put(key, val);
+      map.put(key, val);
+    }
+    map.put(maxKey + 10, 42);
+    standard.put(maxKey + 10, 42);
+
+    for (Map.Entry<Integer, Integer> entry : standard.entrySet()) {
+      assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+    }
+    assertEquals(-1, map.get(maxKey / 2));
+    assertEquals(-1, map.get(Integer.MAX_VALUE));
+    AtomicInteger size = new AtomicInteger(0);
+    map.forEachValue(i -> size.incrementAndGet());
+    assertEquals(standard.size(), size.get());
+
+    // only the pages that were put to are allocated
+    assertTrue(map.ramBytesUsed() < 6L * DynamicMap.PAGE_SIZE * Integer.BYTES);
+    assertEquals(5, pool.getNumAllocated());
+    map.release();
+    assertEquals(5L * DynamicMap.PAGE_SIZE * Integer.BYTES, pool.getPooledBytes());
+
+    // the next map reuses the pages, without the values of the previous one
+    IntIntDynamicMap next = new IntIntDynamicMap(DynamicMap.PAGE_SIZE, -2, pool);
+    for (int i = 0; i < 100; i++) {
+      next.put(i, i);
+    }
+    assertEquals(1, pool.getNumReused());
+    assertEquals(4L * DynamicMap.PAGE_SIZE * Integer.BYTES, pool.getPooledBytes());
+    for (int i = 100; i < DynamicMap.PAGE_SIZE; i++) {
+      assertEquals(-2, next.get(i));
+    }
+  }
+
+  public void testPagePoolIsBounded() {
+    DynamicMapPagePool pool = new DynamicMapPagePool(DynamicMap.PAGE_SIZE * Float.BYTES);
+    IntFloatDynamicMap map = new IntFloatDynamicMap(DynamicMap.PAGE_SIZE * 2, 0.0f, pool);
+    for (int i = 0; i < DynamicMap.PAGE_SIZE * 2; i++) {
+      map.put(i, i);
+    }
+    assertEquals(DynamicMap.PAGE_SIZE * 2 - 1, map.get(DynamicMap.PAGE_SIZE * 2 - 1), 0.0f);
+    map.release();
+    // only one of the two pages fits
+    assertEquals(DynamicMap.PAGE_SIZE * Float.BYTES, pool.getPooledBytes());
+
+    IntFloatDynamicMap next = new IntFloatDynamicMap(DynamicMap.PAGE_SIZE * 2, 0.0f, pool);
+    for (int i = 0; i < DynamicMap.PAGE_SIZE * 2; i++) {
+      next.put(i, 1.0f);
+    }
+    assertEquals(3, pool.getNumAllocated());
+    assertEquals(1, pool.getNumReused());
+  }
 }
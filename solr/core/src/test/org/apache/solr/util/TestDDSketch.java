@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.Arrays;
+import org.apache.solr.SolrTestCase;
+import org.junit.Test;
+
+public class TestDDSketch extends SolrTestCase {
+
+  private static double[] randomValues(int n) {
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      switch (random().nextInt(4)) {
+        case 0:
+          values[i] = 0;
+          break;
+        case 1:
+          values[i] = -Math.exp(random().nextDouble() * 20);
+          break;
+        default:
+          // latency-like: mostly small with a long tail
+          values[i] = Math.exp(random().nextGaussian() * 3);
+      }
+    }
+    return values;
+  }
+
+  private static void assertQuantiles(DDSketch sketch, double[] values) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    assertEquals(sorted.length, sketch.getCount());
+    assertEquals(sorted[0], sketch.quantile(0), 0);
+    assertEquals(sorted[sorted.length - 1], sketch.quantile(1), 0);
+    for (double q = 0.01; q < 1; q += 0.01) {
+      double expected = sorted[(int) (q * (sorted.length - 1))];
+      double delta = Math.abs(expected) * sketch.getRelativeAccuracy() * 1.0001;
+      assertEquals("q=" + q, expected, sketch.quantile(q), delta);
+    }
+  }
+
+  @Test
+  public void testRelativeAccuracy() {
+    double[] values = randomValues(atLeast(1000));
+    DDSketch sketch = new DDSketch();
+    for (double value : values) {
+      sketch.add(value);
+    }
+    assertQuantiles(sketch, values);
+  }
+
+  @Test
+  public void testMergeAndSerialize() {
+    double[] values = randomValues(atLeast(1000));
+    DDSketch merged = new DDSketch();
+    int numParts = random().nextInt(5) + 1;
+    for (int part = 0; part < numParts; part++) {
+      DDSketch sketch = new DDSketch();
+      for (int i = part; i < values.length; i += numParts) {
+        sketch.add(values[i]);
+      }
+      merged.merge(DDSketch.fromBytes(sketch.toBytes()));
+    }
+    assertQuantiles(merged, values);
+
+    DDSketch copy = DDSketch.fromBytes(merged.toBytes());
+    assertArrayEquals(merged.toBytes(), copy.toBytes());
+
+    expectThrows(IllegalArgumentException.class, () -> merged.merge(new DDSketch(0.05)));
+  }
+
+  @Test
+  public void testClear() {
+    DDSketch sketch = new DDSketch();
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    for (double value : randomValues(100)) {
+      sketch.add(value);
+    }
+    sketch.clear();
+    assertEquals(0, sketch.getCount());
+    assertArrayEquals(new DDSketch().toBytes(), sketch.toBytes());
+
+    double[] values = randomValues(atLeast(100));
+    for (double value : values) {
+      sketch.add(value);
+    }
+    assertQuantiles(sketch, values);
+  }
+
+  @Test
+  public void testCollapse() {
+    DDSketch sketch = new DDSketch();
+    // spans far more bins than the sketch keeps, the smallest values get collapsed
+    for (int exp = -300; exp <= 300; exp++) {
+      sketch.add(Math.pow(10, exp));
+    }
+    assertEquals(601, sketch.getCount());
+    assertEquals(1e300, sketch.quantile(1), 0);
+    assertEquals(1e290, sketch.quantile(590.0 / 600), 1e290 * sketch.getRelativeAccuracy());
+    // collapsed values are reported as the lowest value still kept
+    assertTrue(sketch.quantile(550.0 / 600) > 1e270);
+    assertEquals(1e-300, sketch.quantile(0), 0);
+  }
+}
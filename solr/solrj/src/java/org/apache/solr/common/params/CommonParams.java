@@ -158,6 +158,12 @@ public interface CommonParams {
 
   boolean SEGMENT_TERMINATE_EARLY_DEFAULT = false;
 
+  /**
+   * Whether the main query may be searched concurrently across leaf slices, using the node's
+   * searcher executor.
+   */
+  String MULTI_THREADED = "multiThreaded";
+
   /**
    * If true then allow returning partial results. If false and full results can't be produced
    * return no results / error.